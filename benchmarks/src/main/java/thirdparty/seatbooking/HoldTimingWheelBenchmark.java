@@ -0,0 +1,94 @@
+package thirdparty.seatbooking;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HoldTimingWheelBenchmark.java
+ * Scheduling and cancelling hold expiries with a million holds already outstanding, on the timing wheel and on a
+ * ScheduledThreadPoolExecutor with a task per hold, and the time for the wheel to expire a million holds.
+ * <p>
+ * Holds live for up to five minutes on 100ms ticks, as SeatReservationServiceImpl uses by default. The benchmark
+ * sits in the seat booking package so it can drive the wheel's clock rather than wait for real time to pass.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class HoldTimingWheelBenchmark {
+
+    private static final int OUTSTANDING_HOLDS = 1_000_000;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long LONGEST_TIME_TO_LIVE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private HoldTimingWheel wheel;
+    private ScheduledThreadPoolExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        wheel = new HoldTimingWheel(TICK_NANOS, TimeUnit.NANOSECONDS, OUTSTANDING_HOLDS, (holdIds, seats, count) -> {
+        }, 0);
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        for (long holdId = 0; holdId < OUTSTANDING_HOLDS; holdId++) {
+            long timeToLive = 1 + random.nextLong(LONGEST_TIME_TO_LIVE_NANOS);
+            wheel.schedule(holdId, timeToLive);
+            executor.schedule(() -> {
+            }, timeToLive, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean wheelScheduleAndCancel() {
+        long handle = wheel.schedule(-1L, 1 + random.nextLong(LONGEST_TIME_TO_LIVE_NANOS));
+        return wheel.cancel(handle);
+    }
+
+    @Benchmark
+    public boolean executorScheduleAndCancel() {
+        ScheduledFuture<?> expiry = executor.schedule(() -> {
+        }, 1 + random.nextLong(LONGEST_TIME_TO_LIVE_NANOS), TimeUnit.NANOSECONDS);
+        return expiry.cancel(false);
+    }
+
+    /**
+     * A fresh wheel of a million holds for each invocation of expireMillionHolds
+     */
+    @State(Scope.Thread)
+    public static class FullWheel {
+
+        private HoldTimingWheel wheel;
+
+        @Setup(Level.Invocation)
+        public void fill() {
+            SplittableRandom random = new SplittableRandom(42);
+            wheel = new HoldTimingWheel(TICK_NANOS, TimeUnit.NANOSECONDS, OUTSTANDING_HOLDS, (holdIds, seats, count) -> {
+            }, 0);
+            for (long holdId = 0; holdId < OUTSTANDING_HOLDS; holdId++) {
+                wheel.schedule(holdId, 1 + random.nextLong(LONGEST_TIME_TO_LIVE_NANOS));
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public long expireMillionHolds(FullWheel fullWheel) {
+        return fullWheel.wheel.advanceTo(LONGEST_TIME_TO_LIVE_NANOS + TICK_NANOS);
+    }
+}
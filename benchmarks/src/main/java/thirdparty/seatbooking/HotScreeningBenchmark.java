@@ -0,0 +1,62 @@
+package thirdparty.seatbooking;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HotScreeningBenchmark.java
+ * Every thread buying seats for the same screening, with and without switching to combining once the
+ * screening's compare-and-sets start failing. Each operation takes two seats and gives them back.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotScreeningBenchmark {
+
+    @Param({"true", "false"})
+    public boolean combining;
+
+    private SeatInventory inventory;
+
+    @Setup
+    public void setup() {
+        inventory = new SeatInventory(1, combining);
+        inventory.addScreening(0L, 1_000_000);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean oneThread() {
+        return takeAndGiveBack();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean eightThreads() {
+        return takeAndGiveBack();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean thirtyTwoThreads() {
+        return takeAndGiveBack();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean sixtyFourThreads() {
+        return takeAndGiveBack();
+    }
+
+    private boolean takeAndGiveBack() {
+        boolean taken = inventory.tryTake(0L, 2);
+        if (taken) {
+            inventory.giveBack(0L, 2);
+        }
+        return taken;
+    }
+}
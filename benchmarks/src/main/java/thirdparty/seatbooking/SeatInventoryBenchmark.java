@@ -0,0 +1,51 @@
+package thirdparty.seatbooking;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SeatInventoryBenchmark.java
+ * Taking and giving back seats from many threads at once, all in one screening or spread over a thousand.
+ * Each operation takes two seats and gives them back, so the screenings never sell out.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class SeatInventoryBenchmark {
+
+    private static final int SCREENINGS = 1_000;
+
+    private SeatInventory inventory;
+
+    @Setup
+    public void setup() {
+        inventory = new SeatInventory(SCREENINGS);
+        for (long screeningId = 0; screeningId < SCREENINGS; screeningId++) {
+            inventory.addScreening(screeningId, 1_000_000);
+        }
+    }
+
+    @Benchmark
+    public boolean oneScreening() {
+        return takeAndGiveBack(0);
+    }
+
+    @Benchmark
+    public boolean thousandScreenings() {
+        return takeAndGiveBack(ThreadLocalRandom.current().nextInt(SCREENINGS));
+    }
+
+    private boolean takeAndGiveBack(long screeningId) {
+        boolean taken = inventory.tryTake(screeningId, 2);
+        if (taken) {
+            inventory.giveBack(screeningId, 2);
+        }
+        return taken;
+    }
+}
@@ -0,0 +1,78 @@
+package uk.gov.dwp.uc.pairtest;
+
+import org.openjdk.jmh.annotations.*;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderValidationBenchmark.java
+ * Compares validating and pricing an order rule by rule against a single read of the precomputed
+ * OrderLookupTable. Lives in the service's package so that it can reach the package-private validation types.
+ * Both variants return the total cost of a valid order, or -1 for a rejected one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class OrderValidationBenchmark {
+
+    @Param({"SINGLE_ADULT", "FAMILY", "MAXIMUM", "INFANTS_WITHOUT_ADULT"})
+    public String shape;
+
+    private OrderLookupTable table;
+    private TicketTypeRequest[] ticketTypeRequests;
+
+    @Setup
+    public void setup() {
+        table = OrderLookupTable.build(TicketServiceImpl.DEFAULT_MAXIMUM_TICKETS,
+                TicketServiceImpl.DEFAULT_ADULT_TICKET_PRICE, TicketServiceImpl.DEFAULT_CHILD_TICKET_PRICE);
+
+        ticketTypeRequests = switch (shape) {
+            case "SINGLE_ADULT" -> new TicketTypeRequest[] {
+                    new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1)
+            };
+            case "FAMILY" -> new TicketTypeRequest[] {
+                    new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                    new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2),
+                    new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1)
+            };
+            case "MAXIMUM" -> new TicketTypeRequest[] {
+                    new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 10),
+                    new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 6),
+                    new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 4)
+            };
+            case "INFANTS_WITHOUT_ADULT" -> new TicketTypeRequest[] {
+                    new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1),
+                    new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1)
+            };
+            default -> throw new IllegalArgumentException(shape);
+        };
+    }
+
+    @Benchmark
+    public int ruleByRule() {
+        OrderSummary order = OrderSummary.of(ticketTypeRequests);
+        if (order.isEmpty() || order.containsNonPositiveRequest()
+                || !PurchaseRules.isWithinMaximum(order.getTotalTickets(), table.getMaximumTickets())
+                || !PurchaseRules.hasAdultForEveryInfant(order.getAdultTickets(), order.getInfantTickets())
+                || !PurchaseRules.hasAdult(order.getAdultTickets())) {
+            return -1;
+        }
+        return PurchaseRules.totalCost(order.getAdultTickets(), order.getChildTickets(),
+                table.getAdultTicketPrice(), table.getChildTicketPrice());
+    }
+
+    @Benchmark
+    public int lookupTable() {
+        OrderSummary order = OrderSummary.of(ticketTypeRequests);
+        if (order.isEmpty() || order.containsNonPositiveRequest()
+                || !PurchaseRules.isWithinMaximum(order.getTotalTickets(), table.getMaximumTickets())) {
+            return -1;
+        }
+        int entry = table.indexOf(order.getAdultTickets(), order.getChildTickets(), order.getInfantTickets());
+        return table.isValid(entry) ? table.getTotalCost(entry) : -1;
+    }
+}
@@ -0,0 +1,91 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import uk.gov.dwp.uc.pairtest.resilience.AdaptiveConcurrencyLimiter;
+import uk.gov.dwp.uc.pairtest.resilience.CallNotPermittedException;
+import uk.gov.dwp.uc.pairtest.resilience.LimitedTicketPaymentService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AdaptiveLimiterSimulation.java
+ * Runs many callers, each making one payment after another, against a stand-in provider whose latency rises
+ * once more payments are in flight than it can work on, first without a limit and then through an
+ * AdaptiveConcurrencyLimiter that starts far too high. Prints the limit, throughput and mean latency every
+ * second, showing the limit settling near the provider's capacity and latency coming back to its baseline.
+ * <p>
+ * Run with: java -cp target/benchmarks.jar uk.gov.dwp.uc.pairtest.benchmark.AdaptiveLimiterSimulation
+ * [callers] [provider capacity] [service time in ms] [seconds per run]
+ */
+public final class AdaptiveLimiterSimulation {
+
+    private AdaptiveLimiterSimulation() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int callers = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long serviceMillis = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        System.out.printf("%d callers, provider works on %d payments at once taking %d ms each%n", callers, capacity, serviceMillis);
+
+        System.out.println("Without a limit");
+        run(new LoadSensitivePaymentService(capacity, serviceMillis, TimeUnit.MILLISECONDS), null, callers, seconds);
+
+        System.out.println("Through an adaptive limiter starting at " + callers);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(callers, 1, callers);
+        TicketPaymentService limited = new LimitedTicketPaymentService(
+                new LoadSensitivePaymentService(capacity, serviceMillis, TimeUnit.MILLISECONDS), limiter);
+        run(limited, limiter, callers, seconds);
+    }
+
+    private static void run(TicketPaymentService service, AdaptiveConcurrencyLimiter limiter, int callers, int seconds)
+            throws InterruptedException {
+        LongAdder payments = new LongAdder();
+        LongAdder latencyNanos = new LongAdder();
+        LongAdder refused = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int caller = 0; caller < callers; caller++) {
+            long accountId = caller + 1;
+            Thread thread = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    long start = System.nanoTime();
+                    try {
+                        service.makePayment(accountId, 20);
+                        payments.increment();
+                        latencyNanos.add(System.nanoTime() - start);
+                    } catch (CallNotPermittedException e) {
+                        refused.increment();
+                        // A refused caller would return an error to its client, who comes back a little later
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(1);
+                        } catch (InterruptedException interrupted) {
+                            return;
+                        }
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (int second = 1; second <= seconds; second++) {
+            TimeUnit.SECONDS.sleep(1);
+            long paid = payments.sumThenReset();
+            double meanMillis = paid == 0 ? 0 : latencyNanos.sumThenReset() / 1e6 / paid;
+            System.out.printf("  %3d s  limit %5s  %8d payments/s  %8.2f ms mean latency  %8d refused%n", second,
+                    limiter == null ? "-" : Integer.toString(limiter.getLimit()), paid, meanMillis, refused.sumThenReset());
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
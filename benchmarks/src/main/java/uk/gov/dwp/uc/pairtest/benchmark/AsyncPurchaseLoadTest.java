@@ -0,0 +1,80 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import uk.gov.dwp.uc.pairtest.PurchaseExecutors;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AsyncPurchaseLoadTest.java
+ * Makes the same number of purchases against seat reservation and payment stand-ins that each take tens of
+ * milliseconds, first blocking on a fixed pool of worker threads as a request handler would today, then through
+ * purchaseTicketsAsync on the default executor, and reports throughput and the most purchases in flight at once.
+ * <p>
+ * Run with: java -cp target/benchmarks.jar uk.gov.dwp.uc.pairtest.benchmark.AsyncPurchaseLoadTest
+ * [purchases] [delay in ms] [worker threads]
+ */
+public final class AsyncPurchaseLoadTest {
+
+    private static final TicketTypeRequest[] FAMILY = {
+            TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 2),
+            TicketTypeRequest.of(TicketTypeRequest.Type.CHILD, 2)
+    };
+
+    private AsyncPurchaseLoadTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int purchases = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        long delayMillis = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        int workerThreads = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        BenchmarkLogging.configure();
+        System.out.printf("%d purchases, %d ms per downstream call, default executor is %s%n", purchases, delayMillis,
+                PurchaseExecutors.isDefaultExecutorVirtual() ? "virtual threads" : "platform threads (Java 21+ needed for virtual)");
+
+        blocking(purchases, delayMillis, workerThreads);
+        asynchronous(purchases, delayMillis);
+    }
+
+    private static void blocking(int purchases, long delayMillis, int workerThreads) throws InterruptedException {
+        SlowSeatReservationService seats = new SlowSeatReservationService(delayMillis, TimeUnit.MILLISECONDS);
+        TicketService ticketService = new TicketServiceImpl(new SlowTicketPaymentService(delayMillis, TimeUnit.MILLISECONDS), seats);
+        ExecutorService workers = Executors.newFixedThreadPool(workerThreads);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < purchases; i++) {
+            long accountId = i + 1;
+            workers.execute(() -> ticketService.purchaseTicketsForAccount(accountId, FAMILY));
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        report("Blocking on " + workerThreads + " worker threads", purchases, start, seats);
+    }
+
+    private static void asynchronous(int purchases, long delayMillis) {
+        SlowSeatReservationService seats = new SlowSeatReservationService(delayMillis, TimeUnit.MILLISECONDS);
+        TicketService ticketService = new TicketServiceImpl(new SlowTicketPaymentService(delayMillis, TimeUnit.MILLISECONDS), seats);
+
+        long start = System.nanoTime();
+        @SuppressWarnings("unchecked")
+        CompletableFuture<PurchaseResult>[] results = new CompletableFuture[purchases];
+        for (int i = 0; i < purchases; i++) {
+            results[i] = ticketService.purchaseTicketsAsync(i + 1, FAMILY);
+        }
+        CompletableFuture.allOf(results).join();
+        report("purchaseTicketsAsync", purchases, start, seats);
+    }
+
+    private static void report(String name, int purchases, long start, SlowSeatReservationService seats) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-32s %8.2f s %10.0f purchases/s %8d most in flight%n",
+                name, seconds, purchases / seconds, seats.getMaximumInFlight());
+    }
+}
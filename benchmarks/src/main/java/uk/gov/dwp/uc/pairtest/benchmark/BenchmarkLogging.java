@@ -0,0 +1,28 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.logging.LogManager;
+
+/**
+ * BenchmarkLogging.java
+ * Applies benchmark-logging.properties to the forked benchmark JVM.
+ * INFO stays enabled so the cost of building log messages is still measured, but no handler writes them out.
+ */
+public final class BenchmarkLogging {
+
+    private BenchmarkLogging() {
+    }
+
+    /**
+     * Replaces the default java.util.logging configuration with the benchmark one
+     */
+    public static void configure() {
+        try (InputStream configuration = BenchmarkLogging.class.getResourceAsStream("/benchmark-logging.properties")) {
+            LogManager.getLogManager().readConfiguration(configuration);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
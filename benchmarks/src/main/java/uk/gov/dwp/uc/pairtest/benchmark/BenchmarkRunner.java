@@ -0,0 +1,36 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BenchmarkRunner.java
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line (e.g. a benchmark regex, -f, -i, -t)
+ * and always enables the GC profiler so that allocation per operation (gc.alloc.rate.norm) is reported
+ * next to throughput and latency. Runs every benchmark under uk.gov.dwp.uc.pairtest and thirdparty
+ * when no regex is given.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include("(uk\\.gov\\.dwp\\.uc\\.pairtest|thirdparty)\\..*");
+        }
+
+        new Runner(options.build()).run();
+    }
+}
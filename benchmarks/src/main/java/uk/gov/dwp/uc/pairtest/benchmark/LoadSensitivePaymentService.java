@@ -0,0 +1,39 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadSensitivePaymentService.java
+ * A stand-in payment provider that works on a fixed number of payments at once, each taking a fixed time, and
+ * queues the rest, so its latency stays flat up to that number in flight and then rises with every extra one.
+ */
+public class LoadSensitivePaymentService implements TicketPaymentService {
+
+    private final Semaphore workers;
+    private final long serviceNanos;
+
+    /**
+     * @param capacity the payments worked on at once
+     * @param serviceTime how long each payment takes once it is being worked on
+     * @param unit the unit of the service time
+     */
+    public LoadSensitivePaymentService(int capacity, long serviceTime, TimeUnit unit) {
+        this.workers = new Semaphore(capacity, true);
+        this.serviceNanos = unit.toNanos(serviceTime);
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        workers.acquireUninterruptibly();
+        try {
+            TimeUnit.NANOSECONDS.sleep(serviceNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.release();
+        }
+    }
+}
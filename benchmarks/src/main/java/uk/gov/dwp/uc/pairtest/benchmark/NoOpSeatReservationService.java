@@ -0,0 +1,32 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import thirdparty.seatbooking.SeatReservationService;
+
+/**
+ * NoOpSeatReservationService.java
+ * A stand-in seat reservation service that accepts every reservation without doing any work, so that
+ * benchmarks only measure the cost of the ticket service itself.
+ */
+public class NoOpSeatReservationService implements SeatReservationService {
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        // Intentionally empty
+    }
+
+    @Override
+    public long holdSeats(long accountId, int totalSeatsToAllocate) {
+        return 0;
+    }
+
+    @Override
+    public void confirmHold(long holdId) {
+        // Intentionally empty
+    }
+
+    @Override
+    public void releaseHold(long holdId) {
+        // Intentionally empty
+    }
+
+}
@@ -0,0 +1,17 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+
+/**
+ * NoOpTicketPaymentService.java
+ * A stand-in payment service that accepts every payment without doing any work, so that benchmarks
+ * only measure the cost of the ticket service itself.
+ */
+public class NoOpTicketPaymentService implements TicketPaymentService {
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        // Intentionally empty
+    }
+
+}
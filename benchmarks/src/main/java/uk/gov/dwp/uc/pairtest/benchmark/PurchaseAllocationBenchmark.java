@@ -0,0 +1,82 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * PurchaseAllocationBenchmark.java
+ * Checks that a purchase allocates nothing beyond the ticket type requests, which are created once in setup,
+ * and that a purchase from a pooled PurchaseOrder allocates nothing at all.
+ * Read gc.alloc.rate.norm: it should be close to 0 B/op for every method.
+ * <p>
+ * The account id is outside the Long cache, so any boxing on the way to the downstream services would show up.
+ * Logging is switched off for TicketServiceImpl so that the log writer thread's allocation is not counted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PurchaseAllocationBenchmark {
+
+    private static final long ACCOUNT_ID = 1_234_567L;
+
+    private TicketService ticketService;
+
+    private TicketTypeRequest[] family;
+    private TicketTypeRequest[] infantsWithoutAdult;
+
+    @Setup
+    public void setup() {
+        Logger.getLogger(TicketServiceImpl.class.getName()).setLevel(Level.WARNING);
+        ticketService = new TicketServiceImpl(new NoOpTicketPaymentService(), new NoOpSeatReservationService());
+
+        family = new TicketTypeRequest[] {
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1)
+        };
+        infantsWithoutAdult = new TicketTypeRequest[] {
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1)
+        };
+    }
+
+    @Benchmark
+    public void familyForAccount() {
+        ticketService.purchaseTicketsForAccount(ACCOUNT_ID, family);
+    }
+
+    @Benchmark
+    public InvalidPurchaseException rejectedForAccount() {
+        try {
+            ticketService.purchaseTicketsForAccount(ACCOUNT_ID, infantsWithoutAdult);
+            return null;
+        } catch (InvalidPurchaseException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object rejectedWithoutThrowing() {
+        return ticketService.tryPurchaseTickets(ACCOUNT_ID, infantsWithoutAdult);
+    }
+
+    @Benchmark
+    public void familyFromPooledPurchaseOrder() {
+        PurchaseOrder order = PurchaseOrder.forCurrentThread()
+                .add(TicketTypeRequest.Type.ADULT, 2)
+                .add(TicketTypeRequest.Type.CHILD, 2)
+                .add(TicketTypeRequest.Type.INFANT, 1);
+        ticketService.purchaseTicketsForAccount(ACCOUNT_ID, order);
+    }
+}
@@ -0,0 +1,96 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import uk.gov.dwp.uc.pairtest.logging.AsyncLogAppender;
+import uk.gov.dwp.uc.pairtest.logging.PurchaseEvent;
+import uk.gov.dwp.uc.pairtest.logging.PurchaseEventLog;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+/**
+ * PurchaseLoggingBenchmark.java
+ * Logs the six events of a successful purchase from 32 threads at once, comparing the synchronous
+ * java.util.logging calls TicketServiceImpl used to make with PurchaseEventLog. Both write through the same
+ * StreamHandler, whose publish is synchronized, to a stream that discards everything.
+ * <p>
+ * Under this load the asynchronous writer cannot keep up, so most events are dropped rather than
+ * slowing the request threads; the number dropped is printed at the end of each trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(32)
+@State(Scope.Benchmark)
+public class PurchaseLoggingBenchmark {
+
+    private Logger synchronousLogger;
+    private Logger asynchronousLogger;
+    private Logger disabledLogger;
+
+    private AsyncLogAppender appender;
+    private PurchaseEventLog purchaseLog;
+    private PurchaseEventLog disabledPurchaseLog;
+
+    @Setup
+    public void setup() {
+        synchronousLogger = discardingLogger("benchmark.synchronous", Level.INFO);
+        asynchronousLogger = discardingLogger("benchmark.asynchronous", Level.INFO);
+        disabledLogger = discardingLogger("benchmark.disabled", Level.WARNING);
+
+        appender = new AsyncLogAppender(asynchronousLogger, AsyncLogAppender.DEFAULT_CAPACITY);
+        purchaseLog = new PurchaseEventLog(asynchronousLogger, appender);
+        disabledPurchaseLog = new PurchaseEventLog(disabledLogger, appender);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println("Dropped events: " + appender.getDroppedEvents());
+        appender.close();
+    }
+
+    @Benchmark
+    public void synchronousLogger() {
+        int seats = 6;
+        int cost = 100;
+        synchronousLogger.info("Input parameters successfully validated");
+        synchronousLogger.info("Successfully validated that tickets are meeting or below maximum");
+        synchronousLogger.info("Successfully validated there is at least one adult ticket for each infant travelling");
+        synchronousLogger.info("Successfully validated there is at least one adult ticket for booking");
+        synchronousLogger.info(seats + " seats allocated for booking");
+        synchronousLogger.info("Cost calculated as £" + cost);
+    }
+
+    @Benchmark
+    public void asynchronousPurchaseEventLog() {
+        logPurchase(purchaseLog);
+    }
+
+    @Benchmark
+    public void disabledPurchaseEventLog() {
+        logPurchase(disabledPurchaseLog);
+    }
+
+    private static void logPurchase(PurchaseEventLog log) {
+        log.log(PurchaseEvent.INPUT_VALID);
+        log.log(PurchaseEvent.WITHIN_MAXIMUM);
+        log.log(PurchaseEvent.RULES_VALID);
+        log.log(PurchaseEvent.SEATS_ALLOCATED, 6);
+        log.log(PurchaseEvent.COST_CALCULATED, 100);
+        log.log(PurchaseEvent.INPUT_VALID);
+    }
+
+    private static Logger discardingLogger(String name, Level level) {
+        Logger logger = Logger.getLogger(name);
+        logger.setUseParentHandlers(false);
+        logger.setLevel(level);
+        logger.addHandler(new StreamHandler(OutputStream.nullOutputStream(), new SimpleFormatter()));
+        return logger;
+    }
+}
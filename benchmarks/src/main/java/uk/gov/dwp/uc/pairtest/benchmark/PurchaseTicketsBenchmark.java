@@ -0,0 +1,101 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PurchaseTicketsBenchmark.java
+ * Measures throughput, average latency and (with the GC profiler) allocation per operation of
+ * TicketServiceImpl.purchaseTickets across the order shapes seen at the box office.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PurchaseTicketsBenchmark {
+
+    private static final long ACCOUNT_ID = 1_234_567L;
+
+    private TicketService ticketService;
+
+    private TicketTypeRequest[] singleAdult;
+    private TicketTypeRequest[] family;
+    private TicketTypeRequest[] maximumOrder;
+    private TicketTypeRequest[] overMaximumOrder;
+    private TicketTypeRequest[] infantsWithoutAdult;
+
+    @Setup
+    public void setup() {
+        BenchmarkLogging.configure();
+        ticketService = new TicketServiceImpl(new NoOpTicketPaymentService(), new NoOpSeatReservationService());
+
+        singleAdult = new TicketTypeRequest[] {
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1)
+        };
+        family = new TicketTypeRequest[] {
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1)
+        };
+        maximumOrder = new TicketTypeRequest[] {
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 10),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 6),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 4)
+        };
+        overMaximumOrder = new TicketTypeRequest[] {
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 15),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 6)
+        };
+        infantsWithoutAdult = new TicketTypeRequest[] {
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1)
+        };
+    }
+
+    @Benchmark
+    public void singleAdult() {
+        ticketService.purchaseTickets(ACCOUNT_ID, singleAdult);
+    }
+
+    @Benchmark
+    public void family() {
+        ticketService.purchaseTickets(ACCOUNT_ID, family);
+    }
+
+    @Benchmark
+    public void maximumOrder() {
+        ticketService.purchaseTickets(ACCOUNT_ID, maximumOrder);
+    }
+
+    @Benchmark
+    public void rejectedOverMaximum(Blackhole blackhole) {
+        try {
+            ticketService.purchaseTickets(ACCOUNT_ID, overMaximumOrder);
+        } catch (InvalidPurchaseException e) {
+            blackhole.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void rejectedWithoutAdult(Blackhole blackhole) {
+        try {
+            ticketService.purchaseTickets(ACCOUNT_ID, infantsWithoutAdult);
+        } catch (InvalidPurchaseException e) {
+            blackhole.consume(e);
+        }
+    }
+
+    @Benchmark
+    public PurchaseResult tryRejectedWithoutAdult() {
+        return ticketService.tryPurchaseTickets(ACCOUNT_ID, infantsWithoutAdult);
+    }
+}
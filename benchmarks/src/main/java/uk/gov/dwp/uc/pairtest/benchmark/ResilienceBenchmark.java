@@ -0,0 +1,67 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import thirdparty.paymentgateway.TicketPaymentService;
+import uk.gov.dwp.uc.pairtest.resilience.Bulkhead;
+import uk.gov.dwp.uc.pairtest.resilience.CallNotPermittedException;
+import uk.gov.dwp.uc.pairtest.resilience.CircuitBreaker;
+import uk.gov.dwp.uc.pairtest.resilience.ResilientTicketPaymentService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ResilienceBenchmark.java
+ * The cost the circuit breaker and bulkhead add to a healthy payment, and how quickly a payment is refused once
+ * the breaker has opened on a failing provider.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResilienceBenchmark {
+
+    private TicketPaymentService unguarded;
+    private ResilientTicketPaymentService healthy;
+    private ResilientTicketPaymentService failing;
+
+    @Setup
+    public void setup() {
+        unguarded = new NoOpTicketPaymentService();
+        healthy = new ResilientTicketPaymentService(unguarded,
+                new CircuitBreaker(100, 20, 50, 30, TimeUnit.SECONDS, 5), new Bulkhead(64));
+        failing = new ResilientTicketPaymentService((accountId, amount) -> {
+            throw new IllegalStateException("Provider unavailable");
+        }, new CircuitBreaker(100, 20, 50, 1, TimeUnit.HOURS, 5), new Bulkhead(64));
+        for (int call = 0; call < 20; call++) {
+            try {
+                failing.makePayment(1L, 20);
+            } catch (IllegalStateException e) {
+                // Opening the breaker
+            }
+        }
+    }
+
+    @Benchmark
+    public void unguardedPayment() {
+        unguarded.makePayment(1L, 20);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void healthyGuardedPayment() {
+        healthy.makePayment(1L, 20);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CallNotPermittedException refusedPayment() {
+        try {
+            failing.makePayment(1L, 20);
+            return null;
+        } catch (CallNotPermittedException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import thirdparty.seatbooking.SeatInventory;
+import thirdparty.seatbooking.SeatReservationServiceImpl;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ScreeningPurchaseBenchmark.java
+ * Purchases against the in-memory seat reservation service from many threads, all for one screening or spread
+ * over a thousand. Seats are held, paid for and confirmed, so both the inventory and the hold state are exercised.
+ * Run with -t 1, 2, 4, ... to see how throughput scales with threads: spread purchases should scale with cores.
+ * <p>
+ * Logging is switched off for TicketServiceImpl so that the shared log buffer is not what is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class ScreeningPurchaseBenchmark {
+
+    private static final int SCREENINGS = 1_000;
+
+    private SeatReservationServiceImpl seatReservationService;
+    private TicketService ticketService;
+
+    private TicketTypeRequest[] couple;
+
+    @Setup
+    public void setup() {
+        Logger.getLogger(TicketServiceImpl.class.getName()).setLevel(Level.WARNING);
+        SeatInventory inventory = new SeatInventory(SCREENINGS);
+        for (long screeningId = 1; screeningId <= SCREENINGS; screeningId++) {
+            inventory.addScreening(screeningId, Integer.MAX_VALUE);
+        }
+        seatReservationService = new SeatReservationServiceImpl(inventory, 1, 5, TimeUnit.MINUTES);
+        ticketService = new TicketServiceImpl(new NoOpTicketPaymentService(), seatReservationService);
+        couple = new TicketTypeRequest[] {new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)};
+    }
+
+    @TearDown
+    public void teardown() {
+        seatReservationService.close();
+    }
+
+    @Benchmark
+    public void oneScreening() {
+        ticketService.purchaseTicketsForScreening(1_234_567L, 1, couple);
+    }
+
+    @Benchmark
+    public void thousandScreenings() {
+        ticketService.purchaseTicketsForScreening(1_234_567L, 1 + ThreadLocalRandom.current().nextInt(SCREENINGS), couple);
+    }
+}
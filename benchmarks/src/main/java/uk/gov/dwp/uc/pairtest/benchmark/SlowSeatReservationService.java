@@ -0,0 +1,55 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import thirdparty.seatbooking.SeatReservationService;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SlowSeatReservationService.java
+ * A stand-in seat reservation service that takes a fixed time to answer, like a remote call would,
+ * and records the most reservations it was ever handling at once.
+ */
+public class SlowSeatReservationService implements SeatReservationService {
+
+    private final long delayNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maximumInFlight = new AtomicInteger();
+
+    public SlowSeatReservationService(long delay, TimeUnit unit) {
+        this.delayNanos = unit.toNanos(delay);
+    }
+
+    @Override
+    public long holdSeats(long accountId, int totalSeatsToAllocate) {
+        // Holding seats costs a remote call, confirming and releasing them are taken to be free
+        reserveSeat(accountId, totalSeatsToAllocate);
+        return 0;
+    }
+
+    @Override
+    public void confirmHold(long holdId) {
+        // Intentionally empty
+    }
+
+    @Override
+    public void releaseHold(long holdId) {
+        // Intentionally empty
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        maximumInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public int getMaximumInFlight() {
+        return maximumInFlight.get();
+    }
+}
@@ -0,0 +1,27 @@
+package uk.gov.dwp.uc.pairtest.benchmark;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SlowTicketPaymentService.java
+ * A stand-in payment service that takes a fixed time to answer, like a remote call would.
+ */
+public class SlowTicketPaymentService implements TicketPaymentService {
+
+    private final long delayNanos;
+
+    public SlowTicketPaymentService(long delay, TimeUnit unit) {
+        this.delayNanos = unit.toNanos(delay);
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
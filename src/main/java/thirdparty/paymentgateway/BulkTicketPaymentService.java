@@ -0,0 +1,15 @@
+package thirdparty.paymentgateway;
+
+public interface BulkTicketPaymentService extends TicketPaymentService {
+
+    /**
+     * Takes several payments in a single submission to the payment provider. Each payment succeeds or fails on
+     * its own.
+     *
+     * @param accountIds the account of each payment
+     * @param totalAmountsToPay the amount of each payment, the same length as accountIds
+     * @return the failure of each payment, null where the payment was taken
+     */
+    RuntimeException[] makePayments(long[] accountIds, int[] totalAmountsToPay);
+
+}
@@ -0,0 +1,65 @@
+package thirdparty.paymentgateway;
+
+/**
+ * ForwardingTicketPaymentService.java
+ * A base for decorators of a TicketPaymentService, which forwards every call to the service it wraps so that a
+ * decorator overrides only the calls it changes.
+ * <p>
+ * It is refundable and takes idempotency keys whatever it wraps, answering canRefund and isIdempotent from the
+ * wrapped service. A refund the wrapped service cannot make throws UnsupportedOperationException, and a payment
+ * with a key the wrapped service cannot take is made without the key.
+ */
+public abstract class ForwardingTicketPaymentService implements RefundableTicketPaymentService, IdempotentTicketPaymentService {
+
+    private final TicketPaymentService delegate;
+
+    /**
+     * @param delegate the service every call is forwarded to
+     */
+    protected ForwardingTicketPaymentService(TicketPaymentService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        delegate.makePayment(accountId, totalAmountToPay);
+    }
+
+    /**
+     * Forwards the key when the wrapped service takes keys, and otherwise makes the payment on the wrapped service
+     * directly rather than through makePayment, so a decorator overriding both sees each payment once
+     */
+    @Override
+    public void makePayment(long idempotencyKey, long accountId, int totalAmountToPay) {
+        if (delegate instanceof IdempotentTicketPaymentService idempotent) {
+            idempotent.makePayment(idempotencyKey, accountId, totalAmountToPay);
+        } else {
+            delegate.makePayment(accountId, totalAmountToPay);
+        }
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return delegate instanceof IdempotentTicketPaymentService idempotent && idempotent.isIdempotent();
+    }
+
+    @Override
+    public void refundPayment(long accountId, int totalAmountToRefund) {
+        if (!(delegate instanceof RefundableTicketPaymentService refundable)) {
+            throw new UnsupportedOperationException("The payment provider cannot refund");
+        }
+        refundable.refundPayment(accountId, totalAmountToRefund);
+    }
+
+    @Override
+    public boolean canRefund() {
+        return delegate instanceof RefundableTicketPaymentService refundable && refundable.canRefund();
+    }
+
+    /**
+     * @return true if the wrapped service takes idempotency keys, even if it does not honour them
+     */
+    protected final boolean takesKeys() {
+        return delegate instanceof IdempotentTicketPaymentService;
+    }
+}
@@ -0,0 +1,25 @@
+package thirdparty.paymentgateway;
+
+public interface IdempotentTicketPaymentService extends TicketPaymentService {
+
+    /**
+     * Takes a payment at most once per idempotency key, so a payment whose outcome was lost to a failure can be
+     * made again with the same key without charging the account twice
+     *
+     * @param idempotencyKey the same for every attempt at one payment
+     * @param accountId the account to take the payment from
+     * @param totalAmountToPay the amount to pay
+     */
+    void makePayment(long idempotencyKey, long accountId, int totalAmountToPay);
+
+    /**
+     * Decorators implement this interface whatever they wrap, and answer false when the service they wrap does
+     * not take idempotency keys, in which case the key is dropped and a payment made twice is taken twice
+     *
+     * @return true if a payment made again with the same key is taken at most once
+     */
+    default boolean isIdempotent() {
+        return true;
+    }
+
+}
@@ -0,0 +1,23 @@
+package thirdparty.paymentgateway;
+
+public interface RefundableTicketPaymentService extends TicketPaymentService {
+
+    /**
+     * Gives back a payment already taken, for a purchase that could not be completed after all
+     *
+     * @param accountId the account the payment was taken from
+     * @param totalAmountToRefund the amount that was paid
+     */
+    void refundPayment(long accountId, int totalAmountToRefund);
+
+    /**
+     * Decorators implement this interface whatever they wrap, and answer false when the service they wrap cannot
+     * refund, so callers have to ask rather than rely on the type alone
+     *
+     * @return true if refundPayment can be called
+     */
+    default boolean canRefund() {
+        return true;
+    }
+
+}
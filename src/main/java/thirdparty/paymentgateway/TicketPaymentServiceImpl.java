@@ -1,10 +1,27 @@
 package thirdparty.paymentgateway;
 
-public class TicketPaymentServiceImpl implements TicketPaymentService {
+public class TicketPaymentServiceImpl implements BulkTicketPaymentService, RefundableTicketPaymentService,
+        IdempotentTicketPaymentService {
 
     @Override
     public void makePayment(long accountId, int totalAmountToPay) {
         // Real implementation omitted, assume working code will take the payment using a card pre linked to the account.
     }
 
+    @Override
+    public void makePayment(long idempotencyKey, long accountId, int totalAmountToPay) {
+        // Real implementation omitted, assume working code will send the key with the payment so the provider takes it once.
+    }
+
+    @Override
+    public RuntimeException[] makePayments(long[] accountIds, int[] totalAmountsToPay) {
+        // Real implementation omitted, assume working code will take every payment in one submission.
+        return new RuntimeException[accountIds.length];
+    }
+
+    @Override
+    public void refundPayment(long accountId, int totalAmountToRefund) {
+        // Real implementation omitted, assume working code will refund the card the payment was taken from.
+    }
+
 }
@@ -0,0 +1,24 @@
+package thirdparty.seatbooking;
+
+public interface BulkSeatReservationService extends SeatReservationService {
+
+    /**
+     * Reserves seats for several accounts in a single round trip. Each reservation succeeds or fails on its own.
+     *
+     * @param accountIds the account of each reservation
+     * @param totalSeatsToAllocate the number of seats of each reservation, the same length as accountIds
+     * @return the failure of each reservation, null where the reservation was made
+     */
+    RuntimeException[] reserveSeats(long[] accountIds, int[] totalSeatsToAllocate);
+
+    /**
+     * Holds seats for several accounts in a single round trip. Each hold succeeds or fails on its own.
+     *
+     * @param accountIds the account of each hold
+     * @param totalSeatsToAllocate the number of seats of each hold, the same length as accountIds
+     * @param holdIds filled in with the id of each hold that was made, the same length as accountIds
+     * @return the failure of each hold, null where the hold was made
+     */
+    RuntimeException[] holdSeats(long[] accountIds, int[] totalSeatsToAllocate, long[] holdIds);
+
+}
@@ -0,0 +1,159 @@
+package thirdparty.seatbooking;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FlatCombiner.java
+ * Takes seats from one screening's counter on behalf of many threads at once, so that under heavy contention
+ * the counter sees one compare-and-set per batch of requests rather than a retry storm.
+ * <p>
+ * A thread publishes its request in a free slot and then either waits for its answer or, if no one else is
+ * combining, becomes the combiner: it takes the lock, answers every request published so far against a single
+ * read of the counter, and applies their total with one compare-and-set. Requests are answered in slot order,
+ * so a request that does not fit is refused while later, smaller ones may still be granted.
+ */
+final class FlatCombiner {
+
+    static final int TAKEN = 1;
+    static final int REFUSED = 0;
+    static final int NOT_PUBLISHED = -1;
+
+    private static final int SLOTS = 64;
+
+    // Ints per slot, so that each waiting thread spins on its own cache line
+    private static final int STRIDE = 16;
+
+    // Slot values other than a positive request for that many seats
+    private static final int EMPTY = 0;
+    private static final int GRANTED = -1;
+    private static final int DENIED = -2;
+
+    // Passes in a row that combine a single request before the combiner reports itself idle
+    private static final int IDLE_PASSES = 64;
+
+    // How long a waiting thread spins before yielding to let the combiner run
+    private static final int SPINS_BEFORE_YIELD = 128;
+
+    private final AtomicIntegerArray remaining;
+    private final int counter;
+
+    private final AtomicIntegerArray requests = new AtomicIntegerArray(SLOTS * STRIDE);
+    private final AtomicInteger lock = new AtomicInteger();
+
+    // Only touched while holding the lock
+    private final int[] pending = new int[SLOTS];
+    private int lonelyPasses;
+
+    private volatile boolean idle;
+
+    private final LongAdder passes;
+    private final LongAdder combined;
+
+    /**
+     * @param remaining the array holding the screening's counter
+     * @param counter the index of the counter
+     * @param passes counts combining passes
+     * @param combined counts the requests answered by combining passes
+     */
+    FlatCombiner(AtomicIntegerArray remaining, int counter, LongAdder passes, LongAdder combined) {
+        this.remaining = remaining;
+        this.counter = counter;
+        this.passes = passes;
+        this.combined = combined;
+    }
+
+    /**
+     * Takes seats through the combiner, waiting until the request has been answered
+     *
+     * @return TAKEN, REFUSED, or NOT_PUBLISHED if every slot was busy and the caller should take the seats itself
+     */
+    int take(int seats) {
+        int slot = publish(seats);
+        if (slot < 0) {
+            return NOT_PUBLISHED;
+        }
+
+        int spins = 0;
+        while (true) {
+            int answer = requests.get(slot);
+            if (answer < 0) {
+                requests.set(slot, EMPTY);
+                return answer == GRANTED ? TAKEN : REFUSED;
+            }
+            if (lock.get() == 0 && lock.compareAndSet(0, 1)) {
+                try {
+                    combine();
+                } finally {
+                    lock.set(0);
+                }
+            } else if (++spins < SPINS_BEFORE_YIELD) {
+                Thread.onSpinWait();
+            } else {
+                spins = 0;
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * @return true once recent passes have found no other requests to combine with, so contention has passed
+     */
+    boolean isIdle() {
+        return idle;
+    }
+
+    private int publish(int seats) {
+        int start = (int) Thread.currentThread().getId();
+        for (int probe = 0; probe < SLOTS; probe++) {
+            int slot = ((start + probe) & (SLOTS - 1)) * STRIDE;
+            if (requests.get(slot) == EMPTY && requests.compareAndSet(slot, EMPTY, seats)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void combine() {
+        int count = 0;
+        for (int slot = 0; slot < SLOTS * STRIDE; slot += STRIDE) {
+            if (requests.get(slot) > 0) {
+                pending[count++] = slot;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        while (true) {
+            int left = remaining.get(counter);
+            int granted = 0;
+            for (int i = 0; i < count; i++) {
+                int seats = requests.get(pending[i]);
+                if (seats <= left - granted) {
+                    granted += seats;
+                }
+            }
+            if (granted == 0 || remaining.compareAndSet(counter, left, left - granted)) {
+                // Answer with the same decisions the total was taken for
+                int answered = 0;
+                for (int i = 0; i < count; i++) {
+                    int seats = requests.get(pending[i]);
+                    boolean fits = seats <= left - answered;
+                    answered += fits ? seats : 0;
+                    requests.set(pending[i], fits ? GRANTED : DENIED);
+                }
+                break;
+            }
+            // The counter moved under a direct take or a give back, so decide again
+        }
+
+        passes.increment();
+        combined.add(count);
+        lonelyPasses = count == 1 ? lonelyPasses + 1 : 0;
+        if (lonelyPasses >= IDLE_PASSES) {
+            idle = true;
+        }
+    }
+}
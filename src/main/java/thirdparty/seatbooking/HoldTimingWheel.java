@@ -0,0 +1,419 @@
+package thirdparty.seatbooking;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HoldTimingWheel.java
+ * Tracks when seat holds expire on a hierarchical timing wheel, so that scheduling and cancelling an expiry
+ * are constant time however many holds are outstanding, and the holds that expire on a tick are handed over
+ * together.
+ * <p>
+ * Time is divided into ticks. The wheel has five levels of 64 slots; a slot on level n covers 64^n ticks.
+ * A hold goes into the lowest level whose span reaches its expiry, and each time a level wraps the next slot of
+ * the level above is cascaded down into the finer levels. Holds are kept in intrusive linked lists over
+ * primitive arrays, so scheduling allocates nothing once the arrays have grown to the number of outstanding holds.
+ * <p>
+ * Each hold carries a key and a number of seats, which come back with it when it expires or is cancelled, so
+ * the owner of the wheel can use the handle as the hold's identity and keep no other state per hold.
+ */
+public class HoldTimingWheel {
+
+    /**
+     * Receives the holds that expired on one tick
+     */
+    @FunctionalInterface
+    public interface ExpiryHandler {
+
+        /**
+         * @param keys the keys of the expired holds, only the first count entries are meaningful and the array is reused
+         * @param seats the seats of each expired hold, reused in the same way
+         * @param count the number of expired holds
+         */
+        void expire(long[] keys, int[] seats, int count);
+    }
+
+    private static final int LEVELS = 5;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    // Holds further off than this are placed at this distance and placed again when they cascade down
+    private static final long MAXIMUM_DELAY_TICKS = (1L << (LEVELS * SLOT_BITS)) - 1;
+
+    private static final int NONE = -1;
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final ExpiryHandler handler;
+
+    // Guards everything below except the metrics
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Only one thread advances the wheel at a time, which lets the expired buffer be reused
+    private final ReentrantLock advancing = new ReentrantLock();
+
+    // First entry of each slot's list, by level * SLOTS + slot
+    private final int[] heads = new int[LEVELS * SLOTS];
+
+    // Per entry: the hold's key and seats, the tick it expires on, its neighbours, its slot, and a generation that
+    // changes each time the entry is reused so a stale handle cannot cancel another hold
+    private long[] keys;
+    private int[] seats;
+    private long[] deadlines;
+    private int[] next;
+    private int[] previous;
+    private int[] slots;
+    private int[] generations;
+
+    // Unused entries are chained through next
+    private int free;
+
+    // The next tick to be processed
+    private long nextTick;
+
+    private long[] expired = new long[SLOTS];
+    private int[] expiredSeats = new int[SLOTS];
+
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong largestExpiryPerTick = new AtomicLong();
+
+    /**
+     * @param tick the length of a tick, the precision holds expire to
+     * @param unit the unit of the tick
+     * @param initialCapacity the number of outstanding holds to size for, it grows beyond this when needed
+     * @param handler receives the holds that expire, on the thread that advances the wheel
+     */
+    public HoldTimingWheel(long tick, TimeUnit unit, int initialCapacity, ExpiryHandler handler) {
+        this(tick, unit, initialCapacity, handler, System.nanoTime());
+    }
+
+    /**
+     * @param startNanos the System.nanoTime value tick zero starts at
+     */
+    HoldTimingWheel(long tick, TimeUnit unit, int initialCapacity, ExpiryHandler handler, long startNanos) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("Initial capacity must be at least 1");
+        }
+        this.tickNanos = unit.toNanos(tick);
+        this.startNanos = startNanos;
+        this.handler = handler;
+        Arrays.fill(heads, NONE);
+        this.keys = new long[initialCapacity];
+        this.seats = new int[initialCapacity];
+        this.deadlines = new long[initialCapacity];
+        this.next = new int[initialCapacity];
+        this.previous = new int[initialCapacity];
+        this.slots = new int[initialCapacity];
+        this.generations = new int[initialCapacity];
+        chainFree(0, initialCapacity);
+    }
+
+    /**
+     * Schedules a hold to expire
+     *
+     * @param holdId the hold
+     * @param timeToLive how long until it expires, it expires on the first tick after that
+     * @param unit the unit of the time to live
+     * @return a handle to cancel the expiry with
+     */
+    public long schedule(long holdId, long timeToLive, TimeUnit unit) {
+        return schedule(holdId, 0, System.nanoTime() + unit.toNanos(timeToLive));
+    }
+
+    /**
+     * Schedules a hold of some seats to expire
+     *
+     * @param key handed back with the hold, such as the screening its seats are in
+     * @param heldSeats handed back with the hold
+     * @param timeToLive how long until it expires, it expires on the first tick after that
+     * @param unit the unit of the time to live
+     * @return a handle to cancel the expiry with, which is unique among outstanding holds
+     */
+    public long schedule(long key, int heldSeats, long timeToLive, TimeUnit unit) {
+        return schedule(key, heldSeats, System.nanoTime() + unit.toNanos(timeToLive));
+    }
+
+    /**
+     * @param expiresAtNanos the System.nanoTime value the hold expires at
+     */
+    long schedule(long holdId, long expiresAtNanos) {
+        return schedule(holdId, 0, expiresAtNanos);
+    }
+
+    long schedule(long key, int heldSeats, long expiresAtNanos) {
+        // The first tick to start at or after the expiry, so a hold never expires early
+        long deadline = -Math.floorDiv(startNanos - expiresAtNanos, tickNanos);
+        lock.lock();
+        try {
+            if (free == NONE) {
+                grow();
+            }
+            int entry = free;
+            free = next[entry];
+
+            keys[entry] = key;
+            seats[entry] = heldSeats;
+            deadlines[entry] = deadline;
+            place(entry);
+            outstanding.incrementAndGet();
+            return ((long) generations[entry] << 32) | entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops a hold from expiring, once it has been confirmed or released
+     *
+     * @param handle the handle returned when the hold was scheduled
+     * @return false if the hold had already expired or been cancelled
+     */
+    public boolean cancel(long handle) {
+        return cancelForSeats(handle) >= 0;
+    }
+
+    /**
+     * Stops a hold from expiring and hands back its seats
+     *
+     * @param handle the handle returned when the hold was scheduled
+     * @return the seats the hold was scheduled with, or -1 if it had already expired or been cancelled
+     */
+    public int cancelForSeats(long handle) {
+        int entry = (int) handle;
+        lock.lock();
+        try {
+            if (!isScheduled(entry, handle)) {
+                return -1;
+            }
+            int heldSeats = seats[entry];
+            unlink(entry);
+            release(entry);
+            outstanding.decrementAndGet();
+            return heldSeats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param handle the handle returned when the hold was scheduled
+     * @param absent returned when the hold has already expired or been cancelled
+     * @return the key the hold was scheduled with
+     */
+    public long getKey(long handle, long absent) {
+        int entry = (int) handle;
+        lock.lock();
+        try {
+            return isScheduled(entry, handle) ? keys[entry] : absent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isScheduled(int entry, long handle) {
+        return entry >= 0 && entry < generations.length && generations[entry] == (int) (handle >>> 32) && slots[entry] != NONE;
+    }
+
+    /**
+     * Processes every tick up to the current time, handing the holds that expire on each tick to the handler
+     *
+     * @return the number of holds that expired
+     */
+    public long advance() {
+        return advanceTo(System.nanoTime());
+    }
+
+    /**
+     * Processes every tick that has ended by the given time
+     *
+     * @param nowNanos a System.nanoTime value
+     * @return the number of holds that expired
+     */
+    long advanceTo(long nowNanos) {
+        long targetTick = Math.floorDiv(nowNanos - startNanos, tickNanos);
+        long total = 0;
+        advancing.lock();
+        try {
+            while (true) {
+                int count;
+                lock.lock();
+                try {
+                    if (nextTick > targetTick) {
+                        return total;
+                    }
+                    count = tick();
+                } finally {
+                    lock.unlock();
+                }
+
+                ticks.incrementAndGet();
+                if (count > 0) {
+                    expirations.addAndGet(count);
+                    largestExpiryPerTick.accumulateAndGet(count, Math::max);
+                    total += count;
+                    handler.expire(expired, expiredSeats, count);
+                }
+            }
+        } finally {
+            advancing.unlock();
+        }
+    }
+
+    /**
+     * @return the number of holds scheduled that have neither expired nor been cancelled
+     */
+    public long getOutstandingHolds() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the number of ticks processed
+     */
+    public long getTicks() {
+        return ticks.get();
+    }
+
+    /**
+     * @return the number of holds that have expired
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * @return the mean number of holds expired per tick processed
+     */
+    public double getAverageExpirationsPerTick() {
+        long processed = ticks.get();
+        return processed == 0 ? 0 : (double) expirations.get() / processed;
+    }
+
+    /**
+     * @return the most holds expired on a single tick
+     */
+    public long getLargestExpirationsPerTick() {
+        return largestExpiryPerTick.get();
+    }
+
+    /**
+     * Cascades any levels that wrap on this tick, then takes every hold in this tick's slot
+     *
+     * @return the number of expired holds copied into the expired buffer
+     */
+    private int tick() {
+        int index = (int) nextTick & SLOT_MASK;
+        for (int level = 1; level < LEVELS && index == 0; level++) {
+            index = (int) (nextTick >>> (level * SLOT_BITS)) & SLOT_MASK;
+            cascade(level * SLOTS + index);
+        }
+
+        int slot = (int) nextTick & SLOT_MASK;
+        int count = 0;
+        int entry = heads[slot];
+        heads[slot] = NONE;
+        while (entry != NONE) {
+            int following = next[entry];
+            if (count == expired.length) {
+                expired = Arrays.copyOf(expired, count * 2);
+                expiredSeats = Arrays.copyOf(expiredSeats, count * 2);
+            }
+            expiredSeats[count] = seats[entry];
+            expired[count++] = keys[entry];
+            release(entry);
+            entry = following;
+        }
+        outstanding.addAndGet(-count);
+        nextTick++;
+        return count;
+    }
+
+    private void cascade(int slot) {
+        int entry = heads[slot];
+        heads[slot] = NONE;
+        while (entry != NONE) {
+            int following = next[entry];
+            place(entry);
+            entry = following;
+        }
+    }
+
+    /**
+     * Links an entry into the slot its deadline falls in, relative to the next tick to be processed
+     */
+    private void place(int entry) {
+        long deadline = deadlines[entry];
+        long delay = deadline - nextTick;
+        int slot;
+        if (delay < 0) {
+            slot = (int) nextTick & SLOT_MASK;
+        } else {
+            if (delay > MAXIMUM_DELAY_TICKS) {
+                deadline = nextTick + MAXIMUM_DELAY_TICKS;
+                delay = MAXIMUM_DELAY_TICKS;
+            }
+            int level = 0;
+            while (delay >= 1L << ((level + 1) * SLOT_BITS)) {
+                level++;
+            }
+            slot = level * SLOTS + ((int) (deadline >>> (level * SLOT_BITS)) & SLOT_MASK);
+        }
+
+        int head = heads[slot];
+        next[entry] = head;
+        previous[entry] = NONE;
+        if (head != NONE) {
+            previous[head] = entry;
+        }
+        heads[slot] = entry;
+        slots[entry] = slot;
+    }
+
+    private void unlink(int entry) {
+        int before = previous[entry];
+        int after = next[entry];
+        if (before == NONE) {
+            heads[slots[entry]] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+
+    private void release(int entry) {
+        slots[entry] = NONE;
+        generations[entry]++;
+        next[entry] = free;
+        free = entry;
+    }
+
+    private void grow() {
+        int capacity = keys.length;
+        int grown = capacity * 2;
+        keys = Arrays.copyOf(keys, grown);
+        seats = Arrays.copyOf(seats, grown);
+        deadlines = Arrays.copyOf(deadlines, grown);
+        next = Arrays.copyOf(next, grown);
+        previous = Arrays.copyOf(previous, grown);
+        slots = Arrays.copyOf(slots, grown);
+        generations = Arrays.copyOf(generations, grown);
+        chainFree(capacity, grown);
+    }
+
+    private void chainFree(int from, int to) {
+        for (int entry = from; entry < to; entry++) {
+            slots[entry] = NONE;
+            next[entry] = entry + 1 < to ? entry + 1 : NONE;
+        }
+        free = from;
+    }
+}
@@ -0,0 +1,328 @@
+package thirdparty.seatbooking;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * SeatInventory.java
+ * The number of seats left to sell in each screening, held in memory and updated without locks.
+ * <p>
+ * Each screening's remaining seats is a counter that is only ever taken from with a compare-and-set that checks
+ * enough seats are left, so concurrent purchases can never sell more seats than the screening has. Counters sit
+ * a cache line apart so that purchases for different screenings do not contend.
+ * <p>
+ * When so many purchases hit one screening that its compare-and-sets keep failing within a short window, the
+ * screening switches to a FlatCombiner: one thread at a time takes seats for every waiting purchase in a single update. It switches back
+ * once the combiner finds itself answering one purchase at a time.
+ * <p>
+ * Screenings are looked up through an open-addressing table of primitive ids. Adding a screening is rare, so the
+ * table is rebuilt off to the side and swapped in, and lookups never lock or allocate.
+ */
+public class SeatInventory {
+
+    // Ints per counter, so that each counter has a 64 byte cache line to itself
+    private static final int STRIDE = 16;
+
+    // Longs per contention record, so that recording a failure does not touch the cache line of any counter
+    private static final int CONTENTION_STRIDE = 8;
+
+    // Failed compare-and-sets on one screening within one window that switch it to combining
+    private static final int SWITCH_ON_FAILURES = 64;
+
+    // Shift from System.nanoTime to the window a failure falls in, about a millisecond, so that failures spread
+    // thinly over a long time never add up to a switch
+    private static final int CONTENTION_WINDOW_SHIFT = 20;
+
+    private static final long NO_SCREENING = Long.MIN_VALUE;
+
+    private final int maximumScreenings;
+
+    // Remaining seats of the screening in each slot, at slot * STRIDE
+    private final AtomicIntegerArray remaining;
+    private final int[] capacities;
+
+    // Failed compare-and-sets of the screening in each slot, at slot * CONTENTION_STRIDE, as the window they
+    // were counted in above the number counted below
+    private final AtomicLongArray contention;
+    private final LongSupplier nanoClock;
+
+    // Screening ids to slots, replaced as a whole when a screening is added
+    private volatile ScreeningIndex index;
+
+    private int screenings;
+
+    private final boolean combining;
+
+    // The combiner of each screening that is currently combining, null for the rest
+    private final AtomicReferenceArray<FlatCombiner> combiners;
+
+    private final LongAdder switchesToCombining = new LongAdder();
+    private final LongAdder combiningPasses = new LongAdder();
+    private final LongAdder combinedRequests = new LongAdder();
+
+    /**
+     * @param maximumScreenings the most screenings the inventory can hold
+     */
+    public SeatInventory(int maximumScreenings) {
+        this(maximumScreenings, true);
+    }
+
+    /**
+     * @param maximumScreenings the most screenings the inventory can hold
+     * @param combining whether contended screenings switch to combining
+     */
+    public SeatInventory(int maximumScreenings, boolean combining) {
+        this(maximumScreenings, combining, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock the time failed compare-and-sets are counted against
+     */
+    SeatInventory(int maximumScreenings, boolean combining, LongSupplier nanoClock) {
+        if (maximumScreenings < 1) {
+            throw new IllegalArgumentException("Maximum screenings must be at least 1");
+        }
+        this.maximumScreenings = maximumScreenings;
+        this.remaining = new AtomicIntegerArray(maximumScreenings * STRIDE);
+        this.capacities = new int[maximumScreenings];
+        this.contention = new AtomicLongArray(maximumScreenings * CONTENTION_STRIDE);
+        this.nanoClock = nanoClock;
+        this.index = ScreeningIndex.empty();
+        this.combining = combining;
+        this.combiners = new AtomicReferenceArray<>(maximumScreenings);
+    }
+
+    /**
+     * Puts a screening's seats on sale
+     *
+     * @param screeningId the screening
+     * @param capacity the number of seats in the screening
+     * @throws IllegalStateException if the screening has already been added or the inventory is full
+     */
+    public synchronized void addScreening(long screeningId, int capacity) {
+        if (screeningId == NO_SCREENING) {
+            throw new IllegalArgumentException("Screening id " + screeningId + " is reserved");
+        }
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        if (index.slotOf(screeningId) >= 0) {
+            throw new IllegalStateException("Screening " + screeningId + " has already been added");
+        }
+        if (screenings == maximumScreenings) {
+            throw new IllegalStateException("Inventory already holds its maximum of " + maximumScreenings + " screenings");
+        }
+
+        int slot = screenings++;
+        capacities[slot] = capacity;
+        remaining.set(slot * STRIDE, capacity);
+        // The volatile write publishes the counter and capacity above along with the new index
+        index = index.with(screeningId, slot, screenings);
+    }
+
+    /**
+     * Takes seats off sale if there are enough left
+     *
+     * @return false if there were not enough seats left, in which case none are taken
+     */
+    public boolean tryTake(long screeningId, int seats) {
+        requirePositive(seats);
+        int slot = slotOf(screeningId);
+        int counter = slot * STRIDE;
+        while (true) {
+            FlatCombiner combiner = combiners.get(slot);
+            if (combiner != null) {
+                int answer = combiner.take(seats);
+                if (combiner.isIdle()) {
+                    combiners.compareAndSet(slot, combiner, null);
+                }
+                if (answer != FlatCombiner.NOT_PUBLISHED) {
+                    return answer == FlatCombiner.TAKEN;
+                }
+            }
+
+            int left = remaining.get(counter);
+            if (left < seats) {
+                return false;
+            }
+            if (remaining.compareAndSet(counter, left, left - seats)) {
+                return true;
+            }
+            if (combining && recordContention(slot) >= SWITCH_ON_FAILURES) {
+                switchToCombining(slot);
+            }
+        }
+    }
+
+    /**
+     * Puts seats that were taken back on sale
+     */
+    public void giveBack(long screeningId, int seats) {
+        requirePositive(seats);
+        remaining.addAndGet(counterOf(screeningId), seats);
+    }
+
+    /**
+     * @return the number of seats left to sell
+     */
+    public int getRemainingSeats(long screeningId) {
+        return remaining.get(counterOf(screeningId));
+    }
+
+    /**
+     * @return the number of seats in the screening
+     */
+    public int getCapacity(long screeningId) {
+        return capacities[slotOf(screeningId)];
+    }
+
+    /**
+     * @return true if the screening is currently combining its purchases
+     */
+    public boolean isCombining(long screeningId) {
+        return combiners.get(slotOf(screeningId)) != null;
+    }
+
+    /**
+     * @return the number of times a screening has switched to combining
+     */
+    public long getSwitchesToCombining() {
+        return switchesToCombining.sum();
+    }
+
+    /**
+     * @return the number of combining passes, each taking seats for a batch of purchases with one update
+     */
+    public long getCombiningPasses() {
+        return combiningPasses.sum();
+    }
+
+    /**
+     * @return the number of purchases answered by combining passes
+     */
+    public long getCombinedRequests() {
+        return combinedRequests.sum();
+    }
+
+    /**
+     * @return true if the screening has been added
+     */
+    public boolean hasScreening(long screeningId) {
+        return index.slotOf(screeningId) >= 0;
+    }
+
+    /**
+     * Counts a failed compare-and-set against the screening in the current window
+     *
+     * @return the number of failures counted in the window so far
+     */
+    int recordContention(int slot) {
+        int record = slot * CONTENTION_STRIDE;
+        long window = nanoClock.getAsLong() >>> CONTENTION_WINDOW_SHIFT;
+        long current = contention.get(record);
+        int failures = current >>> 32 == (window & 0xFFFFFFFFL) ? (int) current + 1 : 1;
+        // Failures racing each other may overwrite each other's count, which only makes the switch a little later
+        contention.set(record, (window << 32) | failures);
+        return failures;
+    }
+
+    private void switchToCombining(int slot) {
+        int counter = slot * STRIDE;
+        contention.set(slot * CONTENTION_STRIDE, 0);
+        if (combiners.compareAndSet(slot, null, new FlatCombiner(remaining, counter, combiningPasses, combinedRequests))) {
+            switchesToCombining.increment();
+        }
+    }
+
+    private static void requirePositive(int seats) {
+        if (seats <= 0) {
+            throw new IllegalArgumentException("Number of seats must be positive");
+        }
+    }
+
+    private int counterOf(long screeningId) {
+        return slotOf(screeningId) * STRIDE;
+    }
+
+    private int slotOf(long screeningId) {
+        int slot = index.slotOf(screeningId);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Unknown screening " + screeningId);
+        }
+        return slot;
+    }
+
+    /**
+     * Open-addressing table from screening id to slot, never modified once published
+     */
+    private static final class ScreeningIndex {
+
+        private final long[] screeningIds;
+        private final int[] slots;
+        private final int mask;
+
+        private ScreeningIndex(long[] screeningIds, int[] slots) {
+            this.screeningIds = screeningIds;
+            this.slots = slots;
+            this.mask = screeningIds.length - 1;
+        }
+
+        private static ScreeningIndex empty() {
+            long[] screeningIds = new long[2];
+            Arrays.fill(screeningIds, NO_SCREENING);
+            return new ScreeningIndex(screeningIds, new int[2]);
+        }
+
+        private int slotOf(long screeningId) {
+            int position = hash(screeningId) & mask;
+            while (true) {
+                long id = screeningIds[position];
+                if (id == screeningId) {
+                    return slots[position];
+                }
+                if (id == NO_SCREENING) {
+                    return -1;
+                }
+                position = (position + 1) & mask;
+            }
+        }
+
+        /**
+         * @return a copy of this index with the screening added, grown to stay at most half full
+         */
+        private ScreeningIndex with(long screeningId, int slot, int size) {
+            int length = screeningIds.length;
+            while (size * 2 > length) {
+                length <<= 1;
+            }
+            long[] ids = new long[length];
+            Arrays.fill(ids, NO_SCREENING);
+            ScreeningIndex copy = new ScreeningIndex(ids, new int[length]);
+            for (int position = 0; position < screeningIds.length; position++) {
+                if (screeningIds[position] != NO_SCREENING) {
+                    copy.put(screeningIds[position], slots[position]);
+                }
+            }
+            copy.put(screeningId, slot);
+            return copy;
+        }
+
+        private void put(long screeningId, int slot) {
+            int position = hash(screeningId) & mask;
+            while (screeningIds[position] != NO_SCREENING) {
+                position = (position + 1) & mask;
+            }
+            screeningIds[position] = screeningId;
+            slots[position] = slot;
+        }
+
+        private static int hash(long screeningId) {
+            long mixed = screeningId * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32));
+        }
+    }
+}
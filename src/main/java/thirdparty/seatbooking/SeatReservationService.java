@@ -4,4 +4,42 @@ public interface SeatReservationService {
 
     void reserveSeat(long accountId, int totalSeatsToAllocate);
 
+    /**
+     * Reserves seats in a particular screening. Services that do not tell screenings apart reserve the seats
+     * as they would without one.
+     */
+    default void reserveSeat(long accountId, long screeningId, int totalSeatsToAllocate) {
+        reserveSeat(accountId, totalSeatsToAllocate);
+    }
+
+    /**
+     * Holds seats for an account for a short time, taking them off sale until the hold is confirmed, released
+     * or expires.
+     *
+     * @return the id of the hold, to confirm or release it with
+     */
+    long holdSeats(long accountId, int totalSeatsToAllocate);
+
+    /**
+     * Holds seats in a particular screening. Services that do not tell screenings apart hold the seats as they
+     * would without one.
+     *
+     * @return the id of the hold, to confirm or release it with
+     */
+    default long holdSeats(long accountId, long screeningId, int totalSeatsToAllocate) {
+        return holdSeats(accountId, totalSeatsToAllocate);
+    }
+
+    /**
+     * Turns a hold into a reservation
+     *
+     * @throws IllegalStateException if the hold has expired, so its seats may no longer be available
+     */
+    void confirmHold(long holdId);
+
+    /**
+     * Returns a hold's seats to sale, doing nothing if the hold has already expired
+     */
+    void releaseHold(long holdId);
+
 }
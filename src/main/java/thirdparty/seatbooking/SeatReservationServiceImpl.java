@@ -1,10 +1,323 @@
 package thirdparty.seatbooking;
 
-public class SeatReservationServiceImpl implements SeatReservationService {
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SeatReservationServiceImpl implements BulkSeatReservationService, AutoCloseable {
+
+    // The screening seats are taken from when none is given, with unlimited seats unless configured otherwise.
+    public static final long DEFAULT_SCREENING_ID = 1;
+
+    // How long a hold keeps its seats off sale unless confirmed or released, used unless configured otherwise.
+    public static final long DEFAULT_HOLD_TIME_TO_LIVE_SECONDS = 300;
+
+    // How often expired holds are released, and so how late after its time to live a hold can expire.
+    private static final long HOLD_EXPIRY_TICK_MILLIS = 100;
+
+    private final SeatInventory inventory;
+    private final long defaultScreeningId;
+
+    private final long holdTimeToLiveNanos;
+
+    // Hold state is split by screening, so that holds for a busy screening do not contend with those for others.
+    // The shard of a hold is kept in the low bits of its id, above it the entry of the hold in the shard's timing
+    // wheel, and in the top half the generation of that entry, so a hold is nothing more than a wheel entry.
+    private final Shard[] shards;
+    private final int shardMask;
+    private final int shardBits;
+
+    // Advances every shard's timing wheel, started with the first hold
+    private volatile ScheduledExecutorService expiryTicker;
+
+    public SeatReservationServiceImpl() {
+        this(DEFAULT_HOLD_TIME_TO_LIVE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public SeatReservationServiceImpl(long holdTimeToLive, TimeUnit unit) {
+        this(unlimitedInventory(), DEFAULT_SCREENING_ID, holdTimeToLive, unit);
+    }
+
+    /**
+     * @param inventory the seats left in each screening
+     * @param defaultScreeningId the screening seats are reserved in when none is given
+     * @param holdTimeToLive how long a hold keeps its seats off sale unless confirmed or released
+     * @param unit the unit of the hold time to live
+     */
+    public SeatReservationServiceImpl(SeatInventory inventory, long defaultScreeningId, long holdTimeToLive, TimeUnit unit) {
+        this(inventory, defaultScreeningId, holdTimeToLive, unit, defaultShards());
+    }
+
+    /**
+     * @param shards the number of shards hold state is split into, rounded up to a power of two
+     */
+    public SeatReservationServiceImpl(SeatInventory inventory, long defaultScreeningId, long holdTimeToLive, TimeUnit unit,
+                                      int shards) {
+        if (!inventory.hasScreening(defaultScreeningId)) {
+            throw new IllegalArgumentException("Unknown screening " + defaultScreeningId);
+        }
+        if (shards < 1 || shards > 1 << 16) {
+            throw new IllegalArgumentException("Shards must be between 1 and 65536");
+        }
+        this.inventory = inventory;
+        this.defaultScreeningId = defaultScreeningId;
+        this.holdTimeToLiveNanos = unit.toNanos(holdTimeToLive);
+
+        int size = shards == 1 ? 1 : Integer.highestOneBit(shards - 1) << 1;
+        this.shards = new Shard[size];
+        this.shardMask = size - 1;
+        this.shardBits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            this.shards[i] = new Shard(i);
+        }
+    }
 
     @Override
     public void reserveSeat(long accountId, int totalSeatsToAllocate) {
-        // Real implementation omitted, assume working code will make the seat reservation.
+        reserveSeat(accountId, defaultScreeningId, totalSeatsToAllocate);
+    }
+
+    @Override
+    public void reserveSeat(long accountId, long screeningId, int totalSeatsToAllocate) {
+        take(screeningId, totalSeatsToAllocate);
+    }
+
+    @Override
+    public RuntimeException[] reserveSeats(long[] accountIds, int[] totalSeatsToAllocate) {
+        RuntimeException[] failures = new RuntimeException[accountIds.length];
+        for (int i = 0; i < accountIds.length; i++) {
+            try {
+                take(defaultScreeningId, totalSeatsToAllocate[i]);
+            } catch (RuntimeException e) {
+                failures[i] = e;
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public RuntimeException[] holdSeats(long[] accountIds, int[] totalSeatsToAllocate, long[] holdIds) {
+        RuntimeException[] failures = new RuntimeException[accountIds.length];
+        for (int i = 0; i < accountIds.length; i++) {
+            try {
+                holdIds[i] = holdSeats(accountIds[i], totalSeatsToAllocate[i]);
+            } catch (RuntimeException e) {
+                failures[i] = e;
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public long holdSeats(long accountId, int totalSeatsToAllocate) {
+        return holdSeats(accountId, defaultScreeningId, totalSeatsToAllocate);
+    }
+
+    @Override
+    public long holdSeats(long accountId, long screeningId, int totalSeatsToAllocate) {
+        take(screeningId, totalSeatsToAllocate);
+        try {
+            startExpiryTicker();
+            return shardOf(screeningId).hold(screeningId, totalSeatsToAllocate);
+        } catch (RuntimeException | Error e) {
+            // Nothing holds the seats, so they go straight back on sale
+            inventory.giveBack(screeningId, totalSeatsToAllocate);
+            throw e;
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the hold does not exist or has expired, in which case its seats may have
+     *                               been sold to someone else
+     */
+    @Override
+    public void confirmHold(long holdId) {
+        // The held seats are already off sale, so they simply stay that way
+        if (!shardOfHold(holdId).remove(holdId, false)) {
+            throw new IllegalStateException("Seat hold " + holdId + " does not exist or has expired");
+        }
+    }
+
+    /**
+     * Releasing a hold that has already expired or been released does nothing, its seats are already back on sale
+     */
+    @Override
+    public void releaseHold(long holdId) {
+        shardOfHold(holdId).remove(holdId, true);
+    }
+
+    /**
+     * @return the number of seats left to sell in the default screening, neither reserved nor held
+     */
+    public int getRemainingSeats() {
+        return getRemainingSeats(defaultScreeningId);
+    }
+
+    /**
+     * @return the number of seats left to sell in the screening, neither reserved nor held
+     */
+    public int getRemainingSeats(long screeningId) {
+        return inventory.getRemainingSeats(screeningId);
+    }
+
+    /**
+     * @return the number of seats held by holds that have not yet been confirmed, released or expired
+     */
+    public long getHeldSeats() {
+        long heldSeats = 0;
+        for (Shard shard : shards) {
+            heldSeats += shard.heldSeats.get();
+        }
+        return heldSeats;
+    }
+
+    /**
+     * @return the number of holds that have not yet been confirmed, released or expired
+     */
+    public long getOutstandingHolds() {
+        long outstanding = 0;
+        for (Shard shard : shards) {
+            outstanding += shard.holdExpiry.getOutstandingHolds();
+        }
+        return outstanding;
+    }
+
+    /**
+     * @return the number of holds that have expired
+     */
+    public long getExpiredHolds() {
+        long expired = 0;
+        for (Shard shard : shards) {
+            expired += shard.holdExpiry.getExpirations();
+        }
+        return expired;
+    }
+
+    /**
+     * @return the number of shards hold state is split into
+     */
+    public int getShards() {
+        return shards.length;
+    }
+
+    /**
+     * Stops expiring holds
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService ticker = expiryTicker;
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    private void take(long screeningId, int seats) {
+        if (!inventory.tryTake(screeningId, seats)) {
+            throw new SeatsUnavailableException(screeningId, seats);
+        }
+    }
+
+    private Shard shardOf(long screeningId) {
+        long mixed = screeningId * 0x9E3779B97F4A7C15L;
+        return shards[(int) (mixed >>> 32) & shardMask];
+    }
+
+    private Shard shardOfHold(long holdId) {
+        return shards[(int) holdId & shardMask];
+    }
+
+    private void advanceHoldExpiry() {
+        for (Shard shard : shards) {
+            shard.holdExpiry.advance();
+        }
+    }
+
+    private static SeatInventory unlimitedInventory() {
+        SeatInventory inventory = new SeatInventory(1);
+        inventory.addScreening(DEFAULT_SCREENING_ID, Integer.MAX_VALUE);
+        return inventory;
+    }
+
+    private static int defaultShards() {
+        return 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    private void startExpiryTicker() {
+        if (expiryTicker != null) {
+            return;
+        }
+        synchronized (this) {
+            if (expiryTicker == null) {
+                ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "seat-hold-expiry");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                ticker.scheduleAtFixedRate(this::advanceHoldExpiry, HOLD_EXPIRY_TICK_MILLIS, HOLD_EXPIRY_TICK_MILLIS, TimeUnit.MILLISECONDS);
+                expiryTicker = ticker;
+            }
+        }
+    }
+
+    /**
+     * The holds of the screenings that hash to one shard, with their own ids, counts and timing wheel
+     */
+    private final class Shard {
+
+        private final int index;
+
+        // Entries of the timing wheel beyond this do not fit in a hold id beside the shard index
+        private final long maximumEntries = 1L << (32 - shardBits);
+
+        private final AtomicLong heldSeats = new AtomicLong();
+
+        // Each outstanding hold is an entry here, keyed by its screening and carrying its seats
+        private final HoldTimingWheel holdExpiry;
+
+        private Shard(int index) {
+            this.index = index;
+            this.holdExpiry = new HoldTimingWheel(HOLD_EXPIRY_TICK_MILLIS, TimeUnit.MILLISECONDS, 1024, this::releaseExpiredHolds);
+        }
+
+        private long hold(long screeningId, int seats) {
+            long handle = holdExpiry.schedule(screeningId, seats, holdTimeToLiveNanos, TimeUnit.NANOSECONDS);
+            long entry = handle & 0xFFFFFFFFL;
+            if (entry >= maximumEntries) {
+                holdExpiry.cancel(handle);
+                throw new IllegalStateException("Too many outstanding seat holds for shard " + index);
+            }
+            heldSeats.addAndGet(seats);
+            return (handle & 0xFFFFFFFF00000000L) | (entry << shardBits) | index;
+        }
+
+        /**
+         * @param backOnSale whether the hold's seats go back on sale
+         * @return false if the hold does not exist or has expired
+         */
+        private boolean remove(long holdId, boolean backOnSale) {
+            long handle = (holdId & 0xFFFFFFFF00000000L) | ((holdId & 0xFFFFFFFFL) >>> shardBits);
+            long screeningId = holdExpiry.getKey(handle, 0);
+            // Only one caller can cancel the hold, and if its entry was reused in between the handle is stale
+            int seats = holdExpiry.cancelForSeats(handle);
+            if (seats < 0) {
+                return false;
+            }
+            heldSeats.addAndGet(-seats);
+            if (backOnSale) {
+                inventory.giveBack(screeningId, seats);
+            }
+            return true;
+        }
+
+        private void releaseExpiredHolds(long[] screeningIds, int[] seats, int count) {
+            long released = 0;
+            for (int i = 0; i < count; i++) {
+                released += seats[i];
+                inventory.giveBack(screeningIds[i], seats[i]);
+            }
+            heldSeats.addAndGet(-released);
+        }
     }
 
 }
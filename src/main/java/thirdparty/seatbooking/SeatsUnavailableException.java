@@ -0,0 +1,22 @@
+package thirdparty.seatbooking;
+
+public class SeatsUnavailableException extends RuntimeException {
+
+    private final long screeningId;
+    private final int requestedSeats;
+
+    public SeatsUnavailableException(long screeningId, int requestedSeats) {
+        super("Not enough seats left in screening " + screeningId + " for " + requestedSeats + " seats");
+        this.screeningId = screeningId;
+        this.requestedSeats = requestedSeats;
+    }
+
+    public long getScreeningId() {
+        return screeningId;
+    }
+
+    public int getRequestedSeats() {
+        return requestedSeats;
+    }
+
+}
@@ -0,0 +1,458 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * IdempotencyCache.java
+ * Remembers the outcome of each purchase made with an idempotency key, so that a client retrying after a
+ * timeout gets the original outcome back rather than reserving seats and paying a second time. A key that
+ * arrives again while its purchase is still running waits for that purchase, for a limited time, instead of
+ * starting another. A key is tied to the account and the order it was first used for, so reusing it for a
+ * different purchase is refused rather than answered with the first purchase's outcome.
+ * <p>
+ * Keys, account ids, orders and outcomes are held in primitive arrays, open-addressed and split into segments that
+ * each lock on their own, so remembering a purchase costs a few dozen bytes and no objects. Every key is
+ * remembered for the same time, so each segment keeps its keys in the order their purchases completed: the
+ * oldest is both the next to expire and the one evicted when the segment is full. Purchases still running
+ * count towards the maximum too, and cannot be evicted, so a segment full of them turns new keys away.
+ * <p>
+ * A purchase that fails with an exception is forgotten, so retrying its key, including from a caller that
+ * was waiting on it, runs the purchase again.
+ */
+public final class IdempotencyCache {
+
+    // Returned by begin when the key has no outcome yet and the caller has to run the purchase
+    static final long ABSENT = Long.MIN_VALUE;
+
+    // Never a key, so it marks a free slot
+    static final long NO_KEY = Long.MIN_VALUE;
+
+    // Held in place of the outcome while the purchase runs; purchase outcomes are never this low
+    private static final long IN_FLIGHT = Long.MIN_VALUE;
+
+    private static final int SEGMENTS = 64;
+
+    private static final int INITIAL_SLOTS = 16;
+
+    // How long a repeated key waits for its running purchase, used unless configured otherwise
+    public static final long DEFAULT_MAXIMUM_WAIT_SECONDS = 30;
+
+    private final Segment[] segments;
+    private final int maximumKeys;
+    private final long ttlNanos;
+    private final long maximumWaitNanos;
+    private final LongSupplier nanoClock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder duplicatesWaitedOn = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Tables start small and grow with the number of keys, so a generous maximum costs nothing until it is used.
+     *
+     * @param maximumKeys the most purchase outcomes to remember at once
+     * @param ttl how long to remember each outcome once its purchase has completed
+     * @param unit the unit of the ttl
+     */
+    public IdempotencyCache(int maximumKeys, long ttl, TimeUnit unit) {
+        this(maximumKeys, ttl, unit, TimeUnit.SECONDS.toNanos(DEFAULT_MAXIMUM_WAIT_SECONDS), System::nanoTime, SEGMENTS);
+    }
+
+    /**
+     * @param maximumKeys the most purchase outcomes to remember at once
+     * @param ttl how long to remember each outcome once its purchase has completed
+     * @param maximumWait how long a repeated key waits for its running purchase before giving up
+     * @param unit the unit of the ttl and maximum wait
+     */
+    public IdempotencyCache(int maximumKeys, long ttl, long maximumWait, TimeUnit unit) {
+        this(maximumKeys, ttl, unit, unit.toNanos(maximumWait), System::nanoTime, SEGMENTS);
+    }
+
+    /**
+     * @param nanoClock the time in nanoseconds outcomes expire by, which only has to move forward
+     * @param segments the number of independently locked segments, a power of two
+     */
+    IdempotencyCache(int maximumKeys, long ttl, TimeUnit unit, LongSupplier nanoClock, int segments) {
+        this(maximumKeys, ttl, unit, TimeUnit.SECONDS.toNanos(DEFAULT_MAXIMUM_WAIT_SECONDS), nanoClock, segments);
+    }
+
+    IdempotencyCache(int maximumKeys, long ttl, TimeUnit unit, long maximumWaitNanos, LongSupplier nanoClock, int segments) {
+        if (maximumKeys < 1) {
+            throw new IllegalArgumentException("Maximum keys must be at least 1");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+        if (maximumWaitNanos <= 0) {
+            throw new IllegalArgumentException("Maximum wait must be positive");
+        }
+        if (segments < 1 || Integer.bitCount(segments) != 1) {
+            throw new IllegalArgumentException("Segments must be a power of two");
+        }
+        // Never more segments than keys, so that each segment remembers at least one. The keys that do not divide
+        // evenly go one each to the first segments, so that the segments together remember exactly the maximum.
+        int count = Math.min(segments, Integer.highestOneBit(maximumKeys));
+        this.segments = new Segment[count];
+        for (int segment = 0; segment < count; segment++) {
+            this.segments[segment] = new Segment(maximumKeys / count + (segment < maximumKeys % count ? 1 : 0));
+        }
+        this.maximumKeys = maximumKeys;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maximumWaitNanos = maximumWaitNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Looks up the key, waiting while its purchase runs elsewhere. If there is no outcome the key is marked as
+     * in flight, and the caller has to run the purchase and then either complete or abandon the key.
+     *
+     * @param key the client's idempotency key, anything but NO_KEY
+     * @param accountId the account making the purchase
+     * @param adultsAndChildren the order's adult and child ticket counts, packed by OrderSummary
+     * @param infantsAndFlags the order's infant ticket count and whether it had malformed or non-positive requests,
+     *                        packed by OrderSummary
+     * @return the remembered outcome, or ABSENT if the caller has to run the purchase
+     * @throws IllegalArgumentException if the key is NO_KEY or was used by another account or for another order
+     * @throws IllegalStateException if the key's purchase is still running after the maximum wait, or the key's
+     *                               segment is full of running purchases
+     */
+    long begin(long key, long accountId, long adultsAndChildren, long infantsAndFlags) {
+        if (key == NO_KEY) {
+            throw new IllegalArgumentException("Idempotency key " + NO_KEY + " is reserved");
+        }
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        // Real time rather than the clock outcomes expire by, as it bounds a real wait
+        long waitUntil = 0;
+        boolean waited = false;
+        boolean interrupted = false;
+        try {
+            synchronized (segment) {
+                expirations.add(segment.expire(nanoClock.getAsLong() - ttlNanos));
+                while (true) {
+                    int slot = segment.find(key, hash);
+                    if (slot < 0) {
+                        if (segment.size == segment.maximumKeys) {
+                            if (segment.completed == 0) {
+                                throw new IllegalStateException("Too many purchases with idempotency keys are running");
+                            }
+                            segment.removeOldest();
+                            evictions.increment();
+                        }
+                        segment.insert(key, hash, accountId, adultsAndChildren, infantsAndFlags);
+                        misses.increment();
+                        return ABSENT;
+                    }
+                    if (segment.accounts[slot] != accountId) {
+                        throw new IllegalArgumentException("Idempotency key " + key + " was used by another account");
+                    }
+                    // The counts themselves rather than a hash of them, so no two different orders can match
+                    if (segment.adultsAndChildren[slot] != adultsAndChildren || segment.infantsAndFlags[slot] != infantsAndFlags) {
+                        throw new IllegalArgumentException("Idempotency key " + key + " was used for another order");
+                    }
+                    long outcome = segment.outcomes[slot];
+                    if (outcome != IN_FLIGHT) {
+                        hits.increment();
+                        return outcome;
+                    }
+                    if (!waited) {
+                        waited = true;
+                        waitUntil = System.nanoTime() + maximumWaitNanos;
+                        duplicatesWaitedOn.increment();
+                    }
+                    long remainingNanos = waitUntil - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        throw new IllegalStateException("Purchase with idempotency key " + key + " is still running");
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(segment, remainingNanos);
+                    } catch (InterruptedException e) {
+                        // The purchase is already running on the caller's behalf, so its outcome has to be waited for
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Remembers the outcome of a purchase begun with the key, evicting the oldest outcome if the segment is full
+     *
+     * @param key a key returned ABSENT by begin
+     * @param outcome the outcome of the purchase
+     */
+    void complete(long key, long outcome) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            long now = nanoClock.getAsLong();
+            expirations.add(segment.expire(now - ttlNanos));
+            // The key already counts towards the maximum, so there is room for it. Looked up only now, as removing other keys can shift this one to another slot
+            int slot = segment.find(key, hash);
+            if (slot >= 0) {
+                segment.outcomes[slot] = outcome;
+                segment.append(key, now);
+            }
+            segment.notifyAll();
+        }
+    }
+
+    /**
+     * Forgets a key whose purchase failed, so that it can be tried again
+     *
+     * @param key a key returned ABSENT by begin
+     */
+    void abandon(long key) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            segment.remove(key, hash);
+            segment.notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of purchases answered with a remembered outcome
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of purchases that had no remembered outcome and were run
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of purchases that arrived while the same key was running and waited for it
+     */
+    public long getDuplicatesWaitedOn() {
+        return duplicatesWaitedOn.sum();
+    }
+
+    /**
+     * @return the number of outcomes forgotten because they were older than the time to live
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return the number of outcomes forgotten early to make room for newer ones
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of outcomes currently remembered, not counting purchases still running
+     */
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.completed;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of purchases with a key that are still running
+     */
+    public int getInFlight() {
+        int inFlight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                inFlight += segment.size - segment.completed;
+            }
+        }
+        return inFlight;
+    }
+
+    public int getMaximumKeys() {
+        return maximumKeys;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IdempotencyCache{size=%d, hits=%d, misses=%d, duplicatesWaitedOn=%d, expirations=%d, evictions=%d}",
+                getSize(), getHits(), getMisses(), getDuplicatesWaitedOn(), getExpirations(), getEvictions());
+    }
+
+    private Segment segmentFor(long hash) {
+        // The top bits pick the segment and the bottom bits the slot, so the two never line up
+        return segments[(int) (hash >>> 58) & (segments.length - 1)];
+    }
+
+    private static long hash(long key) {
+        // The finalizer of MurmurHash3, so that sequential keys spread over every bit
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * A linear probing table of keys, their accounts, orders and outcomes, and a ring of its completed keys from oldest
+     * to newest. Only touched while holding its own lock.
+     */
+    private static final class Segment {
+
+        private final int maximumKeys;
+
+        private long[] keys = newKeys(INITIAL_SLOTS);
+        private long[] accounts = new long[INITIAL_SLOTS];
+        private long[] adultsAndChildren = new long[INITIAL_SLOTS];
+        private long[] infantsAndFlags = new long[INITIAL_SLOTS];
+        private long[] outcomes = new long[INITIAL_SLOTS];
+        private int size;
+
+        private long[] order = new long[INITIAL_SLOTS];
+        private long[] completedAt = new long[order.length];
+        private int oldest;
+        private int completed;
+
+        Segment(int maximumKeys) {
+            this.maximumKeys = maximumKeys;
+        }
+
+        int find(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int slot = (int) hash & mask; keys[slot] != NO_KEY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        void insert(long key, long hash, long accountId, long adults, long infants) {
+            // Grow at three quarters full, as linear probing slows sharply beyond that
+            if (4 * (size + 1) > 3 * keys.length) {
+                resize(2 * keys.length);
+            }
+            int mask = keys.length - 1;
+            int slot = (int) hash & mask;
+            while (keys[slot] != NO_KEY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            accounts[slot] = accountId;
+            adultsAndChildren[slot] = adults;
+            infantsAndFlags[slot] = infants;
+            outcomes[slot] = IN_FLIGHT;
+            size++;
+        }
+
+        void remove(long key, long hash) {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return;
+            }
+            // Shift later entries of the probe run back into the gap, so no lookup stops short of its key
+            int mask = keys.length - 1;
+            int gap = slot;
+            for (int next = (gap + 1) & mask; keys[next] != NO_KEY; next = (next + 1) & mask) {
+                int home = (int) hash(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    accounts[gap] = accounts[next];
+                    adultsAndChildren[gap] = adultsAndChildren[next];
+                    infantsAndFlags[gap] = infantsAndFlags[next];
+                    outcomes[gap] = outcomes[next];
+                    gap = next;
+                }
+            }
+            keys[gap] = NO_KEY;
+            size--;
+        }
+
+        void append(long key, long nowNanos) {
+            if (completed == order.length) {
+                growOrder();
+            }
+            int position = (oldest + completed) & (order.length - 1);
+            order[position] = key;
+            completedAt[position] = nowNanos;
+            completed++;
+        }
+
+        void removeOldest() {
+            long key = order[oldest];
+            oldest = (oldest + 1) & (order.length - 1);
+            completed--;
+            remove(key, hash(key));
+        }
+
+        /**
+         * @return the number of outcomes that completed at or before the cutoff and so were removed
+         */
+        int expire(long cutoffNanos) {
+            int expired = 0;
+            while (completed > 0 && completedAt[oldest] - cutoffNanos <= 0) {
+                removeOldest();
+                expired++;
+            }
+            return expired;
+        }
+
+        private void resize(int slots) {
+            long[] oldKeys = keys;
+            long[] oldAccounts = accounts;
+            long[] oldAdultsAndChildren = adultsAndChildren;
+            long[] oldInfantsAndFlags = infantsAndFlags;
+            long[] oldOutcomes = outcomes;
+            keys = newKeys(slots);
+            accounts = new long[slots];
+            adultsAndChildren = new long[slots];
+            infantsAndFlags = new long[slots];
+            outcomes = new long[slots];
+            int mask = slots - 1;
+            for (int old = 0; old < oldKeys.length; old++) {
+                if (oldKeys[old] != NO_KEY) {
+                    int slot = (int) hash(oldKeys[old]) & mask;
+                    while (keys[slot] != NO_KEY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[old];
+                    accounts[slot] = oldAccounts[old];
+                    adultsAndChildren[slot] = oldAdultsAndChildren[old];
+                    infantsAndFlags[slot] = oldInfantsAndFlags[old];
+                    outcomes[slot] = oldOutcomes[old];
+                }
+            }
+        }
+
+        private void growOrder() {
+            long[] grownOrder = new long[2 * order.length];
+            long[] grownCompletedAt = new long[grownOrder.length];
+            for (int i = 0; i < completed; i++) {
+                int position = (oldest + i) & (order.length - 1);
+                grownOrder[i] = order[position];
+                grownCompletedAt[i] = completedAt[position];
+            }
+            order = grownOrder;
+            completedAt = grownCompletedAt;
+            oldest = 0;
+        }
+
+        private static long[] newKeys(int slots) {
+            long[] keys = new long[slots];
+            Arrays.fill(keys, NO_KEY);
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package uk.gov.dwp.uc.pairtest;
+
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+
+import java.util.List;
+
+/**
+ * OrderBatch.java
+ * Many accounts' orders folded into one column per field, so that the business rules can be applied to the
+ * whole batch in a single loop over primitive arrays rather than order by order.
+ */
+final class OrderBatch {
+
+    private final int size;
+    private final long[] accountIds;
+    private final boolean[] empty;
+    private final boolean[] containsMalformedRequest;
+    private final boolean[] containsNonPositiveRequest;
+    private final int[] adultTickets;
+    private final int[] childTickets;
+    private final int[] infantTickets;
+    private final long[] totalTickets;
+
+    private OrderBatch(int size) {
+        this.size = size;
+        this.accountIds = new long[size];
+        this.empty = new boolean[size];
+        this.containsMalformedRequest = new boolean[size];
+        this.containsNonPositiveRequest = new boolean[size];
+        this.adultTickets = new int[size];
+        this.childTickets = new int[size];
+        this.infantTickets = new int[size];
+        this.totalTickets = new long[size];
+    }
+
+    /**
+     * Folds each order's ticket type requests into per-type counts with OrderSummary, walking every request once
+     * <p>
+     * A null order has no account, so the rules reject it as an invalid account without affecting the others.
+     * Likewise a null ticket type request, or one without a ticket type, only has its own order rejected.
+     *
+     * @param purchaseRequests the orders of the batch
+     * @return the batch in columns
+     */
+    static OrderBatch of(List<PurchaseRequest> purchaseRequests) {
+        OrderBatch batch = new OrderBatch(purchaseRequests.size());
+        for (int order = 0; order < batch.size; order++) {
+            PurchaseRequest purchaseRequest = purchaseRequests.get(order);
+            OrderSummary summary = OrderSummary.of(purchaseRequest);
+            batch.accountIds[order] = purchaseRequest == null ? 0 : purchaseRequest.getAccountId();
+            batch.empty[order] = summary.isEmpty();
+            batch.containsMalformedRequest[order] = summary.containsMalformedRequest();
+            batch.containsNonPositiveRequest[order] = summary.containsNonPositiveRequest();
+            batch.adultTickets[order] = summary.getAdultTickets();
+            batch.childTickets[order] = summary.getChildTickets();
+            batch.infantTickets[order] = summary.getInfantTickets();
+            batch.totalTickets[order] = summary.getTotalTickets();
+        }
+        return batch;
+    }
+
+    /**
+     * Applies the business rules to every order in the batch, in the same order TicketServiceImpl does for one
+     *
+     * @param table the lookup table holding the current limit and prices
+     * @return the outcome of each order packed by PurchaseOutcome
+     */
+    long[] validate(OrderLookupTable table) {
+        int maximumTickets = table.getMaximumTickets();
+        long[] outcomes = new long[size];
+        for (int order = 0; order < size; order++) {
+            RejectionReason reason = PurchaseRules.checkInput(accountIds[order], empty[order],
+                    containsMalformedRequest[order], containsNonPositiveRequest[order]);
+            if (reason == null && !PurchaseRules.isWithinMaximum(totalTickets[order], maximumTickets)) {
+                reason = RejectionReason.OVER_MAXIMUM;
+            }
+            if (reason != null) {
+                outcomes[order] = PurchaseOutcome.rejected(reason);
+                continue;
+            }
+
+            int entry = table.indexOf(adultTickets[order], childTickets[order], infantTickets[order]);
+            outcomes[order] = table.isValid(entry)
+                    ? PurchaseOutcome.successful(table.getSeats(entry), table.getTotalCost(entry))
+                    : PurchaseOutcome.rejected(table.getRejectionReason(entry));
+        }
+        return outcomes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getAccountId(int order) {
+        return accountIds[order];
+    }
+}
@@ -0,0 +1,120 @@
+package uk.gov.dwp.uc.pairtest;
+
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+
+/**
+ * OrderLookupTable.java
+ * Precomputed validity, seat count and total cost for every (adult, child, infant) ticket count triple
+ * up to the maximum number of tickets in a single purchase. With the default maximum of 20 tickets this is
+ * 21 x 21 x 21 entries, so validating and pricing an order becomes a single array read. Combinations that
+ * break a rule record which rule it was in place of the seat count.
+ * <p>
+ * A table is immutable and carries the limit and prices it was built from. Changing either means building
+ * a new table, which keeps the limit and prices used for a purchase consistent with each other.
+ */
+final class OrderLookupTable {
+
+    // Largest maximum a table can be built for: 65 x 65 x 65 entries of two ints is a little over 2MB
+    static final int LARGEST_MAXIMUM_TICKETS = 64;
+
+    private static final RejectionReason[] REJECTION_REASONS = RejectionReason.values();
+
+    private final int maximumTickets;
+    private final int adultTicketPrice;
+    private final int childTicketPrice;
+
+    // Number of distinct counts per ticket type, 0 to maximumTickets inclusive
+    private final int stride;
+
+    // Seat count and total cost of each combination, interleaved so that both share a cache line
+    private final int[] entries;
+
+    private OrderLookupTable(int maximumTickets, int adultTicketPrice, int childTicketPrice) {
+        this.maximumTickets = maximumTickets;
+        this.adultTicketPrice = adultTicketPrice;
+        this.childTicketPrice = childTicketPrice;
+        this.stride = maximumTickets + 1;
+        this.entries = new int[2 * stride * stride * stride];
+    }
+
+    /**
+     * Builds a table by running every business rule against every combination of ticket counts
+     *
+     * @param maximumTickets the most tickets that can be bought in a single purchase
+     * @param adultTicketPrice price in £ of an Adult ticket
+     * @param childTicketPrice price in £ of a Child ticket
+     * @return the precomputed table
+     * @throws IllegalArgumentException if the maximum is not between 1 and LARGEST_MAXIMUM_TICKETS or a price is negative,
+     *                                  or the most expensive order within the maximum would cost more than an int holds
+     */
+    static OrderLookupTable build(int maximumTickets, int adultTicketPrice, int childTicketPrice) {
+        if (maximumTickets < 1 || maximumTickets > LARGEST_MAXIMUM_TICKETS) {
+            throw new IllegalArgumentException("Maximum tickets must be between 1 and " + LARGEST_MAXIMUM_TICKETS);
+        }
+        if (adultTicketPrice < 0 || childTicketPrice < 0) {
+            throw new IllegalArgumentException("Ticket prices cannot be negative");
+        }
+        // Infants are free and adults plus children never exceed the maximum, so this bounds every total cost
+        if ((long) maximumTickets * Math.max(adultTicketPrice, childTicketPrice) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Ticket prices are too high for " + maximumTickets + " tickets to be costed");
+        }
+
+        OrderLookupTable table = new OrderLookupTable(maximumTickets, adultTicketPrice, childTicketPrice);
+        for (int adults = 0; adults <= maximumTickets; adults++) {
+            for (int children = 0; children <= maximumTickets; children++) {
+                for (int infants = 0; infants <= maximumTickets; infants++) {
+                    int entry = table.indexOf(adults, children, infants);
+                    RejectionReason reason = PurchaseRules.checkCounts(adults, children, infants, maximumTickets);
+                    if (reason == null) {
+                        table.entries[entry] = PurchaseRules.seats(adults, children);
+                        table.entries[entry + 1] = PurchaseRules.totalCost(adults, children, adultTicketPrice, childTicketPrice);
+                    } else {
+                        // Negative, so it can never be mistaken for a seat count
+                        table.entries[entry] = -1 - reason.ordinal();
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Only defined for counts between 0 and the maximum, which holds for any order within the maximum.
+     *
+     * @return the position of the combination's entry, to be passed to the other lookups
+     */
+    int indexOf(int adultTickets, int childTickets, int infantTickets) {
+        return 2 * ((adultTickets * stride + childTickets) * stride + infantTickets);
+    }
+
+    boolean isValid(int entry) {
+        return entries[entry] >= 0;
+    }
+
+    /**
+     * @return the rule broken by the combination, only defined when the entry is not valid
+     */
+    RejectionReason getRejectionReason(int entry) {
+        return REJECTION_REASONS[-1 - entries[entry]];
+    }
+
+    int getSeats(int entry) {
+        return entries[entry];
+    }
+
+    int getTotalCost(int entry) {
+        return entries[entry + 1];
+    }
+
+    int getMaximumTickets() {
+        return maximumTickets;
+    }
+
+    int getAdultTicketPrice() {
+        return adultTicketPrice;
+    }
+
+    int getChildTicketPrice() {
+        return childTicketPrice;
+    }
+}
@@ -0,0 +1,156 @@
+package uk.gov.dwp.uc.pairtest;
+
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * OrderSummary.java
+ * The result of folding a purchase's ticket type requests, in a single pass, into per-type ticket counts.
+ * Every business rule, the seat count and the price are computed against this summary rather than by
+ * walking the ticket type requests again.
+ * <p>
+ * Counts are held in primitive fields rather than an array so that, once inlined, the JIT can keep the
+ * summary in registers instead of allocating it.
+ */
+final class OrderSummary {
+
+    // Number of ticket type requests that were folded into this summary
+    private int numberOfRequests;
+
+    // Whether any of the ticket type requests asked for zero or a negative number of tickets
+    private boolean containsNonPositiveRequest;
+
+    // Whether any of the ticket type requests, or its ticket type, was null
+    private boolean containsMalformedRequest;
+
+    private int adultTickets;
+    private int childTickets;
+    private int infantTickets;
+
+    // Held as a long so that very large requests cannot overflow back into the valid range
+    private long totalTickets;
+
+    private OrderSummary() {
+    }
+
+    /**
+     * Folds the ticket type requests into a summary by walking them exactly once
+     *
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets, may be null
+     * @return the per-type ticket counts of the order
+     */
+    static OrderSummary of(TicketTypeRequest... ticketTypeRequests) {
+        OrderSummary summary = new OrderSummary();
+        if (ticketTypeRequests == null) {
+            return summary;
+        }
+
+        for (TicketTypeRequest ticketTypeRequest : ticketTypeRequests) {
+            summary.add(ticketTypeRequest);
+        }
+        summary.numberOfRequests = ticketTypeRequests.length;
+
+        return summary;
+    }
+
+    /**
+     * Folds one order of a batch the same way, walking its ticket type requests exactly once
+     *
+     * @param purchaseRequest the order, may be null in which case the summary is of an empty order
+     * @return the per-type ticket counts of the order
+     */
+    static OrderSummary of(PurchaseRequest purchaseRequest) {
+        OrderSummary summary = new OrderSummary();
+        if (purchaseRequest == null) {
+            return summary;
+        }
+
+        int numberOfRequests = purchaseRequest.getNumberOfTicketTypeRequests();
+        for (int request = 0; request < numberOfRequests; request++) {
+            summary.add(purchaseRequest.getTicketTypeRequest(request));
+        }
+        summary.numberOfRequests = numberOfRequests;
+
+        return summary;
+    }
+
+    private void add(TicketTypeRequest ticketTypeRequest) {
+        if (ticketTypeRequest == null || ticketTypeRequest.getTicketType() == null) {
+            containsMalformedRequest = true;
+            return;
+        }
+        int tickets = ticketTypeRequest.getNoOfTickets();
+        if (tickets <= 0) {
+            containsNonPositiveRequest = true;
+        }
+        switch (ticketTypeRequest.getTicketType()) {
+            case ADULT -> adultTickets += tickets;
+            case CHILD -> childTickets += tickets;
+            case INFANT -> infantTickets += tickets;
+        }
+        totalTickets += tickets;
+    }
+
+    /**
+     * Reads the counts of an order that was built up per type, which needs no walk at all
+     *
+     * @param purchaseOrder the per-type ticket counts of the order
+     * @return the per-type ticket counts of the order
+     */
+    static OrderSummary of(PurchaseOrder purchaseOrder) {
+        OrderSummary summary = new OrderSummary();
+        summary.numberOfRequests = purchaseOrder.isEmpty() ? 0 : 1;
+        summary.containsNonPositiveRequest = purchaseOrder.containsNonPositiveRequest();
+        summary.adultTickets = purchaseOrder.getTickets(TicketTypeRequest.Type.ADULT);
+        summary.childTickets = purchaseOrder.getTickets(TicketTypeRequest.Type.CHILD);
+        summary.infantTickets = purchaseOrder.getTickets(TicketTypeRequest.Type.INFANT);
+        summary.totalTickets = purchaseOrder.getTotalTickets();
+        return summary;
+    }
+
+    boolean isEmpty() {
+        return numberOfRequests == 0;
+    }
+
+    boolean containsNonPositiveRequest() {
+        return containsNonPositiveRequest;
+    }
+
+    boolean containsMalformedRequest() {
+        return containsMalformedRequest;
+    }
+
+    /**
+     * Together with getInfantsAndFlags, the whole summary without loss, so equal only for the same order
+     *
+     * @return the adult tickets in the high half and the child tickets in the low half
+     */
+    long getAdultsAndChildren() {
+        return ((long) adultTickets << 32) | (childTickets & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the infant tickets in the high half, and in the low half a bit for a malformed request and one for a
+     * request of zero or fewer tickets
+     */
+    long getInfantsAndFlags() {
+        return ((long) infantTickets << 32) | (containsMalformedRequest ? 2 : 0) | (containsNonPositiveRequest ? 1 : 0);
+    }
+
+    int getAdultTickets() {
+        return adultTickets;
+    }
+
+    int getChildTickets() {
+        return childTickets;
+    }
+
+    int getInfantTickets() {
+        return infantTickets;
+    }
+
+    long getTotalTickets() {
+        return totalTickets;
+    }
+}
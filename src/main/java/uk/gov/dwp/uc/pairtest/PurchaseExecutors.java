@@ -0,0 +1,90 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PurchaseExecutors.java
+ * Executors for running purchases asynchronously.
+ */
+public final class PurchaseExecutors {
+
+    // Platform threads the fallback executor runs purchases on, and purchases it queues once they are all busy
+    static final int FALLBACK_THREADS = 64;
+    static final int FALLBACK_QUEUE_SIZE = 1024;
+
+    private static final long FALLBACK_KEEP_ALIVE_SECONDS = 60;
+
+    private PurchaseExecutors() {
+    }
+
+    /**
+     * The executor asynchronous purchases run on unless another is given. Purchases spend nearly all their time
+     * waiting on the seat reservation and payment services, so each one gets its own thread.
+     * <p>
+     * On Java 21 or later this is a virtual-thread-per-task executor, so tens of thousands of purchases can be in
+     * flight without a platform thread each. The project is built for Java 17, so the executor is looked up at run
+     * time; on older runtimes it falls back to a pool of at most FALLBACK_THREADS daemon platform threads with
+     * room to queue FALLBACK_QUEUE_SIZE purchases. A purchase submitted once the queue is full runs on the
+     * submitting thread, which slows callers down to the rate the services can take rather than failing them.
+     *
+     * @return the shared default executor
+     */
+    public static ExecutorService defaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
+    /**
+     * @return true if the default executor runs each purchase on a virtual thread
+     */
+    public static boolean isDefaultExecutorVirtual() {
+        return DefaultExecutor.VIRTUAL;
+    }
+
+    private static final class DefaultExecutor {
+
+        private static final boolean VIRTUAL;
+        private static final ExecutorService INSTANCE;
+
+        static {
+            ExecutorService virtual = virtualThreadPerTaskExecutor();
+            VIRTUAL = virtual != null;
+            INSTANCE = VIRTUAL ? virtual : boundedPlatformThreadPool();
+        }
+
+        private DefaultExecutor() {
+        }
+
+        private static ExecutorService virtualThreadPerTaskExecutor() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Not available before Java 21
+                return null;
+            }
+        }
+
+        private static ExecutorService boundedPlatformThreadPool() {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(FALLBACK_THREADS, FALLBACK_THREADS,
+                    FALLBACK_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<>(FALLBACK_QUEUE_SIZE),
+                    daemonThreads(), new ThreadPoolExecutor.CallerRunsPolicy());
+            // Idle threads go away, so a quiet service holds no threads for purchases
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+        private static ThreadFactory daemonThreads() {
+            AtomicInteger count = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, "purchase-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+}
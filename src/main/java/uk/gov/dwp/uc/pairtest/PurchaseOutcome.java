@@ -0,0 +1,48 @@
+package uk.gov.dwp.uc.pairtest;
+
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+
+/**
+ * PurchaseOutcome.java
+ * Packs the outcome of a purchase into a single long so that TicketServiceImpl can pass it between its
+ * internal steps without allocating. A successful purchase holds the seats reserved in the high 32 bits and
+ * the amount paid in the low 32 bits, and is never negative; a rejection is -1 minus the reason's ordinal.
+ */
+final class PurchaseOutcome {
+
+    private static final RejectionReason[] REJECTION_REASONS = RejectionReason.values();
+
+    private PurchaseOutcome() {
+    }
+
+    static long successful(int seatsReserved, int amountPaid) {
+        return ((long) seatsReserved << 32) | (amountPaid & 0xFFFF_FFFFL);
+    }
+
+    static long rejected(RejectionReason reason) {
+        return -1L - reason.ordinal();
+    }
+
+    static boolean isSuccessful(long outcome) {
+        return outcome >= 0;
+    }
+
+    static int getSeatsReserved(long outcome) {
+        return (int) (outcome >>> 32);
+    }
+
+    static int getAmountPaid(long outcome) {
+        return (int) outcome;
+    }
+
+    static RejectionReason getRejectionReason(long outcome) {
+        return REJECTION_REASONS[(int) (-1L - outcome)];
+    }
+
+    static PurchaseResult toResult(long outcome) {
+        return isSuccessful(outcome)
+                ? PurchaseResult.successful(getSeatsReserved(outcome), getAmountPaid(outcome))
+                : PurchaseResult.rejected(getRejectionReason(outcome));
+    }
+}
@@ -0,0 +1,111 @@
+package uk.gov.dwp.uc.pairtest;
+
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+
+/**
+ * PurchaseRules.java
+ * The business rules of a purchase, expressed as predicates over per-type ticket counts.
+ * These are the single source of truth for both the rule-by-rule validation in TicketServiceImpl
+ * and the precomputed OrderLookupTable.
+ */
+final class PurchaseRules {
+
+    private PurchaseRules() {
+    }
+
+    /**
+     * Checks the account and that tickets were asked for, before any counts are looked at
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param isEmpty whether no ticket type requests were made
+     * @param containsMalformedRequest whether any request, or its ticket type, was null
+     * @param containsNonPositiveRequest whether any request was for zero or a negative number of tickets
+     * @return the first rule broken, or null if the input is valid
+     */
+    static RejectionReason checkInput(long accountId, boolean isEmpty, boolean containsMalformedRequest,
+                                      boolean containsNonPositiveRequest) {
+        if (accountId <= 0) {
+            return RejectionReason.INVALID_ACCOUNT;
+        }
+        if (isEmpty) {
+            return RejectionReason.EMPTY_ORDER;
+        }
+        if (containsMalformedRequest) {
+            return RejectionReason.MALFORMED_REQUEST;
+        }
+        if (containsNonPositiveRequest) {
+            return RejectionReason.NON_POSITIVE_COUNT;
+        }
+        return null;
+    }
+
+    /**
+     * Runs the rules that depend only on the ticket counts, in the order TicketServiceImpl applies them
+     *
+     * @param maximumTickets the most tickets that can be bought in a single purchase
+     * @return the first rule the counts break, or null if the order is valid
+     */
+    static RejectionReason checkCounts(int adultTickets, int childTickets, int infantTickets, int maximumTickets) {
+        if (!isWithinMaximum((long) adultTickets + childTickets + infantTickets, maximumTickets)) {
+            return RejectionReason.OVER_MAXIMUM;
+        }
+        if (!hasAdultForEveryInfant(adultTickets, infantTickets)) {
+            return RejectionReason.INFANTS_EXCEED_ADULTS;
+        }
+        if (!hasAdult(adultTickets)) {
+            return RejectionReason.NO_ADULT;
+        }
+        return null;
+    }
+
+    /**
+     * Business Rule 3 - Only a maximum number of tickets that can be purchased at a time.
+     *
+     * @param totalTickets the number of tickets of every type in the order
+     * @param maximumTickets the most tickets that can be bought in a single purchase
+     * @return true if between 1 and the maximum tickets are being bought
+     */
+    static boolean isWithinMaximum(long totalTickets, int maximumTickets) {
+        return totalTickets > 0 && totalTickets <= maximumTickets;
+    }
+
+    /**
+     * Business Rule 6 - Infants do not pay for a ticket and are not allocated a seat.
+     * They will be sitting on an Adult's lap.
+     *
+     * @param adultTickets the number of adult tickets in the order
+     * @param infantTickets the number of infant tickets in the order
+     * @return true if there is an adult lap for every infant
+     */
+    static boolean hasAdultForEveryInfant(int adultTickets, int infantTickets) {
+        return infantTickets <= adultTickets;
+    }
+
+    /**
+     * Business Rule 7 - Child and Infant tickets cannot be purchased without purchasing an Adult ticket.
+     *
+     * @param adultTickets the number of adult tickets in the order
+     * @return true if at least one adult ticket is being bought
+     */
+    static boolean hasAdult(int adultTickets) {
+        return adultTickets > 0;
+    }
+
+    /**
+     * Business Rule 6 - Infants do not pay for a ticket and are not allocated a seat.
+     *
+     * @return the number of seats to reserve for the order
+     */
+    static int seats(int adultTickets, int childTickets) {
+        return adultTickets + childTickets;
+    }
+
+    /**
+     * Business Rule 2 - The ticket prices are based on the type of ticket. Infants are free.
+     *
+     * @return the total cost in £ of the order
+     */
+    static int totalCost(int adultTickets, int childTickets, int adultTicketPrice, int childTicketPrice) {
+        return adultTickets * adultTicketPrice + childTickets * childTicketPrice;
+    }
+}
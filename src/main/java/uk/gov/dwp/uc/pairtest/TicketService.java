@@ -1,10 +1,192 @@
 package uk.gov.dwp.uc.pairtest;
 
+import uk.gov.dwp.uc.pairtest.domain.BatchPurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
 import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.DeadlineExceededException;
 import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 public interface TicketService {
 
     void purchaseTickets(Long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException;
 
+    /**
+     * Same as purchaseTickets, but takes the account id as a primitive so that nothing is boxed.
+     * Named differently because a long and a Long overload would make every call ambiguous.
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @throws InvalidPurchaseException if any of the business rules are broken
+     */
+    void purchaseTicketsForAccount(long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException;
+
+    /**
+     * Same as purchaseTickets, but reports a broken business rule in the result rather than by throwing
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    PurchaseResult tryPurchaseTickets(long accountId, TicketTypeRequest... ticketTypeRequests);
+
+    /**
+     * Same as purchaseTickets, for an order already counted per ticket type. The order is only read,
+     * so it can be reset and reused as soon as this returns.
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param purchaseOrder the number of tickets of each type
+     * @throws InvalidPurchaseException if any of the business rules are broken
+     */
+    void purchaseTicketsForAccount(long accountId, PurchaseOrder purchaseOrder) throws InvalidPurchaseException;
+
+    /**
+     * Same as tryPurchaseTickets, for an order already counted per ticket type
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param purchaseOrder the number of tickets of each type
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    PurchaseResult tryPurchaseTickets(long accountId, PurchaseOrder purchaseOrder);
+
+    /**
+     * Same as purchaseTicketsForAccount, reserving the seats in a particular screening
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @throws InvalidPurchaseException if any of the business rules are broken
+     */
+    void purchaseTicketsForScreening(long accountId, long screeningId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException;
+
+    /**
+     * Same as purchaseTicketsForAccount, reserving the seats in a particular screening
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for
+     * @param purchaseOrder the number of tickets of each type
+     * @throws InvalidPurchaseException if any of the business rules are broken
+     */
+    void purchaseTicketsForScreening(long accountId, long screeningId, PurchaseOrder purchaseOrder) throws InvalidPurchaseException;
+
+    /**
+     * Same as tryPurchaseTickets, reserving the seats in a particular screening
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    PurchaseResult tryPurchaseTicketsForScreening(long accountId, long screeningId, TicketTypeRequest... ticketTypeRequests);
+
+    /**
+     * Same as tryPurchaseTickets, reserving the seats in a particular screening
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for
+     * @param purchaseOrder the number of tickets of each type
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    PurchaseResult tryPurchaseTicketsForScreening(long accountId, long screeningId, PurchaseOrder purchaseOrder);
+
+    /**
+     * Same as purchaseTicketsForAccount, but a purchase repeated with the same idempotency key, for instance by
+     * a client retrying after a timeout, gets the original outcome rather than reserving and paying again.
+     * A purchase that failed with an exception was not made, so repeating its key tries again.
+     *
+     * @param idempotencyKey chosen by the client, the same for every attempt at one purchase
+     * @param accountId a value indicating the customer's ID
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @throws InvalidPurchaseException if any of the business rules are broken
+     * @throws IllegalArgumentException if the key was already used by another account or for another order
+     * @throws IllegalStateException if the key's first purchase is still running after waiting for it, or too
+     *                               many purchases with keys are running
+     */
+    void purchaseTicketsIdempotently(long idempotencyKey, long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException;
+
+    /**
+     * Same as purchaseTicketsIdempotently, but reports a broken business rule in the result rather than by throwing
+     *
+     * @param idempotencyKey chosen by the client, the same for every attempt at one purchase
+     * @param accountId a value indicating the customer's ID
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     * @throws IllegalArgumentException if the key was already used by another account or for another order
+     * @throws IllegalStateException if the key's first purchase is still running after waiting for it, or too
+     *                               many purchases with keys are running
+     */
+    PurchaseResult tryPurchaseTicketsIdempotently(long idempotencyKey, long accountId, TicketTypeRequest... ticketTypeRequests);
+
+    /**
+     * Same as purchaseTicketsForAccount, but gives up once the timeout has passed. The purchase stops waiting for
+     * the services at the deadline, and a call still running then is settled once it finishes. Seats held for a
+     * payment that is still running stay held until it finishes, so a payment that is taken late and cannot be
+     * refunded still gets its seats.
+     * <p>
+     * The deadline is set as a CallDeadline, which the services see, and any other purchase can be given one by
+     * making it inside CallDeadline.runBy or callBy. A purchase with an idempotency key whose payment is taken
+     * late keeps its seats rather than being refunded, and repeating the key waits for it and gets its outcome.
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param timeout the longest the purchase may take
+     * @param unit the unit of the timeout
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @throws InvalidPurchaseException if any of the business rules are broken
+     * @throws DeadlineExceededException if the timeout passed before the purchase completed
+     */
+    void purchaseTicketsWithin(long accountId, long timeout, TimeUnit unit, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException;
+
+    /**
+     * Same as purchaseTicketsWithin, but reports a broken business rule in the result rather than by throwing
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param timeout the longest the purchase may take
+     * @param unit the unit of the timeout
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     * @throws DeadlineExceededException if the timeout passed before the purchase completed
+     */
+    PurchaseResult tryPurchaseTicketsWithin(long accountId, long timeout, TimeUnit unit, TicketTypeRequest... ticketTypeRequests);
+
+    /**
+     * Same as tryPurchaseTickets, but reserves the seats and takes the payment without blocking the caller.
+     * The business rules are checked before returning, so a rejected purchase gives an already completed future.
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param executor runs the calls to the seat reservation and payment services
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return completes with the seats reserved and amount paid, or the business rule that rejected the purchase;
+     * completes exceptionally if the seat reservation or payment service fails
+     */
+    CompletableFuture<PurchaseResult> purchaseTicketsAsync(long accountId, Executor executor, TicketTypeRequest... ticketTypeRequests);
+
+    /**
+     * Same as purchaseTicketsAsync with an executor, running on PurchaseExecutors.defaultExecutor(),
+     * which gives every purchase its own virtual thread where the runtime supports them.
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return completes with the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    default CompletableFuture<PurchaseResult> purchaseTicketsAsync(long accountId, TicketTypeRequest... ticketTypeRequests) {
+        return purchaseTicketsAsync(accountId, PurchaseExecutors.defaultExecutor(), ticketTypeRequests);
+    }
+
+    /**
+     * Purchases many accounts' orders in one call. Every order is checked against the business rules before
+     * any seats are reserved, and one order being rejected or failing does not affect the others. A null order
+     * has no account, so it is rejected as INVALID_ACCOUNT, and an order holding a null ticket type request, or one
+     * without a ticket type, is rejected as MALFORMED_REQUEST. The valid orders are purchased at the same time.
+     *
+     * @param purchaseRequests the orders to purchase
+     * @return the outcome of each order, in the same order as the requests
+     */
+    BatchPurchaseResult purchaseTicketsBatch(List<PurchaseRequest> purchaseRequests);
+
 }
@@ -1,12 +1,30 @@
 package uk.gov.dwp.uc.pairtest;
 
+import thirdparty.paymentgateway.IdempotentTicketPaymentService;
+import thirdparty.paymentgateway.RefundableTicketPaymentService;
 import thirdparty.paymentgateway.TicketPaymentService;
 import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.BatchPurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
 import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
 import uk.gov.dwp.uc.pairtest.exception.*;
+import uk.gov.dwp.uc.pairtest.logging.PurchaseEvent;
+import uk.gov.dwp.uc.pairtest.logging.PurchaseEventLog;
+import uk.gov.dwp.uc.pairtest.resilience.CallDeadline;
 
-import java.util.Arrays;
-import java.util.logging.Logger;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * TicketServiceImpl.java
@@ -14,17 +32,33 @@ import java.util.logging.Logger;
  */
 public class TicketServiceImpl implements TicketService {
     /**
-     * Should only have private methods other than the one below.
+     * Should only have private methods other than the ones below.
      */
 
-    // A Logger that allows messages to be output for debugging and information purposes
-    private final Logger logger = Logger.getLogger(TicketServiceImpl.class.getName());
+    // Logs purchase events for debugging and information purposes without blocking or allocating on the purchase path
+    private final PurchaseEventLog purchaseLog = PurchaseEventLog.forLogger(TicketServiceImpl.class.getName());
 
-    // Price in £ of an Adult ticket. Not good to hard code, better to get from service.
-    private final int ADULT_TICKET_PRICE = 20;
+    // Maximum number of tickets in a single purchase, used unless configured otherwise.
+    public static final int DEFAULT_MAXIMUM_TICKETS = 20;
 
-    // Price in £ of a Child ticket. Not good to hard code, better to get from service.
-    private final int CHILD_TICKET_PRICE = 10;
+    // Price in £ of an Adult ticket, used unless configured otherwise.
+    public static final int DEFAULT_ADULT_TICKET_PRICE = 20;
+
+    // Price in £ of a Child ticket, used unless configured otherwise.
+    public static final int DEFAULT_CHILD_TICKET_PRICE = 10;
+
+    // Most idempotency keys remembered at once, used unless configured otherwise.
+    public static final int DEFAULT_MAXIMUM_IDEMPOTENCY_KEYS = 1 << 20;
+
+    // Hours an idempotency key is remembered for once its purchase completes, used unless configured otherwise.
+    public static final int DEFAULT_IDEMPOTENCY_KEY_HOURS = 24;
+
+    // Most threads, besides the caller's, that work through the valid orders of a batch at the same time
+    static final int MAXIMUM_BATCH_HELPERS = 32;
+
+    // Rejections reuse preallocated, stackless exceptions unless this system property is set to true,
+    // which is only worth doing when debugging how a purchase reached the service.
+    private static final boolean REJECTION_STACK_TRACES = Boolean.getBoolean("uk.gov.dwp.uc.pairtest.rejectionStackTraces");
 
     // A reference to a Ticket Payment Service implementation
     private final TicketPaymentService ticketPaymentService;
@@ -32,6 +66,20 @@ public class TicketServiceImpl implements TicketService {
     // A reference to a Seat Reservation Service implementation
     private final SeatReservationService seatReservationService;
 
+    // Stands in for the screening id of purchases that do not name a screening, whose seats are reserved
+    // wherever the seat reservation service reserves them by default.
+    private static final long NO_SCREENING = Long.MIN_VALUE;
+
+    // Validity, seats and cost of every order within the maximum. Holds the current limit and prices,
+    // and is replaced as a whole when they change.
+    private volatile OrderLookupTable orderLookupTable;
+
+    // Outcomes of the purchases made with an idempotency key
+    private final IdempotencyCache idempotencyCache;
+
+    // Runs the seat hold while the purchasing thread takes payment, or null to hold the seats and then take payment
+    private volatile Executor pipeliningExecutor;
+
     /**
      * Assuming TicketServiceImpl is created by passing in TicketPaymentService and SeatReservationService.
      * I have used this constructor to create a set of Junit/Mockito tests in TicketPaymentServiceImplTest.java.
@@ -42,30 +90,959 @@ public class TicketServiceImpl implements TicketService {
      * @param seatReservationService A service that allows seats to be reserved
      */
     public TicketServiceImpl(TicketPaymentService ticketPaymentService, SeatReservationService seatReservationService) {
+        this(ticketPaymentService, seatReservationService,
+                DEFAULT_MAXIMUM_TICKETS, DEFAULT_ADULT_TICKET_PRICE, DEFAULT_CHILD_TICKET_PRICE);
+    }
+
+    /**
+     * Creates a ticket service with its own ticket limit and prices rather than the defaults.
+     *
+     * @param ticketPaymentService A service that allows payments to be made
+     * @param seatReservationService A service that allows seats to be reserved
+     * @param maximumTickets the most tickets that can be bought in a single purchase
+     * @param adultTicketPrice price in £ of an Adult ticket
+     * @param childTicketPrice price in £ of a Child ticket
+     * @throws IllegalArgumentException if the limit or prices are out of range
+     */
+    public TicketServiceImpl(TicketPaymentService ticketPaymentService, SeatReservationService seatReservationService,
+                             int maximumTickets, int adultTicketPrice, int childTicketPrice) {
+        this(ticketPaymentService, seatReservationService, maximumTickets, adultTicketPrice, childTicketPrice,
+                new IdempotencyCache(DEFAULT_MAXIMUM_IDEMPOTENCY_KEYS, DEFAULT_IDEMPOTENCY_KEY_HOURS, TimeUnit.HOURS));
+    }
+
+    /**
+     * Creates a ticket service with its own ticket limit and prices, and its own cache of idempotency keys.
+     *
+     * @param ticketPaymentService A service that allows payments to be made
+     * @param seatReservationService A service that allows seats to be reserved
+     * @param maximumTickets the most tickets that can be bought in a single purchase
+     * @param adultTicketPrice price in £ of an Adult ticket
+     * @param childTicketPrice price in £ of a Child ticket
+     * @param idempotencyCache remembers the outcomes of purchases made with an idempotency key
+     * @throws IllegalArgumentException if the limit or prices are out of range
+     */
+    public TicketServiceImpl(TicketPaymentService ticketPaymentService, SeatReservationService seatReservationService,
+                             int maximumTickets, int adultTicketPrice, int childTicketPrice,
+                             IdempotencyCache idempotencyCache) {
         // Could use dependency injection here to pass in specific service
         this.ticketPaymentService = ticketPaymentService;
         this.seatReservationService = seatReservationService;
+        this.orderLookupTable = OrderLookupTable.build(maximumTickets, adultTicketPrice, childTicketPrice);
+        this.idempotencyCache = idempotencyCache;
+    }
+
+    /**
+     * @return the cache of idempotency keys, for its hit, miss and eviction counts
+     */
+    public IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
+    }
+
+    /**
+     * Changes the ticket limit and prices. The lookup table is rebuilt off to the side and then swapped in,
+     * so purchases already in progress complete with the old limit and prices.
+     *
+     * @param maximumTickets the most tickets that can be bought in a single purchase
+     * @param adultTicketPrice price in £ of an Adult ticket
+     * @param childTicketPrice price in £ of a Child ticket
+     * @throws IllegalArgumentException if the limit or prices are out of range
+     */
+    public void updateTicketLimitAndPrices(int maximumTickets, int adultTicketPrice, int childTicketPrice) {
+        OrderLookupTable current = orderLookupTable;
+        if (current.getMaximumTickets() != maximumTickets
+                || current.getAdultTicketPrice() != adultTicketPrice
+                || current.getChildTicketPrice() != childTicketPrice) {
+            orderLookupTable = OrderLookupTable.build(maximumTickets, adultTicketPrice, childTicketPrice);
+            purchaseLog.log(PurchaseEvent.LOOKUP_TABLE_REBUILT, maximumTickets);
+        }
+    }
+
+    /**
+     * Holds the seats on the executor while the purchasing thread takes payment, so a purchase waits for the
+     * slower of the two services rather than both one after the other. Neither call outlives the purchase: the
+     * purchasing thread always waits for the hold before returning. Whichever call fails is compensated for, by
+     * releasing the hold or refunding the payment, so the payment service has to support refunds.
+     *
+     * @param executor runs the seat holds, for instance PurchaseExecutors.defaultExecutor()
+     * @throws IllegalStateException if the payment service cannot refund payments
+     */
+    public void enablePipelining(Executor executor) {
+        if (!canRefund()) {
+            throw new IllegalStateException("Pipelining needs a payment service that can refund payments");
+        }
+        pipeliningExecutor = executor;
+    }
+
+    /**
+     * Goes back to holding the seats and then taking payment on the purchasing thread
+     */
+    public void disablePipelining() {
+        pipeliningExecutor = null;
+    }
+
+    public boolean isPipelining() {
+        return pipeliningExecutor != null;
     }
 
     /**
      * Validates Business rules reserving seats and making payment
+     * <p>
+     * Kept for existing callers; unboxes the account id and delegates to purchaseTicketsForAccount.
      *
      * @param accountId a value indicating the customer's ID
      * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
-     * @throws InvalidPurchaseException if any of the business rules are broken
+     * @throws InvalidPurchaseException if any of the business rules are broken, carrying the rule that was broken
      */
     @Override
     public void purchaseTickets(Long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
-        validateInputParameters(accountId, ticketTypeRequests);
-        validateNumberOfTicketsDoesNotExceedMaximum(ticketTypeRequests);
-        validateAdultToInfantRatioCorrect(ticketTypeRequests);
-        validateChildOrInfantWithAdult(ticketTypeRequests);
+        if (accountId == null) {
+            purchaseLog.log(PurchaseEvent.INPUT_INVALID);
+            throw rejection(RejectionReason.INVALID_ACCOUNT);
+        }
+
+        purchaseTicketsForAccount(accountId, ticketTypeRequests);
+    }
+
+    /**
+     * Validates Business rules reserving seats and making payment
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @throws InvalidPurchaseException if any of the business rules are broken, carrying the rule that was broken
+     */
+    @Override
+    public void purchaseTicketsForAccount(long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
+        // Walk the requests once; every rule works against the per-type counts
+        throwIfRejected(purchase(accountId, OrderSummary.of(ticketTypeRequests)));
+    }
+
+    /**
+     * Validates Business rules reserving seats and making payment
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param purchaseOrder the number of tickets of each type
+     * @throws InvalidPurchaseException if any of the business rules are broken, carrying the rule that was broken
+     */
+    @Override
+    public void purchaseTicketsForAccount(long accountId, PurchaseOrder purchaseOrder) throws InvalidPurchaseException {
+        throwIfRejected(purchase(accountId, OrderSummary.of(purchaseOrder)));
+    }
+
+    /**
+     * Validates Business rules reserving seats and making payment, without throwing if a rule is broken
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    @Override
+    public PurchaseResult tryPurchaseTickets(long accountId, TicketTypeRequest... ticketTypeRequests) {
+        return PurchaseOutcome.toResult(purchase(accountId, OrderSummary.of(ticketTypeRequests)));
+    }
+
+    /**
+     * Validates Business rules reserving seats and making payment, without throwing if a rule is broken
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param purchaseOrder the number of tickets of each type
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    @Override
+    public PurchaseResult tryPurchaseTickets(long accountId, PurchaseOrder purchaseOrder) {
+        return PurchaseOutcome.toResult(purchase(accountId, OrderSummary.of(purchaseOrder)));
+    }
+
+    /**
+     * Validates Business rules reserving seats in the screening and making payment
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @throws InvalidPurchaseException if any of the business rules are broken, carrying the rule that was broken
+     */
+    @Override
+    public void purchaseTicketsForScreening(long accountId, long screeningId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
+        throwIfRejected(purchase(accountId, screeningId, OrderSummary.of(ticketTypeRequests)));
+    }
+
+    /**
+     * Validates Business rules reserving seats in the screening and making payment
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for
+     * @param purchaseOrder the number of tickets of each type
+     * @throws InvalidPurchaseException if any of the business rules are broken, carrying the rule that was broken
+     */
+    @Override
+    public void purchaseTicketsForScreening(long accountId, long screeningId, PurchaseOrder purchaseOrder) throws InvalidPurchaseException {
+        throwIfRejected(purchase(accountId, screeningId, OrderSummary.of(purchaseOrder)));
+    }
+
+    /**
+     * Validates Business rules reserving seats in the screening and making payment, without throwing if a rule is broken
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    @Override
+    public PurchaseResult tryPurchaseTicketsForScreening(long accountId, long screeningId, TicketTypeRequest... ticketTypeRequests) {
+        return PurchaseOutcome.toResult(purchase(accountId, screeningId, OrderSummary.of(ticketTypeRequests)));
+    }
+
+    /**
+     * Validates Business rules reserving seats in the screening and making payment, without throwing if a rule is broken
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for
+     * @param purchaseOrder the number of tickets of each type
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    @Override
+    public PurchaseResult tryPurchaseTicketsForScreening(long accountId, long screeningId, PurchaseOrder purchaseOrder) {
+        return PurchaseOutcome.toResult(purchase(accountId, screeningId, OrderSummary.of(purchaseOrder)));
+    }
+
+    /**
+     * Validates Business rules reserving seats and making payment, unless the idempotency key has been seen before
+     *
+     * @param idempotencyKey chosen by the client, the same for every attempt at one purchase
+     * @param accountId a value indicating the customer's ID
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @throws InvalidPurchaseException if any of the business rules are broken, carrying the rule that was broken
+     */
+    @Override
+    public void purchaseTicketsIdempotently(long idempotencyKey, long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
+        throwIfRejected(purchaseOnce(idempotencyKey, accountId, OrderSummary.of(ticketTypeRequests)));
+    }
+
+    /**
+     * Validates Business rules reserving seats and making payment, unless the idempotency key has been seen before,
+     * without throwing if a rule is broken
+     *
+     * @param idempotencyKey chosen by the client, the same for every attempt at one purchase
+     * @param accountId a value indicating the customer's ID
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    @Override
+    public PurchaseResult tryPurchaseTicketsIdempotently(long idempotencyKey, long accountId, TicketTypeRequest... ticketTypeRequests) {
+        return PurchaseOutcome.toResult(purchaseOnce(idempotencyKey, accountId, OrderSummary.of(ticketTypeRequests)));
+    }
+
+    /**
+     * Validates Business rules reserving seats and making payment, giving up once the timeout has passed
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param timeout the longest the purchase may take
+     * @param unit the unit of the timeout
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @throws InvalidPurchaseException if any of the business rules are broken, carrying the rule that was broken
+     * @throws DeadlineExceededException if the timeout passed before the purchase completed
+     */
+    @Override
+    public void purchaseTicketsWithin(long accountId, long timeout, TimeUnit unit, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        CallDeadline.runBy(deadlineNanos, () -> purchaseTicketsForAccount(accountId, ticketTypeRequests));
+    }
+
+    /**
+     * Validates Business rules reserving seats and making payment, giving up once the timeout has passed,
+     * without throwing if a rule is broken
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param timeout the longest the purchase may take
+     * @param unit the unit of the timeout
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return the seats reserved and amount paid, or the business rule that rejected the purchase
+     * @throws DeadlineExceededException if the timeout passed before the purchase completed
+     */
+    @Override
+    public PurchaseResult tryPurchaseTicketsWithin(long accountId, long timeout, TimeUnit unit, TicketTypeRequest... ticketTypeRequests) {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        return CallDeadline.callBy(deadlineNanos, () -> tryPurchaseTickets(accountId, ticketTypeRequests));
+    }
+
+    /**
+     * Validates Business rules, then reserves seats and makes payment on the executor
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param executor runs the calls to the seat reservation and payment services
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return completes with the seats reserved and amount paid, or the business rule that rejected the purchase
+     */
+    @Override
+    public CompletableFuture<PurchaseResult> purchaseTicketsAsync(long accountId, Executor executor, TicketTypeRequest... ticketTypeRequests) {
+        // Validating is far cheaper than a task hand-off, so only the downstream calls leave the caller's thread
+        long outcome = validate(accountId, OrderSummary.of(ticketTypeRequests));
+        if (!PurchaseOutcome.isSuccessful(outcome)) {
+            return CompletableFuture.completedFuture(PurchaseOutcome.toResult(outcome));
+        }
 
-        // Getting seats first in case payment is taken and there are no seats left
-        // Would have to consider putting this in a Unit of Work pattern to rollback
-        // if concurrency issues occur.
-        seatReservationService.reserveSeat(accountId, getNumberOfSeats(ticketTypeRequests));
-        ticketPaymentService.makePayment(accountId, calculateTotalCostOfTickets(ticketTypeRequests));
+        return CompletableFuture.supplyAsync(() -> {
+            reserveSeatsAndMakePayment(accountId, NO_SCREENING, outcome);
+            return PurchaseOutcome.toResult(outcome);
+        }, executor);
+    }
+
+    /**
+     * Validates Business rules for the whole batch, then reserves seats and makes payment for the valid orders
+     * at the same time, so that their calls reach batching decorators in the same windows
+     * <p>
+     * The calling thread works through the valid orders alongside up to MAXIMUM_BATCH_HELPERS tasks on
+     * PurchaseExecutors.defaultExecutor(). Each order is claimed by exactly one of them, so the batch still
+     * completes, on the calling thread alone, if the executor is too busy to run the helpers.
+     * <p>
+     * The batch is logged as a single event rather than per order. A seat reservation or payment failure is
+     * recorded against its order and the rest of the batch carries on.
+     *
+     * @param purchaseRequests the orders to purchase
+     * @return the outcome of each order, in the same order as the requests
+     */
+    @Override
+    public BatchPurchaseResult purchaseTicketsBatch(List<PurchaseRequest> purchaseRequests) {
+        OrderBatch batch = OrderBatch.of(purchaseRequests);
+        long[] outcomes = batch.validate(orderLookupTable);
+        int rejected = 0;
+        for (long outcome : outcomes) {
+            if (!PurchaseOutcome.isSuccessful(outcome)) {
+                rejected++;
+            }
+        }
+        purchaseLog.log(PurchaseEvent.BATCH_VALIDATED, batch.size(), rejected);
+
+        PurchaseResult[] results = new PurchaseResult[batch.size()];
+        RuntimeException[] failures = new RuntimeException[batch.size()];
+        int[] validOrders = new int[batch.size() - rejected];
+        int valid = 0;
+        for (int order = 0; order < batch.size(); order++) {
+            if (PurchaseOutcome.isSuccessful(outcomes[order])) {
+                validOrders[valid++] = order;
+            } else {
+                results[order] = PurchaseOutcome.toResult(outcomes[order]);
+            }
+        }
+
+        AtomicInteger nextOrder = new AtomicInteger();
+        CountDownLatch purchased = new CountDownLatch(validOrders.length);
+        // The helpers carry the caller's CallDeadline, if it has one, so every order in the batch has the same
+        Runnable purchaseClaimedOrders = CallDeadline.bind(() -> {
+            int claimed;
+            while ((claimed = nextOrder.getAndIncrement()) < validOrders.length) {
+                int order = validOrders[claimed];
+                try {
+                    reserveSeatsAndMakePayment(batch.getAccountId(order), NO_SCREENING, outcomes[order]);
+                    results[order] = PurchaseOutcome.toResult(outcomes[order]);
+                } catch (RuntimeException e) {
+                    failures[order] = e;
+                } finally {
+                    purchased.countDown();
+                }
+            }
+        });
+
+        int helpers = Math.min(validOrders.length - 1, MAXIMUM_BATCH_HELPERS);
+        for (int helper = 0; helper < helpers; helper++) {
+            try {
+                PurchaseExecutors.defaultExecutor().execute(purchaseClaimedOrders);
+            } catch (RejectedExecutionException e) {
+                // The orders the helper would have claimed are left for this thread
+                break;
+            }
+        }
+        purchaseClaimedOrders.run();
+        awaitUninterruptibly(purchased);
+
+        return new BatchPurchaseResult(results, failures);
+    }
+
+    /**
+     * Waits for the orders other threads claimed, whose outcomes the batch has to report
+     *
+     * @param purchased counted down as each order of the batch completes
+     */
+    private static void awaitUninterruptibly(CountDownLatch purchased) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                purchased.await();
+                break;
+            } catch (InterruptedException e) {
+                // The orders are already being purchased, so their outcomes have to be waited for
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Validates Business rules, then reserves seats and makes payment for a purchase without a screening
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param order the per-type ticket counts of the order
+     * @return the outcome packed by PurchaseOutcome
+     */
+    private long purchase(long accountId, OrderSummary order) {
+        return purchase(accountId, NO_SCREENING, order);
+    }
+
+    /**
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for, or NO_SCREENING
+     * @param order the per-type ticket counts of the order
+     * @return the outcome packed by PurchaseOutcome
+     */
+    private long purchase(long accountId, long screeningId, OrderSummary order) {
+        long outcome = validate(accountId, order);
+        if (PurchaseOutcome.isSuccessful(outcome)) {
+            reserveSeatsAndMakePayment(accountId, screeningId, outcome);
+        }
+        return outcome;
+    }
+
+    /**
+     * Purchases at most once per idempotency key. A repeat gets the outcome of the first purchase, waiting for it
+     * if it is still running; if the purchase throws, the key is forgotten so that the client can try again.
+     * A purchase that passes its CallDeadline leaves the key running until its calls finish, see settleLateCalls.
+     *
+     * @param idempotencyKey chosen by the client, the same for every attempt at one purchase
+     * @param accountId a value indicating the customer's ID
+     * @param order the per-type ticket counts of the order
+     * @return the outcome packed by PurchaseOutcome
+     */
+    private long purchaseOnce(long idempotencyKey, long accountId, OrderSummary order) {
+        long remembered = idempotencyCache.begin(idempotencyKey, accountId, order.getAdultsAndChildren(),
+                order.getInfantsAndFlags());
+        if (remembered != IdempotencyCache.ABSENT) {
+            purchaseLog.log(PurchaseEvent.DUPLICATE_PURCHASE, idempotencyKey);
+            return remembered;
+        }
+
+        boolean completed = false;
+        try {
+            long outcome = validate(accountId, order);
+            if (PurchaseOutcome.isSuccessful(outcome)) {
+                reserveSeatsAndMakePayment(idempotencyKey, accountId, NO_SCREENING, outcome);
+            }
+            idempotencyCache.complete(idempotencyKey, outcome);
+            completed = true;
+            return outcome;
+        } catch (DeadlineExceededException e) {
+            // The key has been handed to the calls still running, which complete or forget it once they finish
+            completed = true;
+            throw e;
+        } finally {
+            if (!completed) {
+                idempotencyCache.abandon(idempotencyKey);
+            }
+        }
+    }
+
+    /**
+     * Validates Business rules and works out the seats and cost, without calling any other service
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param order the per-type ticket counts of the order
+     * @return the outcome packed by PurchaseOutcome, holding the seats to reserve and amount to pay if valid
+     */
+    private long validate(long accountId, OrderSummary order) {
+        OrderLookupTable table = orderLookupTable;
+
+        RejectionReason reason = validateInputParameters(accountId, order);
+        if (reason == null) {
+            reason = validateNumberOfTicketsDoesNotExceedMaximum(order, table.getMaximumTickets());
+        }
+        if (reason != null) {
+            return PurchaseOutcome.rejected(reason);
+        }
+
+        // Within the maximum every count is inside the table, so the remaining rules are one lookup.
+        // Business Rules 6 and 7, one adult per infant and an adult with every child or infant, see PurchaseRules.
+        int entry = table.indexOf(order.getAdultTickets(), order.getChildTickets(), order.getInfantTickets());
+        if (!table.isValid(entry)) {
+            reason = table.getRejectionReason(entry);
+            purchaseLog.log(PurchaseEvent.RULE_BROKEN, reason.ordinal());
+            return PurchaseOutcome.rejected(reason);
+        }
+        purchaseLog.log(PurchaseEvent.RULES_VALID);
+
+        return PurchaseOutcome.successful(getNumberOfSeats(table, entry), calculateTotalCostOfTickets(table, entry));
+    }
+
+    /**
+     * Holds the seats, takes payment and then confirms the hold, releasing it if payment fails
+     * <p>
+     * Seats are held first in case payment is taken and there are no seats left. A failed payment returns the
+     * seats to sale straight away rather than leaving them reserved by a purchase that never completed.
+     * With pipelining enabled the two calls overlap instead, see reserveSeatsWhileMakingPayment.
+     *
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for, or NO_SCREENING
+     * @param outcome a successful outcome packed by PurchaseOutcome
+     */
+    private void reserveSeatsAndMakePayment(long accountId, long screeningId, long outcome) {
+        reserveSeatsAndMakePayment(IdempotencyCache.NO_KEY, accountId, screeningId, outcome);
+    }
+
+    /**
+     * Waits for the calls only until the current thread's CallDeadline, if it has one
+     *
+     * @param idempotencyKey the purchase's idempotency key, passed on with the payment, or NO_KEY
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for, or NO_SCREENING
+     * @param outcome a successful outcome packed by PurchaseOutcome
+     */
+    private void reserveSeatsAndMakePayment(long idempotencyKey, long accountId, long screeningId, long outcome) {
+        if (CallDeadline.isSet()) {
+            reserveSeatsAndMakePaymentBy(idempotencyKey, accountId, screeningId, outcome, CallDeadline.getDeadlineNanos());
+            return;
+        }
+        Executor executor = pipeliningExecutor;
+        if (executor != null) {
+            reserveSeatsWhileMakingPayment(idempotencyKey, accountId, screeningId, outcome, executor);
+            return;
+        }
+
+        int seats = PurchaseOutcome.getSeatsReserved(outcome);
+        int amount = PurchaseOutcome.getAmountPaid(outcome);
+        long holdId = holdSeats(accountId, screeningId, seats);
+        try {
+            makePayment(idempotencyKey, accountId, amount);
+        } catch (RuntimeException e) {
+            releaseHold(holdId, e);
+            throw e;
+        }
+        confirmPaidHold(holdId, accountId, screeningId, seats, amount);
+    }
+
+    /**
+     * Holds the seats on the executor while taking payment, then confirms the hold if both succeeded
+     * <p>
+     * If only the payment fails the hold is released, and if only the hold fails the payment is refunded. Either
+     * way the caller sees the same failure as it would had the calls been made one after the other: the hold's
+     * failure if it failed, otherwise the payment's.
+     *
+     * @param idempotencyKey the purchase's idempotency key, passed on with the payment, or NO_KEY
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for, or NO_SCREENING
+     * @param outcome a successful outcome packed by PurchaseOutcome
+     * @param executor runs the seat hold
+     */
+    private void reserveSeatsWhileMakingPayment(long idempotencyKey, long accountId, long screeningId, long outcome, Executor executor) {
+        int seats = PurchaseOutcome.getSeatsReserved(outcome);
+        int amount = PurchaseOutcome.getAmountPaid(outcome);
+        CompletableFuture<Long> hold = CompletableFuture.supplyAsync(() -> holdSeats(accountId, screeningId, seats), executor);
+
+        RuntimeException paymentFailure = null;
+        try {
+            makePayment(idempotencyKey, accountId, amount);
+        } catch (RuntimeException e) {
+            paymentFailure = e;
+        }
+
+        long holdId;
+        try {
+            // Waited for whatever happened to the payment, so the hold never outlives the purchase
+            holdId = hold.join();
+        } catch (CompletionException e) {
+            RuntimeException holdFailure = unwrap(e);
+            if (paymentFailure == null) {
+                refundPayment(accountId, amount, holdFailure);
+            } else {
+                holdFailure.addSuppressed(paymentFailure);
+            }
+            throw holdFailure;
+        }
+
+        if (paymentFailure != null) {
+            releaseHold(holdId, paymentFailure);
+            throw paymentFailure;
+        }
+        confirmPaidHold(holdId, accountId, screeningId, seats, amount);
+    }
+
+    /**
+     * Holds the seats, takes payment and then confirms the hold like reserveSeatsAndMakePayment, but waits for
+     * the calls only until the deadline
+     * <p>
+     * The calls run on an executor so that the purchasing thread can stop waiting for them: the pipelining
+     * executor, overlapping them, when pipelining is enabled, otherwise the default purchase executor one after
+     * the other. Each call carries the deadline to the services, and is not made at all if the deadline has passed
+     * by the time the executor gets to it. A call cannot be stopped once made, so the calls still running at the
+     * deadline are settled once they finish, see settleLateCalls.
+     *
+     * @param idempotencyKey the purchase's idempotency key, passed on with the payment, or NO_KEY. Once this throws
+     *                       DeadlineExceededException the key is completed or forgotten here rather than by the caller
+     * @param accountId a value indicating the customer's ID
+     * @param screeningId the screening the tickets are for, or NO_SCREENING
+     * @param outcome a successful outcome packed by PurchaseOutcome
+     * @param deadlineNanos the System.nanoTime by which the purchase has to complete
+     */
+    private void reserveSeatsAndMakePaymentBy(long idempotencyKey, long accountId, long screeningId, long outcome,
+                                              long deadlineNanos) {
+        int seats = PurchaseOutcome.getSeatsReserved(outcome);
+        int amount = PurchaseOutcome.getAmountPaid(outcome);
+        if (deadlineNanos - System.nanoTime() <= 0) {
+            finishLateKey(idempotencyKey, outcome, false);
+            throw new DeadlineExceededException("Deadline passed before seats were held");
+        }
+        Executor pipelining = pipeliningExecutor;
+        Executor executor = pipelining != null ? pipelining : PurchaseExecutors.defaultExecutor();
+
+        CompletableFuture<Long> hold = CompletableFuture.supplyAsync(
+                () -> holdSeatsBy(deadlineNanos, accountId, screeningId, seats), executor);
+        CompletableFuture<Void> payment = null;
+        if (pipelining != null) {
+            payment = CompletableFuture.runAsync(() -> makePaymentBy(deadlineNanos, idempotencyKey, accountId, amount), executor);
+        }
+
+        long holdId;
+        try {
+            holdId = awaitBy(hold, deadlineNanos, "holding seats");
+        } catch (DeadlineExceededException e) {
+            settleLateCalls(hold, payment, idempotencyKey, accountId, screeningId, outcome);
+            throw e;
+        } catch (RuntimeException e) {
+            if (payment != null) {
+                refundPaymentBy(hold, payment, deadlineNanos, accountId, screeningId, outcome, e);
+            }
+            throw e;
+        }
+
+        if (payment == null) {
+            payment = CompletableFuture.runAsync(() -> makePaymentBy(deadlineNanos, idempotencyKey, accountId, amount), executor);
+        }
+        try {
+            awaitBy(payment, deadlineNanos, "taking payment");
+        } catch (DeadlineExceededException e) {
+            // The hold is kept until the payment finishes, so a payment taken late has seats to confirm
+            settleLateCalls(hold, payment, idempotencyKey, accountId, screeningId, outcome);
+            throw e;
+        } catch (RuntimeException e) {
+            releaseHold(holdId, e);
+            throw e;
+        }
+        confirmPaidHold(holdId, accountId, screeningId, seats, amount);
+    }
+
+    /**
+     * Refunds a pipelined payment after the seats could not be held, waiting for it until the deadline
+     *
+     * @param holdFailure why the seats could not be held, the failure the caller sees
+     */
+    private void refundPaymentBy(CompletableFuture<Long> hold, CompletableFuture<Void> payment, long deadlineNanos,
+                                 long accountId, long screeningId, long outcome, RuntimeException holdFailure) {
+        try {
+            awaitBy(payment, deadlineNanos, "taking payment");
+        } catch (DeadlineExceededException e) {
+            // The caller sees the hold's failure and forgets the key itself
+            settleLateCalls(hold, payment, IdempotencyCache.NO_KEY, accountId, screeningId, outcome);
+            return;
+        } catch (RuntimeException e) {
+            holdFailure.addSuppressed(e);
+            return;
+        }
+        refundPayment(accountId, PurchaseOutcome.getAmountPaid(outcome), holdFailure);
+    }
+
+    /**
+     * Holds the seats for a purchase with a deadline, unless the deadline passed while the call waited to be made
+     *
+     * @param deadlineNanos the System.nanoTime by which the purchase has to complete
+     * @return the hold
+     * @throws DeadlineExceededException if the deadline has already passed
+     */
+    private long holdSeatsBy(long deadlineNanos, long accountId, long screeningId, int seats) {
+        if (deadlineNanos - System.nanoTime() <= 0) {
+            throw new DeadlineExceededException("Deadline passed before seats were held");
+        }
+        return CallDeadline.callBy(deadlineNanos, () -> holdSeats(accountId, screeningId, seats));
+    }
+
+    /**
+     * Takes payment for a purchase with a deadline, unless the deadline passed while the call waited to be made
+     *
+     * @param deadlineNanos the System.nanoTime by which the purchase has to complete
+     * @throws DeadlineExceededException if the deadline has already passed
+     */
+    private void makePaymentBy(long deadlineNanos, long idempotencyKey, long accountId, int amount) {
+        if (deadlineNanos - System.nanoTime() <= 0) {
+            throw new DeadlineExceededException("Deadline passed before payment was taken");
+        }
+        CallDeadline.runBy(deadlineNanos, () -> makePayment(idempotencyKey, accountId, amount));
+    }
+
+    /**
+     * Settles a purchase that stopped waiting for its calls, once they have all finished
+     * <p>
+     * A hold without a payment is released. A payment with an idempotency key that got its seats is kept and its
+     * hold confirmed, so that repeating the key gets the completed purchase. Any other payment is refunded if the
+     * payment service can refund, releasing its hold too; otherwise the customer has paid for good, so the hold
+     * is confirmed and the seats are theirs.
+     *
+     * @param hold the seat hold
+     * @param payment the payment, or null if it was never started
+     * @param idempotencyKey the purchase's idempotency key, completed if the purchase is kept and otherwise
+     *                       forgotten, or NO_KEY
+     * @param outcome the successful outcome the purchase was making
+     */
+    private void settleLateCalls(CompletableFuture<Long> hold, CompletableFuture<Void> payment, long idempotencyKey,
+                                 long accountId, long screeningId, long outcome) {
+        int seats = PurchaseOutcome.getSeatsReserved(outcome);
+        int amount = PurchaseOutcome.getAmountPaid(outcome);
+        CompletableFuture<?> finished = payment == null ? hold : CompletableFuture.allOf(hold, payment);
+        finished.whenComplete((ignored, failure) -> {
+            boolean held = !hold.isCompletedExceptionally();
+            boolean charged = payment != null && !payment.isCompletedExceptionally();
+            boolean kept = false;
+            if (!charged) {
+                if (held) {
+                    releaseLateHold(hold.join());
+                }
+            } else if (held && idempotencyKey != IdempotencyCache.NO_KEY) {
+                kept = keepLatePayment(hold.join(), accountId, screeningId, seats, amount);
+            } else if (canRefund() && refundLatePayment(accountId, amount)) {
+                if (held) {
+                    releaseLateHold(hold.join());
+                }
+            } else if (held) {
+                kept = keepLatePayment(hold.join(), accountId, screeningId, seats, amount);
+            } else {
+                purchaseLog.log(PurchaseEvent.CHARGED_WITHOUT_SEATS, amount, accountId);
+            }
+            finishLateKey(idempotencyKey, outcome, kept);
+        });
+    }
+
+    /**
+     * Completes or forgets the idempotency key of a purchase that passed its deadline
+     *
+     * @param idempotencyKey the purchase's idempotency key, or NO_KEY
+     * @param outcome the successful outcome the purchase was making
+     * @param kept whether the purchase was completed after all
+     */
+    private void finishLateKey(long idempotencyKey, long outcome, boolean kept) {
+        if (idempotencyKey == IdempotencyCache.NO_KEY) {
+            return;
+        }
+        if (kept) {
+            idempotencyCache.complete(idempotencyKey, outcome);
+        } else {
+            idempotencyCache.abandon(idempotencyKey);
+        }
+    }
+
+    /**
+     * Waits for a call to a downstream service until the deadline
+     *
+     * @param call the running call
+     * @param deadlineNanos the System.nanoTime to stop waiting at
+     * @param step what the call is doing, for the exception's message
+     * @return the call's result
+     * @throws DeadlineExceededException if the deadline passed, or the thread was interrupted, first
+     */
+    private static <T> T awaitBy(CompletableFuture<T> call, long deadlineNanos, String step) {
+        try {
+            return call.get(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Deadline passed while " + step);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException("Interrupted while " + step);
+        } catch (ExecutionException e) {
+            throw unwrap(new CompletionException(e.getCause()));
+        }
+    }
+
+    /**
+     * Releases a hold whose purchase had given up waiting
+     *
+     * @param holdId the hold to release
+     */
+    private void releaseLateHold(long holdId) {
+        try {
+            seatReservationService.releaseHold(holdId);
+            purchaseLog.log(PurchaseEvent.DEADLINE_HOLD_RELEASED, holdId);
+        } catch (RuntimeException e) {
+            // Nobody is waiting to hear about it, and the hold will still expire on its own
+        }
+    }
+
+    /**
+     * Refunds a payment whose purchase had given up waiting
+     *
+     * @param accountId the account the payment was taken from
+     * @param amount the amount that was paid
+     * @return false if the refund failed, so the payment has been kept
+     */
+    private boolean refundLatePayment(long accountId, int amount) {
+        try {
+            ((RefundableTicketPaymentService) ticketPaymentService).refundPayment(accountId, amount);
+            purchaseLog.log(PurchaseEvent.DEADLINE_PAYMENT_REFUNDED, amount, accountId);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Confirms the hold of a purchase that had given up waiting, as its payment was taken and is being kept
+     *
+     * @param holdId the hold the payment was for
+     * @return false if the seats could not be confirmed after all
+     */
+    private boolean keepLatePayment(long holdId, long accountId, long screeningId, int seats, int amount) {
+        try {
+            confirmPaidHold(holdId, accountId, screeningId, seats, amount);
+            purchaseLog.log(PurchaseEvent.LATE_PAYMENT_KEPT, amount, accountId);
+            return true;
+        } catch (RuntimeException e) {
+            // Already logged as charged without seats, and nobody is waiting to hear about it
+            return false;
+        }
+    }
+
+    /**
+     * Takes payment, passing on the purchase's idempotency key if the payment service can use it, so that the
+     * payment service may safely make the payment again after a failure
+     *
+     * @param idempotencyKey the purchase's idempotency key, or NO_KEY
+     * @param accountId a value indicating the customer's ID
+     * @param amount the amount to pay
+     */
+    private void makePayment(long idempotencyKey, long accountId, int amount) {
+        if (idempotencyKey != IdempotencyCache.NO_KEY && ticketPaymentService instanceof IdempotentTicketPaymentService idempotent) {
+            idempotent.makePayment(idempotencyKey, accountId, amount);
+        } else {
+            ticketPaymentService.makePayment(accountId, amount);
+        }
+    }
+
+    /**
+     * Confirms the hold of seats that have been paid for
+     * <p>
+     * A hold that expired while payment was taken, which confirmHold reports with an IllegalStateException, has
+     * its seats reserved outright instead, as they are most likely still on sale. Any other failure leaves it
+     * unknown whether the hold was confirmed, so reserving again could book the seats twice: the hold is released
+     * instead, the payment refunded and the confirm's failure thrown. The payment is also refunded if reserving an
+     * expired hold's seats fails, with that failure thrown. A payment service that cannot refund has the payment
+     * logged as taken without seats.
+     *
+     * @param holdId the hold to confirm
+     * @param accountId the account the payment was taken from
+     * @param screeningId the screening the tickets are for, or NO_SCREENING
+     * @param seats the number of seats held
+     * @param amount the amount that was paid
+     */
+    private void confirmPaidHold(long holdId, long accountId, long screeningId, int seats, int amount) {
+        try {
+            seatReservationService.confirmHold(holdId);
+            return;
+        } catch (IllegalStateException expired) {
+            try {
+                reserveSeat(accountId, screeningId, seats);
+            } catch (RuntimeException reserveFailure) {
+                reserveFailure.addSuppressed(expired);
+                refundPaymentWithoutSeats(accountId, amount, reserveFailure);
+                throw reserveFailure;
+            }
+            purchaseLog.log(PurchaseEvent.SEATS_RETAKEN, seats, accountId);
+        } catch (RuntimeException confirmFailure) {
+            releaseHold(holdId, confirmFailure);
+            refundPaymentWithoutSeats(accountId, amount, confirmFailure);
+            throw confirmFailure;
+        }
+        try {
+            seatReservationService.releaseHold(holdId);
+        } catch (RuntimeException e) {
+            // The seats are reserved either way, and the hold will still expire on its own
+        }
+    }
+
+    /**
+     * Refunds a payment whose seats could not be confirmed, or logs it as taken without seats if it cannot be
+     *
+     * @param accountId the account the payment was taken from
+     * @param amount the amount that was paid
+     * @param seatFailure why the seats could not be confirmed, the failure the caller sees
+     */
+    private void refundPaymentWithoutSeats(long accountId, int amount, RuntimeException seatFailure) {
+        if (canRefund()) {
+            refundPayment(accountId, amount, seatFailure);
+        } else {
+            purchaseLog.log(PurchaseEvent.CHARGED_WITHOUT_SEATS, amount, accountId);
+        }
+    }
+
+    private void reserveSeat(long accountId, long screeningId, int seats) {
+        if (screeningId == NO_SCREENING) {
+            seatReservationService.reserveSeat(accountId, seats);
+        } else {
+            seatReservationService.reserveSeat(accountId, screeningId, seats);
+        }
+    }
+
+    private long holdSeats(long accountId, long screeningId, int seats) {
+        return screeningId == NO_SCREENING
+                ? seatReservationService.holdSeats(accountId, seats)
+                : seatReservationService.holdSeats(accountId, screeningId, seats);
+    }
+
+    /**
+     * @return true if the payment service can refund, asking decorators whether the service they wrap can
+     */
+    private boolean canRefund() {
+        return ticketPaymentService instanceof RefundableTicketPaymentService refundable && refundable.canRefund();
+    }
+
+    /**
+     * Refunds a payment after the seats could not be held or confirmed, keeping that failure as the one the caller sees
+     *
+     * @param accountId the account the payment was taken from
+     * @param amount the amount that was paid
+     * @param holdFailure why the seats could not be held or confirmed
+     */
+    private void refundPayment(long accountId, int amount, RuntimeException holdFailure) {
+        try {
+            ((RefundableTicketPaymentService) ticketPaymentService).refundPayment(accountId, amount);
+            purchaseLog.log(PurchaseEvent.PAYMENT_REFUNDED, amount, accountId);
+        } catch (RuntimeException e) {
+            holdFailure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * @param e the failure of the asynchronous seat hold
+     * @return the exception the seat reservation service threw
+     */
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return e;
+    }
+
+    /**
+     * Releases a hold after payment failed, keeping the payment failure as the one the caller sees
+     *
+     * @param holdId the hold to release
+     * @param paymentFailure why payment failed
+     */
+    private void releaseHold(long holdId, RuntimeException paymentFailure) {
+        try {
+            seatReservationService.releaseHold(holdId);
+            purchaseLog.log(PurchaseEvent.HOLD_RELEASED, holdId);
+        } catch (RuntimeException e) {
+            // The hold will still expire on its own
+            paymentFailure.addSuppressed(e);
+        }
     }
 
     /**
@@ -73,60 +1050,57 @@ public class TicketServiceImpl implements TicketService {
      * <p>
      * Validates that account id is greater than zero
      * Validates that ticketTypeRequests is not null and there are tickets being sent in
-     * Checks that none of those ticket requests are empty or have negative values
+     * Checks that none of those ticket requests are null, empty or have negative values
      *
      * @param accountId a value indicating the customer's ID
-     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
-     * @throws InvalidPurchaseException if any of the parameters appear to be invalid
+     * @param order the per-type ticket counts of the order
+     * @return the rule that was broken, or null if the parameters are valid
      */
-    private void validateInputParameters(Long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
-        if (accountId <= 0 || ticketTypeRequests == null || ticketTypeRequests.length == 0 || Arrays.stream(ticketTypeRequests).anyMatch(x -> x.getNoOfTickets() <= 0)) {
-            logger.info("Invalid input parameters");
-            throw new InvalidPurchaseException();
-        } else {
-            logger.info("Input parameters successfully validated");
-        }
+    private RejectionReason validateInputParameters(long accountId, OrderSummary order) {
+        RejectionReason reason = PurchaseRules.checkInput(accountId, order.isEmpty(), order.containsMalformedRequest(),
+                order.containsNonPositiveRequest());
+        purchaseLog.log(reason != null ? PurchaseEvent.INPUT_INVALID : PurchaseEvent.INPUT_VALID);
+        return reason;
     }
 
     /**
      * Validates whether the number of tickets exceeds the maximum allowed to be purchased/booked
      *
-     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
-     * @throws InvalidPurchaseException if the number of tickets exceeds the maximum
-     */
-    private void validateNumberOfTicketsDoesNotExceedMaximum(TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
-        int numberOfTickets = Arrays.stream(ticketTypeRequests).mapToInt(TicketTypeRequest::getNoOfTickets).sum();
-        int maximumTickets = 20; // Not good to hard code, better to get from service.
-        if (numberOfTickets > maximumTickets || numberOfTickets <= 0) {
-            logger.info("Tried to purchase " + numberOfTickets + " tickets, where minimum is 1 and maximum is " + maximumTickets);
-            throw new InvalidPurchaseException();
+     * @param order the per-type ticket counts of the order
+     * @param maximumTickets the most tickets that can be bought in a single purchase
+     * @return OVER_MAXIMUM if the number of tickets is outside the limits, otherwise null
+     */
+    private RejectionReason validateNumberOfTicketsDoesNotExceedMaximum(OrderSummary order, int maximumTickets) {
+        long numberOfTickets = order.getTotalTickets();
+        if (!PurchaseRules.isWithinMaximum(numberOfTickets, maximumTickets)) {
+            purchaseLog.log(PurchaseEvent.OUTSIDE_MAXIMUM, numberOfTickets, maximumTickets);
+            return RejectionReason.OVER_MAXIMUM;
         } else {
-            logger.info("Successfully validated that tickets are meeting or below maximum");
+            purchaseLog.log(PurchaseEvent.WITHIN_MAXIMUM);
+            return null;
         }
     }
 
     /**
-     * Calculates and returns the number of seats that need reserving
+     * Returns the number of seats that need reserving
      * <p>
      * Business Rule 3 - The ticket purchaser declares how many and what type of tickets they want to buy.
      * Business Rule 6 - Infants do not pay for a ticket and are not allocated a seat. They will be sitting on an Adult's lap.
      *
-     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @param table the lookup table the order was validated against
+     * @param entry the order's entry in the table
      * @return the number of seats for booking
      */
-    private Integer getNumberOfSeats(TicketTypeRequest... ticketTypeRequests) {
-        int seats =  Arrays.stream(ticketTypeRequests)
-                .filter(ticket -> ticket.getTicketType() != TicketTypeRequest.Type.INFANT)
-                .mapToInt(TicketTypeRequest::getNoOfTickets)
-                .sum();
+    private int getNumberOfSeats(OrderLookupTable table, int entry) {
+        int seats = table.getSeats(entry);
 
-        logger.info(seats + " seats allocated for booking");
+        purchaseLog.log(PurchaseEvent.SEATS_ALLOCATED, seats);
 
         return seats;
     }
 
     /**
-     * Calculates and returns the total cost of all the tickets bought
+     * Returns the total cost of all the tickets bought
      * <p>
      * Business Rule 6 - Infants do not pay for a ticket and are not allocated a seat. They will be sitting on an Adult's lap.
      * Business Rule 2 - The ticket prices are based on the type of ticket (see table below).
@@ -137,59 +1111,33 @@ public class TicketServiceImpl implements TicketService {
      * |    CHILD         |    £10      |
      * |    ADULT         |    £20      |
      *
-     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @param table the lookup table the order was validated against
+     * @param entry the order's entry in the table
      * @return the total cost of all the tickets purchased
-     * @throws InvalidPurchaseException if there is a ticket type it does not recognise
-     */
-    private Integer calculateTotalCostOfTickets(TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
-        int cost =  Arrays.stream(ticketTypeRequests).mapToInt(ticket -> switch (ticket.getTicketType()) {
-            case ADULT -> ticket.getNoOfTickets() * ADULT_TICKET_PRICE;
-            case CHILD -> ticket.getNoOfTickets() * CHILD_TICKET_PRICE;
-            case INFANT -> 0; // Not good to hard code, better to get from service.
-        }).sum();
-        logger.info("Cost calculated as £" + cost);
+     */
+    private int calculateTotalCostOfTickets(OrderLookupTable table, int entry) {
+        int cost = table.getTotalCost(entry);
+        purchaseLog.log(PurchaseEvent.COST_CALCULATED, cost);
         return cost;
     }
 
     /**
-     * Validates there is at least 1 Adult present for every infant. Infants are not allocated a seat, so for every
-     * infant travelling there must be an Adult that it can sit on their lap.
-     * <p>
-     * Business Rule 6 - Infants do not pay for a ticket and are not allocated a seat.
-     * They will be sitting on an Adult's lap.
-     *
-     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
-     * @throws InvalidPurchaseException if there is a more infants than adults
+     * @param outcome the outcome packed by PurchaseOutcome
+     * @throws InvalidPurchaseException if the outcome is a rejection
      */
-    private void validateAdultToInfantRatioCorrect(TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
-
-        int adultTickets = Arrays.stream(ticketTypeRequests).filter(ticket -> ticket.getTicketType() == TicketTypeRequest.Type.ADULT).mapToInt(TicketTypeRequest::getNoOfTickets).sum();
-        int infantTickets = Arrays.stream(ticketTypeRequests).filter(ticket -> ticket.getTicketType() == TicketTypeRequest.Type.INFANT).mapToInt(TicketTypeRequest::getNoOfTickets).sum();
-
-        if(infantTickets > adultTickets) {
-            logger.info("Too few adult tickets purchased in relation to infant tickets");
-            throw new InvalidPurchaseException();
-        } else {
-            logger.info("Successfully validated there is at least one adult ticket for each infant travelling");
+    private void throwIfRejected(long outcome) throws InvalidPurchaseException {
+        if (!PurchaseOutcome.isSuccessful(outcome)) {
+            throw rejection(PurchaseOutcome.getRejectionReason(outcome));
         }
     }
 
     /**
-     * Business Rule 7 - Child and Infant tickets cannot be purchased without purchasing an Adult ticket.
+     * Creates the exception for a broken business rule
      *
-     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
-     * @throws InvalidPurchaseException if there is no adult tickets being purchased
+     * @param reason the business rule that was broken
+     * @return the shared stackless exception for the reason, or a new one with a stack trace if those are enabled
      */
-    private void validateChildOrInfantWithAdult(TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
-
-       boolean valid = Arrays.stream(ticketTypeRequests)
-                .anyMatch(ticket -> ticket.getTicketType() == TicketTypeRequest.Type.ADULT && ticket.getNoOfTickets() > 0);
-
-       if(valid) {
-           logger.info("Successfully validated there is at least one adult ticket for booking");
-       } else {
-           logger.info("There was not an adult ticket type being purchased");
-           throw new InvalidPurchaseException();
-       }
+    private InvalidPurchaseException rejection(RejectionReason reason) {
+        return REJECTION_STACK_TRACES ? new InvalidPurchaseException(reason) : InvalidPurchaseException.stackless(reason);
     }
 }
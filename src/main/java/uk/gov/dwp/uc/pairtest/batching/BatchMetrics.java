@@ -0,0 +1,95 @@
+package uk.gov.dwp.uc.pairtest.batching;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BatchMetrics.java
+ * Counts kept by a batching decorator for tuning its window: how large the batches turn out and how long
+ * callers wait for their batch to be sent.
+ */
+public final class BatchMetrics {
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchesSentWhenFull = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong largestBatch = new AtomicLong();
+    private final AtomicLong longestWaitNanos = new AtomicLong();
+
+    /**
+     * @param size the number of requests sent in the batch
+     * @param full true if the batch was sent because it reached its maximum size rather than its window closing
+     * @param waitNanos the sum over the batch's requests of the time each waited before the batch was sent
+     * @param longestWaitNanos the longest any one request in the batch waited
+     */
+    void recordBatch(int size, boolean full, long waitNanos, long longestWaitNanos) {
+        batches.increment();
+        if (full) {
+            batchesSentWhenFull.increment();
+        }
+        requests.add(size);
+        totalWaitNanos.add(waitNanos);
+        largestBatch.accumulateAndGet(size, Math::max);
+        this.longestWaitNanos.accumulateAndGet(longestWaitNanos, Math::max);
+    }
+
+    /**
+     * @return the number of batches sent
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the number of batches sent because they were full, the rest were sent when their window closed
+     */
+    public long getBatchesSentWhenFull() {
+        return batchesSentWhenFull.sum();
+    }
+
+    /**
+     * @return the number of requests sent across all batches
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the mean number of requests per batch, or 0 if no batch has been sent
+     */
+    public double getAverageBatchSize() {
+        long sent = batches.sum();
+        return sent == 0 ? 0 : (double) requests.sum() / sent;
+    }
+
+    /**
+     * @return the most requests sent in one batch
+     */
+    public long getLargestBatchSize() {
+        return largestBatch.get();
+    }
+
+    /**
+     * @return the mean time a request waited for its batch to be sent, or 0 if no request has been sent
+     */
+    public double getAverageWaitNanos() {
+        long sent = requests.sum();
+        return sent == 0 ? 0 : (double) totalWaitNanos.sum() / sent;
+    }
+
+    /**
+     * @return the longest time any request waited for its batch to be sent
+     */
+    public long getLongestWaitNanos() {
+        return longestWaitNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchMetrics{batches=%d, sentWhenFull=%d, requests=%d, averageBatchSize=%.2f, "
+                        + "largestBatchSize=%d, averageWaitMicros=%.1f, longestWaitMicros=%.1f}",
+                getBatches(), getBatchesSentWhenFull(), getRequests(), getAverageBatchSize(), getLargestBatchSize(),
+                getAverageWaitNanos() / 1_000, getLongestWaitNanos() / 1_000.0);
+    }
+}
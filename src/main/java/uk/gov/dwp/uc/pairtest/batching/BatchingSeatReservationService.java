@@ -0,0 +1,84 @@
+package uk.gov.dwp.uc.pairtest.batching;
+
+import thirdparty.seatbooking.BulkSeatReservationService;
+import thirdparty.seatbooking.SeatReservationService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchingSeatReservationService.java
+ * A SeatReservationService that gathers reservations made at the same time by different purchases and makes
+ * them with one bulk call, saving a round trip per purchase.
+ * <p>
+ * Holds, which purchases take before paying, are gathered the same way into bulk holds, in batches of their own.
+ * Each caller still blocks until its own reservation or hold is made and sees only its own failure and hold id.
+ * Callers wait at most the window for others to join theirs, so the window trades a little latency for fewer
+ * round trips; the metrics show how full batches get and how long callers wait.
+ * <p>
+ * Only reservations and holds without a screening are batched, as the bulk calls have no screening. Every other
+ * call is passed straight to the delegate. That includes the confirms and releases that complete holds, which
+ * name a single hold and are only made once its payment has been decided, so there is nothing to gather them with.
+ */
+public class BatchingSeatReservationService implements SeatReservationService {
+
+    private final BulkSeatReservationService delegate;
+    private final MicroBatcher batcher;
+    private final MicroBatcher holdBatcher;
+
+    /**
+     * @param delegate the service the batches are sent to
+     * @param maximumBatchSize the most reservations or holds sent in one bulk call, a full batch is sent without waiting
+     * @param window the longest a reservation or hold waits for others to join its batch
+     * @param unit the unit of the window
+     */
+    public BatchingSeatReservationService(BulkSeatReservationService delegate, int maximumBatchSize, long window, TimeUnit unit) {
+        this.delegate = delegate;
+        this.batcher = new MicroBatcher((accountIds, seats, results) -> delegate.reserveSeats(accountIds, seats),
+                maximumBatchSize, window, unit);
+        this.holdBatcher = new MicroBatcher(delegate::holdSeats, maximumBatchSize, window, unit);
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        batcher.submit(accountId, totalSeatsToAllocate);
+    }
+
+    @Override
+    public void reserveSeat(long accountId, long screeningId, int totalSeatsToAllocate) {
+        delegate.reserveSeat(accountId, screeningId, totalSeatsToAllocate);
+    }
+
+    @Override
+    public long holdSeats(long accountId, int totalSeatsToAllocate) {
+        return holdBatcher.submit(accountId, totalSeatsToAllocate);
+    }
+
+    @Override
+    public long holdSeats(long accountId, long screeningId, int totalSeatsToAllocate) {
+        return delegate.holdSeats(accountId, screeningId, totalSeatsToAllocate);
+    }
+
+    @Override
+    public void confirmHold(long holdId) {
+        delegate.confirmHold(holdId);
+    }
+
+    @Override
+    public void releaseHold(long holdId) {
+        delegate.releaseHold(holdId);
+    }
+
+    /**
+     * @return the batch size and wait time metrics of reservations
+     */
+    public BatchMetrics getMetrics() {
+        return batcher.getMetrics();
+    }
+
+    /**
+     * @return the batch size and wait time metrics of holds
+     */
+    public BatchMetrics getHoldMetrics() {
+        return holdBatcher.getMetrics();
+    }
+}
@@ -0,0 +1,68 @@
+package uk.gov.dwp.uc.pairtest.batching;
+
+import thirdparty.paymentgateway.BulkTicketPaymentService;
+import thirdparty.paymentgateway.ForwardingTicketPaymentService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchingTicketPaymentService.java
+ * A TicketPaymentService that gathers payments made at the same time by different purchases and submits them
+ * to the payment provider together, saving a round trip per purchase.
+ * <p>
+ * When coalescing is on, payments for the same account within one batch are taken as a single charge for their
+ * total, so the provider sees one charge per account per window. Every caller still blocks until its payment is
+ * taken and sees only its own failure; the callers whose payments were coalesced share the outcome of the
+ * combined charge.
+ * <p>
+ * Payments made with an idempotency key and refunds are passed straight to the provider, when it supports them,
+ * as a bulk submission cannot carry either.
+ */
+public class BatchingTicketPaymentService extends ForwardingTicketPaymentService {
+
+    private final MicroBatcher batcher;
+    private final CoalescingBulkCall coalescer;
+
+    /**
+     * @param delegate the service the batches are submitted to
+     * @param maximumBatchSize the most payments submitted together, a full batch is submitted without waiting
+     * @param window the longest a payment waits for others to join its batch
+     * @param unit the unit of the window
+     * @param coalesce whether payments for the same account in one batch are taken as one charge
+     */
+    public BatchingTicketPaymentService(BulkTicketPaymentService delegate, int maximumBatchSize, long window, TimeUnit unit,
+                                        boolean coalesce) {
+        super(delegate);
+        MicroBatcher.BulkCall bulkCall = (accountIds, amounts, results) -> delegate.makePayments(accountIds, amounts);
+        this.coalescer = coalesce ? new CoalescingBulkCall(bulkCall) : null;
+        this.batcher = new MicroBatcher(coalesce ? coalescer : bulkCall, maximumBatchSize, window, unit);
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        batcher.submit(accountId, totalAmountToPay);
+    }
+
+    @Override
+    public void makePayment(long idempotencyKey, long accountId, int totalAmountToPay) {
+        if (takesKeys()) {
+            super.makePayment(idempotencyKey, accountId, totalAmountToPay);
+        } else {
+            makePayment(accountId, totalAmountToPay);
+        }
+    }
+
+    /**
+     * @return the batch size and wait time metrics, counting payments as they were made rather than as charged
+     */
+    public BatchMetrics getMetrics() {
+        return batcher.getMetrics();
+    }
+
+    /**
+     * @return the number of payments that were taken as part of another payment's charge, 0 without coalescing
+     */
+    public long getCoalescedPayments() {
+        return coalescer == null ? 0 : coalescer.getCoalescedRequests();
+    }
+}
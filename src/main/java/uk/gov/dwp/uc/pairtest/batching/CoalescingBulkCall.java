@@ -0,0 +1,79 @@
+package uk.gov.dwp.uc.pairtest.batching;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CoalescingBulkCall.java
+ * Merges the requests of a batch that share an account into one request for the sum of their values, makes
+ * the bulk call with the merged requests and gives each original request the outcome, and result, of the request it
+ * was merged into.
+ */
+final class CoalescingBulkCall implements MicroBatcher.BulkCall {
+
+    private final MicroBatcher.BulkCall delegate;
+
+    // Requests that were merged into another request for the same account rather than sent on their own
+    private final LongAdder coalesced = new LongAdder();
+
+    CoalescingBulkCall(MicroBatcher.BulkCall delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public RuntimeException[] call(long[] accountIds, int[] values, long[] results) {
+        int size = accountIds.length;
+        long[] mergedAccountIds = new long[size];
+        int[] mergedValues = new int[size];
+        // For each request, the merged request it went into
+        int[] mergedInto = new int[size];
+        Map<Long, Integer> openRequestByAccount = new HashMap<>();
+        int merged = 0;
+
+        for (int i = 0; i < size; i++) {
+            Integer open = openRequestByAccount.get(accountIds[i]);
+            if (open != null && canAdd(mergedValues[open], values[i])) {
+                mergedValues[open] += values[i];
+                mergedInto[i] = open;
+                continue;
+            }
+
+            // Either the account's first request or one whose sum would overflow, which starts a new request
+            mergedAccountIds[merged] = accountIds[i];
+            mergedValues[merged] = values[i];
+            mergedInto[i] = merged;
+            openRequestByAccount.put(accountIds[i], merged);
+            merged++;
+        }
+
+        if (merged == size) {
+            return delegate.call(accountIds, values, results);
+        }
+        coalesced.add(size - merged);
+
+        long[] mergedResults = new long[merged];
+        RuntimeException[] mergedFailures = delegate.call(Arrays.copyOf(mergedAccountIds, merged), Arrays.copyOf(mergedValues, merged),
+                mergedResults);
+        if (mergedFailures == null || mergedFailures.length != merged) {
+            // Left for MicroBatcher to report as a failed bulk call
+            return mergedFailures;
+        }
+        RuntimeException[] failures = new RuntimeException[size];
+        for (int i = 0; i < size; i++) {
+            failures[i] = mergedFailures[mergedInto[i]];
+            results[i] = mergedResults[mergedInto[i]];
+        }
+        return failures;
+    }
+
+    long getCoalescedRequests() {
+        return coalesced.sum();
+    }
+
+    private static boolean canAdd(int value, int addition) {
+        long sum = (long) value + addition;
+        return sum >= Integer.MIN_VALUE && sum <= Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,199 @@
+package uk.gov.dwp.uc.pairtest.batching;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MicroBatcher.java
+ * Gathers (account id, value) requests from concurrent callers into batches, sends each batch with one bulk
+ * call and hands every caller back its own outcome, along with its own result for calls that have one.
+ * <p>
+ * A batch is sent when it reaches its maximum size or when its window closes, whichever comes first. There is
+ * no background thread: the caller that opens a batch waits out the window and sends it, the other callers
+ * wait for it to be sent. A caller whose request fails gets that failure; the rest of the batch is unaffected.
+ */
+final class MicroBatcher {
+
+    /**
+     * The bulk operation a batch is sent with
+     */
+    @FunctionalInterface
+    interface BulkCall {
+
+        /**
+         * @param results filled in with the result of each request that succeeded, for calls that have one
+         * @return the failure of each request, null where the request succeeded
+         */
+        RuntimeException[] call(long[] accountIds, int[] values, long[] results);
+    }
+
+    private final BulkCall bulkCall;
+    private final int maximumBatchSize;
+    private final long windowNanos;
+    private final BatchMetrics metrics = new BatchMetrics();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // The batch currently taking requests, guarded by lock
+    private Batch open;
+
+    MicroBatcher(BulkCall bulkCall, int maximumBatchSize, long window, TimeUnit unit) {
+        if (maximumBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be at least 1");
+        }
+        if (window < 0) {
+            throw new IllegalArgumentException("Window must not be negative");
+        }
+        this.bulkCall = bulkCall;
+        this.maximumBatchSize = maximumBatchSize;
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * Adds a request to the open batch and waits for that batch to be sent
+     *
+     * @return the result the bulk call gave this request, 0 for calls without results
+     * @throws RuntimeException the failure of this request, if it failed
+     */
+    long submit(long accountId, int value) {
+        Batch batch;
+        int slot;
+        boolean leader;
+        lock.lock();
+        try {
+            batch = open;
+            leader = batch == null;
+            if (leader) {
+                batch = new Batch(maximumBatchSize);
+                open = batch;
+            }
+            slot = batch.add(accountId, value, System.nanoTime());
+            if (batch.size == maximumBatchSize) {
+                open = null;
+                batch.full = true;
+                batch.closed.countDown();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (leader) {
+            awaitWindow(batch);
+            send(batch);
+        } else {
+            batch.awaitSent();
+        }
+
+        RuntimeException failure = batch.failures[slot];
+        if (failure != null) {
+            throw failure;
+        }
+        return batch.results[slot];
+    }
+
+    BatchMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void awaitWindow(Batch batch) {
+        try {
+            batch.closed.await(windowNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            // Send the batch early rather than leave the other callers waiting on it
+            Thread.currentThread().interrupt();
+        }
+
+        lock.lock();
+        try {
+            if (open == batch) {
+                open = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void send(Batch batch) {
+        int size = batch.size;
+        long sentAt = System.nanoTime();
+        long totalWait = 0;
+        long longestWait = 0;
+        for (int i = 0; i < size; i++) {
+            long wait = sentAt - batch.enqueuedAt[i];
+            totalWait += wait;
+            longestWait = Math.max(longestWait, wait);
+        }
+
+        RuntimeException[] failures;
+        long[] results = new long[size];
+        try {
+            failures = bulkCall.call(Arrays.copyOf(batch.accountIds, size), Arrays.copyOf(batch.values, size), results);
+            if (failures == null || failures.length != size) {
+                failures = failAll(size, new IllegalStateException(
+                        "Bulk call returned " + (failures == null ? "no" : failures.length) + " outcomes for " + size + " requests"));
+            }
+        } catch (RuntimeException e) {
+            failures = failAll(size, e);
+        }
+
+        metrics.recordBatch(size, batch.full, totalWait, longestWait);
+        batch.failures = failures;
+        batch.results = results;
+        batch.sent.countDown();
+    }
+
+    private static RuntimeException[] failAll(int size, RuntimeException failure) {
+        RuntimeException[] failures = new RuntimeException[size];
+        Arrays.fill(failures, failure);
+        return failures;
+    }
+
+    private static final class Batch {
+
+        private final long[] accountIds;
+        private final int[] values;
+        private final long[] enqueuedAt;
+        private int size;
+
+        // Set when the batch reached its maximum size before its window closed
+        private boolean full;
+
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final CountDownLatch sent = new CountDownLatch(1);
+
+        // Published to waiting callers by sent
+        private RuntimeException[] failures;
+        private long[] results;
+
+        private Batch(int capacity) {
+            this.accountIds = new long[capacity];
+            this.values = new int[capacity];
+            this.enqueuedAt = new long[capacity];
+        }
+
+        private int add(long accountId, int value, long now) {
+            accountIds[size] = accountId;
+            values[size] = value;
+            enqueuedAt[size] = now;
+            return size++;
+        }
+
+        private void awaitSent() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    sent.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // The request is already in the batch, so its outcome has to be waited for
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * Immutable Object
+ * <p>
+ * The outcome of each order in a batch purchase, in the order they were submitted. An order either has a
+ * PurchaseResult, which may be a rejection, or failed because the seat reservation or payment service threw.
+ */
+public final class BatchPurchaseResult {
+
+    private final PurchaseResult[] results;
+    private final RuntimeException[] failures;
+
+    /**
+     * @param results the result of each order, null where the order failed; not copied
+     * @param failures what each failed order threw, null where it did not fail; not copied
+     */
+    public BatchPurchaseResult(PurchaseResult[] results, RuntimeException[] failures) {
+        if (results.length != failures.length) {
+            throw new IllegalArgumentException("There must be a result or failure for every order");
+        }
+        this.results = results;
+        this.failures = failures;
+    }
+
+    public int size() {
+        return results.length;
+    }
+
+    /**
+     * @param index the position of the order in the batch
+     * @return the order's seats and amount or rejection, or null if the order failed
+     */
+    public PurchaseResult getResult(int index) {
+        return results[index];
+    }
+
+    /**
+     * @param index the position of the order in the batch
+     * @return what the seat reservation or payment service threw for the order, or null if it did not fail
+     */
+    public RuntimeException getFailure(int index) {
+        return failures[index];
+    }
+
+    public boolean isSuccessful(int index) {
+        return results[index] != null && results[index].isSuccessful();
+    }
+
+    public boolean isRejected(int index) {
+        return results[index] != null && !results[index].isSuccessful();
+    }
+
+    public boolean isFailed(int index) {
+        return failures[index] != null;
+    }
+
+    public int getSuccessfulCount() {
+        int count = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (isSuccessful(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getRejectedCount() {
+        int count = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (isRejected(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getFailedCount() {
+        int count = 0;
+        for (RuntimeException failure : failures) {
+            if (failure != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
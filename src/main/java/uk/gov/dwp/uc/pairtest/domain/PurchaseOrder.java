@@ -0,0 +1,143 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * Mutable Object
+ * <p>
+ * The tickets of a purchase held as one counter per ticket type, for callers that already know how many of
+ * each type they want. Unlike TicketTypeRequest it can be reset and reused, so a request handler can make a
+ * purchase without allocating anything. It is not thread safe; each thread should use its own, for example
+ * the one returned by {@link #forCurrentThread()}.
+ */
+public final class PurchaseOrder {
+
+    private static final TicketTypeRequest.Type[] TYPES = TicketTypeRequest.Type.values();
+
+    private static final ThreadLocal<PurchaseOrder> PER_THREAD = ThreadLocal.withInitial(PurchaseOrder::new);
+
+    // Number of tickets of each type, indexed by ordinal
+    private final int[] tickets = new int[TYPES.length];
+
+    // Number of times tickets were added, the equivalent of the number of ticket type requests
+    private int numberOfRequests;
+
+    // Whether zero or a negative number of tickets was ever added
+    private boolean containsNonPositiveRequest;
+
+    // Held as a long so that very large requests cannot overflow back into the valid range
+    private long totalTickets;
+
+    /**
+     * Returns this thread's order, emptied. The same instance is returned on every call from the same thread,
+     * so it must not be kept or handed to another thread.
+     *
+     * @return an empty order owned by the current thread
+     */
+    public static PurchaseOrder forCurrentThread() {
+        return PER_THREAD.get().reset();
+    }
+
+    /**
+     * Creates an order with the same tickets as the ticket type requests
+     *
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets
+     * @return a new order
+     */
+    public static PurchaseOrder of(TicketTypeRequest... ticketTypeRequests) {
+        return new PurchaseOrder().addAll(ticketTypeRequests);
+    }
+
+    /**
+     * Adds tickets of a type, in the same way as a ticket type request would
+     *
+     * @param type the type of ticket
+     * @param noOfTickets the number of tickets; zero or negative numbers are recorded and will be rejected
+     * @return this order
+     */
+    public PurchaseOrder add(TicketTypeRequest.Type type, int noOfTickets) {
+        if (noOfTickets <= 0) {
+            containsNonPositiveRequest = true;
+        }
+        tickets[type.ordinal()] += noOfTickets;
+        totalTickets += noOfTickets;
+        numberOfRequests++;
+        return this;
+    }
+
+    public PurchaseOrder add(TicketTypeRequest ticketTypeRequest) {
+        return add(ticketTypeRequest.getTicketType(), ticketTypeRequest.getNoOfTickets());
+    }
+
+    public PurchaseOrder addAll(TicketTypeRequest... ticketTypeRequests) {
+        if (ticketTypeRequests != null) {
+            for (TicketTypeRequest ticketTypeRequest : ticketTypeRequests) {
+                add(ticketTypeRequest);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Empties the order so it can be reused
+     *
+     * @return this order
+     */
+    public PurchaseOrder reset() {
+        for (int i = 0; i < tickets.length; i++) {
+            tickets[i] = 0;
+        }
+        numberOfRequests = 0;
+        containsNonPositiveRequest = false;
+        totalTickets = 0;
+        return this;
+    }
+
+    public int getTickets(TicketTypeRequest.Type type) {
+        return tickets[type.ordinal()];
+    }
+
+    public long getTotalTickets() {
+        return totalTickets;
+    }
+
+    public boolean isEmpty() {
+        return numberOfRequests == 0;
+    }
+
+    public boolean containsNonPositiveRequest() {
+        return containsNonPositiveRequest;
+    }
+
+    /**
+     * Converts the order back into ticket type requests, one per type with tickets, for the varargs API.
+     * Only the per-type totals are kept, so an order that added zero or negative tickets, or overflowed a
+     * per-type total, cannot be converted without turning it into a different order.
+     *
+     * @return the order's tickets as ticket type requests
+     * @throws IllegalStateException if the order added zero or negative tickets, or a per-type total overflowed
+     */
+    public TicketTypeRequest[] toTicketTypeRequests() {
+        if (containsNonPositiveRequest) {
+            throw new IllegalStateException("An order with zero or negative tickets cannot be converted");
+        }
+        long countedTickets = 0;
+        int types = 0;
+        for (int count : tickets) {
+            countedTickets += count;
+            if (count != 0) {
+                types++;
+            }
+        }
+        if (countedTickets != totalTickets) {
+            throw new IllegalStateException("An order with more tickets of a type than an int holds cannot be converted");
+        }
+
+        TicketTypeRequest[] ticketTypeRequests = new TicketTypeRequest[types];
+        int next = 0;
+        for (TicketTypeRequest.Type type : TYPES) {
+            if (tickets[type.ordinal()] != 0) {
+                ticketTypeRequests[next++] = TicketTypeRequest.of(type, tickets[type.ordinal()]);
+            }
+        }
+        return ticketTypeRequests;
+    }
+}
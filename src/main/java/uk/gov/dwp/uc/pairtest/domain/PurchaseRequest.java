@@ -0,0 +1,41 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+import java.util.Arrays;
+
+/**
+ * Immutable Object
+ * <p>
+ * One account's order within a batch purchase.
+ */
+public final class PurchaseRequest {
+
+    private final long accountId;
+    private final TicketTypeRequest[] ticketTypeRequests;
+
+    /**
+     * @param accountId a value indicating the customer's ID
+     * @param ticketTypeRequests a list of tickets indicating the type and number of tickets; copied
+     */
+    public PurchaseRequest(long accountId, TicketTypeRequest... ticketTypeRequests) {
+        this.accountId = accountId;
+        this.ticketTypeRequests = ticketTypeRequests == null ? null : ticketTypeRequests.clone();
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public int getNumberOfTicketTypeRequests() {
+        return ticketTypeRequests == null ? 0 : ticketTypeRequests.length;
+    }
+
+    public TicketTypeRequest getTicketTypeRequest(int index) {
+        return ticketTypeRequests[index];
+    }
+
+    @Override
+    public String toString() {
+        return "PurchaseRequest[accountId=" + accountId + ", ticketTypeRequests="
+                + Arrays.toString(ticketTypeRequests) + "]";
+    }
+}
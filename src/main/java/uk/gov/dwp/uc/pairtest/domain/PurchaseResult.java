@@ -0,0 +1,101 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * Immutable Object
+ * <p>
+ * The outcome of a purchase: either the seats reserved and the amount paid, or the business rule that
+ * rejected it. Rejected results are preallocated, one per reason, so rejecting an order allocates nothing.
+ */
+public final class PurchaseResult {
+
+    private static final PurchaseResult[] REJECTED = createRejected();
+
+    private final RejectionReason rejectionReason;
+    private final int seatsReserved;
+    private final int amountPaid;
+
+    private PurchaseResult(RejectionReason rejectionReason, int seatsReserved, int amountPaid) {
+        this.rejectionReason = rejectionReason;
+        this.seatsReserved = seatsReserved;
+        this.amountPaid = amountPaid;
+    }
+
+    /**
+     * @param seatsReserved the number of seats that were reserved
+     * @param amountPaid the amount in £ that was paid
+     * @return the result of a purchase that went through
+     */
+    public static PurchaseResult successful(int seatsReserved, int amountPaid) {
+        return new PurchaseResult(null, seatsReserved, amountPaid);
+    }
+
+    /**
+     * @param reason the business rule that was broken
+     * @return the shared result of a purchase rejected for that reason
+     */
+    public static PurchaseResult rejected(RejectionReason reason) {
+        return REJECTED[reason.ordinal()];
+    }
+
+    public boolean isSuccessful() {
+        return rejectionReason == null;
+    }
+
+    /**
+     * @return the business rule that was broken, or null if the purchase went through
+     */
+    public RejectionReason getRejectionReason() {
+        return rejectionReason;
+    }
+
+    /**
+     * @return the number of seats that were reserved, 0 if the purchase was rejected
+     */
+    public int getSeatsReserved() {
+        return seatsReserved;
+    }
+
+    /**
+     * @return the amount in £ that was paid, 0 if the purchase was rejected
+     */
+    public int getAmountPaid() {
+        return amountPaid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PurchaseResult other)) {
+            return false;
+        }
+        return rejectionReason == other.rejectionReason
+                && seatsReserved == other.seatsReserved
+                && amountPaid == other.amountPaid;
+    }
+
+    @Override
+    public int hashCode() {
+        // Ordinal rather than the enum's identity hash so the value is the same in every JVM
+        int result = rejectionReason == null ? 0 : rejectionReason.ordinal() + 1;
+        result = 31 * result + seatsReserved;
+        return 31 * result + amountPaid;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccessful()
+                ? "PurchaseResult[seatsReserved=" + seatsReserved + ", amountPaid=" + amountPaid + "]"
+                : "PurchaseResult[rejected=" + rejectionReason + "]";
+    }
+
+    private static PurchaseResult[] createRejected() {
+        RejectionReason[] reasons = RejectionReason.values();
+        PurchaseResult[] results = new PurchaseResult[reasons.length];
+        for (RejectionReason reason : reasons) {
+            results[reason.ordinal()] = new PurchaseResult(reason, 0, 0);
+        }
+        return results;
+    }
+}
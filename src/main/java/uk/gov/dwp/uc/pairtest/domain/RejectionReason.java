@@ -0,0 +1,25 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * The business rule that caused a purchase to be rejected
+ */
+public enum RejectionReason {
+
+    INVALID_ACCOUNT("Account id must be greater than zero"),
+    EMPTY_ORDER("No tickets were requested"),
+    NON_POSITIVE_COUNT("A ticket request had zero or a negative number of tickets"),
+    OVER_MAXIMUM("Number of tickets was outside the minimum and maximum allowed"),
+    INFANTS_EXCEED_ADULTS("Too few adult tickets purchased in relation to infant tickets"),
+    NO_ADULT("There was not an adult ticket type being purchased"),
+    MALFORMED_REQUEST("A ticket request or its ticket type was missing");
+
+    private final String description;
+
+    RejectionReason(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -2,18 +2,42 @@ package uk.gov.dwp.uc.pairtest.domain;
 
 /**
  * Immutable Object
+ * <p>
+ * Requests for between 1 and MAXIMUM_CACHED_TICKETS tickets of a type can be shared, so
+ * {@link #of(Type, int)} hands out a canonical instance for those rather than allocating a new one.
  */
 
-public class TicketTypeRequest {
+public final class TicketTypeRequest {
 
-    private int noOfTickets;
-    private Type type;
+    // Largest number of tickets for which of() returns a shared instance, matching the default purchase limit
+    public static final int MAXIMUM_CACHED_TICKETS = 20;
+
+    // Canonical instances indexed by type ordinal then number of tickets; index 0 is unused
+    private static final TicketTypeRequest[][] CACHE = createCache();
+
+    private final int noOfTickets;
+    private final Type type;
 
     public TicketTypeRequest(Type type, int noOfTickets) {
         this.type = type;
         this.noOfTickets = noOfTickets;
     }
 
+    /**
+     * Returns a request for a number of tickets of a type, shared with every other caller when the number
+     * is between 1 and MAXIMUM_CACHED_TICKETS and newly created otherwise.
+     *
+     * @param type the type of ticket
+     * @param noOfTickets the number of tickets
+     * @return a request equal to new TicketTypeRequest(type, noOfTickets)
+     */
+    public static TicketTypeRequest of(Type type, int noOfTickets) {
+        if (type != null && noOfTickets >= 1 && noOfTickets <= MAXIMUM_CACHED_TICKETS) {
+            return CACHE[type.ordinal()][noOfTickets];
+        }
+        return new TicketTypeRequest(type, noOfTickets);
+    }
+
     public int getNoOfTickets() {
         return noOfTickets;
     }
@@ -22,6 +46,39 @@ public class TicketTypeRequest {
         return type;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TicketTypeRequest other)) {
+            return false;
+        }
+        return noOfTickets == other.noOfTickets && type == other.type;
+    }
+
+    @Override
+    public int hashCode() {
+        // Ordinal rather than the enum's identity hash so the value is the same in every JVM
+        return 31 * (type == null ? 0 : type.ordinal() + 1) + noOfTickets;
+    }
+
+    @Override
+    public String toString() {
+        return "TicketTypeRequest[type=" + type + ", noOfTickets=" + noOfTickets + "]";
+    }
+
+    private static TicketTypeRequest[][] createCache() {
+        Type[] types = Type.values();
+        TicketTypeRequest[][] cache = new TicketTypeRequest[types.length][MAXIMUM_CACHED_TICKETS + 1];
+        for (Type type : types) {
+            for (int noOfTickets = 1; noOfTickets <= MAXIMUM_CACHED_TICKETS; noOfTickets++) {
+                cache[type.ordinal()][noOfTickets] = new TicketTypeRequest(type, noOfTickets);
+            }
+        }
+        return cache;
+    }
+
     public enum Type {
         ADULT, CHILD , INFANT
     }
@@ -0,0 +1,16 @@
+package uk.gov.dwp.uc.pairtest.exception;
+
+/**
+ * Thrown when a purchase runs out of time waiting on the seat reservation or payment service. The calls still
+ * running are settled once they finish: undone as far as the services allow, except that a payment which cannot
+ * be refunded, or was made with an idempotency key, keeps the seats it was for.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    /**
+     * @param message which call the deadline passed during
+     */
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
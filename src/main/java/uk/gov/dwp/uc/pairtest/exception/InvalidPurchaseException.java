@@ -1,5 +1,69 @@
 package uk.gov.dwp.uc.pairtest.exception;
 
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+
+/**
+ * Thrown when a purchase breaks one of the business rules. The reason says which rule fired.
+ * <p>
+ * Rejections are expected, frequent and always raised from the same place, so a stack trace tells nobody
+ * anything. {@link #stackless(RejectionReason)} hands out one preallocated instance per reason that never
+ * captures a stack trace, making a rejection free of both the stack walk and the allocation.
+ */
 public class InvalidPurchaseException extends RuntimeException {
 
+    // One shared, stackless instance per reason, indexed by ordinal
+    private static final InvalidPurchaseException[] STACKLESS = createStackless();
+
+    private final RejectionReason reason;
+
+    /**
+     * Creates an exception that does not say which rule was broken, as callers written before rejection reasons
+     * existed still do
+     */
+    public InvalidPurchaseException() {
+        this.reason = null;
+    }
+
+    /**
+     * Creates an exception that captures a stack trace where it was created, like any other exception
+     *
+     * @param reason the business rule that was broken
+     */
+    public InvalidPurchaseException(RejectionReason reason) {
+        super(reason.getDescription());
+        this.reason = reason;
+    }
+
+    private InvalidPurchaseException(RejectionReason reason, boolean writableStackTrace) {
+        // Suppression is disabled and the cause fixed as null so that nothing can alter the shared instances
+        super(reason.getDescription(), null, false, writableStackTrace);
+        this.reason = reason;
+    }
+
+    /**
+     * Returns the preallocated exception for a reason. It has an empty stack trace and is shared by every
+     * caller, so it must not be relied on for identity or modified.
+     *
+     * @param reason the business rule that was broken
+     * @return the shared exception for that reason
+     */
+    public static InvalidPurchaseException stackless(RejectionReason reason) {
+        return STACKLESS[reason.ordinal()];
+    }
+
+    /**
+     * @return the business rule that was broken, or null if the exception was created without one
+     */
+    public RejectionReason getReason() {
+        return reason;
+    }
+
+    private static InvalidPurchaseException[] createStackless() {
+        RejectionReason[] reasons = RejectionReason.values();
+        InvalidPurchaseException[] exceptions = new InvalidPurchaseException[reasons.length];
+        for (RejectionReason reason : reasons) {
+            exceptions[reason.ordinal()] = new InvalidPurchaseException(reason, false);
+        }
+        return exceptions;
+    }
 }
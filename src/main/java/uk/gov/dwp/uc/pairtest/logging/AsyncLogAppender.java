@@ -0,0 +1,215 @@
+package uk.gov.dwp.uc.pairtest.logging;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * AsyncLogAppender.java
+ * Hands purchase events from request threads to a single background thread that writes them to a
+ * java.util.logging Logger, so request threads never wait on a handler's lock or on log I/O.
+ * <p>
+ * Events are written into a bounded ring buffer of preallocated slots holding only primitives, so appending
+ * allocates nothing. Any number of threads may append; a slot is claimed with a single compare-and-set.
+ * When the buffer is full the event is dropped and counted rather than blocking the caller.
+ * <p>
+ * The time and thread of each event are taken when it is appended and stored in its slot, so records carry
+ * when and where the event happened however far behind the writer is.
+ */
+public class AsyncLogAppender implements AutoCloseable {
+
+    // Number of events that can be waiting to be written when none is given
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    // How long the writer sleeps when there is nothing to write
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final PurchaseEvent[] EVENTS = PurchaseEvent.values();
+
+    private final Logger target;
+    private final int mask;
+
+    // Per slot: the position it is next expected to be written at, or that position plus one once written
+    private final AtomicLongArray sequences;
+    private final int[] events;
+    private final long[] firstParameters;
+    private final long[] secondParameters;
+    private final long[] epochMillis;
+    private final long[] threadIds;
+
+    // Next position to be claimed by an appending thread
+    private final AtomicLong tail = new AtomicLong();
+
+    // Next position to be written out, only touched by the writer thread
+    private long head;
+
+    // Position the writer has written out up to, for flush
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread writer;
+
+    private volatile boolean closed;
+
+    /**
+     * @param target the Logger the events are written to, from the background thread
+     * @param capacity the number of events that can be waiting, rounded up to a power of two
+     */
+    public AsyncLogAppender(Logger target, int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.target = target;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.events = new int[size];
+        this.firstParameters = new long[size];
+        this.secondParameters = new long[size];
+        this.epochMillis = new long[size];
+        this.threadIds = new long[size];
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+
+        this.writer = new Thread(this::writeEvents, "purchase-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues an event to be written. Never blocks and never allocates.
+     *
+     * @return false if the buffer was full or the appender closed, in which case the event is dropped
+     */
+    public boolean append(PurchaseEvent event, long firstParameter, long secondParameter) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long available = sequences.get(slot) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (available < 0) {
+                // The writer has not yet freed this slot from the previous lap
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+
+        events[slot] = event.ordinal();
+        firstParameters[slot] = firstParameter;
+        secondParameters[slot] = secondParameter;
+        epochMillis[slot] = System.currentTimeMillis();
+        threadIds[slot] = Thread.currentThread().getId();
+        // Publishes the fields above to the writer
+        sequences.lazySet(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * @return the number of events that were dropped because the buffer was full or the appender closed
+     */
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    /**
+     * Waits until every event appended before this call has been written, or the timeout passes
+     *
+     * @return true if everything was written in time
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (written.get() < target) {
+            if (System.nanoTime() - deadline >= 0 || !writer.isAlive()) {
+                return written.get() >= target;
+            }
+            LockSupport.unpark(writer);
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting events, writes out those already queued and stops the background thread
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeEvents() {
+        while (true) {
+            int count = drain();
+            if (count == 0) {
+                if (closed && head == tail.get()) {
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private int drain() {
+        int count = 0;
+        while (true) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                return count;
+            }
+
+            PurchaseEvent event = EVENTS[events[slot]];
+            long first = firstParameters[slot];
+            long second = secondParameters[slot];
+            long millis = epochMillis[slot];
+            long threadId = threadIds[slot];
+            // Hands the slot back to appending threads for the next lap
+            sequences.lazySet(slot, head + mask + 1);
+            head++;
+
+            write(event, first, second, millis, threadId);
+            written.lazySet(head);
+            count++;
+        }
+    }
+
+    private void write(PurchaseEvent event, long first, long second, long millis, long threadId) {
+        try {
+            LogRecord record = new LogRecord(Level.INFO, event.getPattern());
+            record.setInstant(Instant.ofEpochMilli(millis));
+            record.setLongThreadID(threadId);
+            record.setLoggerName(target.getName());
+            record.setSourceClassName(target.getName());
+            record.setSourceMethodName(event.name());
+            record.setParameters(event.toParameters(first, second));
+            target.log(record);
+        } catch (RuntimeException e) {
+            // A failing handler must not stop the writer, or the buffer would fill and every event be dropped
+        }
+    }
+}
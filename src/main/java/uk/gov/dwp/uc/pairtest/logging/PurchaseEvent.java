@@ -0,0 +1,54 @@
+package uk.gov.dwp.uc.pairtest.logging;
+
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+
+/**
+ * The things that happen during a purchase that are worth logging. Each carries a java.util.logging
+ * message pattern; its parameters are recorded as primitives and only turned into objects when the
+ * message is written out.
+ */
+public enum PurchaseEvent {
+
+    INPUT_INVALID("Invalid input parameters"),
+    INPUT_VALID("Input parameters successfully validated"),
+    OUTSIDE_MAXIMUM("Tried to purchase {0,number,#} tickets, where minimum is 1 and maximum is {1,number,#}"),
+    WITHIN_MAXIMUM("Successfully validated that tickets are meeting or below maximum"),
+    RULE_BROKEN("{0}") {
+        @Override
+        Object[] toParameters(long first, long second) {
+            // The first parameter is the ordinal of the rejection reason
+            return new Object[] {RejectionReason.values()[(int) first].getDescription()};
+        }
+    },
+    RULES_VALID("Successfully validated there is an adult ticket for booking and for each infant travelling"),
+    SEATS_ALLOCATED("{0,number,#} seats allocated for booking"),
+    COST_CALCULATED("Cost calculated as £{0,number,#}"),
+    LOOKUP_TABLE_REBUILT("Rebuilt order lookup table for a maximum of {0,number,#} tickets"),
+    BATCH_VALIDATED("Validated a batch of {0,number,#} orders, {1,number,#} rejected"),
+    HOLD_RELEASED("Released seat hold {0,number,#} after payment failed"),
+    DUPLICATE_PURCHASE("Returned the earlier outcome of the purchase with idempotency key {0,number,#}"),
+    PAYMENT_REFUNDED("Refunded £{0,number,#} to account {1,number,#} after its seats could not be held"),
+    LATE_PAYMENT_KEPT("Payment of £{0,number,#} from account {1,number,#} was taken after its purchase timed out and could not be refunded, so its seats were kept"),
+    DEADLINE_HOLD_RELEASED("Released seat hold {0,number,#} after its purchase timed out"),
+    DEADLINE_PAYMENT_REFUNDED("Refunded £{0,number,#} to account {1,number,#} after its purchase timed out"),
+    SEATS_RETAKEN("Reserved {0,number,#} seats outright for account {1,number,#} after its paid seat hold could not be confirmed"),
+    CHARGED_WITHOUT_SEATS("Payment of £{0,number,#} from account {1,number,#} was taken but its seats could not be reserved and it could not be refunded");
+
+    private final String pattern;
+
+    PurchaseEvent(String pattern) {
+        this.pattern = pattern;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Converts the primitive parameters recorded with the event into the parameters of its message pattern.
+     * Only called when the event is written out, never on the thread that recorded it.
+     */
+    Object[] toParameters(long first, long second) {
+        return new Object[] {first, second};
+    }
+}
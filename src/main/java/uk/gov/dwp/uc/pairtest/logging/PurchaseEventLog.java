@@ -0,0 +1,79 @@
+package uk.gov.dwp.uc.pairtest.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * PurchaseEventLog.java
+ * The purchase path's view of logging. Every call first checks whether INFO is enabled on the Logger,
+ * so when it is not, logging an event costs a field read and allocates nothing. When it is, the event and
+ * its primitive parameters are handed to an AsyncLogAppender and formatted on its background thread.
+ */
+public class PurchaseEventLog {
+
+    private final Logger logger;
+    private final AsyncLogAppender appender;
+
+    /**
+     * @param logger the Logger whose level decides whether events are logged, and that the appender writes to
+     * @param appender the appender events are handed to
+     */
+    public PurchaseEventLog(Logger logger, AsyncLogAppender appender) {
+        this.logger = logger;
+        this.appender = appender;
+    }
+
+    /**
+     * Creates a log for the named Logger. Every log for the same name shares one appender and background thread.
+     *
+     * @param name the name of the Logger, usually the logging class's name
+     * @return the purchase event log
+     */
+    public static PurchaseEventLog forLogger(String name) {
+        Logger logger = Logger.getLogger(name);
+        return new PurchaseEventLog(logger, SharedAppender.forLogger(logger));
+    }
+
+    public boolean isEnabled() {
+        return logger.isLoggable(Level.INFO);
+    }
+
+    public void log(PurchaseEvent event) {
+        if (isEnabled()) {
+            appender.append(event, 0, 0);
+        }
+    }
+
+    public void log(PurchaseEvent event, long parameter) {
+        if (isEnabled()) {
+            appender.append(event, parameter, 0);
+        }
+    }
+
+    public void log(PurchaseEvent event, long firstParameter, long secondParameter) {
+        if (isEnabled()) {
+            appender.append(event, firstParameter, secondParameter);
+        }
+    }
+
+    /**
+     * One appender per Logger name, created on first use and closed, writing out anything still queued,
+     * when the JVM shuts down.
+     */
+    private static final class SharedAppender {
+
+        private SharedAppender() {
+        }
+
+        private static final ConcurrentHashMap<String, AsyncLogAppender> APPENDERS = new ConcurrentHashMap<>();
+
+        private static AsyncLogAppender forLogger(Logger logger) {
+            return APPENDERS.computeIfAbsent(logger.getName(), name -> {
+                AsyncLogAppender appender = new AsyncLogAppender(logger, AsyncLogAppender.DEFAULT_CAPACITY);
+                Runtime.getRuntime().addShutdownHook(new Thread(appender::close, "purchase-log-shutdown"));
+                return appender;
+            });
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * AdaptiveConcurrencyLimiter.java
+ * Caps the calls in flight to one third-party service like a Bulkhead, but finds the cap itself from the
+ * round-trip times it sees rather than being told it.
+ * <p>
+ * The limiter remembers the fastest round trip of the current baseline window as the time a call takes when
+ * the service is not queueing. About once per baseline round trip it moves the limit towards
+ * {@code limit * baseline / meanRoundTrip + sqrt(limit)}, using the mean of the round trips since it last moved: while calls take their baseline time the limit grows by
+ * its square root, and once the service starts queueing the first term shrinks it in proportion. A service whose
+ * latency rises with load therefore settles a little above the concurrency it can serve at baseline latency.
+ * <p>
+ * Every call has to queue once the limit is above what the service can take, so the fastest round trip would
+ * otherwise only ever be learnt once. Each time the baseline window comes round the limit is halved, letting the
+ * queue drain, and the baseline is learnt again, which also lets it follow a service that has become slower for
+ * good.
+ * <p>
+ * A completed call only records its round trip, with atomic updates and no lock. The lock is taken only by the
+ * call that finds the limit due to move, about once per baseline round trip.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    private static final double SMOOTHING = 0.2;
+
+    // Shrink by at most half on one update, so a single slow round of calls cannot collapse the limit
+    private static final double SMALLEST_GRADIENT = 0.5;
+
+    private static final long DEFAULT_BASELINE_WINDOW_SECONDS = 60;
+
+    private final int minimumLimit;
+    private final int maximumLimit;
+    private final long baselineWindowNanos;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // Only touched while holding the lock on this limiter
+    private double estimatedLimit;
+
+    // Written while holding the lock, read by every call to tell whether the limit is due to move
+    private volatile long windowStartNanos;
+    private volatile long lastUpdateNanos;
+
+    private final AtomicLong baselineNanos = new AtomicLong(Long.MAX_VALUE);
+    private volatile long lastRoundTripNanos;
+
+    // The round trips since the limit was last changed, which is done about once per baseline round trip. Taken
+    // without stopping calls from adding to them, so a call finishing at that moment may land in either round.
+    private final LongAdder roundTripSumNanos = new LongAdder();
+    private final LongAdder roundTrips = new LongAdder();
+    private final AtomicInteger mostInFlight = new AtomicInteger();
+
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder baselineResets = new LongAdder();
+
+    /**
+     * @param initialLimit the calls allowed in flight before any have been timed
+     * @param minimumLimit the fewest calls the limit can fall to
+     * @param maximumLimit the most calls the limit can rise to
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minimumLimit, int maximumLimit) {
+        this(initialLimit, minimumLimit, maximumLimit, DEFAULT_BASELINE_WINDOW_SECONDS, TimeUnit.SECONDS, System::nanoTime);
+    }
+
+    /**
+     * @param baselineWindow how long a baseline round-trip time is kept before the limit is halved and it is learnt again
+     * @param unit the unit of the baseline window
+     * @param nanoClock the time in nanoseconds, which only has to move forward
+     */
+    AdaptiveConcurrencyLimiter(int initialLimit, int minimumLimit, int maximumLimit, long baselineWindow, TimeUnit unit,
+                               LongSupplier nanoClock) {
+        if (minimumLimit < 1 || maximumLimit < minimumLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minimum <= maximum");
+        }
+        if (initialLimit < minimumLimit || initialLimit > maximumLimit) {
+            throw new IllegalArgumentException("Initial limit must be between the minimum and maximum");
+        }
+        if (baselineWindow <= 0) {
+            throw new IllegalArgumentException("Baseline window must be positive");
+        }
+        this.minimumLimit = minimumLimit;
+        this.maximumLimit = maximumLimit;
+        this.baselineWindowNanos = unit.toNanos(baselineWindow);
+        this.nanoClock = nanoClock;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        this.windowStartNanos = nanoClock.getAsLong();
+        this.lastUpdateNanos = windowStartNanos;
+    }
+
+    /**
+     * @return true if the call may go ahead, in which case onSample or onDropped has to be called once it finishes
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejections.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the time to start a call's round trip from
+     */
+    long nanoTime() {
+        return nanoClock.getAsLong();
+    }
+
+    /**
+     * Ends a call that completed normally and adjusts the limit to its round-trip time
+     *
+     * @param startNanos when the call was started, from nanoTime
+     */
+    void onSample(long startNanos) {
+        long now = nanoClock.getAsLong();
+        int callsInFlight = inFlight.getAndDecrement();
+        update(Math.max(1, now - startNanos), callsInFlight, now);
+    }
+
+    /**
+     * Ends a call that failed, whose round-trip time says nothing about how loaded the service is
+     */
+    void onDropped() {
+        inFlight.decrementAndGet();
+    }
+
+    private void update(long roundTripNanos, int callsInFlight, long now) {
+        samples.increment();
+        lastRoundTripNanos = roundTripNanos;
+        if (roundTripNanos < baselineNanos.get()) {
+            baselineNanos.accumulateAndGet(roundTripNanos, Math::min);
+        }
+        roundTripSumNanos.add(roundTripNanos);
+        roundTrips.increment();
+        if (callsInFlight > mostInFlight.get()) {
+            mostInFlight.accumulateAndGet(callsInFlight, Math::max);
+        }
+
+        // A call started after the last change takes a round trip to show its effect, so changing the limit on
+        // every call would keep reacting to the same queue and overshoot
+        if (now - windowStartNanos >= baselineWindowNanos || now - lastUpdateNanos >= baselineNanos.get()) {
+            recompute(now);
+        }
+    }
+
+    private synchronized void recompute(long now) {
+        if (now - windowStartNanos >= baselineWindowNanos) {
+            windowStartNanos = now;
+            baselineNanos.set(Long.MAX_VALUE);
+            estimatedLimit = Math.max(minimumLimit, estimatedLimit / 2);
+            limit = (int) estimatedLimit;
+            lastUpdateNanos = now;
+            roundTripSumNanos.reset();
+            roundTrips.reset();
+            mostInFlight.set(0);
+            baselineResets.increment();
+            return;
+        }
+        long baseline = baselineNanos.get();
+        // Another call may have moved the limit while this one waited for the lock
+        if (now - lastUpdateNanos < baseline) {
+            return;
+        }
+        long sum = roundTripSumNanos.sumThenReset();
+        long count = roundTrips.sumThenReset();
+        long meanRoundTripNanos = count == 0 ? baseline : Math.max(1, sum / count);
+        int busiest = mostInFlight.getAndSet(0);
+        lastUpdateNanos = now;
+
+        double gradient = Math.max(SMALLEST_GRADIENT, Math.min(1.0, (double) baseline / meanRoundTripNanos));
+        // Calls that never came near the limit cannot show whether a higher one would be safe
+        if (gradient == 1.0 && 2 * busiest < estimatedLimit) {
+            return;
+        }
+        double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.max(minimumLimit, Math.min(maximumLimit, (1 - SMOOTHING) * estimatedLimit + SMOOTHING * target));
+        limit = (int) estimatedLimit;
+    }
+
+    /**
+     * @return the calls currently allowed in flight
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of calls in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of calls refused because the limit was reached
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * @return the number of round trips the limit has been adjusted to
+     */
+    public long getSamples() {
+        return samples.sum();
+    }
+
+    /**
+     * @return the number of times the limit was halved to learn the baseline again
+     */
+    public long getBaselineResets() {
+        return baselineResets.sum();
+    }
+
+    /**
+     * @return the fastest round trip of the current window, 0 if none has completed yet
+     */
+    public long getBaselineRoundTripNanos() {
+        long baseline = baselineNanos.get();
+        return baseline == Long.MAX_VALUE ? 0 : baseline;
+    }
+
+    /**
+     * @return the round trip of the most recent call, 0 if none has completed yet
+     */
+    public long getLastRoundTripNanos() {
+        return lastRoundTripNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AdaptiveConcurrencyLimiter{limit=%d, inFlight=%d, baselineMillis=%.2f, lastMillis=%.2f, rejections=%d}",
+                getLimit(), getInFlight(), getBaselineRoundTripNanos() / 1e6, getLastRoundTripNanos() / 1e6, getRejections());
+    }
+}
@@ -0,0 +1,70 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulkhead.java
+ * Caps the calls in flight to one third-party service, so that when it slows down it can tie up at most that
+ * many threads. A call beyond the cap is refused straight away rather than queued.
+ */
+public final class Bulkhead {
+
+    private final int maximumConcurrentCalls;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * @param maximumConcurrentCalls the most calls allowed in flight at once
+     */
+    public Bulkhead(int maximumConcurrentCalls) {
+        if (maximumConcurrentCalls < 1) {
+            throw new IllegalArgumentException("Maximum concurrent calls must be at least 1");
+        }
+        this.maximumConcurrentCalls = maximumConcurrentCalls;
+    }
+
+    /**
+     * @return true if the call may go ahead, in which case release has to be called once it finishes
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maximumConcurrentCalls) {
+                rejections.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @return the number of calls in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getMaximumConcurrentCalls() {
+        return maximumConcurrentCalls;
+    }
+
+    /**
+     * @return the number of calls refused because the bulkhead was full
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead{inFlight=" + getInFlight() + ", maximumConcurrentCalls=" + maximumConcurrentCalls
+                + ", rejections=" + getRejections() + "}";
+    }
+}
@@ -0,0 +1,115 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.util.function.Supplier;
+
+/**
+ * CallDeadline.java
+ * The System.nanoTime by which the calls made on the current thread have to finish, so that the decorators
+ * around a service can stop spending its capacity on calls nobody is still waiting for: guards refuse them,
+ * retries stop before a wait that would outlast the deadline, and holds are not hedged past it.
+ * <p>
+ * A deadline lasts for one call to runBy or callBy, and a deadline set inside another keeps whichever is sooner.
+ * It belongs to the thread, so work handed to an executor carries it over with bind.
+ */
+public final class CallDeadline {
+
+    private static final ThreadLocal<CallDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private CallDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param deadlineNanos the System.nanoTime by which the call and everything it calls has to finish
+     * @param call run with the deadline set
+     */
+    public static void runBy(long deadlineNanos, Runnable call) {
+        CallDeadline outer = CURRENT.get();
+        CURRENT.set(sooner(outer, deadlineNanos));
+        try {
+            call.run();
+        } finally {
+            restore(outer);
+        }
+    }
+
+    /**
+     * @param deadlineNanos the System.nanoTime by which the call and everything it calls has to finish
+     * @param call run with the deadline set
+     * @return the call's result
+     */
+    public static <T> T callBy(long deadlineNanos, Supplier<T> call) {
+        CallDeadline outer = CURRENT.get();
+        CURRENT.set(sooner(outer, deadlineNanos));
+        try {
+            return call.get();
+        } finally {
+            restore(outer);
+        }
+    }
+
+    /**
+     * @param task work to run on another thread
+     * @return the task, run with the current thread's deadline if it has one
+     */
+    public static Runnable bind(Runnable task) {
+        CallDeadline current = CURRENT.get();
+        if (current == null) {
+            return task;
+        }
+        return () -> runBy(current.deadlineNanos, task);
+    }
+
+    /**
+     * @return true if the current thread has a deadline
+     */
+    public static boolean isSet() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * @return the current thread's deadline as a System.nanoTime
+     * @throws IllegalStateException if the current thread has no deadline
+     */
+    public static long getDeadlineNanos() {
+        CallDeadline current = CURRENT.get();
+        if (current == null) {
+            throw new IllegalStateException("No deadline is set");
+        }
+        return current.deadlineNanos;
+    }
+
+    /**
+     * @return the nanoseconds left until the current thread's deadline, 0 or less once it has passed, and
+     *         Long.MAX_VALUE without one
+     */
+    public static long remainingNanos() {
+        CallDeadline current = CURRENT.get();
+        return current == null ? Long.MAX_VALUE : current.deadlineNanos - System.nanoTime();
+    }
+
+    /**
+     * @return true if the current thread has a deadline and it has passed
+     */
+    public static boolean hasPassed() {
+        return remainingNanos() <= 0;
+    }
+
+    private static CallDeadline sooner(CallDeadline outer, long deadlineNanos) {
+        // Compared by difference, as System.nanoTime may wrap
+        if (outer != null && outer.deadlineNanos - deadlineNanos <= 0) {
+            return outer;
+        }
+        return new CallDeadline(deadlineNanos);
+    }
+
+    private static void restore(CallDeadline outer) {
+        if (outer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(outer);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.util.function.Predicate;
+
+/**
+ * CallGuard.java
+ * Puts each call to a third-party service through a circuit breaker and then a bulkhead, and reports how it
+ * went. The breaker is asked first, so an open breaker refuses calls without touching the bulkhead.
+ */
+final class CallGuard extends Guard {
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    // Whether a failure says something about the service's health, rather than being an answer it gave
+    private final Predicate<Throwable> isFault;
+
+    CallGuard(CircuitBreaker circuitBreaker, Bulkhead bulkhead, Predicate<Throwable> isFault) {
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.isFault = isFault;
+    }
+
+    /**
+     * @throws CallNotPermittedException if the breaker is open or the bulkhead is full
+     */
+    @Override
+    long enter() {
+        if (!circuitBreaker.tryAcquire()) {
+            throw CallNotPermittedException.stackless(CallNotPermittedException.Reason.CIRCUIT_OPEN);
+        }
+        if (!bulkhead.tryAcquire()) {
+            circuitBreaker.releasePermission();
+            throw CallNotPermittedException.stackless(CallNotPermittedException.Reason.BULKHEAD_FULL);
+        }
+        return 0;
+    }
+
+    @Override
+    void succeeded(long entered) {
+        bulkhead.release();
+        circuitBreaker.onSuccess();
+    }
+
+    @Override
+    void failed(long entered, Throwable failure) {
+        bulkhead.release();
+        if (isFault.test(failure)) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+}
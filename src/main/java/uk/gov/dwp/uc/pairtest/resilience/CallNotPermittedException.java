@@ -0,0 +1,60 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+/**
+ * Thrown instead of calling a third-party service that is failing or already has as many calls in flight as
+ * it is allowed. The reason says which guard refused the call.
+ * <p>
+ * Refusals come in floods while a service is down, and their whole point is to be cheap, so one preallocated
+ * instance per reason is shared by every caller and never captures a stack trace.
+ */
+public class CallNotPermittedException extends RuntimeException {
+
+    public enum Reason {
+        CIRCUIT_OPEN("The circuit breaker is open after too many failed calls"),
+        BULKHEAD_FULL("The most calls allowed at once are already in flight"),
+        CONCURRENCY_LIMITED("As many calls as the service was found to handle are already in flight"),
+        DEADLINE_PASSED("The caller's deadline passed before the call was made");
+
+        private final String description;
+
+        Reason(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    // One shared, stackless instance per reason, indexed by ordinal
+    private static final CallNotPermittedException[] STACKLESS = createStackless();
+
+    private final Reason reason;
+
+    private CallNotPermittedException(Reason reason) {
+        // Suppression is disabled and the cause fixed as null so that nothing can alter the shared instances
+        super(reason.getDescription(), null, false, false);
+        this.reason = reason;
+    }
+
+    /**
+     * @param reason the guard that refused the call
+     * @return the shared exception for that reason
+     */
+    public static CallNotPermittedException stackless(Reason reason) {
+        return STACKLESS[reason.ordinal()];
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    private static CallNotPermittedException[] createStackless() {
+        Reason[] reasons = Reason.values();
+        CallNotPermittedException[] exceptions = new CallNotPermittedException[reasons.length];
+        for (Reason reason : reasons) {
+            exceptions[reason.ordinal()] = new CallNotPermittedException(reason);
+        }
+        return exceptions;
+    }
+}
@@ -0,0 +1,243 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * CircuitBreaker.java
+ * Stops calling a third-party service once too many of its recent calls have failed, and refuses calls
+ * straight away until the service has had time to recover.
+ * <p>
+ * While closed, the outcomes of the last windowSize calls are kept, and once at least minimumCalls of them have
+ * been recorded a failure rate at or over the threshold opens the breaker. While open, every call is refused.
+ * After the open duration the breaker lets a few trial calls through: one failure opens it again, and that many
+ * successes close it with a fresh window.
+ * <p>
+ * Nothing locks. The window is a ring of outcomes claimed with a counter, and the state is a single int changed
+ * by compare-and-set, so a refused call costs a couple of volatile reads.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final State[] STATES = State.values();
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long openNanos;
+    private final int trialCalls;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger state = new AtomicInteger(State.CLOSED.ordinal());
+    private volatile long openedAtNanos;
+    private volatile Window window;
+
+    // Only meaningful while half open; reset each time the breaker opens
+    private final AtomicInteger trialPermits = new AtomicInteger();
+    private final AtomicInteger trialSuccesses = new AtomicInteger();
+
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder transitionsToOpen = new LongAdder();
+    private final LongAdder transitionsToHalfOpen = new LongAdder();
+    private final LongAdder transitionsToClosed = new LongAdder();
+
+    /**
+     * @param windowSize the number of most recent calls the failure rate is worked out over
+     * @param minimumCalls the fewest calls in the window before the failure rate can open the breaker
+     * @param failureRatePercent the failure rate, from 1 to 100, that opens the breaker
+     * @param openDuration how long the breaker refuses every call before trying the service again
+     * @param unit the unit of the open duration
+     * @param trialCalls the calls let through to try the service again, all of which must succeed to close it
+     */
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRatePercent, long openDuration, TimeUnit unit, int trialCalls) {
+        this(windowSize, minimumCalls, failureRatePercent, openDuration, unit, trialCalls, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock the time in nanoseconds, which only has to move forward
+     */
+    CircuitBreaker(int windowSize, int minimumCalls, int failureRatePercent, long openDuration, TimeUnit unit, int trialCalls,
+                   LongSupplier nanoClock) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+        if (minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("Minimum calls must be between 1 and the window size");
+        }
+        if (failureRatePercent < 1 || failureRatePercent > 100) {
+            throw new IllegalArgumentException("Failure rate must be between 1 and 100 percent");
+        }
+        if (openDuration < 0) {
+            throw new IllegalArgumentException("Open duration must not be negative");
+        }
+        if (trialCalls < 1) {
+            throw new IllegalArgumentException("Trial calls must be at least 1");
+        }
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.openNanos = unit.toNanos(openDuration);
+        this.trialCalls = trialCalls;
+        this.nanoClock = nanoClock;
+        this.window = new Window(windowSize);
+    }
+
+    /**
+     * @return true if the call may go ahead, in which case exactly one of onSuccess, onFailure or
+     * releasePermission has to be called once it finishes
+     */
+    boolean tryAcquire() {
+        int current = state.get();
+        if (current == State.CLOSED.ordinal()) {
+            return true;
+        }
+        if (current == State.OPEN.ordinal()) {
+            if (nanoClock.getAsLong() - openedAtNanos < openNanos) {
+                rejections.increment();
+                return false;
+            }
+            if (state.compareAndSet(current, State.HALF_OPEN.ordinal())) {
+                transitionsToHalfOpen.increment();
+            }
+        }
+        while (true) {
+            int permits = trialPermits.get();
+            if (permits <= 0) {
+                rejections.increment();
+                return false;
+            }
+            if (trialPermits.compareAndSet(permits, permits - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a permission whose call was never made, so that it does not use up a trial call
+     */
+    void releasePermission() {
+        if (state.get() == State.HALF_OPEN.ordinal()) {
+            trialPermits.incrementAndGet();
+        }
+    }
+
+    void onSuccess() {
+        int current = state.get();
+        if (current == State.CLOSED.ordinal()) {
+            window.record(false);
+        } else if (current == State.HALF_OPEN.ordinal()
+                && trialSuccesses.incrementAndGet() >= trialCalls
+                && state.compareAndSet(current, State.CLOSED.ordinal())) {
+            // Start afresh, so the failures that opened the breaker cannot open it again
+            window = new Window(windowSize);
+            transitionsToClosed.increment();
+        }
+    }
+
+    void onFailure() {
+        int current = state.get();
+        if (current == State.CLOSED.ordinal()) {
+            Window recent = window;
+            recent.record(true);
+            int recorded = recent.recorded.get();
+            if (recorded >= minimumCalls && 100L * recent.failures.get() >= (long) failureRatePercent * recorded) {
+                open(current);
+            }
+        } else if (current == State.HALF_OPEN.ordinal()) {
+            open(current);
+        }
+    }
+
+    private void open(int from) {
+        // Set before the state changes, so no thread sees the breaker open since last time. It is only read while
+        // open, so setting it is harmless if another thread changes the state first.
+        openedAtNanos = nanoClock.getAsLong();
+        if (state.compareAndSet(from, State.OPEN.ordinal())) {
+            // Only the thread that opened the breaker resets the trial, so one that lost the race cannot hand out
+            // more trial calls while it is half open. No trial call is taken until the open duration has passed.
+            trialSuccesses.set(0);
+            trialPermits.set(trialCalls);
+            transitionsToOpen.increment();
+        }
+    }
+
+    public State getState() {
+        return STATES[state.get()];
+    }
+
+    /**
+     * @return the percentage of the calls in the current window that failed, 0 if none have been recorded
+     */
+    public double getFailureRatePercent() {
+        Window recent = window;
+        int recorded = recent.recorded.get();
+        return recorded == 0 ? 0 : 100.0 * recent.failures.get() / recorded;
+    }
+
+    /**
+     * @return the number of calls refused because the breaker was open or out of trial calls
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public long getTransitionsToOpen() {
+        return transitionsToOpen.sum();
+    }
+
+    public long getTransitionsToHalfOpen() {
+        return transitionsToHalfOpen.sum();
+    }
+
+    public long getTransitionsToClosed() {
+        return transitionsToClosed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CircuitBreaker{state=%s, failureRate=%.1f%%, rejections=%d, opened=%d, halfOpened=%d, closed=%d}",
+                getState(), getFailureRatePercent(), getRejections(), getTransitionsToOpen(), getTransitionsToHalfOpen(),
+                getTransitionsToClosed());
+    }
+
+    /**
+     * The outcomes of the most recent calls. Each call claims the next position in the ring and swaps its outcome
+     * in, adjusting the counts by whatever it replaced, so the counts settle on the ring's contents without a lock.
+     */
+    private static final class Window {
+
+        private static final int NONE = 0;
+        private static final int SUCCESS = 1;
+        private static final int FAILURE = 2;
+
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong next = new AtomicLong();
+        private final AtomicInteger recorded = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        Window(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        void record(boolean failed) {
+            int position = (int) (next.getAndIncrement() % outcomes.length());
+            int replaced = outcomes.getAndSet(position, failed ? FAILURE : SUCCESS);
+            if (replaced == NONE) {
+                recorded.incrementAndGet();
+            }
+            int change = (failed ? 1 : 0) - (replaced == FAILURE ? 1 : 0);
+            if (change != 0) {
+                failures.addAndGet(change);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Guard.java
+ * Admits a call to a third-party service, or refuses it, and hears how it went. The decorators pass each call
+ * through run or call, so that every call is let in, timed and reported the same way. A call whose CallDeadline
+ * has passed is refused before it takes a permit, as nobody is waiting for its answer.
+ */
+abstract class Guard {
+
+    /**
+     * @return a value handed back when the call finishes, such as the time it started
+     * @throws CallNotPermittedException if the call is refused
+     */
+    abstract long enter();
+
+    abstract void succeeded(long entered);
+
+    abstract void failed(long entered, Throwable failure);
+
+    final void run(Runnable call) {
+        long entered = admit();
+        try {
+            call.run();
+        } catch (Throwable failure) {
+            failed(entered, failure);
+            throw failure;
+        }
+        succeeded(entered);
+    }
+
+    final long call(LongSupplier call) {
+        long entered = admit();
+        long result;
+        try {
+            result = call.getAsLong();
+        } catch (Throwable failure) {
+            failed(entered, failure);
+            throw failure;
+        }
+        succeeded(entered);
+        return result;
+    }
+
+    private long admit() {
+        if (CallDeadline.hasPassed()) {
+            throw CallNotPermittedException.stackless(CallNotPermittedException.Reason.DEADLINE_PASSED);
+        }
+        return enter();
+    }
+}
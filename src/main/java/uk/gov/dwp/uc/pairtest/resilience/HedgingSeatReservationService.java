@@ -0,0 +1,211 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import thirdparty.seatbooking.SeatReservationService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * HedgingSeatReservationService.java
+ * A SeatReservationService that cuts the tail latency of holding seats by making a second attempt at a hold
+ * that is taking longer than most, and using whichever attempt answers first.
+ * <p>
+ * The second attempt is made once the first has taken longer than the 95th percentile of recent holds, so
+ * only about one hold in twenty is hedged. A hold is safe to make twice because the hold that loses the race
+ * is released as soon as it is made. Only holds are hedged: reserving seats outright cannot be undone, and
+ * confirming or releasing a hold is passed straight through.
+ * <p>
+ * Both attempts run on the executor, which needs a thread free for the second attempt while the first is
+ * still running. The calling thread only waits for them. Under a CallDeadline the attempts carry the deadline,
+ * and no second attempt is made once the hedge delay would reach the deadline, or if the deadline passes
+ * before the executor gets to it.
+ */
+public class HedgingSeatReservationService implements SeatReservationService {
+
+    private static final int HEDGE_PERCENTILE = 95;
+
+    // Holds made before the percentile means anything are never hedged
+    private static final int MINIMUM_SAMPLES = 20;
+
+    private final SeatReservationService delegate;
+    private final Executor executor;
+    private final LatencyTracker latencies = new LatencyTracker(HEDGE_PERCENTILE, MINIMUM_SAMPLES);
+
+    private final LongAdder hedgedCalls = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder duplicatesReleased = new LongAdder();
+
+    /**
+     * @param delegate the service the seats are held by
+     * @param executor runs the attempts, and must be able to run two at once
+     */
+    public HedgingSeatReservationService(SeatReservationService delegate, Executor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        delegate.reserveSeat(accountId, totalSeatsToAllocate);
+    }
+
+    @Override
+    public void reserveSeat(long accountId, long screeningId, int totalSeatsToAllocate) {
+        delegate.reserveSeat(accountId, screeningId, totalSeatsToAllocate);
+    }
+
+    @Override
+    public long holdSeats(long accountId, int totalSeatsToAllocate) {
+        return hedge(() -> delegate.holdSeats(accountId, totalSeatsToAllocate));
+    }
+
+    @Override
+    public long holdSeats(long accountId, long screeningId, int totalSeatsToAllocate) {
+        return hedge(() -> delegate.holdSeats(accountId, screeningId, totalSeatsToAllocate));
+    }
+
+    @Override
+    public void confirmHold(long holdId) {
+        delegate.confirmHold(holdId);
+    }
+
+    @Override
+    public void releaseHold(long holdId) {
+        delegate.releaseHold(holdId);
+    }
+
+    private long hedge(LongSupplier hold) {
+        long hedgeDelayNanos = latencies.getPercentileNanos();
+        Race race = new Race();
+        race.start(hold, false);
+        if (hedgeDelayNanos == 0 || hedgeDelayNanos >= CallDeadline.remainingNanos()) {
+            return race.await();
+        }
+        try {
+            race.winner.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            hedgedCalls.increment();
+            race.start(hold, true);
+        } catch (InterruptedException e) {
+            // Too late to give up on the hold, so wait for it without hedging and leave the interrupt for the caller
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Reported by await below
+        }
+        return race.await();
+    }
+
+    /**
+     * @return the number of holds that took long enough for a second attempt to be made
+     */
+    public long getHedgedCalls() {
+        return hedgedCalls.sum();
+    }
+
+    /**
+     * @return the number of hedged holds the second attempt answered first
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * @return the number of holds released because another attempt at them answered first
+     */
+    public long getDuplicatesReleased() {
+        return duplicatesReleased.sum();
+    }
+
+    /**
+     * @return how long a hold runs before a second attempt is made, 0 while too few holds have been timed
+     */
+    public long getHedgeDelayNanos() {
+        return latencies.getPercentileNanos();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HedgingSeatReservationService{hedgeDelayMillis=%.2f, hedged=%d, hedgeWins=%d, duplicatesReleased=%d}",
+                getHedgeDelayNanos() / 1e6, getHedgedCalls(), getHedgeWins(), getDuplicatesReleased());
+    }
+
+    /**
+     * The attempts at one hold. The first to succeed wins, any later success is released, and the hold only fails
+     * once every attempt made has failed.
+     */
+    private final class Race {
+
+        private final CompletableFuture<Long> winner = new CompletableFuture<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private volatile Throwable lastFailure;
+
+        void start(LongSupplier hold, boolean hedge) {
+            running.incrementAndGet();
+            try {
+                executor.execute(CallDeadline.bind(() -> attempt(hold, hedge)));
+            } catch (RejectedExecutionException e) {
+                if (!hedge) {
+                    throw e;
+                }
+                // Without a thread to spare the first attempt is simply waited for, unless it has already failed
+                if (running.decrementAndGet() == 0) {
+                    winner.completeExceptionally(lastFailure);
+                }
+            }
+        }
+
+        private void attempt(LongSupplier hold, boolean hedge) {
+            if (hedge && CallDeadline.hasPassed()) {
+                // Too late to help, so the first attempt is simply waited for, unless it has already failed
+                if (running.decrementAndGet() == 0) {
+                    winner.completeExceptionally(lastFailure);
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            long holdId;
+            try {
+                holdId = hold.getAsLong();
+            } catch (Throwable failure) {
+                lastFailure = failure;
+                if (running.decrementAndGet() == 0) {
+                    winner.completeExceptionally(failure);
+                }
+                return;
+            }
+            latencies.record(System.nanoTime() - start);
+            running.decrementAndGet();
+            if (winner.complete(holdId)) {
+                if (hedge) {
+                    hedgeWins.increment();
+                }
+            } else {
+                delegate.releaseHold(holdId);
+                duplicatesReleased.increment();
+            }
+        }
+
+        long await() {
+            try {
+                return winner.join();
+            } catch (CompletionException e) {
+                Throwable failure = e.getCause();
+                if (failure instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                if (failure instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            }
+        }
+    }
+}
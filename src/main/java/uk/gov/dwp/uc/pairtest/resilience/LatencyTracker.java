@@ -0,0 +1,65 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyTracker.java
+ * Keeps the latencies of the most recent calls to a service and a percentile of them.
+ * <p>
+ * Latencies are written into a ring without locking, and the percentile is worked out again by sorting a copy
+ * of the ring every so many calls, so recording a latency costs two atomic writes almost every time.
+ */
+final class LatencyTracker {
+
+    private static final int CAPACITY = 1024;
+
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final int percentile;
+    private final int minimumSamples;
+
+    private final AtomicLongArray latencies = new AtomicLongArray(CAPACITY);
+    private final AtomicLong recorded = new AtomicLong();
+    private volatile long percentileNanos;
+
+    /**
+     * @param percentile the percentile to keep, from 1 to 99
+     * @param minimumSamples the fewest latencies the percentile is worked out from, at most the ring's capacity
+     */
+    LatencyTracker(int percentile, int minimumSamples) {
+        if (percentile < 1 || percentile > 99) {
+            throw new IllegalArgumentException("Percentile must be between 1 and 99");
+        }
+        if (minimumSamples < 1 || minimumSamples > CAPACITY) {
+            throw new IllegalArgumentException("Minimum samples must be between 1 and " + CAPACITY);
+        }
+        this.percentile = percentile;
+        this.minimumSamples = minimumSamples;
+    }
+
+    void record(long latencyNanos) {
+        long count = recorded.getAndIncrement() + 1;
+        latencies.set((int) ((count - 1) % CAPACITY), latencyNanos);
+        if (count == minimumSamples || (count > minimumSamples && count % RECOMPUTE_EVERY == 0)) {
+            recompute((int) Math.min(count, CAPACITY));
+        }
+    }
+
+    /**
+     * @return the percentile of the recent latencies, 0 until the minimum number have been recorded
+     */
+    long getPercentileNanos() {
+        return percentileNanos;
+    }
+
+    private void recompute(int samples) {
+        long[] sorted = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        percentileNanos = sorted[(int) ((long) samples * percentile / 100)];
+    }
+}
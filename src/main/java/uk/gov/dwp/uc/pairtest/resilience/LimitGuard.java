@@ -0,0 +1,51 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.util.function.Predicate;
+
+/**
+ * LimitGuard.java
+ * Puts each call to a third-party service through an AdaptiveConcurrencyLimiter, timing the calls that
+ * finish with an answer so the limiter can tell when the service starts to queue.
+ */
+final class LimitGuard extends Guard {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    // Whether a failure is a normal answer from the service, and so timed like a success
+    private final Predicate<Throwable> isAnswer;
+
+    LimitGuard(AdaptiveConcurrencyLimiter limiter, Predicate<Throwable> isAnswer) {
+        this.limiter = limiter;
+        this.isAnswer = isAnswer;
+    }
+
+    /**
+     * @return the time the call started
+     * @throws CallNotPermittedException if the limit has been reached
+     */
+    @Override
+    long enter() {
+        if (!limiter.tryAcquire()) {
+            throw CallNotPermittedException.stackless(CallNotPermittedException.Reason.CONCURRENCY_LIMITED);
+        }
+        return limiter.nanoTime();
+    }
+
+    @Override
+    void succeeded(long start) {
+        limiter.onSample(start);
+    }
+
+    @Override
+    void failed(long start, Throwable failure) {
+        if (isAnswer.test(failure)) {
+            limiter.onSample(start);
+        } else {
+            limiter.onDropped();
+        }
+    }
+
+    AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+}
@@ -0,0 +1,63 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import thirdparty.seatbooking.SeatReservationService;
+import thirdparty.seatbooking.SeatsUnavailableException;
+
+/**
+ * LimitedSeatReservationService.java
+ * A SeatReservationService that lets through only as many calls at once as an AdaptiveConcurrencyLimiter has
+ * found seat booking can take without queueing, refusing the rest straight away with a CallNotPermittedException.
+ * A sold out screening is a normal answer and is timed like one; other failures are not timed.
+ * <p>
+ * Confirming and releasing a hold finish a purchase that was already let through, so they are passed straight
+ * to the delegate without counting against the limit: refusing them would strand seats that have been paid for,
+ * or keep seats off sale.
+ */
+public class LimitedSeatReservationService implements SeatReservationService {
+
+    private final SeatReservationService delegate;
+    private final LimitGuard guard;
+
+    /**
+     * @param delegate the service the seats are reserved by
+     * @param limiter finds and enforces the limit, not shared with other services
+     */
+    public LimitedSeatReservationService(SeatReservationService delegate, AdaptiveConcurrencyLimiter limiter) {
+        this.delegate = delegate;
+        this.guard = new LimitGuard(limiter, failure -> failure instanceof SeatsUnavailableException);
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        guard.run(() -> delegate.reserveSeat(accountId, totalSeatsToAllocate));
+    }
+
+    @Override
+    public void reserveSeat(long accountId, long screeningId, int totalSeatsToAllocate) {
+        guard.run(() -> delegate.reserveSeat(accountId, screeningId, totalSeatsToAllocate));
+    }
+
+    @Override
+    public long holdSeats(long accountId, int totalSeatsToAllocate) {
+        return guard.call(() -> delegate.holdSeats(accountId, totalSeatsToAllocate));
+    }
+
+    @Override
+    public long holdSeats(long accountId, long screeningId, int totalSeatsToAllocate) {
+        return guard.call(() -> delegate.holdSeats(accountId, screeningId, totalSeatsToAllocate));
+    }
+
+    @Override
+    public void confirmHold(long holdId) {
+        delegate.confirmHold(holdId);
+    }
+
+    @Override
+    public void releaseHold(long holdId) {
+        delegate.releaseHold(holdId);
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return guard.getLimiter();
+    }
+}
@@ -0,0 +1,41 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import thirdparty.paymentgateway.ForwardingTicketPaymentService;
+import thirdparty.paymentgateway.TicketPaymentService;
+
+/**
+ * LimitedTicketPaymentService.java
+ * A TicketPaymentService that lets through only as many payments at once as an AdaptiveConcurrencyLimiter has
+ * found the payment provider can take without queueing, refusing the rest straight away with a
+ * CallNotPermittedException. Failed payments are not timed, as a failure's round trip says little about load.
+ * <p>
+ * Payments made with an idempotency key are limited like any other. Refunds undo a payment that was already let
+ * through, so they are passed straight to the provider, when it supports them, without counting against the limit.
+ */
+public class LimitedTicketPaymentService extends ForwardingTicketPaymentService {
+
+    private final LimitGuard guard;
+
+    /**
+     * @param delegate the service the payments are taken by
+     * @param limiter finds and enforces the limit, not shared with other services
+     */
+    public LimitedTicketPaymentService(TicketPaymentService delegate, AdaptiveConcurrencyLimiter limiter) {
+        super(delegate);
+        this.guard = new LimitGuard(limiter, failure -> false);
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        guard.run(() -> super.makePayment(accountId, totalAmountToPay));
+    }
+
+    @Override
+    public void makePayment(long idempotencyKey, long accountId, int totalAmountToPay) {
+        guard.run(() -> super.makePayment(idempotencyKey, accountId, totalAmountToPay));
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return guard.getLimiter();
+    }
+}
@@ -0,0 +1,67 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import thirdparty.seatbooking.SeatReservationService;
+import thirdparty.seatbooking.SeatsUnavailableException;
+
+/**
+ * ResilientSeatReservationService.java
+ * A SeatReservationService that refuses calls straight away with a CallNotPermittedException while seat booking
+ * is failing or already has as many calls in flight as it is allowed. A sold out screening is an answer rather
+ * than a failure, so it does not count towards opening the breaker.
+ * <p>
+ * Confirming and releasing a hold finish a purchase that was already let through, so they are passed straight
+ * to the delegate: refusing them would strand seats that have been paid for, or keep seats off sale.
+ */
+public class ResilientSeatReservationService implements SeatReservationService {
+
+    private final SeatReservationService delegate;
+    private final CallGuard guard;
+
+    /**
+     * @param delegate the service the seats are reserved by
+     * @param circuitBreaker stops calls while seat booking is failing, not shared with other services
+     * @param bulkhead caps the calls in flight, not shared with other services
+     */
+    public ResilientSeatReservationService(SeatReservationService delegate, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+        this.delegate = delegate;
+        this.guard = new CallGuard(circuitBreaker, bulkhead, failure -> !(failure instanceof SeatsUnavailableException));
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        guard.run(() -> delegate.reserveSeat(accountId, totalSeatsToAllocate));
+    }
+
+    @Override
+    public void reserveSeat(long accountId, long screeningId, int totalSeatsToAllocate) {
+        guard.run(() -> delegate.reserveSeat(accountId, screeningId, totalSeatsToAllocate));
+    }
+
+    @Override
+    public long holdSeats(long accountId, int totalSeatsToAllocate) {
+        return guard.call(() -> delegate.holdSeats(accountId, totalSeatsToAllocate));
+    }
+
+    @Override
+    public long holdSeats(long accountId, long screeningId, int totalSeatsToAllocate) {
+        return guard.call(() -> delegate.holdSeats(accountId, screeningId, totalSeatsToAllocate));
+    }
+
+    @Override
+    public void confirmHold(long holdId) {
+        delegate.confirmHold(holdId);
+    }
+
+    @Override
+    public void releaseHold(long holdId) {
+        delegate.releaseHold(holdId);
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return guard.getCircuitBreaker();
+    }
+
+    public Bulkhead getBulkhead() {
+        return guard.getBulkhead();
+    }
+}
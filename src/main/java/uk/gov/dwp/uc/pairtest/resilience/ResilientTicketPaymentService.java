@@ -0,0 +1,46 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import thirdparty.paymentgateway.ForwardingTicketPaymentService;
+import thirdparty.paymentgateway.TicketPaymentService;
+
+/**
+ * ResilientTicketPaymentService.java
+ * A TicketPaymentService that refuses payments straight away with a CallNotPermittedException while the payment
+ * provider is failing or already has as many payments in flight as it is allowed, rather than letting purchases
+ * pile up waiting on it. Every exception from the provider counts as a failure.
+ * <p>
+ * Payments made with an idempotency key are guarded like any other. Refunds undo a payment that was already let
+ * through, so they are passed straight to the provider, when it supports them.
+ */
+public class ResilientTicketPaymentService extends ForwardingTicketPaymentService {
+
+    private final CallGuard guard;
+
+    /**
+     * @param delegate the service the payments are taken by
+     * @param circuitBreaker stops payments while the provider is failing, not shared with other services
+     * @param bulkhead caps the payments in flight, not shared with other services
+     */
+    public ResilientTicketPaymentService(TicketPaymentService delegate, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+        super(delegate);
+        this.guard = new CallGuard(circuitBreaker, bulkhead, failure -> true);
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        guard.run(() -> super.makePayment(accountId, totalAmountToPay));
+    }
+
+    @Override
+    public void makePayment(long idempotencyKey, long accountId, int totalAmountToPay) {
+        guard.run(() -> super.makePayment(idempotencyKey, accountId, totalAmountToPay));
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return guard.getCircuitBreaker();
+    }
+
+    public Bulkhead getBulkhead() {
+        return guard.getBulkhead();
+    }
+}
@@ -0,0 +1,104 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RetryBudget.java
+ * Caps retries to a fixed fraction of the calls made to a service, so that retrying cannot multiply the load on a
+ * service that is failing because it is overloaded.
+ * <p>
+ * A token bucket: every first attempt adds the retry ratio of a token, up to the bucket's capacity, and every
+ * retry takes a whole token or is not made. Over any stretch of time the retries therefore number at most the
+ * ratio of the calls plus the capacity. One budget is meant to be shared by every caller of a service.
+ * <p>
+ * Tokens are counted in thousandths in a single atomic long, so nothing locks.
+ */
+public final class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long depositPerCall;
+    private final long capacity;
+    private final AtomicLong tokens;
+
+    private final LongAdder withdrawals = new LongAdder();
+    private final LongAdder denials = new LongAdder();
+
+    /**
+     * @param retryRatio the retries allowed per call, from 0 to 1
+     * @param maximumTokens the most retries that can be saved up, which the bucket starts with
+     */
+    public RetryBudget(double retryRatio, int maximumTokens) {
+        if (!(retryRatio >= 0 && retryRatio <= 1)) {
+            throw new IllegalArgumentException("Retry ratio must be between 0 and 1");
+        }
+        if (maximumTokens < 1) {
+            throw new IllegalArgumentException("Maximum tokens must be at least 1");
+        }
+        this.depositPerCall = Math.round(retryRatio * SCALE);
+        this.capacity = maximumTokens * SCALE;
+        this.tokens = new AtomicLong(capacity);
+    }
+
+    /**
+     * Earns a call's share of a retry
+     */
+    void deposit() {
+        if (depositPerCall == 0) {
+            return;
+        }
+        while (true) {
+            long current = tokens.get();
+            if (current >= capacity) {
+                return;
+            }
+            if (tokens.compareAndSet(current, Math.min(capacity, current + depositPerCall))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if a retry may be made, having taken a token for it
+     */
+    boolean tryWithdraw() {
+        while (true) {
+            long current = tokens.get();
+            if (current < SCALE) {
+                denials.increment();
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - SCALE)) {
+                withdrawals.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the retries that could be made now
+     */
+    public double getTokens() {
+        return (double) tokens.get() / SCALE;
+    }
+
+    /**
+     * @return the number of retries the budget has allowed
+     */
+    public long getWithdrawals() {
+        return withdrawals.sum();
+    }
+
+    /**
+     * @return the number of retries refused because the budget was spent
+     */
+    public long getDenials() {
+        return denials.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RetryBudget{tokens=%.3f, withdrawals=%d, denials=%d}", getTokens(), getWithdrawals(), getDenials());
+    }
+}
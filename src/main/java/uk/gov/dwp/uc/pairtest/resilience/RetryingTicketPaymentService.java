@@ -0,0 +1,195 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import thirdparty.paymentgateway.ForwardingTicketPaymentService;
+import thirdparty.paymentgateway.IdempotentTicketPaymentService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * RetryingTicketPaymentService.java
+ * An IdempotentTicketPaymentService that makes a failed payment again after a short wait, so that a brief blip at
+ * the payment provider does not lose the sale.
+ * <p>
+ * Only payments made with an idempotency key are retried, as the provider takes the payment at most once per key
+ * however many attempts reach it. A payment without a key might have been taken before it failed, so it is made
+ * exactly once, and so is a keyed payment when the delegate reports that it does not honour keys, as a decorator
+ * over a provider without them does. Refunds are passed straight through, when the delegate supports them.
+ * <p>
+ * The wait before each retry is drawn uniformly from zero up to a cap that doubles with every attempt, so that
+ * purchases which failed together do not all retry together. Every retry also has to be paid for from a
+ * RetryBudget, which stops retries once they reach a fixed fraction of the payments made: a provider that is
+ * failing because it is overloaded sees little more than its usual load. Nor is a payment retried when the wait
+ * before the retry would outlast its CallDeadline, as the caller would have stopped waiting by then.
+ */
+public class RetryingTicketPaymentService extends ForwardingTicketPaymentService {
+
+    private final int maximumAttempts;
+    private final long baseDelayNanos;
+    private final long maximumDelayNanos;
+    private final RetryBudget budget;
+    private final Predicate<RuntimeException> isTransient;
+    private final LongConsumer sleeper;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder recoveries = new LongAdder();
+    private final LongAdder attemptsExhausted = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private final LongAdder deadlinesReached = new LongAdder();
+
+    /**
+     * @param delegate the service the payments are taken by, which has to take each idempotency key at most once
+     * @param maximumAttempts the most attempts at one payment, including the first
+     * @param baseDelay the cap on the wait before the first retry, which doubles for each one after
+     * @param maximumDelay the cap on the wait before any retry
+     * @param unit the unit of both delays
+     * @param budget shared by every caller of the provider, caps retries to a fraction of the payments made
+     * @param isTransient whether a failure might not happen again, so that the payment is worth retrying
+     */
+    public RetryingTicketPaymentService(IdempotentTicketPaymentService delegate, int maximumAttempts, long baseDelay,
+                                        long maximumDelay, TimeUnit unit, RetryBudget budget,
+                                        Predicate<RuntimeException> isTransient) {
+        this(delegate, maximumAttempts, baseDelay, maximumDelay, unit, budget, isTransient,
+                RetryingTicketPaymentService::sleep);
+    }
+
+    /**
+     * @param sleeper waits for the given number of nanoseconds, leaving the thread's interrupt set if interrupted
+     */
+    RetryingTicketPaymentService(IdempotentTicketPaymentService delegate, int maximumAttempts, long baseDelay,
+                                 long maximumDelay, TimeUnit unit, RetryBudget budget,
+                                 Predicate<RuntimeException> isTransient, LongConsumer sleeper) {
+        super(delegate);
+        if (maximumAttempts < 1) {
+            throw new IllegalArgumentException("Maximum attempts must be at least 1");
+        }
+        if (baseDelay < 0 || maximumDelay < baseDelay) {
+            throw new IllegalArgumentException("Delays must satisfy 0 <= base <= maximum");
+        }
+        this.maximumAttempts = maximumAttempts;
+        this.baseDelayNanos = unit.toNanos(baseDelay);
+        this.maximumDelayNanos = unit.toNanos(maximumDelay);
+        this.budget = budget;
+        this.isTransient = isTransient;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Makes the payment once, as without an idempotency key a retry could take it twice
+     */
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        budget.deposit();
+        super.makePayment(accountId, totalAmountToPay);
+    }
+
+    @Override
+    public void makePayment(long idempotencyKey, long accountId, int totalAmountToPay) {
+        budget.deposit();
+        if (!isIdempotent()) {
+            super.makePayment(idempotencyKey, accountId, totalAmountToPay);
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                super.makePayment(idempotencyKey, accountId, totalAmountToPay);
+                if (attempt > 1) {
+                    recoveries.increment();
+                }
+                return;
+            } catch (RuntimeException failure) {
+                if (!isTransient.test(failure)) {
+                    throw failure;
+                }
+                if (attempt == maximumAttempts) {
+                    attemptsExhausted.increment();
+                    throw failure;
+                }
+                long backoffNanos = backoffNanos(attempt);
+                if (backoffNanos >= CallDeadline.remainingNanos()) {
+                    deadlinesReached.increment();
+                    throw failure;
+                }
+                if (!budget.tryWithdraw()) {
+                    budgetExhausted.increment();
+                    throw failure;
+                }
+                sleeper.accept(backoffNanos);
+                if (Thread.currentThread().isInterrupted()) {
+                    // The caller wants to stop, so the failure so far is as good an answer as any
+                    throw failure;
+                }
+                retries.increment();
+            }
+        }
+    }
+
+    /**
+     * @param attempt the attempt that just failed, from 1
+     * @return a wait drawn uniformly from zero to the attempt's cap
+     */
+    private long backoffNanos(int attempt) {
+        long cap = maximumDelayNanos;
+        // Doubling past the sign bit would overflow, and the maximum is reached long before then
+        if (attempt - 1 < Long.numberOfLeadingZeros(baseDelayNanos) - 1) {
+            cap = Math.min(maximumDelayNanos, baseDelayNanos << (attempt - 1));
+        }
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of payments made again after a failure
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the number of payments that failed at first but were taken on a retry
+     */
+    public long getRecoveries() {
+        return recoveries.sum();
+    }
+
+    /**
+     * @return the number of payments given up on after the maximum attempts
+     */
+    public long getAttemptsExhausted() {
+        return attemptsExhausted.sum();
+    }
+
+    /**
+     * @return the number of payments given up on because the retry budget was spent
+     */
+    public long getBudgetExhausted() {
+        return budgetExhausted.sum();
+    }
+
+    /**
+     * @return the number of payments given up on because a retry would have come after their deadline
+     */
+    public long getDeadlinesReached() {
+        return deadlinesReached.sum();
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RetryingTicketPaymentService{retries=%d, recoveries=%d, attemptsExhausted=%d, budgetExhausted=%d, deadlinesReached=%d, %s}",
+                getRetries(), getRecoveries(), getAttemptsExhausted(), getBudgetExhausted(), getDeadlinesReached(), budget);
+    }
+}
@@ -1,11 +1,59 @@
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
+import thirdparty.seatbooking.HoldTimingWheelTest;
+import thirdparty.seatbooking.SeatInventoryTest;
+import thirdparty.seatbooking.FlatCombinerTest;
+import thirdparty.seatbooking.SeatReservationServiceImplTest;
+import uk.gov.dwp.uc.pairtest.OrderBatchTest;
+import uk.gov.dwp.uc.pairtest.IdempotencyCacheTest;
+import uk.gov.dwp.uc.pairtest.PipelinedPurchaseTest;
+import uk.gov.dwp.uc.pairtest.DeadlinePurchaseTest;
+import uk.gov.dwp.uc.pairtest.resilience.AdaptiveConcurrencyLimiterTest;
+import uk.gov.dwp.uc.pairtest.resilience.CallDeadlineTest;
+import uk.gov.dwp.uc.pairtest.resilience.HedgingSeatReservationServiceTest;
+import uk.gov.dwp.uc.pairtest.resilience.RetryingTicketPaymentServiceTest;
+import uk.gov.dwp.uc.pairtest.resilience.CircuitBreakerTest;
+import uk.gov.dwp.uc.pairtest.resilience.ResilientServicesTest;
+import uk.gov.dwp.uc.pairtest.OrderLookupTableTest;
+import uk.gov.dwp.uc.pairtest.OrderSummaryTest;
+import uk.gov.dwp.uc.pairtest.PurchaseExecutorsTest;
+import uk.gov.dwp.uc.pairtest.PurchaseOutcomeTest;
 import uk.gov.dwp.uc.pairtest.TicketPaymentServiceImplTest;
+import uk.gov.dwp.uc.pairtest.batching.BatchingSeatReservationServiceTest;
+import uk.gov.dwp.uc.pairtest.batching.BatchingTicketPaymentServiceTest;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrderTest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequestTest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseExceptionTest;
+import uk.gov.dwp.uc.pairtest.logging.AsyncLogAppenderTest;
 
 @RunWith(Suite.class)
 
 @Suite.SuiteClasses( {
-        TicketPaymentServiceImplTest.class
+        TicketPaymentServiceImplTest.class,
+        OrderSummaryTest.class,
+        OrderLookupTableTest.class,
+        InvalidPurchaseExceptionTest.class,
+        AsyncLogAppenderTest.class,
+        PurchaseOutcomeTest.class,
+        PurchaseOrderTest.class,
+        TicketTypeRequestTest.class,
+        OrderBatchTest.class,
+        BatchingSeatReservationServiceTest.class,
+        BatchingTicketPaymentServiceTest.class,
+        HoldTimingWheelTest.class,
+        SeatReservationServiceImplTest.class,
+        SeatInventoryTest.class,
+        FlatCombinerTest.class,
+        IdempotencyCacheTest.class,
+        PipelinedPurchaseTest.class,
+        CircuitBreakerTest.class,
+        ResilientServicesTest.class,
+        AdaptiveConcurrencyLimiterTest.class,
+        DeadlinePurchaseTest.class,
+        HedgingSeatReservationServiceTest.class,
+        RetryingTicketPaymentServiceTest.class,
+        PurchaseExecutorsTest.class,
+        CallDeadlineTest.class
 })
 
 public class TestSuite {
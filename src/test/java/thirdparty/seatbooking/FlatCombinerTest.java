@@ -0,0 +1,87 @@
+package thirdparty.seatbooking;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.*;
+
+public class FlatCombinerTest {
+
+    private final LongAdder passes = new LongAdder();
+    private final LongAdder combined = new LongAdder();
+
+    @Test
+    public void loneRequestIsAnsweredAgainstTheCounter() {
+        AtomicIntegerArray remaining = new AtomicIntegerArray(32);
+        remaining.set(16, 5);
+        FlatCombiner combiner = new FlatCombiner(remaining, 16, passes, combined);
+
+        assertEquals(FlatCombiner.TAKEN, combiner.take(3));
+        assertEquals(FlatCombiner.REFUSED, combiner.take(3));
+        assertEquals(FlatCombiner.TAKEN, combiner.take(2));
+        assertEquals(0, remaining.get(16));
+        assertEquals(0, remaining.get(0));
+        assertEquals(3, passes.sum());
+        assertEquals(3, combined.sum());
+    }
+
+    @Test
+    public void combinerGoesIdleOnceRequestsStopOverlapping() {
+        AtomicIntegerArray remaining = new AtomicIntegerArray(16);
+        remaining.set(0, 1_000);
+        FlatCombiner combiner = new FlatCombiner(remaining, 0, passes, combined);
+
+        for (int request = 0; request < 63; request++) {
+            combiner.take(1);
+        }
+        assertFalse(combiner.isIdle());
+        combiner.take(1);
+        assertTrue(combiner.isIdle());
+        assertEquals(936, remaining.get(0));
+    }
+
+    @Test
+    public void concurrentRequestsNeverOversell() throws Exception {
+        AtomicIntegerArray remaining = new AtomicIntegerArray(16);
+        remaining.set(0, 5_000);
+        FlatCombiner combiner = new FlatCombiner(remaining, 0, passes, combined);
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> taken = new ArrayList<>();
+            for (int thread = 0; thread < 16; thread++) {
+                int wanted = 1 + thread % 3;
+                taken.add(threads.submit(() -> {
+                    start.await();
+                    int seats = 0;
+                    int answer;
+                    while ((answer = combiner.take(wanted)) != FlatCombiner.REFUSED) {
+                        assertNotEquals(FlatCombiner.NOT_PUBLISHED, answer);
+                        seats += wanted;
+                    }
+                    return seats;
+                }));
+            }
+            start.countDown();
+
+            int total = 0;
+            for (Future<Integer> seats : taken) {
+                total += seats.get(30, TimeUnit.SECONDS);
+            }
+            // Threads asking for a single seat only stop once nothing is left
+            assertEquals(0, remaining.get(0));
+            assertEquals(5_000, total);
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package thirdparty.seatbooking;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HoldTimingWheelTest {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<Long> expired = new ArrayList<>();
+    private final List<Integer> expiredPerCall = new ArrayList<>();
+    private final List<Integer> expiredSeats = new ArrayList<>();
+
+    private HoldTimingWheel newWheel(int initialCapacity) {
+        return new HoldTimingWheel(1, TimeUnit.MILLISECONDS, initialCapacity, (holdIds, seats, count) -> {
+            expiredPerCall.add(count);
+            for (int i = 0; i < count; i++) {
+                expired.add(holdIds[i]);
+                expiredSeats.add(seats[i]);
+            }
+        }, 0);
+    }
+
+    @Test
+    public void holdExpiresOnTheFirstTickAfterItsTimeToLive() {
+        HoldTimingWheel wheel = newWheel(16);
+        wheel.schedule(7L, 5 * TICK_NANOS - 1);
+
+        assertEquals(0, wheel.advanceTo(5 * TICK_NANOS - 1));
+        assertTrue(expired.isEmpty());
+        assertEquals(1, wheel.advanceTo(5 * TICK_NANOS));
+        assertEquals(List.of(7L), expired);
+        assertEquals(0, wheel.getOutstandingHolds());
+    }
+
+    @Test
+    public void cancelledHoldNeverExpires() {
+        HoldTimingWheel wheel = newWheel(16);
+        long handle = wheel.schedule(7L, 5 * TICK_NANOS);
+        wheel.schedule(8L, 5 * TICK_NANOS);
+
+        assertTrue(wheel.cancel(handle));
+        assertFalse(wheel.cancel(handle));
+        wheel.advanceTo(10 * TICK_NANOS);
+        assertEquals(List.of(8L), expired);
+    }
+
+    @Test
+    public void staleHandleCannotCancelAnotherHold() {
+        HoldTimingWheel wheel = newWheel(1);
+        long handle = wheel.schedule(7L, TICK_NANOS);
+        wheel.advanceTo(TICK_NANOS);
+
+        // Reuses the entry the expired hold had
+        wheel.schedule(8L, 5 * TICK_NANOS);
+        assertFalse(wheel.cancel(handle));
+        wheel.advanceTo(5 * TICK_NANOS);
+        assertEquals(List.of(7L, 8L), expired);
+    }
+
+    @Test
+    public void holdHandsBackItsKeyAndSeats() {
+        HoldTimingWheel wheel = newWheel(16);
+        long cancelled = wheel.schedule(7L, 3, 5 * TICK_NANOS);
+        wheel.schedule(8L, 4, 5 * TICK_NANOS);
+
+        assertEquals(7L, wheel.getKey(cancelled, -1));
+        assertEquals(3, wheel.cancelForSeats(cancelled));
+        assertEquals(-1, wheel.cancelForSeats(cancelled));
+        assertEquals(-1, wheel.getKey(cancelled, -1));
+        wheel.advanceTo(5 * TICK_NANOS);
+        assertEquals(List.of(8L), expired);
+        assertEquals(List.of(4), expiredSeats);
+    }
+
+    @Test
+    public void holdsExpiringOnTheSameTickAreHandedOverTogether() {
+        HoldTimingWheel wheel = newWheel(4);
+        for (long holdId = 0; holdId < 100; holdId++) {
+            wheel.schedule(holdId, 3 * TICK_NANOS);
+        }
+        wheel.schedule(100L, 4 * TICK_NANOS);
+
+        assertEquals(101, wheel.advanceTo(4 * TICK_NANOS));
+        assertEquals(List.of(100, 1), expiredPerCall);
+        assertEquals(100, wheel.getLargestExpirationsPerTick());
+        assertEquals(101, wheel.getExpirations());
+        assertEquals(5, wheel.getTicks());
+    }
+
+    @Test
+    public void holdsExpireOnTheirExactTickAcrossEveryLevel() {
+        HoldTimingWheel wheel = newWheel(64);
+        Map<Long, Long> deadlineByHold = new HashMap<>();
+        long[] boundaries = {1, 63, 64, 65, 4095, 4096, 4097, 262143, 262144, 262145};
+        Random random = new Random(42);
+        for (long holdId = 0; holdId < 5_000; holdId++) {
+            long deadline = holdId < boundaries.length ? boundaries[(int) holdId] : 1 + random.nextInt(300_000);
+            wheel.schedule(holdId, deadline * TICK_NANOS);
+            deadlineByHold.put(holdId, deadline);
+        }
+
+        for (long tick = 0; tick <= 300_000; tick++) {
+            int before = expired.size();
+            wheel.advanceTo(tick * TICK_NANOS);
+            for (int i = before; i < expired.size(); i++) {
+                assertEquals("Hold " + expired.get(i), (long) deadlineByHold.get(expired.get(i)), tick);
+            }
+        }
+        assertEquals(5_000, expired.size());
+        assertEquals(0, wheel.getOutstandingHolds());
+    }
+}
@@ -0,0 +1,140 @@
+package thirdparty.seatbooking;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SeatInventoryTest {
+
+    @Test
+    public void seatsAreTakenUntilTooFewAreLeft() {
+        SeatInventory inventory = new SeatInventory(4);
+        inventory.addScreening(7L, 10);
+
+        assertTrue(inventory.tryTake(7L, 6));
+        assertFalse(inventory.tryTake(7L, 5));
+        assertEquals(4, inventory.getRemainingSeats(7L));
+        assertTrue(inventory.tryTake(7L, 4));
+        assertEquals(0, inventory.getRemainingSeats(7L));
+
+        inventory.giveBack(7L, 3);
+        assertEquals(3, inventory.getRemainingSeats(7L));
+        assertEquals(10, inventory.getCapacity(7L));
+    }
+
+    @Test
+    public void concurrentPurchasesNeverOversell() throws Exception {
+        purchaseConcurrently(new SeatInventory(1, true));
+    }
+
+    @Test
+    public void concurrentPurchasesNeverOversellWithoutCombining() throws Exception {
+        SeatInventory inventory = new SeatInventory(1, false);
+        purchaseConcurrently(inventory);
+        assertEquals(0, inventory.getSwitchesToCombining());
+        assertFalse(inventory.isCombining(1L));
+    }
+
+    @Test
+    public void uncontendedScreeningNeverSwitchesToCombining() {
+        SeatInventory inventory = new SeatInventory(1);
+        inventory.addScreening(1L, 10_000);
+        for (int purchase = 0; purchase < 10_000; purchase++) {
+            assertTrue(inventory.tryTake(1L, 1));
+        }
+        assertFalse(inventory.isCombining(1L));
+        assertEquals(0, inventory.getSwitchesToCombining());
+        assertEquals(0, inventory.getCombiningPasses());
+    }
+
+    @Test
+    public void contentionIsOnlyCountedWithinAWindow() {
+        long[] now = {0};
+        SeatInventory inventory = new SeatInventory(1, true, () -> now[0]);
+        inventory.addScreening(1L, 10);
+        for (int failures = 1; failures <= 10; failures++) {
+            assertEquals(failures, inventory.recordContention(0));
+        }
+
+        now[0] += TimeUnit.MILLISECONDS.toNanos(2);
+        assertEquals(1, inventory.recordContention(0));
+        assertEquals(2, inventory.recordContention(0));
+    }
+
+    private static void purchaseConcurrently(SeatInventory inventory) throws Exception {
+        inventory.addScreening(1L, 10_000);
+        ExecutorService threads = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> taken = new ArrayList<>();
+            for (int thread = 0; thread < 32; thread++) {
+                SplittableRandom random = new SplittableRandom(thread);
+                taken.add(threads.submit(() -> {
+                    start.await();
+                    int seats = 0;
+                    int failures = 0;
+                    // Keep going until even a single seat cannot be had
+                    while (failures < 100 || inventory.getRemainingSeats(1L) > 0) {
+                        int wanted = 1 + random.nextInt(4);
+                        if (inventory.tryTake(1L, wanted)) {
+                            seats += wanted;
+                        } else {
+                            failures++;
+                        }
+                    }
+                    return seats;
+                }));
+            }
+            start.countDown();
+
+            int total = 0;
+            for (Future<Integer> seats : taken) {
+                total += seats.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(10_000, total);
+            assertEquals(0, inventory.getRemainingSeats(1L));
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void thousandsOfScreeningsAreKeptApart() {
+        SeatInventory inventory = new SeatInventory(5_000);
+        for (long screeningId = 0; screeningId < 5_000; screeningId++) {
+            inventory.addScreening(screeningId * 1_000_003L, (int) screeningId);
+        }
+        for (long screeningId = 0; screeningId < 5_000; screeningId++) {
+            assertEquals((int) screeningId, inventory.getRemainingSeats(screeningId * 1_000_003L));
+        }
+        assertFalse(inventory.hasScreening(1L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void screeningCannotBeAddedTwice() {
+        SeatInventory inventory = new SeatInventory(4);
+        inventory.addScreening(7L, 10);
+        inventory.addScreening(7L, 20);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void inventoryHoldsAtMostItsMaximumScreenings() {
+        SeatInventory inventory = new SeatInventory(1);
+        inventory.addScreening(7L, 10);
+        inventory.addScreening(8L, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownScreeningIsRejected() {
+        new SeatInventory(1).tryTake(7L, 1);
+    }
+}
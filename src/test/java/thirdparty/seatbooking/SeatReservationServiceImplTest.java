@@ -0,0 +1,148 @@
+package thirdparty.seatbooking;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SeatReservationServiceImplTest {
+
+    private SeatReservationServiceImpl seatReservationService;
+
+    @After
+    public void teardown() {
+        seatReservationService.close();
+    }
+
+    @Test
+    public void confirmingOrReleasingAHoldStopsItHoldingSeats() {
+        seatReservationService = new SeatReservationServiceImpl();
+        long confirmed = seatReservationService.holdSeats(1L, 3);
+        long released = seatReservationService.holdSeats(2L, 2);
+        assertEquals(5, seatReservationService.getHeldSeats());
+
+        seatReservationService.confirmHold(confirmed);
+        seatReservationService.releaseHold(released);
+        assertEquals(0, seatReservationService.getHeldSeats());
+        assertEquals(0, seatReservationService.getOutstandingHolds());
+    }
+
+    @Test
+    public void abandonedHoldExpires() throws InterruptedException {
+        seatReservationService = new SeatReservationServiceImpl(50, TimeUnit.MILLISECONDS);
+        long holdId = seatReservationService.holdSeats(1L, 4);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (seatReservationService.getHeldSeats() != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, seatReservationService.getHeldSeats());
+        assertEquals(1, seatReservationService.getExpiredHolds());
+        try {
+            seatReservationService.confirmHold(holdId);
+            fail("Expected the expired hold to be gone");
+        } catch (IllegalStateException e) {
+            assertEquals("Seat hold " + holdId + " does not exist or has expired", e.getMessage());
+        }
+    }
+
+    @Test
+    public void releasingAnExpiredHoldDoesNothing() throws InterruptedException {
+        SeatInventory inventory = new SeatInventory(1);
+        inventory.addScreening(7L, 10);
+        seatReservationService = new SeatReservationServiceImpl(inventory, 7L, 50, TimeUnit.MILLISECONDS);
+        long holdId = seatReservationService.holdSeats(1L, 4);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (seatReservationService.getExpiredHolds() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        seatReservationService.releaseHold(holdId);
+        seatReservationService.releaseHold(holdId);
+        assertEquals(10, seatReservationService.getRemainingSeats());
+        assertEquals(0, seatReservationService.getHeldSeats());
+    }
+
+    @Test
+    public void holdIdsAreUniqueWhileTheirEntriesAreReused() {
+        SeatInventory inventory = new SeatInventory(1);
+        inventory.addScreening(7L, 10);
+        seatReservationService = new SeatReservationServiceImpl(inventory, 7L, 1, TimeUnit.MINUTES, 4);
+        long first = seatReservationService.holdSeats(1L, 2);
+        seatReservationService.releaseHold(first);
+        long second = seatReservationService.holdSeats(2L, 3);
+
+        assertNotEquals(first, second);
+        seatReservationService.releaseHold(first);
+        assertEquals(7, seatReservationService.getRemainingSeats());
+        seatReservationService.confirmHold(second);
+        assertEquals(7, seatReservationService.getRemainingSeats());
+        assertEquals(0, seatReservationService.getOutstandingHolds());
+    }
+
+    @Test
+    public void reservationFailsWhenScreeningIsSoldOut() {
+        SeatInventory inventory = new SeatInventory(1);
+        inventory.addScreening(7L, 5);
+        seatReservationService = new SeatReservationServiceImpl(inventory, 7L, 1, TimeUnit.MINUTES);
+
+        seatReservationService.reserveSeat(1L, 3);
+        long holdId = seatReservationService.holdSeats(2L, 2);
+        try {
+            seatReservationService.holdSeats(3L, 1);
+            fail("Expected the screening to be sold out");
+        } catch (SeatsUnavailableException e) {
+            assertEquals(7L, e.getScreeningId());
+            assertEquals(1, e.getRequestedSeats());
+        }
+
+        seatReservationService.releaseHold(holdId);
+        assertEquals(2, seatReservationService.getRemainingSeats());
+        RuntimeException[] failures = seatReservationService.reserveSeats(new long[] {4L, 5L}, new int[] {1, 2});
+        assertNull(failures[0]);
+        assertTrue(failures[1] instanceof SeatsUnavailableException);
+    }
+
+    @Test
+    public void expiredHoldReturnsItsSeatsToSale() throws InterruptedException {
+        SeatInventory inventory = new SeatInventory(1);
+        inventory.addScreening(7L, 5);
+        seatReservationService = new SeatReservationServiceImpl(inventory, 7L, 50, TimeUnit.MILLISECONDS);
+        seatReservationService.holdSeats(1L, 5);
+        assertEquals(0, seatReservationService.getRemainingSeats());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (seatReservationService.getRemainingSeats() != 5 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, seatReservationService.getRemainingSeats());
+    }
+
+    @Test
+    public void screeningsAreHeldAndReleasedApart() {
+        SeatInventory inventory = new SeatInventory(2);
+        inventory.addScreening(7L, 4);
+        inventory.addScreening(8L, 4);
+        seatReservationService = new SeatReservationServiceImpl(inventory, 7L, 1, TimeUnit.MINUTES, 3);
+        assertEquals(4, seatReservationService.getShards());
+
+        long heldIn7 = seatReservationService.holdSeats(1L, 7L, 4);
+        long heldIn8 = seatReservationService.holdSeats(2L, 8L, 3);
+        seatReservationService.reserveSeat(3L, 8L, 1);
+        try {
+            seatReservationService.reserveSeat(4L, 1);
+            fail("Expected the default screening to be sold out");
+        } catch (SeatsUnavailableException e) {
+            assertEquals(7L, e.getScreeningId());
+        }
+
+        seatReservationService.releaseHold(heldIn8);
+        assertEquals(0, seatReservationService.getRemainingSeats(7L));
+        assertEquals(3, seatReservationService.getRemainingSeats(8L));
+        seatReservationService.confirmHold(heldIn7);
+        assertEquals(0, seatReservationService.getHeldSeats());
+        assertEquals(0, seatReservationService.getOutstandingHolds());
+    }
+}
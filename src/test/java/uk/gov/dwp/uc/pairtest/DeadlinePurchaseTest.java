@@ -0,0 +1,319 @@
+package uk.gov.dwp.uc.pairtest;
+
+import org.junit.Before;
+import org.junit.Test;
+import thirdparty.paymentgateway.IdempotentTicketPaymentService;
+import thirdparty.paymentgateway.RefundableTicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.DeadlineExceededException;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.resilience.CallDeadline;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class DeadlinePurchaseTest {
+
+    private static final TicketTypeRequest TWO_ADULTS = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2);
+
+    private StandInSeats seats;
+    private StandInPayments payments;
+    private TicketServiceImpl ticketService;
+
+    @Before
+    public void setup() {
+        seats = new StandInSeats();
+        payments = new StandInPayments();
+        ticketService = new TicketServiceImpl(payments, seats);
+    }
+
+    @Test
+    public void purchaseWithinTheDeadlineConfirmsTheHold() {
+        PurchaseResult result = ticketService.tryPurchaseTicketsWithin(1L, 1, TimeUnit.SECONDS, TWO_ADULTS);
+
+        assertEquals(PurchaseResult.successful(2, 40), result);
+        assertEquals(List.of("hold 1:2"), seats.holds);
+        assertEquals(List.of("confirm 1"), seats.outcomes);
+        assertEquals(List.of("pay 1:40"), payments.calls);
+    }
+
+    @Test
+    public void slowHoldGivesUpAtTheDeadlineAndIsReleasedWhenItFinishes() {
+        seats.delayMillis = 600;
+
+        long start = System.nanoTime();
+        try {
+            ticketService.purchaseTicketsWithin(1L, 150, TimeUnit.MILLISECONDS, TWO_ADULTS);
+            fail("Expected the deadline to pass");
+        } catch (DeadlineExceededException e) {
+            long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("Waited " + waited + "ms", waited < 500);
+        }
+        assertTrue(payments.calls.isEmpty());
+
+        awaitTrue(() -> seats.outcomes.equals(List.of("release 1")));
+        assertTrue(payments.calls.isEmpty());
+    }
+
+    @Test
+    public void slowPaymentIsRefundedAndItsHoldReleasedWhenItFinishes() {
+        payments.delayMillis = 600;
+
+        try {
+            ticketService.purchaseTicketsWithin(1L, 150, TimeUnit.MILLISECONDS, TWO_ADULTS);
+            fail("Expected the deadline to pass");
+        } catch (DeadlineExceededException e) {
+            // Kept until the payment finishes, in case it has to be confirmed
+            assertTrue(seats.outcomes.isEmpty());
+        }
+
+        awaitTrue(() -> seats.outcomes.equals(List.of("release 1")));
+        assertEquals(List.of("pay 1:40", "refund 1:40"), payments.calls);
+    }
+
+    @Test
+    public void slowPaymentThatCannotBeRefundedKeepsItsSeats() {
+        List<String> charges = new CopyOnWriteArrayList<>();
+        ticketService = new TicketServiceImpl((accountId, amount) -> {
+            sleep(600);
+            charges.add("pay " + accountId + ":" + amount);
+        }, seats);
+
+        try {
+            ticketService.purchaseTicketsWithin(1L, 150, TimeUnit.MILLISECONDS, TWO_ADULTS);
+            fail("Expected the deadline to pass");
+        } catch (DeadlineExceededException e) {
+            assertTrue(seats.outcomes.isEmpty());
+        }
+
+        awaitTrue(() -> seats.outcomes.equals(List.of("confirm 1")));
+        assertEquals(List.of("pay 1:40"), charges);
+    }
+
+    @Test
+    public void pipelinedPurchaseOverlapsTheCallsWithinTheDeadline() {
+        ticketService.enablePipelining(PurchaseExecutors.defaultExecutor());
+        seats.delayMillis = 300;
+        payments.delayMillis = 300;
+
+        long start = System.nanoTime();
+        ticketService.purchaseTicketsWithin(1L, 2, TimeUnit.SECONDS, TWO_ADULTS);
+        long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Took " + took + "ms", took < 550);
+        assertEquals(List.of("confirm 1"), seats.outcomes);
+        assertEquals(List.of("pay 1:40"), payments.calls);
+    }
+
+    @Test
+    public void pipelinedHoldFailureRefundsThePayment() {
+        ticketService.enablePipelining(PurchaseExecutors.defaultExecutor());
+        seats.failure = new IllegalStateException("Seat booking unavailable");
+        try {
+            ticketService.purchaseTicketsWithin(1L, 1, TimeUnit.SECONDS, TWO_ADULTS);
+            fail("Expected the purchase to fail");
+        } catch (IllegalStateException e) {
+            assertSame(seats.failure, e);
+        }
+
+        assertEquals(List.of("pay 1:40", "refund 1:40"), payments.calls);
+        assertTrue(seats.outcomes.isEmpty());
+    }
+
+    @Test
+    public void passedDeadlineCallsNeitherService() {
+        try {
+            ticketService.purchaseTicketsWithin(1L, 0, TimeUnit.MILLISECONDS, TWO_ADULTS);
+            fail("Expected the deadline to pass");
+        } catch (DeadlineExceededException e) {
+            assertTrue(seats.holds.isEmpty());
+            assertTrue(payments.calls.isEmpty());
+        }
+    }
+
+    @Test
+    public void brokenRuleIsReportedBeforeTheDeadlineIsChecked() {
+        try {
+            ticketService.purchaseTicketsWithin(1L, 0, TimeUnit.MILLISECONDS, new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1));
+            fail("Expected the purchase to be rejected");
+        } catch (InvalidPurchaseException e) {
+            assertEquals(RejectionReason.NO_ADULT, e.getReason());
+        }
+    }
+
+    @Test
+    public void paymentFailureWithinTheDeadlineReleasesTheHold() {
+        payments.failure = new IllegalStateException("Card declined");
+        try {
+            ticketService.purchaseTicketsWithin(1L, 1, TimeUnit.SECONDS, TWO_ADULTS);
+            fail("Expected the purchase to fail");
+        } catch (IllegalStateException e) {
+            assertSame(payments.failure, e);
+        }
+
+        assertEquals(List.of("release 1"), seats.outcomes);
+    }
+
+    @Test
+    public void interruptedPurchaseStopsWaitingAndKeepsTheInterrupt() {
+        seats.delayMillis = 600;
+        Thread.currentThread().interrupt();
+        try {
+            ticketService.purchaseTicketsWithin(1L, 1, TimeUnit.SECONDS, TWO_ADULTS);
+            fail("Expected the purchase to stop waiting");
+        } catch (DeadlineExceededException e) {
+            assertTrue(Thread.interrupted());
+        }
+
+        awaitTrue(() -> seats.outcomes.equals(List.of("release 1")));
+    }
+
+    @Test
+    public void servicesAreToldTheDeadline() {
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(1);
+        long start = System.nanoTime();
+        ticketService.purchaseTicketsWithin(1L, timeoutNanos, TimeUnit.NANOSECONDS, TWO_ADULTS);
+
+        assertTrue(seats.deadlineNanos - start >= timeoutNanos);
+        assertEquals(seats.deadlineNanos, payments.deadlineNanos);
+        assertFalse(CallDeadline.isSet());
+    }
+
+    @Test
+    public void keyedPurchaseMadeWithinADeadlinePaysWithItsKey() {
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+
+        PurchaseResult result = CallDeadline.callBy(deadlineNanos,
+                () -> ticketService.tryPurchaseTicketsIdempotently(7L, 1L, TWO_ADULTS));
+
+        assertEquals(PurchaseResult.successful(2, 40), result);
+        assertEquals(List.of("pay 7:1:40"), payments.calls);
+        assertEquals(deadlineNanos, payments.deadlineNanos);
+        assertEquals(List.of("confirm 1"), seats.outcomes);
+    }
+
+    @Test
+    public void slowKeyedPaymentKeepsItsSeatsAndRepeatingTheKeyGetsTheOutcome() {
+        payments.delayMillis = 600;
+        try {
+            CallDeadline.runBy(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(150),
+                    () -> ticketService.purchaseTicketsIdempotently(7L, 1L, TWO_ADULTS));
+            fail("Expected the deadline to pass");
+        } catch (DeadlineExceededException e) {
+            assertTrue(seats.outcomes.isEmpty());
+        }
+
+        // Waits for the late payment rather than paying again
+        PurchaseResult repeated = ticketService.tryPurchaseTicketsIdempotently(7L, 1L, TWO_ADULTS);
+
+        assertEquals(PurchaseResult.successful(2, 40), repeated);
+        assertEquals(List.of("pay 7:1:40"), payments.calls);
+        assertEquals(List.of("confirm 1"), seats.outcomes);
+        assertEquals(1, ticketService.getIdempotencyCache().getHits());
+    }
+
+    @Test
+    public void keyedPurchaseWhoseDeadlineHadPassedCanBeTriedAgain() {
+        try {
+            CallDeadline.runBy(System.nanoTime(), () -> ticketService.purchaseTicketsIdempotently(7L, 1L, TWO_ADULTS));
+            fail("Expected the deadline to pass");
+        } catch (DeadlineExceededException e) {
+            assertTrue(seats.holds.isEmpty());
+        }
+
+        ticketService.purchaseTicketsIdempotently(7L, 1L, TWO_ADULTS);
+
+        assertEquals(List.of("pay 7:1:40"), payments.calls);
+        assertEquals(0, ticketService.getIdempotencyCache().getInFlight());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met within 5 seconds", System.nanoTime() < deadline);
+            sleep(10);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class StandInSeats implements SeatReservationService {
+
+        volatile long delayMillis;
+        volatile long deadlineNanos;
+        volatile RuntimeException failure;
+        final List<String> holds = new CopyOnWriteArrayList<>();
+        final List<String> outcomes = new CopyOnWriteArrayList<>();
+        private final AtomicLong holdIds = new AtomicLong();
+
+        @Override
+        public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long holdSeats(long accountId, int totalSeatsToAllocate) {
+            deadlineNanos = CallDeadline.isSet() ? CallDeadline.getDeadlineNanos() : 0;
+            sleep(delayMillis);
+            if (failure != null) {
+                throw failure;
+            }
+            holds.add("hold " + accountId + ":" + totalSeatsToAllocate);
+            return holdIds.incrementAndGet();
+        }
+
+        @Override
+        public void confirmHold(long holdId) {
+            outcomes.add("confirm " + holdId);
+        }
+
+        @Override
+        public void releaseHold(long holdId) {
+            outcomes.add("release " + holdId);
+        }
+    }
+
+    private static final class StandInPayments implements RefundableTicketPaymentService, IdempotentTicketPaymentService {
+
+        volatile long delayMillis;
+        volatile long deadlineNanos;
+        volatile RuntimeException failure;
+        final List<String> calls = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void makePayment(long accountId, int totalAmountToPay) {
+            deadlineNanos = CallDeadline.isSet() ? CallDeadline.getDeadlineNanos() : 0;
+            sleep(delayMillis);
+            if (failure != null) {
+                throw failure;
+            }
+            calls.add("pay " + accountId + ":" + totalAmountToPay);
+        }
+
+        @Override
+        public void makePayment(long idempotencyKey, long accountId, int totalAmountToPay) {
+            deadlineNanos = CallDeadline.isSet() ? CallDeadline.getDeadlineNanos() : 0;
+            sleep(delayMillis);
+            calls.add("pay " + idempotencyKey + ":" + accountId + ":" + totalAmountToPay);
+        }
+
+        @Override
+        public void refundPayment(long accountId, int totalAmountToRefund) {
+            calls.add("refund " + accountId + ":" + totalAmountToRefund);
+        }
+    }
+}
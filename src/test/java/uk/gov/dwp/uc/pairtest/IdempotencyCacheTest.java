@@ -0,0 +1,218 @@
+package uk.gov.dwp.uc.pairtest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class IdempotencyCacheTest {
+
+    private long now;
+
+    private IdempotencyCache cache(int maximumKeys, int segments) {
+        return new IdempotencyCache(maximumKeys, 10, TimeUnit.NANOSECONDS, () -> now, segments);
+    }
+
+    @Test
+    public void completedKeyReturnsItsOutcome() {
+        IdempotencyCache cache = cache(16, 4);
+
+        assertEquals(IdempotencyCache.ABSENT, cache.begin(5L, 1L, 0L, 0L));
+        cache.complete(5L, 1234L);
+
+        assertEquals(1234L, cache.begin(5L, 1L, 0L, 0L));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void rejectionsAreRememberedToo() {
+        IdempotencyCache cache = cache(16, 4);
+        cache.begin(5L, 1L, 0L, 0L);
+        cache.complete(5L, -3L);
+
+        assertEquals(-3L, cache.begin(5L, 1L, 0L, 0L));
+    }
+
+    @Test
+    public void abandonedKeyIsRunAgain() {
+        IdempotencyCache cache = cache(16, 4);
+        cache.begin(5L, 1L, 0L, 0L);
+        cache.abandon(5L);
+
+        assertEquals(IdempotencyCache.ABSENT, cache.begin(5L, 1L, 0L, 0L));
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void outcomesExpireAfterTheirTimeToLive() {
+        IdempotencyCache cache = cache(16, 1);
+        cache.begin(5L, 1L, 0L, 0L);
+        cache.complete(5L, 7L);
+        now = 5;
+        cache.begin(6L, 1L, 0L, 0L);
+        cache.complete(6L, 8L);
+
+        now = 10;
+        assertEquals(IdempotencyCache.ABSENT, cache.begin(5L, 1L, 0L, 0L));
+        assertEquals(8L, cache.begin(6L, 1L, 0L, 0L));
+        assertEquals(1, cache.getExpirations());
+
+        now = 15;
+        assertEquals(IdempotencyCache.ABSENT, cache.begin(6L, 1L, 0L, 0L));
+        assertEquals(2, cache.getExpirations());
+    }
+
+    @Test
+    public void oldestOutcomeIsEvictedWhenFull() {
+        IdempotencyCache cache = cache(3, 1);
+        for (long key = 1; key <= 4; key++) {
+            cache.begin(key, 1L, 0L, 0L);
+            cache.complete(key, key);
+        }
+
+        assertEquals(3, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(IdempotencyCache.ABSENT, cache.begin(1L, 1L, 0L, 0L));
+        assertEquals(4L, cache.begin(4L, 1L, 0L, 0L));
+    }
+
+    @Test
+    public void manyKeysSurviveGrowthAndRemoval() {
+        IdempotencyCache cache = new IdempotencyCache(100_000, 1, TimeUnit.HOURS);
+        for (long key = 0; key < 100_000; key++) {
+            assertEquals(IdempotencyCache.ABSENT, cache.begin(key * 31, key, 0L, 0L));
+            if (key % 3 == 0) {
+                cache.abandon(key * 31);
+            } else {
+                cache.complete(key * 31, key);
+            }
+        }
+        for (long key = 0; key < 100_000; key++) {
+            long expected = key % 3 == 0 ? IdempotencyCache.ABSENT : key;
+            assertEquals(expected, cache.begin(key * 31, key, 0L, 0L));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyCannotBeReusedByAnotherAccount() {
+        IdempotencyCache cache = cache(16, 4);
+        cache.begin(5L, 1L, 0L, 0L);
+        cache.complete(5L, 7L);
+        cache.begin(5L, 2L, 0L, 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyCannotBeReusedForAnotherOrder() {
+        IdempotencyCache cache = cache(16, 4);
+        cache.begin(5L, 1L, 11L, 0L);
+        cache.complete(5L, 7L);
+        cache.begin(5L, 1L, 12L, 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyCannotBeReusedForAnOrderDifferingOnlyInInfants() {
+        IdempotencyCache cache = cache(16, 4);
+        cache.begin(5L, 1L, 11L, 1L << 32);
+        cache.complete(5L, 7L);
+        cache.begin(5L, 1L, 11L, 2L << 32);
+    }
+
+    @Test
+    public void segmentsTogetherRememberExactlyTheMaximum() {
+        IdempotencyCache cache = cache(7, 4);
+        // Enough keys to fill every segment, however they hash
+        for (long key = 0; key < 64; key++) {
+            cache.begin(key, 1L, 0L, 0L);
+            cache.complete(key, key);
+        }
+
+        assertEquals(7, cache.getSize());
+    }
+
+    @Test
+    public void runningPurchasesCountTowardsTheMaximum() {
+        IdempotencyCache cache = cache(2, 1);
+        cache.begin(1L, 1L, 0L, 0L);
+        cache.complete(1L, 1L);
+        cache.begin(2L, 1L, 0L, 0L);
+
+        // Evicts the completed key, as the running one cannot be
+        assertEquals(IdempotencyCache.ABSENT, cache.begin(3L, 1L, 0L, 0L));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getInFlight());
+        try {
+            cache.begin(4L, 1L, 0L, 0L);
+            fail("Expected a full cache of running purchases to turn the key away");
+        } catch (IllegalStateException e) {
+            assertEquals("Too many purchases with idempotency keys are running", e.getMessage());
+        }
+        cache.abandon(2L);
+        assertEquals(IdempotencyCache.ABSENT, cache.begin(4L, 1L, 0L, 0L));
+    }
+
+    @Test
+    public void repeatedKeyStopsWaitingForAStuckPurchase() {
+        IdempotencyCache cache = new IdempotencyCache(16, 1, 50, TimeUnit.MILLISECONDS);
+        cache.begin(5L, 1L, 0L, 0L);
+        long started = System.nanoTime();
+        try {
+            cache.begin(5L, 1L, 0L, 0L);
+            fail("Expected the wait to give up");
+        } catch (IllegalStateException e) {
+            assertEquals("Purchase with idempotency key 5 is still running", e.getMessage());
+        }
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, cache.getDuplicatesWaitedOn());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reservedKeyIsRejected() {
+        cache(16, 4).begin(IdempotencyCache.NO_KEY, 1L, 0L, 0L);
+    }
+
+    @Test
+    public void concurrentDuplicatesRunOnce() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(1_000, 1, TimeUnit.HOURS);
+        AtomicInteger runs = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Long>> outcomes = new ArrayList<>();
+            for (int thread = 0; thread < 16; thread++) {
+                outcomes.add(threads.submit(() -> {
+                    start.await();
+                    long outcome = cache.begin(42L, 1L, 0L, 0L);
+                    if (outcome == IdempotencyCache.ABSENT) {
+                        runs.incrementAndGet();
+                        // Long enough for the other threads to arrive while this one runs
+                        Thread.sleep(50);
+                        cache.complete(42L, 777L);
+                        return 777L;
+                    }
+                    return outcome;
+                }));
+            }
+            start.countDown();
+
+            for (Future<Long> outcome : outcomes) {
+                assertEquals(777L, (long) outcome.get(30, TimeUnit.SECONDS));
+            }
+            assertEquals(1, runs.get());
+            assertEquals(1, cache.getMisses());
+            assertEquals(15, cache.getHits());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
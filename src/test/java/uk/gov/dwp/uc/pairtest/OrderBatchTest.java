@@ -0,0 +1,78 @@
+package uk.gov.dwp.uc.pairtest;
+
+import org.junit.Test;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OrderBatchTest {
+
+    private final OrderLookupTable table = OrderLookupTable.build(20, 20, 10);
+
+    @Test
+    public void batchAgreesWithSingleOrderValidation() {
+        List<PurchaseRequest> purchaseRequests = List.of(
+                new PurchaseRequest(1L, TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 2),
+                        TicketTypeRequest.of(TicketTypeRequest.Type.CHILD, 1),
+                        TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 1)),
+                new PurchaseRequest(0L, TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 1)),
+                new PurchaseRequest(2L),
+                new PurchaseRequest(3L, TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 0)),
+                new PurchaseRequest(4L, TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 21)),
+                new PurchaseRequest(5L, TicketTypeRequest.of(TicketTypeRequest.Type.INFANT, 1)),
+                new PurchaseRequest(6L, TicketTypeRequest.of(TicketTypeRequest.Type.CHILD, 1)));
+
+        OrderBatch batch = OrderBatch.of(purchaseRequests);
+        long[] outcomes = batch.validate(table);
+
+        assertEquals(7, batch.size());
+        assertEquals(PurchaseOutcome.successful(4, 70), outcomes[0]);
+        assertEquals(PurchaseOutcome.rejected(RejectionReason.INVALID_ACCOUNT), outcomes[1]);
+        assertEquals(PurchaseOutcome.rejected(RejectionReason.EMPTY_ORDER), outcomes[2]);
+        assertEquals(PurchaseOutcome.rejected(RejectionReason.NON_POSITIVE_COUNT), outcomes[3]);
+        assertEquals(PurchaseOutcome.rejected(RejectionReason.OVER_MAXIMUM), outcomes[4]);
+        assertEquals(PurchaseOutcome.rejected(RejectionReason.INFANTS_EXCEED_ADULTS), outcomes[5]);
+        assertEquals(PurchaseOutcome.rejected(RejectionReason.NO_ADULT), outcomes[6]);
+        assertEquals(4L, batch.getAccountId(4));
+    }
+
+    @Test
+    public void nullOrderIsRejectedWithoutAffectingTheOthers() {
+        List<PurchaseRequest> purchaseRequests = Arrays.asList(
+                new PurchaseRequest(1L, TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 1)),
+                null,
+                new PurchaseRequest(2L, TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 2)));
+
+        long[] outcomes = OrderBatch.of(purchaseRequests).validate(table);
+
+        assertEquals(PurchaseOutcome.successful(1, 20), outcomes[0]);
+        assertEquals(PurchaseOutcome.rejected(RejectionReason.INVALID_ACCOUNT), outcomes[1]);
+        assertEquals(PurchaseOutcome.successful(2, 40), outcomes[2]);
+    }
+
+    @Test
+    public void malformedOrderIsRejectedWithoutAffectingTheOthers() {
+        List<PurchaseRequest> purchaseRequests = List.of(
+                new PurchaseRequest(1L, TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 1), null),
+                new PurchaseRequest(2L, new TicketTypeRequest(null, 1)),
+                new PurchaseRequest(3L, TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 2)));
+
+        long[] outcomes = OrderBatch.of(purchaseRequests).validate(table);
+
+        assertEquals(PurchaseOutcome.rejected(RejectionReason.MALFORMED_REQUEST), outcomes[0]);
+        assertEquals(PurchaseOutcome.rejected(RejectionReason.MALFORMED_REQUEST), outcomes[1]);
+        assertEquals(PurchaseOutcome.successful(2, 40), outcomes[2]);
+    }
+
+    @Test
+    public void emptyBatchHasNoOutcomes() {
+        OrderBatch batch = OrderBatch.of(List.of());
+        assertEquals(0, batch.size());
+        assertEquals(0, batch.validate(table).length);
+    }
+}
@@ -0,0 +1,76 @@
+package uk.gov.dwp.uc.pairtest;
+
+import org.junit.Test;
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+
+import static org.junit.Assert.*;
+
+public class OrderLookupTableTest {
+
+    @Test
+    public void tableAgreesWithBusinessRulesForEveryCombination() {
+        OrderLookupTable table = OrderLookupTable.build(20, 20, 10);
+        for (int adults = 0; adults <= 20; adults++) {
+            for (int children = 0; children <= 20; children++) {
+                for (int infants = 0; infants <= 20; infants++) {
+                    boolean valid = adults + children + infants >= 1 && adults + children + infants <= 20
+                            && infants <= adults && adults > 0;
+                    int entry = table.indexOf(adults, children, infants);
+                    assertEquals(valid, table.isValid(entry));
+                    if (valid) {
+                        assertEquals(adults + children, table.getSeats(entry));
+                        assertEquals(adults * 20 + children * 10, table.getTotalCost(entry));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tableCarriesItsLimitAndPrices() {
+        OrderLookupTable table = OrderLookupTable.build(5, 25, 12);
+        assertEquals(5, table.getMaximumTickets());
+        assertEquals(25, table.getAdultTicketPrice());
+        assertEquals(12, table.getChildTicketPrice());
+        assertEquals(2 * 25 + 3 * 12, table.getTotalCost(table.indexOf(2, 3, 0)));
+        assertFalse(table.isValid(table.indexOf(3, 3, 0)));
+        assertEquals(RejectionReason.OVER_MAXIMUM, table.getRejectionReason(table.indexOf(3, 3, 0)));
+    }
+
+    @Test
+    public void invalidCombinationsRecordTheBrokenRule() {
+        OrderLookupTable table = OrderLookupTable.build(20, 20, 10);
+        assertEquals(RejectionReason.INFANTS_EXCEED_ADULTS, table.getRejectionReason(table.indexOf(0, 1, 1)));
+        assertEquals(RejectionReason.INFANTS_EXCEED_ADULTS, table.getRejectionReason(table.indexOf(1, 0, 2)));
+        assertEquals(RejectionReason.NO_ADULT, table.getRejectionReason(table.indexOf(0, 3, 0)));
+        assertEquals(RejectionReason.OVER_MAXIMUM, table.getRejectionReason(table.indexOf(0, 0, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maximumMustBePositive() {
+        OrderLookupTable.build(0, 20, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maximumMustFitInTable() {
+        OrderLookupTable.build(OrderLookupTable.LARGEST_MAXIMUM_TICKETS + 1, 20, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pricesCannotBeNegative() {
+        OrderLookupTable.build(20, -1, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void totalCostMustNotOverflow() {
+        OrderLookupTable.build(20, 20, Integer.MAX_VALUE / 20 + 1);
+    }
+
+    @Test
+    public void largestCostableOrderIsPricedExactly() {
+        int price = Integer.MAX_VALUE / 20;
+        OrderLookupTable table = OrderLookupTable.build(20, price, 10);
+
+        assertEquals(20 * price, table.getTotalCost(table.indexOf(20, 0, 0)));
+    }
+}
@@ -0,0 +1,53 @@
+package uk.gov.dwp.uc.pairtest;
+
+import org.junit.Test;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+import static org.junit.Assert.*;
+
+public class OrderSummaryTest {
+
+    @Test
+    public void nullRequestsAreEmpty() {
+        OrderSummary order = OrderSummary.of((TicketTypeRequest[]) null);
+        assertTrue(order.isEmpty());
+        assertEquals(0, order.getTotalTickets());
+    }
+
+    @Test
+    public void noRequestsAreEmpty() {
+        assertTrue(OrderSummary.of().isEmpty());
+    }
+
+    @Test
+    public void countsAreFoldedPerType() {
+        OrderSummary order = OrderSummary.of(
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 3),
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 2));
+        assertFalse(order.isEmpty());
+        assertFalse(order.containsNonPositiveRequest());
+        assertEquals(3, order.getAdultTickets());
+        assertEquals(3, order.getChildTickets());
+        assertEquals(2, order.getInfantTickets());
+        assertEquals(8, order.getTotalTickets());
+    }
+
+    @Test
+    public void nonPositiveRequestIsRecorded() {
+        OrderSummary order = OrderSummary.of(
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 7),
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 0));
+        assertTrue(order.containsNonPositiveRequest());
+    }
+
+    @Test
+    public void totalDoesNotOverflowIntoValidRange() {
+        OrderSummary order = OrderSummary.of(
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, Integer.MAX_VALUE),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, Integer.MAX_VALUE),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 3));
+        assertTrue(order.getTotalTickets() > 20);
+    }
+}
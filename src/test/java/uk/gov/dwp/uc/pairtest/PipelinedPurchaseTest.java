@@ -0,0 +1,232 @@
+package uk.gov.dwp.uc.pairtest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import thirdparty.paymentgateway.RefundableTicketPaymentService;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import thirdparty.seatbooking.SeatsUnavailableException;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class PipelinedPurchaseTest {
+
+    private static final TicketTypeRequest TWO_ADULTS = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2);
+
+    private ExecutorService executor;
+    private StandInSeats seats;
+    private StandInPayments payments;
+    private TicketServiceImpl ticketService;
+
+    @Before
+    public void setup() {
+        executor = Executors.newCachedThreadPool();
+        seats = new StandInSeats();
+        payments = new StandInPayments();
+        ticketService = new TicketServiceImpl(payments, seats);
+        ticketService.enablePipelining(executor);
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void bothSucceedingConfirmsTheHold() {
+        PurchaseResult result = ticketService.tryPurchaseTickets(1L, TWO_ADULTS);
+
+        assertEquals(PurchaseResult.successful(2, 40), result);
+        assertEquals(List.of("hold 1:2"), seats.holds);
+        assertEquals(List.of("confirm 1"), seats.outcomes);
+        assertEquals(List.of("pay 1:40"), payments.calls);
+    }
+
+    @Test
+    public void pipelinedPurchaseTakesAboutAsLongAsTheSlowerCall() {
+        seats.delayMillis = 200;
+        payments.delayMillis = 200;
+
+        long start = System.nanoTime();
+        ticketService.purchaseTickets(1L, TWO_ADULTS);
+        long pipelined = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        ticketService.disablePipelining();
+        start = System.nanoTime();
+        ticketService.purchaseTickets(2L, TWO_ADULTS);
+        long sequential = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Sequential purchase took " + sequential + "ms", sequential >= 400);
+        assertTrue("Pipelined purchase took " + pipelined + "ms", pipelined < 380);
+    }
+
+    @Test
+    public void paymentFailureReleasesTheHold() {
+        payments.failure = new IllegalStateException("Card declined");
+        seats.delayMillis = 50;
+        try {
+            ticketService.purchaseTickets(1L, TWO_ADULTS);
+            fail("Expected the purchase to fail");
+        } catch (IllegalStateException e) {
+            assertSame(payments.failure, e);
+        }
+
+        assertEquals(List.of("release 1"), seats.outcomes);
+        assertEquals(List.of("pay 1:40"), payments.calls);
+    }
+
+    @Test
+    public void holdFailureRefundsThePayment() {
+        seats.failure = new SeatsUnavailableException(7L, 2);
+        payments.delayMillis = 50;
+        try {
+            ticketService.purchaseTicketsForScreening(1L, 7L, TWO_ADULTS);
+            fail("Expected the purchase to fail");
+        } catch (SeatsUnavailableException e) {
+            assertSame(seats.failure, e);
+        }
+
+        assertEquals(List.of("pay 1:40", "refund 1:40"), payments.calls);
+        assertTrue(seats.outcomes.isEmpty());
+    }
+
+    @Test
+    public void bothFailingReportsTheHoldFailureAndCompensatesNothing() {
+        seats.failure = new SeatsUnavailableException(7L, 2);
+        payments.failure = new IllegalStateException("Card declined");
+        try {
+            ticketService.purchaseTicketsForScreening(1L, 7L, TWO_ADULTS);
+            fail("Expected the purchase to fail");
+        } catch (SeatsUnavailableException e) {
+            assertSame(seats.failure, e);
+            assertArrayEquals(new Throwable[] {payments.failure}, e.getSuppressed());
+        }
+
+        assertEquals(List.of("pay 1:40"), payments.calls);
+        assertTrue(seats.outcomes.isEmpty());
+    }
+
+    @Test
+    public void refundFailureIsKeptWithTheHoldFailure() {
+        seats.failure = new SeatsUnavailableException(7L, 2);
+        payments.refundFailure = new IllegalStateException("Payment provider unavailable");
+        try {
+            ticketService.purchaseTicketsForScreening(1L, 7L, TWO_ADULTS);
+            fail("Expected the purchase to fail");
+        } catch (SeatsUnavailableException e) {
+            assertArrayEquals(new Throwable[] {payments.refundFailure}, e.getSuppressed());
+        }
+    }
+
+    @Test
+    public void slowHoldIsWaitedForEvenWhenPaymentFailsFast() {
+        seats.delayMillis = 200;
+        payments.failure = new IllegalStateException("Card declined");
+        try {
+            ticketService.purchaseTickets(1L, TWO_ADULTS);
+            fail("Expected the purchase to fail");
+        } catch (IllegalStateException e) {
+            // The hold finished before the purchase returned, and was released
+            assertEquals(List.of("hold 1:2"), seats.holds);
+            assertEquals(List.of("release 1"), seats.outcomes);
+        }
+    }
+
+    @Test
+    public void rejectedPurchaseCallsNeitherService() {
+        PurchaseResult result = ticketService.tryPurchaseTickets(1L, new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1));
+
+        assertFalse(result.isSuccessful());
+        assertTrue(seats.holds.isEmpty());
+        assertTrue(payments.calls.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pipeliningNeedsRefunds() {
+        TicketPaymentService nonRefundable = (accountId, amount) -> {
+        };
+        new TicketServiceImpl(nonRefundable, seats).enablePipelining(executor);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class StandInSeats implements SeatReservationService {
+
+        volatile long delayMillis;
+        volatile RuntimeException failure;
+        final List<String> holds = new CopyOnWriteArrayList<>();
+        final List<String> outcomes = new CopyOnWriteArrayList<>();
+        private final AtomicLong holdIds = new AtomicLong();
+
+        @Override
+        public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long holdSeats(long accountId, int totalSeatsToAllocate) {
+            sleep(delayMillis);
+            if (failure != null) {
+                throw failure;
+            }
+            holds.add("hold " + accountId + ":" + totalSeatsToAllocate);
+            return holdIds.incrementAndGet();
+        }
+
+        @Override
+        public long holdSeats(long accountId, long screeningId, int totalSeatsToAllocate) {
+            return holdSeats(accountId, totalSeatsToAllocate);
+        }
+
+        @Override
+        public void confirmHold(long holdId) {
+            outcomes.add("confirm " + holdId);
+        }
+
+        @Override
+        public void releaseHold(long holdId) {
+            outcomes.add("release " + holdId);
+        }
+    }
+
+    private static final class StandInPayments implements RefundableTicketPaymentService {
+
+        volatile long delayMillis;
+        volatile RuntimeException failure;
+        volatile RuntimeException refundFailure;
+        final List<String> calls = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void makePayment(long accountId, int totalAmountToPay) {
+            sleep(delayMillis);
+            calls.add("pay " + accountId + ":" + totalAmountToPay);
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        public void refundPayment(long accountId, int totalAmountToRefund) {
+            if (refundFailure != null) {
+                throw refundFailure;
+            }
+            calls.add("refund " + accountId + ":" + totalAmountToRefund);
+        }
+    }
+}
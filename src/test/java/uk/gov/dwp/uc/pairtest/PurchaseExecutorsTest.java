@@ -0,0 +1,24 @@
+package uk.gov.dwp.uc.pairtest;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.*;
+
+public class PurchaseExecutorsTest {
+
+    @Test
+    public void platformThreadFallbackIsBoundedAndPushesBackOnCallers() {
+        ExecutorService executor = PurchaseExecutors.defaultExecutor();
+        if (PurchaseExecutors.isDefaultExecutorVirtual()) {
+            return;
+        }
+
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        assertEquals(PurchaseExecutors.FALLBACK_THREADS, pool.getMaximumPoolSize());
+        assertEquals(PurchaseExecutors.FALLBACK_QUEUE_SIZE, pool.getQueue().remainingCapacity() + pool.getQueue().size());
+        assertTrue(pool.getRejectedExecutionHandler() instanceof ThreadPoolExecutor.CallerRunsPolicy);
+    }
+}
@@ -0,0 +1,35 @@
+package uk.gov.dwp.uc.pairtest;
+
+import org.junit.Test;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+
+import static org.junit.Assert.*;
+
+public class PurchaseOutcomeTest {
+
+    @Test
+    public void successfulOutcomeRoundTrips() {
+        long outcome = PurchaseOutcome.successful(20, Integer.MAX_VALUE);
+        assertTrue(PurchaseOutcome.isSuccessful(outcome));
+        assertEquals(20, PurchaseOutcome.getSeatsReserved(outcome));
+        assertEquals(Integer.MAX_VALUE, PurchaseOutcome.getAmountPaid(outcome));
+        assertEquals(PurchaseResult.successful(20, Integer.MAX_VALUE), PurchaseOutcome.toResult(outcome));
+    }
+
+    @Test
+    public void freeOrderIsStillSuccessful() {
+        long outcome = PurchaseOutcome.successful(0, 0);
+        assertTrue(PurchaseOutcome.isSuccessful(outcome));
+    }
+
+    @Test
+    public void everyRejectionReasonRoundTrips() {
+        for (RejectionReason reason : RejectionReason.values()) {
+            long outcome = PurchaseOutcome.rejected(reason);
+            assertFalse(PurchaseOutcome.isSuccessful(outcome));
+            assertEquals(reason, PurchaseOutcome.getRejectionReason(outcome));
+            assertSame(PurchaseResult.rejected(reason), PurchaseOutcome.toResult(outcome));
+        }
+    }
+}
@@ -3,11 +3,30 @@ package uk.gov.dwp.uc.pairtest;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
+import thirdparty.paymentgateway.IdempotentTicketPaymentService;
+import thirdparty.paymentgateway.RefundableTicketPaymentService;
 import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatInventory;
 import thirdparty.seatbooking.SeatReservationService;
+import thirdparty.seatbooking.SeatReservationServiceImpl;
+import thirdparty.seatbooking.SeatsUnavailableException;
+import uk.gov.dwp.uc.pairtest.domain.BatchPurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseOrder;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
 import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
 import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 public class TicketPaymentServiceImplTest {
@@ -44,7 +63,7 @@ public class TicketPaymentServiceImplTest {
     public void purchaseSingleAdultTicket() {
         TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1);
         ticketService.purchaseTickets(1L, ttr1);
-        verify(seatReservationServiceMock).reserveSeat(1L, 1);
+        verify(seatReservationServiceMock).holdSeats(1L, 1);
         verify(ticketPaymentServiceMock).makePayment(1L, 20);
     }
 
@@ -52,7 +71,7 @@ public class TicketPaymentServiceImplTest {
     public void purchaseMultipleAdultTickets() {
         TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 10);
         ticketService.purchaseTickets(1L, ttr1);
-        verify(seatReservationServiceMock).reserveSeat(1L, 10);
+        verify(seatReservationServiceMock).holdSeats(1L, 10);
         verify(ticketPaymentServiceMock).makePayment(1L, 200);
     }
 
@@ -60,7 +79,7 @@ public class TicketPaymentServiceImplTest {
     public void purchaseMaximumAdultTickets() {
         TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 20);
         ticketService.purchaseTickets(1L, ttr1);
-        verify(seatReservationServiceMock).reserveSeat(1L, 20);
+        verify(seatReservationServiceMock).holdSeats(1L, 20);
         verify(ticketPaymentServiceMock).makePayment(1L, 400);
     }
 
@@ -75,7 +94,7 @@ public class TicketPaymentServiceImplTest {
         TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 5);
         TicketTypeRequest ttr2= new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 4);
         ticketService.purchaseTickets(1L, ttr1, ttr2);
-        verify(seatReservationServiceMock).reserveSeat(1L, 9);
+        verify(seatReservationServiceMock).holdSeats(1L, 9);
         verify(ticketPaymentServiceMock).makePayment(1L, 180);
     }
 
@@ -129,7 +148,7 @@ public class TicketPaymentServiceImplTest {
         TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1);
         TicketTypeRequest ttr2 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1);
         ticketService.purchaseTickets(1L, ttr1, ttr2);
-        verify(seatReservationServiceMock).reserveSeat(1L, 2);
+        verify(seatReservationServiceMock).holdSeats(1L, 2);
         verify(ticketPaymentServiceMock).makePayment(1L, 30);
     }
 
@@ -138,7 +157,7 @@ public class TicketPaymentServiceImplTest {
         TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 5);
         TicketTypeRequest ttr2 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1);
         ticketService.purchaseTickets(1L, ttr1, ttr2);
-        verify(seatReservationServiceMock).reserveSeat(1L, 6);
+        verify(seatReservationServiceMock).holdSeats(1L, 6);
         verify(ticketPaymentServiceMock).makePayment(1L, 70);
     }
 
@@ -175,7 +194,7 @@ public class TicketPaymentServiceImplTest {
         TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1);
         TicketTypeRequest ttr2 = new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1);
         ticketService.purchaseTickets(1L, ttr1, ttr2);
-        verify(seatReservationServiceMock).reserveSeat(1L, 1);
+        verify(seatReservationServiceMock).holdSeats(1L, 1);
         verify(ticketPaymentServiceMock).makePayment(1L, 20);
     }
 
@@ -185,7 +204,7 @@ public class TicketPaymentServiceImplTest {
         TicketTypeRequest ttr2 = new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2);
         TicketTypeRequest ttr3 = new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 3);
         ticketService.purchaseTickets(1L, ttr1, ttr2, ttr3);
-        verify(seatReservationServiceMock).reserveSeat(1L, 6);
+        verify(seatReservationServiceMock).holdSeats(1L, 6);
         verify(ticketPaymentServiceMock).makePayment(1L, 100);
     }
 
@@ -207,4 +226,516 @@ public class TicketPaymentServiceImplTest {
         TicketTypeRequest ttr2 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 7);
         ticketService.purchaseTickets(1L, ttr1, ttr2);
     }
+
+    @Test
+    public void purchaseWithConfiguredLimitAndPrices() {
+        ticketService = new TicketServiceImpl(ticketPaymentServiceMock, seatReservationServiceMock, 5, 25, 12);
+        TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2);
+        TicketTypeRequest ttr2 = new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 3);
+        ticketService.purchaseTickets(1L, ttr1, ttr2);
+        verify(seatReservationServiceMock).holdSeats(1L, 5);
+        verify(ticketPaymentServiceMock).makePayment(1L, 86);
+    }
+
+    @Test(expected= InvalidPurchaseException.class)
+    public void purchaseAboveConfiguredMaximum() {
+        ticketService = new TicketServiceImpl(ticketPaymentServiceMock, seatReservationServiceMock, 5, 25, 12);
+        TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 6);
+        ticketService.purchaseTickets(1L, ttr1);
+    }
+
+    @Test
+    public void purchaseAfterUpdatingLimitAndPrices() {
+        TicketServiceImpl configurableTicketService = new TicketServiceImpl(ticketPaymentServiceMock, seatReservationServiceMock);
+        configurableTicketService.updateTicketLimitAndPrices(30, 15, 5);
+        TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 25);
+        configurableTicketService.purchaseTickets(1L, ttr1);
+        verify(seatReservationServiceMock).holdSeats(1L, 25);
+        verify(ticketPaymentServiceMock).makePayment(1L, 375);
+    }
+
+    @Test
+    public void rejectionCarriesInvalidAccountReason() {
+        assertRejected(RejectionReason.INVALID_ACCOUNT, 0L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+    }
+
+    @Test
+    public void rejectionCarriesEmptyOrderReason() {
+        assertRejected(RejectionReason.EMPTY_ORDER, 1L);
+    }
+
+    @Test
+    public void rejectionCarriesNonPositiveCountReason() {
+        assertRejected(RejectionReason.NON_POSITIVE_COUNT, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, -5),
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 7));
+    }
+
+    @Test
+    public void rejectionCarriesOverMaximumReason() {
+        assertRejected(RejectionReason.OVER_MAXIMUM, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 21));
+    }
+
+    @Test
+    public void rejectionCarriesInfantsExceedAdultsReason() {
+        assertRejected(RejectionReason.INFANTS_EXCEED_ADULTS, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 2));
+    }
+
+    @Test
+    public void rejectionCarriesNoAdultReason() {
+        assertRejected(RejectionReason.NO_ADULT, 1L, new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1));
+    }
+
+    private void assertRejected(RejectionReason expected, long accountId, TicketTypeRequest... ticketTypeRequests) {
+        try {
+            ticketService.purchaseTickets(accountId, ticketTypeRequests);
+            fail("Expected purchase to be rejected with " + expected);
+        } catch (InvalidPurchaseException e) {
+            assertEquals(expected, e.getReason());
+        }
+        verifyNoInteractions(seatReservationServiceMock, ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void tryPurchaseReportsSeatsAndAmount() {
+        TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 4);
+        TicketTypeRequest ttr2 = new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2);
+        TicketTypeRequest ttr3 = new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 3);
+        PurchaseResult result = ticketService.tryPurchaseTickets(1L, ttr1, ttr2, ttr3);
+        assertEquals(PurchaseResult.successful(6, 100), result);
+        verify(seatReservationServiceMock).holdSeats(1L, 6);
+        verify(ticketPaymentServiceMock).makePayment(1L, 100);
+    }
+
+    @Test
+    public void tryPurchaseReportsRejectionWithoutThrowing() {
+        TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1);
+        TicketTypeRequest ttr2 = new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 2);
+        PurchaseResult result = ticketService.tryPurchaseTickets(1L, ttr1, ttr2);
+        assertFalse(result.isSuccessful());
+        assertEquals(RejectionReason.INFANTS_EXCEED_ADULTS, result.getRejectionReason());
+        verifyNoInteractions(seatReservationServiceMock, ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void nullAccountIdIsRejected() {
+        try {
+            ticketService.purchaseTickets(null, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+            fail("Expected purchase to be rejected");
+        } catch (InvalidPurchaseException e) {
+            assertEquals(RejectionReason.INVALID_ACCOUNT, e.getReason());
+        }
+    }
+
+    @Test
+    public void purchaseWithPrimitiveAccountId() {
+        TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2);
+        TicketTypeRequest ttr2 = new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1);
+        ticketService.purchaseTicketsForAccount(1_000_000L, ttr1, ttr2);
+        verify(seatReservationServiceMock).holdSeats(1_000_000L, 2);
+        verify(ticketPaymentServiceMock).makePayment(1_000_000L, 40);
+    }
+
+    @Test(expected= InvalidPurchaseException.class)
+    public void purchaseWithPrimitiveAccountIdThatBreaksRules() {
+        TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 2);
+        ticketService.purchaseTicketsForAccount(1L, ttr1);
+    }
+
+    @Test
+    public void purchaseWithPurchaseOrder() {
+        PurchaseOrder order = PurchaseOrder.forCurrentThread()
+                .add(TicketTypeRequest.Type.ADULT, 4)
+                .add(TicketTypeRequest.Type.CHILD, 2)
+                .add(TicketTypeRequest.Type.INFANT, 3);
+        ticketService.purchaseTicketsForAccount(1L, order);
+        verify(seatReservationServiceMock).holdSeats(1L, 6);
+        verify(ticketPaymentServiceMock).makePayment(1L, 100);
+    }
+
+    @Test
+    public void tryPurchaseWithPurchaseOrderBreakingRules() {
+        assertEquals(RejectionReason.EMPTY_ORDER, ticketService.tryPurchaseTickets(1L, new PurchaseOrder()).getRejectionReason());
+        assertEquals(RejectionReason.NON_POSITIVE_COUNT, ticketService.tryPurchaseTickets(1L,
+                new PurchaseOrder().add(TicketTypeRequest.Type.ADULT, 2).add(TicketTypeRequest.Type.CHILD, 0)).getRejectionReason());
+        assertEquals(RejectionReason.OVER_MAXIMUM, ticketService.tryPurchaseTickets(1L,
+                new PurchaseOrder().add(TicketTypeRequest.Type.ADULT, 21)).getRejectionReason());
+        assertEquals(RejectionReason.NO_ADULT, ticketService.tryPurchaseTickets(1L,
+                new PurchaseOrder().add(TicketTypeRequest.Type.CHILD, 2)).getRejectionReason());
+        verifyNoInteractions(seatReservationServiceMock, ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void purchaseOrderAndItsTicketTypeRequestsAreRejectedAlike() {
+        PurchaseOrder[] orders = {
+                new PurchaseOrder(),
+                new PurchaseOrder().add(TicketTypeRequest.Type.ADULT, 3).add(TicketTypeRequest.Type.ADULT, -1),
+                new PurchaseOrder().add(TicketTypeRequest.Type.ADULT, 0),
+                new PurchaseOrder().add(TicketTypeRequest.Type.ADULT, 15).add(TicketTypeRequest.Type.ADULT, 6),
+                new PurchaseOrder().add(TicketTypeRequest.Type.CHILD, 2),
+                new PurchaseOrder().add(TicketTypeRequest.Type.ADULT, 1).add(TicketTypeRequest.Type.INFANT, 2)
+        };
+        for (PurchaseOrder order : orders) {
+            RejectionReason reason = ticketService.tryPurchaseTickets(1L, order).getRejectionReason();
+            assertNotNull(reason);
+            try {
+                assertEquals(reason, ticketService.tryPurchaseTickets(1L, order.toTicketTypeRequests()).getRejectionReason());
+            } catch (IllegalStateException notConvertible) {
+                assertEquals(RejectionReason.NON_POSITIVE_COUNT, reason);
+            }
+        }
+        verifyNoInteractions(seatReservationServiceMock, ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void purchaseAsyncReservesAndPays() throws Exception {
+        TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2);
+        TicketTypeRequest ttr2 = new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1);
+        PurchaseResult result = ticketService.purchaseTicketsAsync(1L, ttr1, ttr2).get(5, TimeUnit.SECONDS);
+        assertEquals(PurchaseResult.successful(3, 50), result);
+        verify(seatReservationServiceMock).holdSeats(1L, 3);
+        verify(ticketPaymentServiceMock).makePayment(1L, 50);
+    }
+
+    @Test
+    public void purchaseAsyncRejectionCompletesImmediately() {
+        TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1);
+        Executor neverUsed = task -> fail("Rejected purchases should not be handed to the executor");
+        CompletableFuture<PurchaseResult> result = ticketService.purchaseTicketsAsync(1L, neverUsed, ttr1);
+        assertTrue(result.isDone());
+        assertEquals(RejectionReason.INFANTS_EXCEED_ADULTS, result.join().getRejectionReason());
+        verifyNoInteractions(seatReservationServiceMock, ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void purchaseAsyncCompletesExceptionallyWhenPaymentFails() throws Exception {
+        IllegalStateException failure = new IllegalStateException("Card declined");
+        doThrow(failure).when(ticketPaymentServiceMock).makePayment(1L, 20);
+        TicketTypeRequest ttr1 = new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1);
+        try {
+            ticketService.purchaseTicketsAsync(1L, Runnable::run, ttr1).get(5, TimeUnit.SECONDS);
+            fail("Expected the purchase to fail");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void purchaseBatchReservesAndPaysEachValidOrder() {
+        BatchPurchaseResult result = ticketService.purchaseTicketsBatch(List.of(
+                new PurchaseRequest(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2)),
+                new PurchaseRequest(2L, new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1)),
+                new PurchaseRequest(3L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1),
+                        new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1))));
+
+        assertEquals(3, result.size());
+        assertEquals(PurchaseResult.successful(2, 40), result.getResult(0));
+        assertEquals(RejectionReason.INFANTS_EXCEED_ADULTS, result.getResult(1).getRejectionReason());
+        assertEquals(PurchaseResult.successful(2, 30), result.getResult(2));
+        assertEquals(2, result.getSuccessfulCount());
+        assertEquals(1, result.getRejectedCount());
+        assertEquals(0, result.getFailedCount());
+        verify(seatReservationServiceMock).holdSeats(1L, 2);
+        verify(ticketPaymentServiceMock).makePayment(1L, 40);
+        verify(seatReservationServiceMock).holdSeats(3L, 2);
+        verify(ticketPaymentServiceMock).makePayment(3L, 30);
+        verify(seatReservationServiceMock, times(2)).confirmHold(0L);
+        verifyNoMoreInteractions(seatReservationServiceMock, ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void purchaseBatchRecordsFailureAndCarriesOn() {
+        IllegalStateException failure = new IllegalStateException("Card declined");
+        doThrow(failure).when(ticketPaymentServiceMock).makePayment(1L, 20);
+        BatchPurchaseResult result = ticketService.purchaseTicketsBatch(List.of(
+                new PurchaseRequest(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1)),
+                new PurchaseRequest(2L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1))));
+
+        assertTrue(result.isFailed(0));
+        assertSame(failure, result.getFailure(0));
+        assertNull(result.getResult(0));
+        assertTrue(result.isSuccessful(1));
+        verify(ticketPaymentServiceMock).makePayment(2L, 20);
+    }
+
+    @Test
+    public void purchaseBatchRejectsMalformedOrderAlone() {
+        BatchPurchaseResult result = ticketService.purchaseTicketsBatch(List.of(
+                new PurchaseRequest(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1), null),
+                new PurchaseRequest(2L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1))));
+
+        assertEquals(RejectionReason.MALFORMED_REQUEST, result.getResult(0).getRejectionReason());
+        assertTrue(result.isSuccessful(1));
+        verify(ticketPaymentServiceMock).makePayment(2L, 20);
+        verifyNoMoreInteractions(ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void purchaseBatchReservesValidOrdersAtTheSameTime() {
+        CyclicBarrier bothHolding = new CyclicBarrier(2);
+        when(seatReservationServiceMock.holdSeats(anyLong(), anyInt())).thenAnswer(invocation -> {
+            bothHolding.await(5, TimeUnit.SECONDS);
+            return 0L;
+        });
+
+        BatchPurchaseResult result = ticketService.purchaseTicketsBatch(List.of(
+                new PurchaseRequest(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1)),
+                new PurchaseRequest(2L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2))));
+
+        assertEquals(2, result.getSuccessfulCount());
+        verify(ticketPaymentServiceMock).makePayment(1L, 20);
+        verify(ticketPaymentServiceMock).makePayment(2L, 40);
+    }
+
+    @Test
+    public void malformedTicketTypeRequestIsRejected() {
+        assertEquals(RejectionReason.MALFORMED_REQUEST, ticketService.tryPurchaseTickets(1L,
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1), null).getRejectionReason());
+        verifyNoInteractions(seatReservationServiceMock, ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void purchaseEmptyBatch() {
+        BatchPurchaseResult result = ticketService.purchaseTicketsBatch(List.of());
+        assertEquals(0, result.size());
+        verifyNoInteractions(seatReservationServiceMock, ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void purchaseHoldsSeatsAndConfirmsAfterPayment() {
+        when(seatReservationServiceMock.holdSeats(1L, 3)).thenReturn(42L);
+        ticketService.purchaseTickets(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 3));
+
+        InOrder inOrder = inOrder(seatReservationServiceMock, ticketPaymentServiceMock);
+        inOrder.verify(seatReservationServiceMock).holdSeats(1L, 3);
+        inOrder.verify(ticketPaymentServiceMock).makePayment(1L, 60);
+        inOrder.verify(seatReservationServiceMock).confirmHold(42L);
+        verify(seatReservationServiceMock, never()).releaseHold(anyLong());
+    }
+
+    @Test
+    public void purchaseReleasesHeldSeatsWhenPaymentFails() {
+        IllegalStateException failure = new IllegalStateException("Card declined");
+        when(seatReservationServiceMock.holdSeats(1L, 1)).thenReturn(42L);
+        doThrow(failure).when(ticketPaymentServiceMock).makePayment(1L, 20);
+        try {
+            ticketService.purchaseTickets(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+            fail("Expected the purchase to fail");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+
+        verify(seatReservationServiceMock).releaseHold(42L);
+        verify(seatReservationServiceMock, never()).confirmHold(anyLong());
+    }
+
+    @Test
+    public void paymentFailureIsKeptWhenReleasingTheHoldFails() {
+        IllegalStateException failure = new IllegalStateException("Card declined");
+        IllegalStateException releaseFailure = new IllegalStateException("Seat booking unavailable");
+        doThrow(failure).when(ticketPaymentServiceMock).makePayment(1L, 20);
+        doThrow(releaseFailure).when(seatReservationServiceMock).releaseHold(anyLong());
+        try {
+            ticketService.purchaseTickets(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+            fail("Expected the purchase to fail");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+            assertArrayEquals(new Throwable[] {releaseFailure}, e.getSuppressed());
+        }
+    }
+
+    @Test
+    public void paidSeatsAreReservedOutrightWhenTheHoldCannotBeConfirmed() {
+        when(seatReservationServiceMock.holdSeats(1L, 2)).thenReturn(42L);
+        doThrow(new IllegalStateException("Seat hold 42 does not exist or has expired")).when(seatReservationServiceMock).confirmHold(42L);
+        ticketService.purchaseTickets(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2));
+
+        InOrder inOrder = inOrder(seatReservationServiceMock, ticketPaymentServiceMock);
+        inOrder.verify(ticketPaymentServiceMock).makePayment(1L, 40);
+        inOrder.verify(seatReservationServiceMock).confirmHold(42L);
+        inOrder.verify(seatReservationServiceMock).reserveSeat(1L, 2);
+        inOrder.verify(seatReservationServiceMock).releaseHold(42L);
+    }
+
+    @Test
+    public void paymentIsRefundedWhenPaidSeatsCannotBeReservedAtAll() {
+        RefundableTicketPaymentService refundable = mock(RefundableTicketPaymentService.class);
+        when(refundable.canRefund()).thenReturn(true);
+        ticketService = new TicketServiceImpl(refundable, seatReservationServiceMock);
+        IllegalStateException expired = new IllegalStateException("Seat hold 42 does not exist or has expired");
+        SeatsUnavailableException soldOut = new SeatsUnavailableException(1L, 2);
+        when(seatReservationServiceMock.holdSeats(1L, 2)).thenReturn(42L);
+        doThrow(expired).when(seatReservationServiceMock).confirmHold(42L);
+        doThrow(soldOut).when(seatReservationServiceMock).reserveSeat(1L, 2);
+        try {
+            ticketService.purchaseTickets(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2));
+            fail("Expected the purchase to fail");
+        } catch (SeatsUnavailableException e) {
+            assertSame(soldOut, e);
+            assertArrayEquals(new Throwable[] {expired}, e.getSuppressed());
+        }
+        verify(refundable).refundPayment(1L, 40);
+    }
+
+    @Test
+    public void holdIsReleasedAndPaymentRefundedWhenConfirmFailsForAnotherReason() {
+        RefundableTicketPaymentService refundable = mock(RefundableTicketPaymentService.class);
+        when(refundable.canRefund()).thenReturn(true);
+        ticketService = new TicketServiceImpl(refundable, seatReservationServiceMock);
+        RuntimeException unreachable = new RuntimeException("Seat booking unreachable");
+        when(seatReservationServiceMock.holdSeats(1L, 2)).thenReturn(42L);
+        doThrow(unreachable).when(seatReservationServiceMock).confirmHold(42L);
+        try {
+            ticketService.purchaseTickets(1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2));
+            fail("Expected the purchase to fail");
+        } catch (RuntimeException e) {
+            assertSame(unreachable, e);
+        }
+
+        InOrder inOrder = inOrder(seatReservationServiceMock, refundable);
+        inOrder.verify(refundable).makePayment(1L, 40);
+        inOrder.verify(seatReservationServiceMock).confirmHold(42L);
+        inOrder.verify(seatReservationServiceMock).releaseHold(42L);
+        inOrder.verify(refundable).refundPayment(1L, 40);
+        verify(seatReservationServiceMock, never()).reserveSeat(anyLong(), anyInt());
+    }
+
+    @Test
+    public void purchaseForScreeningHoldsSeatsInThatScreening() {
+        when(seatReservationServiceMock.holdSeats(1L, 7L, 3)).thenReturn(42L);
+        ticketService.purchaseTicketsForScreening(1L, 7L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1));
+
+        verify(seatReservationServiceMock).holdSeats(1L, 7L, 3);
+        verify(ticketPaymentServiceMock).makePayment(1L, 50);
+        verify(seatReservationServiceMock).confirmHold(42L);
+        verifyNoMoreInteractions(seatReservationServiceMock);
+    }
+
+    @Test
+    public void tryPurchaseForScreeningFromPurchaseOrder() {
+        PurchaseResult result = ticketService.tryPurchaseTicketsForScreening(1L, 7L,
+                PurchaseOrder.of(new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1)));
+
+        assertEquals(PurchaseResult.successful(1, 20), result);
+        verify(seatReservationServiceMock).holdSeats(1L, 7L, 1);
+    }
+
+    @Test
+    public void rejectedPurchaseForScreeningReservesNothing() {
+        PurchaseResult result = ticketService.tryPurchaseTicketsForScreening(1L, 7L,
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1));
+
+        assertEquals(RejectionReason.INFANTS_EXCEED_ADULTS, result.getRejectionReason());
+        verifyNoInteractions(seatReservationServiceMock, ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void soldOutScreeningFailsThePurchaseWithoutPayment() {
+        SeatInventory inventory = new SeatInventory(2);
+        inventory.addScreening(7L, 2);
+        inventory.addScreening(8L, 10);
+        try (SeatReservationServiceImpl seats = new SeatReservationServiceImpl(inventory, 7L, 1, TimeUnit.MINUTES)) {
+            ticketService = new TicketServiceImpl(ticketPaymentServiceMock, seats);
+            ticketService.purchaseTicketsForScreening(1L, 7L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2));
+            try {
+                ticketService.purchaseTicketsForScreening(2L, 7L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+                fail("Expected the screening to be sold out");
+            } catch (SeatsUnavailableException e) {
+                assertEquals(7L, e.getScreeningId());
+            }
+            ticketService.purchaseTicketsForScreening(2L, 8L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+
+            verify(ticketPaymentServiceMock).makePayment(1L, 40);
+            verify(ticketPaymentServiceMock).makePayment(2L, 20);
+            verifyNoMoreInteractions(ticketPaymentServiceMock);
+            assertEquals(9, seats.getRemainingSeats(8L));
+        }
+    }
+
+    @Test
+    public void repeatedIdempotencyKeyReturnsTheFirstOutcomeWithoutPayingAgain() {
+        PurchaseResult first = ticketService.tryPurchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2));
+        PurchaseResult retry = ticketService.tryPurchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2));
+
+        assertEquals(PurchaseResult.successful(2, 40), first);
+        assertEquals(first, retry);
+        verify(seatReservationServiceMock, times(1)).holdSeats(1L, 2);
+        verify(ticketPaymentServiceMock, times(1)).makePayment(1L, 40);
+    }
+
+    @Test
+    public void repeatedIdempotencyKeyRethrowsTheFirstRejection() {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                ticketService.purchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1));
+                fail("Expected the purchase to be rejected");
+            } catch (InvalidPurchaseException e) {
+                assertEquals(RejectionReason.NO_ADULT, e.getReason());
+            }
+        }
+        verifyNoInteractions(seatReservationServiceMock, ticketPaymentServiceMock);
+    }
+
+    @Test
+    public void idempotencyKeyOfAFailedPurchaseCanBeRetried() {
+        doThrow(new IllegalStateException("Card declined")).doNothing().when(ticketPaymentServiceMock).makePayment(1L, 20);
+        try {
+            ticketService.purchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+            fail("Expected the purchase to fail");
+        } catch (IllegalStateException e) {
+            assertEquals("Card declined", e.getMessage());
+        }
+        ticketService.purchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+
+        verify(ticketPaymentServiceMock, times(2)).makePayment(1L, 20);
+        IdempotencyCache cache = ((TicketServiceImpl) ticketService).getIdempotencyCache();
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void idempotencyKeyCannotBeReusedByAnotherAccount() {
+        ticketService.purchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+        ticketService.purchaseTicketsIdempotently(99L, 2L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+    }
+
+    @Test
+    public void idempotencyKeyCannotBeReusedForAnotherOrder() {
+        ticketService.purchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+        try {
+            ticketService.purchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2));
+            fail("Expected the key to be refused");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Idempotency key 99 was used for another order", e.getMessage());
+        }
+        ticketService.purchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+        verify(ticketPaymentServiceMock).makePayment(1L, 20);
+    }
+
+    @Test
+    public void idempotencyKeyTellsApartOrdersWhoseCountsOnceHashedAlike() {
+        assertEquals(RejectionReason.NO_ADULT, ticketService.tryPurchaseTicketsIdempotently(99L, 1L,
+                new TicketTypeRequest(TicketTypeRequest.Type.CHILD, 1)).getRejectionReason());
+        try {
+            ticketService.tryPurchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 1 << 21));
+            fail("Expected the key to be refused");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Idempotency key 99 was used for another order", e.getMessage());
+        }
+    }
+
+    @Test
+    public void idempotencyKeyIsPassedOnToAPaymentServiceThatTakesIt() {
+        IdempotentTicketPaymentService idempotentPayments = mock(IdempotentTicketPaymentService.class);
+        TicketServiceImpl service = new TicketServiceImpl(idempotentPayments, seatReservationServiceMock);
+
+        service.purchaseTicketsIdempotently(99L, 1L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2));
+        service.purchaseTickets(2L, new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+
+        verify(idempotentPayments).makePayment(99L, 1L, 40);
+        verify(idempotentPayments).makePayment(2L, 20);
+        verifyNoMoreInteractions(idempotentPayments);
+    }
 }
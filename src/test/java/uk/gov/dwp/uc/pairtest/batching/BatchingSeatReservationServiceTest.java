@@ -0,0 +1,257 @@
+package uk.gov.dwp.uc.pairtest.batching;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.BulkSeatReservationService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+import static org.junit.Assert.*;
+
+public class BatchingSeatReservationServiceTest {
+
+    private ExecutorService callers;
+    private RecordingBulkService bulkService;
+
+    @Before
+    public void setup() {
+        callers = Executors.newCachedThreadPool();
+        bulkService = new RecordingBulkService(accountId -> false);
+    }
+
+    @After
+    public void teardown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaitingForTheWindow() throws Exception {
+        BatchingSeatReservationService service = new BatchingSeatReservationService(bulkService, 4, 1, TimeUnit.MINUTES);
+        List<Future<?>> reservations = new ArrayList<>();
+        for (long accountId = 1; accountId <= 4; accountId++) {
+            long account = accountId;
+            reservations.add(callers.submit(() -> service.reserveSeat(account, 2)));
+        }
+        for (Future<?> reservation : reservations) {
+            reservation.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, bulkService.batchSizes.size());
+        assertEquals(4, (int) bulkService.batchSizes.get(0));
+        assertEquals(1, service.getMetrics().getBatches());
+        assertEquals(1, service.getMetrics().getBatchesSentWhenFull());
+        assertEquals(4, service.getMetrics().getRequests());
+        assertEquals(4, service.getMetrics().getLargestBatchSize());
+        assertEquals(4.0, service.getMetrics().getAverageBatchSize(), 0.0);
+    }
+
+    @Test
+    public void batchIsSentWhenWindowCloses() {
+        BatchingSeatReservationService service = new BatchingSeatReservationService(bulkService, 100, 20, TimeUnit.MILLISECONDS);
+        service.reserveSeat(1L, 3);
+
+        assertEquals(List.of(1), bulkService.batchSizes);
+        assertEquals(0, service.getMetrics().getBatchesSentWhenFull());
+        assertTrue(service.getMetrics().getLongestWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(15));
+    }
+
+    @Test
+    public void batchOfOneIsSentImmediately() {
+        BatchingSeatReservationService service = new BatchingSeatReservationService(bulkService, 1, 1, TimeUnit.MINUTES);
+        service.reserveSeat(1L, 3);
+        service.reserveSeat(2L, 1);
+
+        assertEquals(List.of(1, 1), bulkService.batchSizes);
+        assertEquals(2, service.getMetrics().getBatchesSentWhenFull());
+    }
+
+    @Test
+    public void failureOnlyReachesItsOwnCaller() throws Exception {
+        bulkService = new RecordingBulkService(accountId -> accountId == 2L);
+        BatchingSeatReservationService service = new BatchingSeatReservationService(bulkService, 2, 1, TimeUnit.MINUTES);
+        Future<?> succeeds = callers.submit(() -> service.reserveSeat(1L, 1));
+        Future<?> fails = callers.submit(() -> service.reserveSeat(2L, 1));
+
+        succeeds.get(5, TimeUnit.SECONDS);
+        try {
+            fails.get(5, TimeUnit.SECONDS);
+            fail("Expected the reservation to fail");
+        } catch (ExecutionException e) {
+            assertEquals("No seats for account 2", e.getCause().getMessage());
+        }
+        assertEquals(List.of(2), bulkService.batchSizes);
+    }
+
+    @Test
+    public void failedBulkCallReachesEveryCaller() {
+        IllegalStateException failure = new IllegalStateException("Seat booking unavailable");
+        BulkSeatReservationService unavailable = new RecordingBulkService(accountId -> false) {
+            @Override
+            public RuntimeException[] reserveSeats(long[] accountIds, int[] totalSeatsToAllocate) {
+                throw failure;
+            }
+        };
+        BatchingSeatReservationService service = new BatchingSeatReservationService(unavailable, 1, 0, TimeUnit.MILLISECONDS);
+        try {
+            service.reserveSeat(1L, 1);
+            fail("Expected the reservation to fail");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void paymentFailureReleasesTheHoldThroughTheBatcher() {
+        BatchingSeatReservationService service = new BatchingSeatReservationService(bulkService, 4, 1, TimeUnit.MILLISECONDS);
+        TicketPaymentService declining = (accountId, totalAmountToPay) -> {
+            throw new IllegalStateException("Card declined");
+        };
+        try {
+            new TicketServiceImpl(declining, service).purchaseTickets(1L, TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 2));
+            fail("Expected the purchase to fail");
+        } catch (IllegalStateException e) {
+            assertEquals("Card declined", e.getMessage());
+        }
+
+        assertEquals(List.of("hold 1:2"), bulkService.calls);
+        assertEquals(List.of(1L), bulkService.released);
+        assertTrue(bulkService.batchSizes.isEmpty());
+        assertEquals(List.of(1), bulkService.holdBatchSizes);
+    }
+
+    @Test
+    public void holdsShareABulkCallAndEachGetsItsOwnHoldId() throws Exception {
+        BatchingSeatReservationService service = new BatchingSeatReservationService(bulkService, 3, 1, TimeUnit.MINUTES);
+        List<Future<Long>> holds = new ArrayList<>();
+        for (long accountId = 1; accountId <= 3; accountId++) {
+            long account = accountId;
+            holds.add(callers.submit(() -> service.holdSeats(account, 2)));
+        }
+        List<Long> holdIds = new ArrayList<>();
+        for (Future<Long> hold : holds) {
+            holdIds.add(hold.get(5, TimeUnit.SECONDS));
+        }
+
+        Collections.sort(holdIds);
+        assertEquals(List.of(1L, 2L, 3L), holdIds);
+        assertEquals(List.of(3), bulkService.holdBatchSizes);
+        assertEquals(1, service.getHoldMetrics().getBatchesSentWhenFull());
+        assertTrue(bulkService.batchSizes.isEmpty());
+    }
+
+    @Test
+    public void failedHoldOnlyReachesItsOwnCaller() throws Exception {
+        bulkService = new RecordingBulkService(accountId -> accountId == 2L);
+        BatchingSeatReservationService service = new BatchingSeatReservationService(bulkService, 2, 1, TimeUnit.MINUTES);
+        Future<Long> succeeds = callers.submit(() -> service.holdSeats(1L, 1));
+        Future<Long> fails = callers.submit(() -> service.holdSeats(2L, 1));
+
+        assertEquals(1L, (long) succeeds.get(5, TimeUnit.SECONDS));
+        try {
+            fails.get(5, TimeUnit.SECONDS);
+            fail("Expected the hold to fail");
+        } catch (ExecutionException e) {
+            assertEquals("No seats for account 2", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void screeningsHoldsAndConfirmsArePassedToTheDelegate() {
+        BatchingSeatReservationService service = new BatchingSeatReservationService(bulkService, 4, 1, TimeUnit.MINUTES);
+        service.reserveSeat(1L, 7L, 2);
+        long holdId = service.holdSeats(2L, 7L, 3);
+        service.confirmHold(holdId);
+
+        assertEquals(List.of("reserve 1:7:2", "hold 2:7:3", "confirm 1"), bulkService.calls);
+        assertTrue(bulkService.batchSizes.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeMustBePositive() {
+        new BatchingSeatReservationService(bulkService, 0, 1, TimeUnit.MILLISECONDS);
+    }
+
+    private static class RecordingBulkService implements BulkSeatReservationService {
+
+        private final LongPredicate failing;
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        private final List<Long> released = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> holdBatchSizes = Collections.synchronizedList(new ArrayList<>());
+        private long lastHoldId;
+
+        private RecordingBulkService(LongPredicate failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+            throw new UnsupportedOperationException("Reservations should be made in bulk");
+        }
+
+        @Override
+        public void reserveSeat(long accountId, long screeningId, int totalSeatsToAllocate) {
+            calls.add("reserve " + accountId + ":" + screeningId + ":" + totalSeatsToAllocate);
+        }
+
+        @Override
+        public long holdSeats(long accountId, int totalSeatsToAllocate) {
+            throw new UnsupportedOperationException("Holds should be made in bulk");
+        }
+
+        @Override
+        public synchronized long holdSeats(long accountId, long screeningId, int totalSeatsToAllocate) {
+            calls.add("hold " + accountId + ":" + screeningId + ":" + totalSeatsToAllocate);
+            return ++lastHoldId;
+        }
+
+        @Override
+        public void confirmHold(long holdId) {
+            calls.add("confirm " + holdId);
+        }
+
+        @Override
+        public void releaseHold(long holdId) {
+            released.add(holdId);
+        }
+
+        @Override
+        public RuntimeException[] reserveSeats(long[] accountIds, int[] totalSeatsToAllocate) {
+            batchSizes.add(accountIds.length);
+            RuntimeException[] failures = new RuntimeException[accountIds.length];
+            for (int i = 0; i < accountIds.length; i++) {
+                if (failing.test(accountIds[i])) {
+                    failures[i] = new IllegalStateException("No seats for account " + accountIds[i]);
+                }
+            }
+            return failures;
+        }
+
+        @Override
+        public synchronized RuntimeException[] holdSeats(long[] accountIds, int[] totalSeatsToAllocate, long[] holdIds) {
+            holdBatchSizes.add(accountIds.length);
+            RuntimeException[] failures = new RuntimeException[accountIds.length];
+            for (int i = 0; i < accountIds.length; i++) {
+                if (failing.test(accountIds[i])) {
+                    failures[i] = new IllegalStateException("No seats for account " + accountIds[i]);
+                } else {
+                    calls.add("hold " + accountIds[i] + ":" + totalSeatsToAllocate[i]);
+                    holdIds[i] = ++lastHoldId;
+                }
+            }
+            return failures;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package uk.gov.dwp.uc.pairtest.batching;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import thirdparty.paymentgateway.BulkTicketPaymentService;
+import thirdparty.paymentgateway.IdempotentTicketPaymentService;
+import thirdparty.paymentgateway.RefundableTicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class BatchingTicketPaymentServiceTest {
+
+    private ExecutorService callers;
+    private RecordingBulkService bulkService;
+
+    @Before
+    public void setup() {
+        callers = Executors.newCachedThreadPool();
+        bulkService = new RecordingBulkService(-1L);
+    }
+
+    @After
+    public void teardown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void paymentsForTheSameAccountAreTakenAsOneCharge() throws Exception {
+        BatchingTicketPaymentService service = new BatchingTicketPaymentService(bulkService, 3, 1, TimeUnit.MINUTES, true);
+        awaitAll(pay(service, 1L, 20), pay(service, 2L, 10), pay(service, 1L, 30));
+
+        assertEquals(1, bulkService.submissions.size());
+        assertEquals(2, bulkService.charges.size());
+        assertTrue(bulkService.charges.contains("1:50"));
+        assertTrue(bulkService.charges.contains("2:10"));
+        assertEquals(1, service.getCoalescedPayments());
+        assertEquals(3, service.getMetrics().getRequests());
+    }
+
+    @Test
+    public void paymentsAreChargedSeparatelyWithoutCoalescing() throws Exception {
+        BatchingTicketPaymentService service = new BatchingTicketPaymentService(bulkService, 2, 1, TimeUnit.MINUTES, false);
+        awaitAll(pay(service, 1L, 20), pay(service, 1L, 30));
+
+        assertEquals(1, bulkService.submissions.size());
+        assertEquals(2, bulkService.charges.size());
+        assertEquals(0, service.getCoalescedPayments());
+    }
+
+    @Test
+    public void failedChargeReachesEveryPaymentCoalescedIntoIt() throws Exception {
+        bulkService = new RecordingBulkService(1L);
+        BatchingTicketPaymentService service = new BatchingTicketPaymentService(bulkService, 3, 1, TimeUnit.MINUTES, true);
+        Future<?> first = pay(service, 1L, 20);
+        Future<?> second = pay(service, 1L, 30);
+        Future<?> other = pay(service, 2L, 10);
+
+        other.get(5, TimeUnit.SECONDS);
+        assertDeclined(first);
+        assertDeclined(second);
+    }
+
+    @Test
+    public void chargesThatWouldOverflowAreNotCoalesced() {
+        MicroBatcher.BulkCall recording = (accountIds, values, results) -> {
+            bulkService.makePayments(accountIds, values);
+            return new RuntimeException[accountIds.length];
+        };
+        CoalescingBulkCall coalescer = new CoalescingBulkCall(recording);
+        RuntimeException[] failures = coalescer.call(new long[]{1L, 1L, 1L}, new int[]{Integer.MAX_VALUE, 1, 2}, new long[3]);
+
+        assertEquals(3, failures.length);
+        assertEquals(List.of("1:" + Integer.MAX_VALUE, "1:3"), bulkService.charges);
+        assertEquals(1, coalescer.getCoalescedRequests());
+    }
+
+    @Test
+    public void refundsAndKeyedPaymentsArePassedToAProviderThatTakesThem() {
+        FullProvider provider = new FullProvider();
+        BatchingTicketPaymentService service = new BatchingTicketPaymentService(provider, 4, 1, TimeUnit.MINUTES, true);
+        service.makePayment(99L, 1L, 40);
+        service.refundPayment(1L, 40);
+
+        assertEquals(List.of("pay 99:1:40", "refund 1:40"), provider.calls);
+        assertTrue(((RecordingBulkService) provider).submissions.isEmpty());
+        assertTrue(service.canRefund());
+        assertTrue(service.isIdempotent());
+        new TicketServiceImpl(service, mock(SeatReservationService.class)).enablePipelining(callers);
+    }
+
+    @Test
+    public void providerWithoutRefundsOrKeysIsReportedAsSuch() {
+        BatchingTicketPaymentService service = new BatchingTicketPaymentService(bulkService, 1, 1, TimeUnit.MINUTES, true);
+        assertFalse(service.canRefund());
+        assertFalse(service.isIdempotent());
+
+        service.makePayment(99L, 1L, 40);
+        assertEquals(List.of("1:40"), bulkService.charges);
+        try {
+            new TicketServiceImpl(service, mock(SeatReservationService.class)).enablePipelining(callers);
+            fail("Expected pipelining to need refunds");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    private Future<?> pay(BatchingTicketPaymentService service, long accountId, int amount) {
+        return callers.submit(() -> service.makePayment(accountId, amount));
+    }
+
+    private static void awaitAll(Future<?>... payments) throws Exception {
+        for (Future<?> payment : payments) {
+            payment.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void assertDeclined(Future<?> payment) throws Exception {
+        try {
+            payment.get(5, TimeUnit.SECONDS);
+            fail("Expected the payment to be declined");
+        } catch (ExecutionException e) {
+            assertEquals("Card declined for account 1", e.getCause().getMessage());
+        }
+    }
+
+    private static class RecordingBulkService implements BulkTicketPaymentService {
+
+        private final long decliningAccountId;
+        private final List<Integer> submissions = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> charges = Collections.synchronizedList(new ArrayList<>());
+
+        private RecordingBulkService(long decliningAccountId) {
+            this.decliningAccountId = decliningAccountId;
+        }
+
+        @Override
+        public void makePayment(long accountId, int totalAmountToPay) {
+            throw new UnsupportedOperationException("Payments should be made in bulk");
+        }
+
+        @Override
+        public RuntimeException[] makePayments(long[] accountIds, int[] totalAmountsToPay) {
+            submissions.add(accountIds.length);
+            RuntimeException[] failures = new RuntimeException[accountIds.length];
+            for (int i = 0; i < accountIds.length; i++) {
+                charges.add(accountIds[i] + ":" + totalAmountsToPay[i]);
+                if (accountIds[i] == decliningAccountId) {
+                    failures[i] = new IllegalStateException("Card declined for account " + accountIds[i]);
+                }
+            }
+            return failures;
+        }
+    }
+
+    private static class FullProvider extends RecordingBulkService implements RefundableTicketPaymentService,
+            IdempotentTicketPaymentService {
+
+        private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+        private FullProvider() {
+            super(-1L);
+        }
+
+        @Override
+        public void makePayment(long idempotencyKey, long accountId, int totalAmountToPay) {
+            calls.add("pay " + idempotencyKey + ":" + accountId + ":" + totalAmountToPay);
+        }
+
+        @Override
+        public void refundPayment(long accountId, int totalAmountToRefund) {
+            calls.add("refund " + accountId + ":" + totalAmountToRefund);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PurchaseOrderTest {
+
+    @Test
+    public void ticketsAreCountedPerType() {
+        PurchaseOrder order = new PurchaseOrder()
+                .add(TicketTypeRequest.Type.ADULT, 2)
+                .add(TicketTypeRequest.Type.CHILD, 3)
+                .add(new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 1));
+        assertEquals(3, order.getTickets(TicketTypeRequest.Type.ADULT));
+        assertEquals(3, order.getTickets(TicketTypeRequest.Type.CHILD));
+        assertEquals(0, order.getTickets(TicketTypeRequest.Type.INFANT));
+        assertEquals(6, order.getTotalTickets());
+        assertFalse(order.isEmpty());
+        assertFalse(order.containsNonPositiveRequest());
+    }
+
+    @Test
+    public void nonPositiveAddIsRecorded() {
+        PurchaseOrder order = new PurchaseOrder().add(TicketTypeRequest.Type.ADULT, 0);
+        assertTrue(order.containsNonPositiveRequest());
+        assertFalse(order.isEmpty());
+    }
+
+    @Test
+    public void resetEmptiesTheOrder() {
+        PurchaseOrder order = PurchaseOrder.of(
+                new TicketTypeRequest(TicketTypeRequest.Type.ADULT, 2),
+                new TicketTypeRequest(TicketTypeRequest.Type.INFANT, -1));
+        order.reset();
+        assertTrue(order.isEmpty());
+        assertFalse(order.containsNonPositiveRequest());
+        assertEquals(0, order.getTotalTickets());
+        assertEquals(0, order.getTickets(TicketTypeRequest.Type.ADULT));
+    }
+
+    @Test
+    public void forCurrentThreadReturnsTheSameEmptiedOrder() {
+        PurchaseOrder order = PurchaseOrder.forCurrentThread().add(TicketTypeRequest.Type.ADULT, 4);
+        PurchaseOrder again = PurchaseOrder.forCurrentThread();
+        assertSame(order, again);
+        assertTrue(again.isEmpty());
+    }
+
+    @Test
+    public void convertsBackToTicketTypeRequests() {
+        TicketTypeRequest[] ticketTypeRequests = new PurchaseOrder()
+                .add(TicketTypeRequest.Type.ADULT, 2)
+                .add(TicketTypeRequest.Type.INFANT, 1)
+                .toTicketTypeRequests();
+        assertEquals(2, ticketTypeRequests.length);
+        assertEquals(TicketTypeRequest.Type.ADULT, ticketTypeRequests[0].getTicketType());
+        assertEquals(2, ticketTypeRequests[0].getNoOfTickets());
+        assertEquals(TicketTypeRequest.Type.INFANT, ticketTypeRequests[1].getTicketType());
+        assertEquals(1, ticketTypeRequests[1].getNoOfTickets());
+    }
+
+    @Test
+    public void ordersThatLostTheirOriginalRequestsCannotBeConverted() {
+        PurchaseOrder[] orders = {
+                new PurchaseOrder().add(TicketTypeRequest.Type.ADULT, 3).add(TicketTypeRequest.Type.ADULT, -1),
+                new PurchaseOrder().add(TicketTypeRequest.Type.ADULT, 0),
+                new PurchaseOrder().add(TicketTypeRequest.Type.ADULT, Integer.MAX_VALUE).add(TicketTypeRequest.Type.ADULT, 2)
+        };
+        for (PurchaseOrder order : orders) {
+            try {
+                order.toTicketTypeRequests();
+                fail("Converted " + order.getTotalTickets() + " tickets into a different order");
+            } catch (IllegalStateException expected) {
+                // The totals alone cannot say which requests were made
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TicketTypeRequestTest {
+
+    @Test
+    public void ofReturnsCanonicalInstancesWithinRange() {
+        for (TicketTypeRequest.Type type : TicketTypeRequest.Type.values()) {
+            for (int noOfTickets = 1; noOfTickets <= TicketTypeRequest.MAXIMUM_CACHED_TICKETS; noOfTickets++) {
+                TicketTypeRequest request = TicketTypeRequest.of(type, noOfTickets);
+                assertSame(request, TicketTypeRequest.of(type, noOfTickets));
+                assertEquals(type, request.getTicketType());
+                assertEquals(noOfTickets, request.getNoOfTickets());
+            }
+        }
+    }
+
+    @Test
+    public void ofAllocatesOutsideRange() {
+        assertNotSame(TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 0), TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 0));
+        assertNotSame(TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 21), TicketTypeRequest.of(TicketTypeRequest.Type.ADULT, 21));
+        assertEquals(-3, TicketTypeRequest.of(TicketTypeRequest.Type.CHILD, -3).getNoOfTickets());
+        assertNull(TicketTypeRequest.of(null, 1).getTicketType());
+    }
+
+    @Test
+    public void equalRequestsHaveEqualHashCodes() {
+        TicketTypeRequest cached = TicketTypeRequest.of(TicketTypeRequest.Type.INFANT, 2);
+        TicketTypeRequest constructed = new TicketTypeRequest(TicketTypeRequest.Type.INFANT, 2);
+        assertEquals(cached, constructed);
+        assertEquals(cached.hashCode(), constructed.hashCode());
+        assertNotEquals(cached, TicketTypeRequest.of(TicketTypeRequest.Type.INFANT, 3));
+        assertNotEquals(cached, TicketTypeRequest.of(TicketTypeRequest.Type.CHILD, 2));
+        assertNotEquals(cached, null);
+    }
+}
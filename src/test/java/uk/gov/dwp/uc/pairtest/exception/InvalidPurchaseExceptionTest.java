@@ -0,0 +1,49 @@
+package uk.gov.dwp.uc.pairtest.exception;
+
+import org.junit.Test;
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+
+import static org.junit.Assert.*;
+
+public class InvalidPurchaseExceptionTest {
+
+    @Test
+    public void stacklessExceptionsArePreallocatedPerReason() {
+        for (RejectionReason reason : RejectionReason.values()) {
+            InvalidPurchaseException exception = InvalidPurchaseException.stackless(reason);
+            assertSame(exception, InvalidPurchaseException.stackless(reason));
+            assertEquals(reason, exception.getReason());
+            assertEquals(reason.getDescription(), exception.getMessage());
+            assertEquals(0, exception.getStackTrace().length);
+        }
+    }
+
+    @Test
+    public void stacklessExceptionsCannotBeAltered() {
+        InvalidPurchaseException exception = InvalidPurchaseException.stackless(RejectionReason.NO_ADULT);
+        exception.addSuppressed(new RuntimeException());
+        exception.fillInStackTrace();
+        assertEquals(0, exception.getSuppressed().length);
+        assertEquals(0, exception.getStackTrace().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stacklessExceptionsCannotBeGivenACause() {
+        InvalidPurchaseException.stackless(RejectionReason.NO_ADULT).initCause(new RuntimeException());
+    }
+
+    @Test
+    public void constructedExceptionsCaptureAStackTrace() {
+        InvalidPurchaseException exception = new InvalidPurchaseException(RejectionReason.OVER_MAXIMUM);
+        assertEquals(RejectionReason.OVER_MAXIMUM, exception.getReason());
+        assertTrue(exception.getStackTrace().length > 0);
+    }
+
+    @Test
+    public void exceptionsCanStillBeCreatedWithoutAReason() {
+        InvalidPurchaseException exception = new InvalidPurchaseException();
+        assertNull(exception.getReason());
+        assertNull(exception.getMessage());
+        assertTrue(exception.getStackTrace().length > 0);
+    }
+}
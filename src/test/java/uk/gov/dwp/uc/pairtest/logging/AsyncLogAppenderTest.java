@@ -0,0 +1,164 @@
+package uk.gov.dwp.uc.pairtest.logging;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.gov.dwp.uc.pairtest.domain.RejectionReason;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.*;
+
+import static org.junit.Assert.*;
+
+public class AsyncLogAppenderTest {
+
+    private Logger logger;
+    private List<LogRecord> records;
+    private Handler handler;
+
+    @Before
+    public void setup() {
+        logger = Logger.getLogger(AsyncLogAppenderTest.class.getName());
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.INFO);
+        records = Collections.synchronizedList(new ArrayList<>());
+        handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        logger.addHandler(handler);
+    }
+
+    @After
+    public void teardown() {
+        logger.removeHandler(handler);
+    }
+
+    @Test
+    public void eventsAreWrittenWithTheirParameters() {
+        try (AsyncLogAppender appender = new AsyncLogAppender(logger, 16)) {
+            PurchaseEventLog purchaseLog = new PurchaseEventLog(logger, appender);
+            purchaseLog.log(PurchaseEvent.SEATS_ALLOCATED, 12_345);
+            purchaseLog.log(PurchaseEvent.OUTSIDE_MAXIMUM, 21, 20);
+            purchaseLog.log(PurchaseEvent.RULE_BROKEN, RejectionReason.NO_ADULT.ordinal());
+            assertTrue(appender.flush(5, TimeUnit.SECONDS));
+        }
+
+        Formatter formatter = new SimpleFormatter();
+        assertEquals(3, records.size());
+        assertEquals("12345 seats allocated for booking", formatter.formatMessage(records.get(0)));
+        assertEquals("Tried to purchase 21 tickets, where minimum is 1 and maximum is 20", formatter.formatMessage(records.get(1)));
+        assertEquals(RejectionReason.NO_ADULT.getDescription(), formatter.formatMessage(records.get(2)));
+        assertEquals("SEATS_ALLOCATED", records.get(0).getSourceMethodName());
+    }
+
+    @Test
+    public void recordsCarryTheTimeAndThreadOfTheEvent() throws InterruptedException {
+        try (AsyncLogAppender appender = new AsyncLogAppender(logger, 16)) {
+            long before = System.currentTimeMillis();
+            appender.append(PurchaseEvent.SEATS_ALLOCATED, 2, 0);
+            long after = System.currentTimeMillis();
+            // Written well after the event, as it would be behind a backlog
+            Thread.sleep(50);
+            assertTrue(appender.flush(5, TimeUnit.SECONDS));
+
+            LogRecord record = records.get(0);
+            assertEquals(Thread.currentThread().getId(), record.getLongThreadID());
+            assertTrue(record.getMillis() >= before && record.getMillis() <= after);
+        }
+    }
+
+    @Test
+    public void nothingIsAppendedWhenLevelIsDisabled() {
+        logger.setLevel(Level.WARNING);
+        try (AsyncLogAppender appender = new AsyncLogAppender(logger, 16)) {
+            PurchaseEventLog purchaseLog = new PurchaseEventLog(logger, appender);
+            assertFalse(purchaseLog.isEnabled());
+            purchaseLog.log(PurchaseEvent.COST_CALCULATED, 20);
+            assertTrue(appender.flush(5, TimeUnit.SECONDS));
+        }
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void eventsAreDroppedRatherThanBlockingWhenFull() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        try (AsyncLogAppender appender = new AsyncLogAppender(logger, 4)) {
+            // The first event holds the writer inside the handler, the next four fill the buffer
+            assertTrue(appender.append(PurchaseEvent.INPUT_VALID, 0, 0));
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 4; i++) {
+                assertTrue(appender.append(PurchaseEvent.INPUT_VALID, 0, 0));
+            }
+            assertFalse(appender.append(PurchaseEvent.INPUT_VALID, 0, 0));
+            assertEquals(1, appender.getDroppedEvents());
+
+            release.countDown();
+            assertTrue(appender.flush(5, TimeUnit.SECONDS));
+        }
+        assertEquals(5, records.size());
+    }
+
+    @Test
+    public void concurrentAppendsAreAllWritten() throws InterruptedException {
+        int threads = 8;
+        int eventsPerThread = 10_000;
+        try (AsyncLogAppender appender = new AsyncLogAppender(logger, threads * eventsPerThread)) {
+            Thread[] appenders = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                appenders[t] = new Thread(() -> {
+                    for (int i = 0; i < eventsPerThread; i++) {
+                        appender.append(PurchaseEvent.SEATS_ALLOCATED, i, 0);
+                    }
+                });
+                appenders[t].start();
+            }
+            for (Thread thread : appenders) {
+                thread.join();
+            }
+            assertTrue(appender.flush(10, TimeUnit.SECONDS));
+            assertEquals(0, appender.getDroppedEvents());
+        }
+        assertEquals(threads * eventsPerThread, records.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        new AsyncLogAppender(logger, 0);
+    }
+}
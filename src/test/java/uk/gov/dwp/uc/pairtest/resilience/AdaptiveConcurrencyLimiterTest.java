@@ -0,0 +1,156 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import org.junit.Test;
+import thirdparty.paymentgateway.RefundableTicketPaymentService;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long BASELINE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // Calls the simulated service can serve at once before it starts queueing
+    private static final int CAPACITY = 20;
+
+    private long now;
+
+    /**
+     * Runs callers that always have another call to make against a service that serves CAPACITY calls in the
+     * baseline time and queues the rest, so each call takes longer the more are in flight when it starts.
+     *
+     * @return the mean round trip of the last quarter of the calls
+     */
+    private double simulate(AdaptiveConcurrencyLimiter limiter, int calls) {
+        PriorityQueue<long[]> inFlight = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        long lastQuarterNanos = 0;
+        for (int completed = 0; completed < calls; completed++) {
+            while (limiter.tryAcquire()) {
+                long start = limiter.nanoTime();
+                long roundTrip = BASELINE_NANOS * Math.max(CAPACITY, inFlight.size() + 1) / CAPACITY;
+                inFlight.add(new long[] {start + roundTrip, start});
+            }
+            long[] call = inFlight.poll();
+            now = call[0];
+            limiter.onSample(call[1]);
+            if (completed >= calls * 3 / 4) {
+                lastQuarterNanos += call[0] - call[1];
+            }
+        }
+        return (double) lastQuarterNanos / (calls - calls * 3 / 4);
+    }
+
+    @Test
+    public void shrinksFromTooHighALimitToNearWhatTheServiceCanTake() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(200, 1, 1_000, 1, TimeUnit.HOURS, () -> now);
+
+        double meanRoundTrip = simulate(limiter, 20_000);
+
+        assertTrue("Limit " + limiter.getLimit(), limiter.getLimit() >= CAPACITY && limiter.getLimit() <= 2 * CAPACITY);
+        assertTrue("Mean round trip " + meanRoundTrip, meanRoundTrip < 1.4 * BASELINE_NANOS);
+        assertEquals(BASELINE_NANOS, limiter.getBaselineRoundTripNanos());
+        assertTrue(limiter.getRejections() > 0);
+    }
+
+    @Test
+    public void growsFromTooLowALimitToNearWhatTheServiceCanTake() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1_000, 1, TimeUnit.HOURS, () -> now);
+
+        double meanRoundTrip = simulate(limiter, 20_000);
+
+        assertTrue("Limit " + limiter.getLimit(), limiter.getLimit() >= CAPACITY && limiter.getLimit() <= 2 * CAPACITY);
+        assertTrue("Mean round trip " + meanRoundTrip, meanRoundTrip < 1.4 * BASELINE_NANOS);
+    }
+
+    @Test
+    public void staysWithinItsBounds() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(5, 5, 8, 1, TimeUnit.HOURS, () -> now);
+
+        simulate(limiter, 2_000);
+
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void halvesTheLimitToRelearnTheBaselineEachWindow() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(200, 1, 1_000, 1, TimeUnit.SECONDS, () -> now);
+
+        double meanRoundTrip = simulate(limiter, 20_000);
+
+        assertTrue(limiter.getBaselineResets() > 0);
+        assertTrue("Limit " + limiter.getLimit(), limiter.getLimit() <= 2 * CAPACITY);
+        assertTrue("Mean round trip " + meanRoundTrip, meanRoundTrip < 1.4 * BASELINE_NANOS);
+    }
+
+    @Test
+    public void idleCallsDoNotRaiseTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 1_000, 1, TimeUnit.HOURS, () -> now);
+        for (int call = 0; call < 100; call++) {
+            assertTrue(limiter.tryAcquire());
+            long start = limiter.nanoTime();
+            now += BASELINE_NANOS;
+            limiter.onSample(start);
+        }
+        assertEquals(10, limiter.getLimit());
+        assertEquals(100, limiter.getSamples());
+    }
+
+    @Test
+    public void refusedAndFailedPaymentsAreNotTimed() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1, TimeUnit.HOURS, () -> now);
+        LimitedTicketPaymentService service = new LimitedTicketPaymentService((accountId, amount) -> {
+            throw new IllegalStateException("Provider unavailable");
+        }, limiter);
+        try {
+            service.makePayment(1L, 20);
+            fail("Expected the payment to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(0, limiter.getInFlight());
+            assertEquals(0, limiter.getSamples());
+        }
+
+        assertTrue(limiter.tryAcquire());
+        TicketPaymentService blocked = new LimitedTicketPaymentService((accountId, amount) -> {
+        }, limiter);
+        try {
+            blocked.makePayment(1L, 20);
+            fail("Expected the payment to be refused");
+        } catch (CallNotPermittedException e) {
+            assertEquals(CallNotPermittedException.Reason.CONCURRENCY_LIMITED, e.getReason());
+            assertEquals(1, limiter.getRejections());
+        }
+    }
+
+    @Test
+    public void holdsAndRefundsFinishWhileTheLimitIsReached() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1, TimeUnit.HOURS, () -> now);
+        SeatReservationService seats = mock(SeatReservationService.class);
+        RefundableTicketPaymentService payments = mock(RefundableTicketPaymentService.class);
+        when(payments.canRefund()).thenReturn(true);
+        LimitedSeatReservationService seatService = new LimitedSeatReservationService(seats, limiter);
+        LimitedTicketPaymentService paymentService = new LimitedTicketPaymentService(payments, limiter);
+        assertTrue(limiter.tryAcquire());
+
+        seatService.confirmHold(42L);
+        seatService.releaseHold(43L);
+        assertTrue(paymentService.canRefund());
+        paymentService.refundPayment(1L, 20);
+        try {
+            paymentService.makePayment(99L, 1L, 20);
+            fail("Expected the payment to be refused");
+        } catch (CallNotPermittedException e) {
+            assertEquals(CallNotPermittedException.Reason.CONCURRENCY_LIMITED, e.getReason());
+        }
+
+        verify(seats).confirmHold(42L);
+        verify(seats).releaseHold(43L);
+        verify(payments).refundPayment(1L, 20);
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(1, limiter.getRejections());
+    }
+}
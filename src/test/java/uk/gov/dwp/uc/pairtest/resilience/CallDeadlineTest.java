@@ -0,0 +1,72 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class CallDeadlineTest {
+
+    @Test
+    public void threadWithoutADeadlineNeverRunsOutOfTime() {
+        assertFalse(CallDeadline.isSet());
+        assertEquals(Long.MAX_VALUE, CallDeadline.remainingNanos());
+        assertFalse(CallDeadline.hasPassed());
+        try {
+            CallDeadline.getDeadlineNanos();
+            fail("Expected no deadline");
+        } catch (IllegalStateException e) {
+            assertEquals("No deadline is set", e.getMessage());
+        }
+    }
+
+    @Test
+    public void deadlineLastsForTheCallOnly() {
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        long seen = CallDeadline.callBy(deadlineNanos, CallDeadline::getDeadlineNanos);
+
+        assertEquals(deadlineNanos, seen);
+        assertFalse(CallDeadline.isSet());
+    }
+
+    @Test
+    public void nestedDeadlineKeepsTheSooner() {
+        long sooner = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        long later = sooner + TimeUnit.SECONDS.toNanos(1);
+
+        CallDeadline.runBy(sooner, () -> {
+            assertEquals(sooner, (long) CallDeadline.callBy(later, CallDeadline::getDeadlineNanos));
+            assertEquals(sooner - 1, (long) CallDeadline.callBy(sooner - 1, CallDeadline::getDeadlineNanos));
+            assertEquals(sooner, CallDeadline.getDeadlineNanos());
+        });
+    }
+
+    @Test
+    public void passedDeadlineIsReported() {
+        CallDeadline.runBy(System.nanoTime(), () -> {
+            assertTrue(CallDeadline.hasPassed());
+            assertTrue(CallDeadline.remainingNanos() <= 0);
+        });
+    }
+
+    @Test
+    public void boundTaskCarriesTheDeadlineToAnotherThread() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            AtomicLong seen = new AtomicLong();
+            CallDeadline.runBy(deadlineNanos, () -> executor.execute(CallDeadline.bind(
+                    () -> seen.set(CallDeadline.getDeadlineNanos()))));
+            executor.submit(() -> assertFalse(CallDeadline.isSet())).get();
+
+            assertEquals(deadlineNanos, seen.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    private long now;
+
+    private CircuitBreaker breaker(int windowSize, int minimumCalls, int failureRatePercent, int trialCalls) {
+        return new CircuitBreaker(windowSize, minimumCalls, failureRatePercent, 100, TimeUnit.NANOSECONDS, trialCalls, () -> now);
+    }
+
+    private static void call(CircuitBreaker breaker, boolean fails) {
+        assertTrue(breaker.tryAcquire());
+        if (fails) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+    }
+
+    @Test
+    public void opensOnceTheFailureRateReachesTheThreshold() {
+        CircuitBreaker breaker = breaker(10, 4, 50, 1);
+        call(breaker, true);
+        call(breaker, true);
+        call(breaker, true);
+        // Too few calls for the rate to count yet
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        call(breaker, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(breaker, true);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getTransitionsToOpen());
+        assertEquals(80.0, breaker.getFailureRatePercent(), 0.001);
+    }
+
+    @Test
+    public void staysClosedBelowTheThreshold() {
+        CircuitBreaker breaker = breaker(10, 4, 50, 1);
+        for (int i = 0; i < 100; i++) {
+            call(breaker, i % 3 == 2);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void onlyTheMostRecentCallsCount() {
+        CircuitBreaker breaker = breaker(4, 4, 75, 1);
+        call(breaker, true);
+        call(breaker, true);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false);
+        }
+        assertEquals(0.0, breaker.getFailureRatePercent(), 0.001);
+        call(breaker, true);
+        call(breaker, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(breaker, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void refusesCallsWhileOpen() {
+        CircuitBreaker breaker = breaker(2, 1, 100, 1);
+        call(breaker, true);
+
+        now = 99;
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2, breaker.getRejections());
+    }
+
+    @Test
+    public void closesAfterEnoughTrialCallsSucceed() {
+        CircuitBreaker breaker = breaker(2, 1, 100, 2);
+        call(breaker, true);
+
+        now = 100;
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        // Only two trial calls are let through
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRatePercent(), 0.001);
+        assertEquals(1, breaker.getTransitionsToHalfOpen());
+        assertEquals(1, breaker.getTransitionsToClosed());
+    }
+
+    @Test
+    public void failedTrialCallOpensAgain() {
+        CircuitBreaker breaker = breaker(2, 1, 100, 2);
+        call(breaker, true);
+
+        now = 100;
+        call(breaker, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTransitionsToOpen());
+
+        // The open duration starts again from the failed trial
+        now = 150;
+        assertFalse(breaker.tryAcquire());
+        now = 200;
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void releasedPermissionDoesNotUseUpATrialCall() {
+        CircuitBreaker breaker = breaker(2, 1, 100, 1);
+        call(breaker, true);
+
+        now = 100;
+        assertTrue(breaker.tryAcquire());
+        breaker.releasePermission();
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failureRateMustBeAPercentage() {
+        breaker(10, 4, 101, 1);
+    }
+}
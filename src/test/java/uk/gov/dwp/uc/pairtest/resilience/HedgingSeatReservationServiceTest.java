@@ -0,0 +1,209 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import thirdparty.seatbooking.SeatReservationService;
+import thirdparty.seatbooking.SeatsUnavailableException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class HedgingSeatReservationServiceTest {
+
+    private static final int HOLDS = 400;
+
+    private ExecutorService executor;
+    private LongTailedSeats seats;
+
+    @Before
+    public void setup() {
+        executor = Executors.newCachedThreadPool();
+        seats = new LongTailedSeats(42L);
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void slowHoldsSetTheP99WithoutHedging() {
+        long[] latencies = holdRepeatedly(seats);
+
+        assertTrue("p99 was " + millis(percentile(latencies, 99)) + "ms",
+                percentile(latencies, 99) >= TimeUnit.MILLISECONDS.toNanos(LongTailedSeats.SLOW_MILLIS));
+    }
+
+    @Test
+    public void hedgingCutsTheP99() {
+        HedgingSeatReservationService hedging = new HedgingSeatReservationService(seats, executor);
+
+        long[] latencies = holdRepeatedly(hedging);
+
+        assertTrue("p99 was " + millis(percentile(latencies, 99)) + "ms, " + hedging,
+                percentile(latencies, 99) < TimeUnit.MILLISECONDS.toNanos(LongTailedSeats.SLOW_MILLIS / 2));
+        assertTrue(hedging.getHedgedCalls() > 0);
+        assertTrue(hedging.getHedgeWins() > 0);
+        assertTrue(hedging.getHedgeDelayNanos() < TimeUnit.MILLISECONDS.toNanos(LongTailedSeats.SLOW_MILLIS));
+    }
+
+    @Test
+    public void everyHoldThatLosesTheRaceIsReleased() throws InterruptedException {
+        HedgingSeatReservationService hedging = new HedgingSeatReservationService(seats, executor);
+        Set<Long> returned = new HashSet<>();
+        for (int i = 0; i < HOLDS; i++) {
+            returned.add(hedging.holdSeats(1L, 2));
+        }
+        // Losing holds still running finish within one slow hold
+        Thread.sleep(2 * LongTailedSeats.SLOW_MILLIS);
+
+        assertEquals(HOLDS, returned.size());
+        assertEquals(seats.made.size(), returned.size() + seats.released.size());
+        assertEquals(hedging.getDuplicatesReleased(), seats.released.size());
+        for (long holdId : returned) {
+            assertFalse(seats.released.contains(holdId));
+        }
+    }
+
+    @Test
+    public void noHoldIsHedgedBeforeEnoughHaveBeenTimed() {
+        HedgingSeatReservationService hedging = new HedgingSeatReservationService(seats, executor);
+        seats.slowEvery = 1;
+        for (int i = 0; i < 5; i++) {
+            hedging.holdSeats(1L, 2);
+        }
+
+        assertEquals(0, hedging.getHedgedCalls());
+        assertEquals(0, hedging.getHedgeDelayNanos());
+    }
+
+    @Test
+    public void holdIsNotHedgedWhenItsDeadlineComesBeforeTheHedgeDelay() {
+        HedgingSeatReservationService hedging = new HedgingSeatReservationService(seats, executor);
+        seats.slowEvery = Integer.MAX_VALUE;
+        for (int i = 0; i < 25; i++) {
+            hedging.holdSeats(1L, 2);
+        }
+        long hedgeDelayNanos = hedging.getHedgeDelayNanos();
+        assertTrue(hedgeDelayNanos > 0);
+        long hedgedCalls = hedging.getHedgedCalls();
+        int holdsMade = seats.made.size();
+        seats.slowEvery = 1;
+
+        CallDeadline.runBy(System.nanoTime() + hedgeDelayNanos / 2, () -> hedging.holdSeats(1L, 2));
+
+        assertEquals(hedgedCalls, hedging.getHedgedCalls());
+        assertEquals(holdsMade + 1, seats.made.size());
+    }
+
+    @Test
+    public void failureOfEveryAttemptIsReported() {
+        HedgingSeatReservationService hedging = new HedgingSeatReservationService(seats, executor);
+        seats.failure = new SeatsUnavailableException(7L, 2);
+        try {
+            hedging.holdSeats(1L, 7L, 2);
+            fail("Expected the hold to fail");
+        } catch (SeatsUnavailableException e) {
+            assertSame(seats.failure, e);
+        }
+    }
+
+    @Test
+    public void reservationsAndHoldOutcomesArePassedStraightThrough() {
+        HedgingSeatReservationService hedging = new HedgingSeatReservationService(seats, executor);
+        hedging.reserveSeat(1L, 2);
+        hedging.confirmHold(5L);
+        hedging.releaseHold(6L);
+
+        assertEquals(1, seats.reservations.get());
+        assertTrue(seats.confirmed.contains(5L));
+        assertTrue(seats.released.contains(6L));
+    }
+
+    private static long[] holdRepeatedly(SeatReservationService service) {
+        long[] latencies = new long[HOLDS];
+        for (int i = 0; i < HOLDS; i++) {
+            long start = System.nanoTime();
+            service.holdSeats(1L, 2);
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] latencies, int percentile) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length * percentile / 100];
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Holds seats in FAST_MILLIS, except for about one hold in thirty that takes SLOW_MILLIS
+     */
+    private static final class LongTailedSeats implements SeatReservationService {
+
+        static final long FAST_MILLIS = 2;
+        static final long SLOW_MILLIS = 100;
+
+        private final Random random;
+        volatile int slowEvery = 33;
+        volatile RuntimeException failure;
+
+        final AtomicLong reservations = new AtomicLong();
+        final Set<Long> made = ConcurrentHashMap.newKeySet();
+        final Set<Long> confirmed = ConcurrentHashMap.newKeySet();
+        final Set<Long> released = ConcurrentHashMap.newKeySet();
+        private final AtomicLong holdIds = new AtomicLong();
+
+        LongTailedSeats(long seed) {
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+            reservations.incrementAndGet();
+        }
+
+        @Override
+        public long holdSeats(long accountId, int totalSeatsToAllocate) {
+            boolean slow;
+            synchronized (random) {
+                slow = random.nextInt(slowEvery) == 0;
+            }
+            try {
+                Thread.sleep(slow ? SLOW_MILLIS : FAST_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            long holdId = holdIds.incrementAndGet();
+            made.add(holdId);
+            return holdId;
+        }
+
+        @Override
+        public void confirmHold(long holdId) {
+            confirmed.add(holdId);
+        }
+
+        @Override
+        public void releaseHold(long holdId) {
+            released.add(holdId);
+        }
+    }
+}
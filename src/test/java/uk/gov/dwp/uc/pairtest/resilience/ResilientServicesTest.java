@@ -0,0 +1,249 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import thirdparty.paymentgateway.IdempotentTicketPaymentService;
+import thirdparty.paymentgateway.RefundableTicketPaymentService;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import thirdparty.seatbooking.SeatsUnavailableException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ResilientServicesTest {
+
+    private ExecutorService callers;
+
+    @Before
+    public void setup() {
+        callers = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void teardown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void failingPaymentsOpenTheBreakerAndAreThenRefusedWithoutCallingThrough() {
+        TicketPaymentService payments = mock(TicketPaymentService.class);
+        doThrow(new IllegalStateException("Provider unavailable")).when(payments).makePayment(anyLong(), anyInt());
+        ResilientTicketPaymentService service = new ResilientTicketPaymentService(payments,
+                new CircuitBreaker(10, 3, 50, 1, TimeUnit.MINUTES, 1), new Bulkhead(10));
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            try {
+                service.makePayment(1L, 20);
+                fail("Expected the payment to fail");
+            } catch (IllegalStateException e) {
+                assertEquals("Provider unavailable", e.getMessage());
+            }
+        }
+        try {
+            service.makePayment(1L, 20);
+            fail("Expected the payment to be refused");
+        } catch (CallNotPermittedException e) {
+            assertEquals(CallNotPermittedException.Reason.CIRCUIT_OPEN, e.getReason());
+        }
+
+        verify(payments, times(3)).makePayment(1L, 20);
+        assertEquals(CircuitBreaker.State.OPEN, service.getCircuitBreaker().getState());
+        assertEquals(1, service.getCircuitBreaker().getRejections());
+        assertEquals(0, service.getBulkhead().getInFlight());
+    }
+
+    @Test
+    public void fullBulkheadRefusesCallsUntilOneFinishes() throws Exception {
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicInteger paid = new AtomicInteger();
+        TicketPaymentService slowPayments = (accountId, amount) -> {
+            entered.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            paid.incrementAndGet();
+        };
+        ResilientTicketPaymentService service = new ResilientTicketPaymentService(slowPayments,
+                new CircuitBreaker(10, 3, 50, 1, TimeUnit.MINUTES, 1), new Bulkhead(2));
+
+        Future<?> first = callers.submit(() -> service.makePayment(1L, 20));
+        Future<?> second = callers.submit(() -> service.makePayment(2L, 20));
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        try {
+            service.makePayment(3L, 20);
+            fail("Expected the payment to be refused");
+        } catch (CallNotPermittedException e) {
+            assertEquals(CallNotPermittedException.Reason.BULKHEAD_FULL, e.getReason());
+        }
+        assertEquals(2, service.getBulkhead().getInFlight());
+        assertEquals(1, service.getBulkhead().getRejections());
+
+        finish.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        service.makePayment(3L, 20);
+        assertEquals(3, paid.get());
+        assertEquals(0, service.getBulkhead().getInFlight());
+        // Refusals are not failures of the provider
+        assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void soldOutScreeningsDoNotOpenTheBreaker() {
+        SeatReservationService seats = mock(SeatReservationService.class);
+        when(seats.holdSeats(anyLong(), anyLong(), anyInt())).thenThrow(new SeatsUnavailableException(7L, 2));
+        ResilientSeatReservationService service = new ResilientSeatReservationService(seats,
+                new CircuitBreaker(10, 3, 50, 1, TimeUnit.MINUTES, 1), new Bulkhead(10));
+
+        for (int attempt = 0; attempt < 10; attempt++) {
+            try {
+                service.holdSeats(1L, 7L, 2);
+                fail("Expected the screening to be sold out");
+            } catch (SeatsUnavailableException e) {
+                assertEquals(7L, e.getScreeningId());
+            }
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitBreaker().getState());
+        assertEquals(0.0, service.getCircuitBreaker().getFailureRatePercent(), 0.001);
+    }
+
+    @Test
+    public void seatCallsPassThroughWhileHealthy() {
+        SeatReservationService seats = mock(SeatReservationService.class);
+        when(seats.holdSeats(1L, 3)).thenReturn(42L);
+        ResilientSeatReservationService service = new ResilientSeatReservationService(seats,
+                new CircuitBreaker(10, 3, 50, 1, TimeUnit.MINUTES, 1), new Bulkhead(1));
+
+        assertEquals(42L, service.holdSeats(1L, 3));
+        service.confirmHold(42L);
+        service.releaseHold(43L);
+        service.reserveSeat(1L, 7L, 2);
+
+        verify(seats).holdSeats(1L, 3);
+        verify(seats).confirmHold(42L);
+        verify(seats).releaseHold(43L);
+        verify(seats).reserveSeat(1L, 7L, 2);
+        assertEquals(0, service.getBulkhead().getInFlight());
+    }
+
+    @Test
+    public void holdsAreConfirmedAndReleasedWhileTheBreakerIsOpen() {
+        SeatReservationService seats = mock(SeatReservationService.class);
+        doThrow(new IllegalStateException("Seat booking unavailable")).when(seats).holdSeats(anyLong(), anyInt());
+        ResilientSeatReservationService service = new ResilientSeatReservationService(seats,
+                new CircuitBreaker(2, 1, 100, 1, TimeUnit.MINUTES, 1), new Bulkhead(10));
+        try {
+            service.holdSeats(1L, 2);
+            fail("Expected the hold to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(CircuitBreaker.State.OPEN, service.getCircuitBreaker().getState());
+        }
+
+        service.confirmHold(42L);
+        service.releaseHold(43L);
+        verify(seats).confirmHold(42L);
+        verify(seats).releaseHold(43L);
+        assertEquals(0, service.getCircuitBreaker().getRejections());
+    }
+
+    @Test
+    public void keyedPaymentsAreGuardedAndRefundsPassedStraightThrough() {
+        FullProvider payments = mock(FullProvider.class);
+        when(payments.canRefund()).thenReturn(true);
+        when(payments.isIdempotent()).thenReturn(true);
+        doThrow(new IllegalStateException("Provider unavailable")).when(payments).makePayment(anyLong(), anyLong(), anyInt());
+        ResilientTicketPaymentService service = new ResilientTicketPaymentService(payments,
+                new CircuitBreaker(2, 1, 100, 1, TimeUnit.MINUTES, 1), new Bulkhead(10));
+
+        assertTrue(service.canRefund());
+        assertTrue(service.isIdempotent());
+        try {
+            service.makePayment(99L, 1L, 20);
+            fail("Expected the payment to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(CircuitBreaker.State.OPEN, service.getCircuitBreaker().getState());
+        }
+        try {
+            service.makePayment(99L, 1L, 20);
+            fail("Expected the payment to be refused");
+        } catch (CallNotPermittedException e) {
+            assertEquals(CallNotPermittedException.Reason.CIRCUIT_OPEN, e.getReason());
+        }
+        service.refundPayment(1L, 20);
+
+        verify(payments).makePayment(99L, 1L, 20);
+        verify(payments).refundPayment(1L, 20);
+    }
+
+    @Test
+    public void providerWithoutRefundsOrKeysIsReportedAsSuch() {
+        TicketPaymentService payments = mock(TicketPaymentService.class);
+        ResilientTicketPaymentService service = new ResilientTicketPaymentService(payments,
+                new CircuitBreaker(2, 1, 100, 1, TimeUnit.MINUTES, 1), new Bulkhead(10));
+
+        assertFalse(service.canRefund());
+        assertFalse(service.isIdempotent());
+        service.makePayment(99L, 1L, 20);
+        verify(payments).makePayment(1L, 20);
+        try {
+            service.refundPayment(1L, 20);
+            fail("Expected the refund to be unsupported");
+        } catch (UnsupportedOperationException e) {
+            assertEquals("The payment provider cannot refund", e.getMessage());
+        }
+    }
+
+    @Test
+    public void failingSeatBookingOpensItsOwnBreakerOnly() {
+        SeatReservationService seats = mock(SeatReservationService.class);
+        doThrow(new IllegalStateException("Seat booking unavailable")).when(seats).reserveSeat(anyLong(), anyInt());
+        ResilientSeatReservationService seatService = new ResilientSeatReservationService(seats,
+                new CircuitBreaker(2, 1, 100, 1, TimeUnit.MINUTES, 1), new Bulkhead(10));
+        ResilientTicketPaymentService paymentService = new ResilientTicketPaymentService(mock(TicketPaymentService.class),
+                new CircuitBreaker(2, 1, 100, 1, TimeUnit.MINUTES, 1), new Bulkhead(10));
+
+        try {
+            seatService.reserveSeat(1L, 2);
+            fail("Expected the reservation to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(CircuitBreaker.State.OPEN, seatService.getCircuitBreaker().getState());
+        }
+        paymentService.makePayment(1L, 20);
+        assertEquals(CircuitBreaker.State.CLOSED, paymentService.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void callPastItsDeadlineIsRefusedWithoutTakingAPermit() {
+        SeatReservationService seats = mock(SeatReservationService.class);
+        ResilientSeatReservationService service = new ResilientSeatReservationService(seats,
+                new CircuitBreaker(2, 1, 100, 1, TimeUnit.MINUTES, 1), new Bulkhead(10));
+
+        try {
+            CallDeadline.runBy(System.nanoTime(), () -> service.holdSeats(1L, 2));
+            fail("Expected the hold to be refused");
+        } catch (CallNotPermittedException e) {
+            assertEquals(CallNotPermittedException.Reason.DEADLINE_PASSED, e.getReason());
+        }
+
+        verifyNoInteractions(seats);
+        assertEquals(0, service.getBulkhead().getInFlight());
+        assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitBreaker().getState());
+        service.holdSeats(1L, 2);
+        verify(seats).holdSeats(1L, 2);
+    }
+
+    private interface FullProvider extends RefundableTicketPaymentService, IdempotentTicketPaymentService {
+    }
+}
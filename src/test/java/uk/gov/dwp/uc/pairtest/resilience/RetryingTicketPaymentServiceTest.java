@@ -0,0 +1,255 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import org.junit.Before;
+import org.junit.Test;
+import thirdparty.paymentgateway.IdempotentTicketPaymentService;
+import thirdparty.paymentgateway.RefundableTicketPaymentService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RetryingTicketPaymentServiceTest {
+
+    private static final long BASE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MAXIMUM_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private FlakyPayments payments;
+    private List<Long> sleeps;
+
+    @Before
+    public void setup() {
+        payments = new FlakyPayments();
+        sleeps = new ArrayList<>();
+    }
+
+    @Test
+    public void transientFailureIsRetriedWithTheSameKey() {
+        RetryingTicketPaymentService retrying = retrying(4, new RetryBudget(0.1, 10));
+        payments.failuresLeft = 2;
+
+        retrying.makePayment(99L, 1L, 40);
+
+        assertEquals(List.of("pay 99:1:40", "pay 99:1:40", "pay 99:1:40"), payments.calls);
+        assertEquals(2, retrying.getRetries());
+        assertEquals(1, retrying.getRecoveries());
+    }
+
+    @Test
+    public void backoffIsJitteredUnderADoublingCap() {
+        RetryingTicketPaymentService retrying = retrying(7, new RetryBudget(0.1, 10));
+        payments.failuresLeft = Integer.MAX_VALUE;
+        try {
+            retrying.makePayment(99L, 1L, 40);
+            fail("Expected the payment to fail");
+        } catch (IllegalStateException e) {
+            assertSame(payments.failure, e);
+        }
+
+        assertEquals(7, payments.calls.size());
+        assertEquals(6, sleeps.size());
+        for (int retry = 0; retry < sleeps.size(); retry++) {
+            long cap = Math.min(MAXIMUM_DELAY_NANOS, BASE_DELAY_NANOS << retry);
+            assertTrue("Slept " + sleeps.get(retry) + "ns before retry " + retry, sleeps.get(retry) >= 0 && sleeps.get(retry) <= cap);
+        }
+        assertEquals(1, retrying.getAttemptsExhausted());
+    }
+
+    @Test
+    public void jitterSpreadsRetriesAcrossTheWholeWait() {
+        RetryingTicketPaymentService retrying = retrying(2, new RetryBudget(1, 1000));
+        for (int payment = 0; payment < 200; payment++) {
+            payments.failuresLeft = 1;
+            retrying.makePayment(payment, 1L, 40);
+        }
+
+        long shortest = sleeps.stream().mapToLong(Long::longValue).min().getAsLong();
+        long longest = sleeps.stream().mapToLong(Long::longValue).max().getAsLong();
+        assertTrue(shortest < BASE_DELAY_NANOS / 4);
+        assertTrue(longest > 3 * BASE_DELAY_NANOS / 4);
+    }
+
+    @Test
+    public void paymentWithoutAKeyIsNeverRetried() {
+        RetryingTicketPaymentService retrying = retrying(4, new RetryBudget(0.1, 10));
+        payments.failuresLeft = 1;
+        try {
+            retrying.makePayment(1L, 40);
+            fail("Expected the payment to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(List.of("pay 1:40"), payments.calls);
+            assertEquals(0, retrying.getRetries());
+        }
+    }
+
+    @Test
+    public void keyedPaymentIsNotRetriedWhenTheDelegateDoesNotHonourKeys() {
+        RetryingTicketPaymentService retrying = retrying(4, new RetryBudget(0.1, 10));
+        payments.idempotent = false;
+        payments.failuresLeft = 1;
+        assertFalse(retrying.isIdempotent());
+        try {
+            retrying.makePayment(99L, 1L, 40);
+            fail("Expected the payment to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(List.of("pay 99:1:40"), payments.calls);
+            assertEquals(0, retrying.getRetries());
+        }
+    }
+
+    @Test
+    public void refundsArePassedThroughOnce() {
+        RetryingTicketPaymentService retrying = retrying(4, new RetryBudget(0.1, 10));
+        payments.failuresLeft = 1;
+        assertTrue(retrying.canRefund());
+        try {
+            retrying.refundPayment(1L, 40);
+            fail("Expected the refund to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(List.of("refund 1:40"), payments.calls);
+            assertTrue(sleeps.isEmpty());
+        }
+    }
+
+    @Test
+    public void permanentFailureIsNotRetried() {
+        RetryingTicketPaymentService retrying = new RetryingTicketPaymentService(payments, 4, BASE_DELAY_NANOS,
+                MAXIMUM_DELAY_NANOS, TimeUnit.NANOSECONDS, new RetryBudget(0.1, 10), failure -> false, sleeps::add);
+        payments.failuresLeft = 1;
+        try {
+            retrying.makePayment(99L, 1L, 40);
+            fail("Expected the payment to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(1, payments.calls.size());
+            assertTrue(sleeps.isEmpty());
+        }
+    }
+
+    @Test
+    public void retryBudgetCapsRetriesToAFractionOfPayments() {
+        RetryBudget budget = new RetryBudget(0.1, 5);
+        RetryingTicketPaymentService retrying = retrying(3, budget);
+        payments.failuresLeft = Integer.MAX_VALUE;
+        int paymentsMade = 1000;
+        for (int payment = 0; payment < paymentsMade; payment++) {
+            try {
+                retrying.makePayment(payment, 1L, 40);
+            } catch (IllegalStateException e) {
+                // Every attempt fails
+            }
+        }
+
+        // Each payment earns a tenth of a retry, on top of the five the budget starts with
+        assertTrue("Made " + retrying.getRetries() + " retries", retrying.getRetries() <= paymentsMade / 10 + 5);
+        assertTrue("Made " + retrying.getRetries() + " retries", retrying.getRetries() >= paymentsMade / 10);
+        assertEquals(paymentsMade + retrying.getRetries(), payments.calls.size());
+        assertTrue(retrying.getBudgetExhausted() > 0);
+        assertEquals(retrying.getRetries(), budget.getWithdrawals());
+    }
+
+    @Test
+    public void budgetRefillsOnlyUpToItsCapacity() {
+        RetryBudget budget = new RetryBudget(0.5, 2);
+        for (int call = 0; call < 10; call++) {
+            budget.deposit();
+        }
+        assertEquals(2.0, budget.getTokens(), 0.0);
+
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+        assertEquals(2, budget.getDenials());
+    }
+
+    @Test
+    public void interruptStopsRetrying() {
+        RetryingTicketPaymentService retrying = new RetryingTicketPaymentService(payments, 4, BASE_DELAY_NANOS,
+                MAXIMUM_DELAY_NANOS, TimeUnit.NANOSECONDS, new RetryBudget(0.1, 10), failure -> true,
+                nanos -> Thread.currentThread().interrupt());
+        payments.failuresLeft = Integer.MAX_VALUE;
+        try {
+            retrying.makePayment(99L, 1L, 40);
+            fail("Expected the payment to fail");
+        } catch (IllegalStateException e) {
+            assertTrue(Thread.interrupted());
+            assertEquals(1, payments.calls.size());
+        }
+    }
+
+    @Test
+    public void retryIsNotMadeOnceItsWaitWouldOutlastTheDeadline() {
+        RetryBudget budget = new RetryBudget(0.1, 10);
+        RetryingTicketPaymentService retrying = retrying(4, budget);
+        payments.failuresLeft = Integer.MAX_VALUE;
+        try {
+            CallDeadline.runBy(System.nanoTime(), () -> retrying.makePayment(99L, 1L, 40));
+            fail("Expected the payment to fail");
+        } catch (IllegalStateException e) {
+            assertSame(payments.failure, e);
+        }
+
+        assertEquals(1, payments.calls.size());
+        assertTrue(sleeps.isEmpty());
+        assertEquals(1, retrying.getDeadlinesReached());
+        assertEquals(0, budget.getWithdrawals());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void atLeastOneAttemptIsNeeded() {
+        retrying(0, new RetryBudget(0.1, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void retryRatioCannotExceedOne() {
+        new RetryBudget(1.5, 10);
+    }
+
+    private RetryingTicketPaymentService retrying(int maximumAttempts, RetryBudget budget) {
+        return new RetryingTicketPaymentService(payments, maximumAttempts, BASE_DELAY_NANOS, MAXIMUM_DELAY_NANOS,
+                TimeUnit.NANOSECONDS, budget, failure -> true, sleeps::add);
+    }
+
+    private static final class FlakyPayments implements IdempotentTicketPaymentService, RefundableTicketPaymentService {
+
+        final IllegalStateException failure = new IllegalStateException("Payment provider unavailable");
+        final List<String> calls = new ArrayList<>();
+        int failuresLeft;
+        boolean idempotent = true;
+
+        @Override
+        public void makePayment(long accountId, int totalAmountToPay) {
+            calls.add("pay " + accountId + ":" + totalAmountToPay);
+            failIfDue();
+        }
+
+        @Override
+        public void makePayment(long idempotencyKey, long accountId, int totalAmountToPay) {
+            calls.add("pay " + idempotencyKey + ":" + accountId + ":" + totalAmountToPay);
+            failIfDue();
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return idempotent;
+        }
+
+        @Override
+        public void refundPayment(long accountId, int totalAmountToRefund) {
+            calls.add("refund " + accountId + ":" + totalAmountToRefund);
+            failIfDue();
+        }
+
+        private void failIfDue() {
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw failure;
+            }
+        }
+    }
+}